@@ -0,0 +1,129 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  A benchmark run by the BenchmarkRunner.  Each benchmark declares its
+ *  parameters and the values to test, and the runner times the run method
+ *  for every combination of the parameter values.
+ *
+ *  The setup and teardown methods are called once for each combination of
+ *  parameter values, and the prepare method before each call to run.  Only
+ *  the run method is timed.
+ */
+public abstract class Benchmark {
+
+    /**
+     *  Get the name of the benchmark.
+     *
+     *  @return The name of the benchmark.
+     */
+    public String getName () {
+        return getClass ().getSimpleName ();
+    }
+
+    /**
+     *  Get the parameters of the benchmark and the values to test.
+     *
+     *  @return The parameters, in order.
+     */
+    public LinkedHashMap<String, String[]> getParameters () {
+        return parameters;
+    }
+
+    /**
+     *  Get the secondary metrics measured for the current parameter values.
+     *
+     *  @return The score of each metric, by name, in order.
+     */
+    public LinkedHashMap<String, Double> getMetrics () {
+        return metrics;
+    }
+
+    /**
+     *  Get the unit of a secondary metric.
+     *
+     *  @param name The name of the metric.
+     *  @return The unit of the metric.
+     */
+    public String getMetricUnit (String name) {
+        return metricUnits.get (name);
+    }
+
+    /**
+     *  Forget the secondary metrics, before the next parameter values.
+     */
+    public void clearMetrics () {
+        metrics.clear ();
+        metricUnits.clear ();
+    }
+
+    /**
+     *  Prepare the benchmark for the provided parameter values.
+     *
+     *  @param params The parameter values.
+     */
+    public void setup (Map<String, String> params) throws Exception {
+    }
+
+    /**
+     *  Prepare the state used by the next call to run, without timing it.
+     */
+    public void prepare () throws Exception {
+    }
+
+    /**
+     *  Run the operation being timed.
+     *
+     *  @return A result of the operation, so that it is not optimized away.
+     */
+    public abstract Object run () throws Exception;
+
+    /**
+     *  Release the state created by setup.
+     */
+    public void teardown () throws Exception {
+    }
+
+    /**
+     *  Add a parameter to this benchmark.
+     *
+     *  @param name The name of the parameter.
+     *  @param values The values to test.
+     */
+    protected void addParameter (String name, String ... values) {
+        parameters.put (name, values);
+    }
+
+    /**
+     *  Add a secondary metric, such as the memory used, for the current
+     *  parameter values.
+     *
+     *  @param name The name of the metric.
+     *  @param score The score of the metric.
+     *  @param unit The unit of the score.
+     */
+    protected void addMetric (String name, double score, String unit) {
+        metrics.put (name, score);
+        metricUnits.put (name, unit);
+    }
+
+    /**
+     *  The synthetic tree shapes.
+     */
+    protected static final String[] SHAPES = {
+        SyntheticData.BALANCED, SyntheticData.CATERPILLAR
+    };
+
+    /**
+     *  The number of leaves in the synthetic trees.
+     */
+    protected static final String[] LEAVES = { "1000", "10000", "200000" };
+
+    private LinkedHashMap<String, String[]> parameters =
+        new LinkedHashMap<String, String[]> ();
+    private LinkedHashMap<String, Double> metrics =
+        new LinkedHashMap<String, Double> ();
+    private LinkedHashMap<String, String> metricUnits =
+        new LinkedHashMap<String, String> ();
+
+}
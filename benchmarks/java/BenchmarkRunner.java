@@ -0,0 +1,375 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ *  Runs the benchmarks of the Java hot paths, and writes the average time
+ *  of each operation to a JSON file in the format used by JMH, so that the
+ *  results can be compared between runs with the usual JMH tools.
+ *
+ *  Usage: java BenchmarkRunner [options] [regexp]
+ *
+ *  Options:
+ *    -o file             The JSON file to write the results to.
+ *    -wi count           The number of warmup iterations.
+ *    -i count            The number of measurement iterations.
+ *    -t seconds          The minimum time of each iteration.
+ *    -p name=v1,v2,...   Override the values of a parameter.
+ *
+ *  Only the benchmarks with a name matching the regular expression are
+ *  run.
+ */
+public class BenchmarkRunner {
+
+    public static void main (String[] args) throws Exception {
+        String output = "benchmark.json";
+        int warmupIterations = 2;
+        int measurementIterations = 5;
+        double iterationTime = 1.0d;
+        Map<String, String[]> overrides = new HashMap<String, String[]> ();
+        Pattern filter = Pattern.compile (".*");
+        for (int i = 0; i < args.length; i ++) {
+            switch (args[i]) {
+                case "-o":
+                    output = args[++ i];
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt (args[++ i]);
+                    break;
+                case "-i":
+                    measurementIterations = Integer.parseInt (args[++ i]);
+                    break;
+                case "-t":
+                    iterationTime = Double.parseDouble (args[++ i]);
+                    break;
+                case "-p":
+                    String[] param = args[++ i].split ("=", 2);
+                    overrides.put (param[0], param[1].split (","));
+                    break;
+                default:
+                    filter = Pattern.compile (args[i]);
+                    break;
+            }
+        }
+        Benchmark[] benchmarks = {
+            new BinningBenchmark (),
+            new NewickBenchmark (),
+            new NodeBenchmark (),
+            new TreeOperationBenchmark (),
+            new FastaBenchmark (),
+            new HeapsorterBenchmark (),
+            new ProjectFileIOBenchmark (),
+            new DemarcationBenchmark (),
+            new TreeBenchmark ()
+        };
+        BenchmarkRunner runner = new BenchmarkRunner (
+            warmupIterations, measurementIterations, iterationTime
+        );
+        for (Benchmark benchmark: benchmarks) {
+            if (! filter.matcher (benchmark.getName ()).find ()) continue;
+            LinkedHashMap<String, String[]> parameters =
+                new LinkedHashMap<String, String[]> ();
+            for (String name: benchmark.getParameters ().keySet ()) {
+                String[] values = overrides.get (name);
+                if (values == null) {
+                    values = benchmark.getParameters ().get (name);
+                }
+                parameters.put (name, values);
+            }
+            for (Map<String, String> params: combinations (parameters)) {
+                runner.run (benchmark, params);
+            }
+        }
+        runner.write (new File (output));
+        System.out.println ("Results written to " + output);
+        System.exit (0);
+    }
+
+    /**
+     *  A runner for the benchmarks.
+     *
+     *  @param warmupIterations The number of warmup iterations.
+     *  @param measurementIterations The number of measurement iterations.
+     *  @param iterationTime The minimum time of each iteration in seconds.
+     */
+    public BenchmarkRunner (int warmupIterations, int measurementIterations,
+        double iterationTime) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationTime = iterationTime;
+        results = new ArrayList<String> ();
+    }
+
+    /**
+     *  Run a benchmark with the provided parameter values.
+     *
+     *  @param benchmark The benchmark.
+     *  @param params The parameter values.
+     */
+    public void run (Benchmark benchmark, Map<String, String> params)
+        throws Exception {
+        System.out.printf ("%s %s%n", benchmark.getName (), params);
+        benchmark.clearMetrics ();
+        benchmark.setup (params);
+        double[] scores = new double[measurementIterations];
+        try {
+            for (int i = 0; i < warmupIterations; i ++) {
+                double score = iteration (benchmark);
+                System.out.printf (
+                    Locale.US, "  warmup %d: %.3f ms/op%n", i + 1, score
+                );
+            }
+            for (int i = 0; i < measurementIterations; i ++) {
+                scores[i] = iteration (benchmark);
+                System.out.printf (
+                    Locale.US, "  iteration %d: %.3f ms/op%n", i + 1,
+                    scores[i]
+                );
+            }
+        }
+        finally {
+            benchmark.teardown ();
+        }
+        double mean = 0.0d;
+        for (double score: scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double error = Double.NaN;
+        if (scores.length > 1) {
+            double variance = 0.0d;
+            for (double score: scores) {
+                variance += (score - mean) * (score - mean);
+            }
+            variance /= scores.length - 1;
+            error = quantile (scores.length - 1) *
+                Math.sqrt (variance / scores.length);
+        }
+        System.out.printf (
+            Locale.US, "  result: %.3f +- %.3f ms/op%n", mean, error
+        );
+        for (Map.Entry<String, Double> metric:
+            benchmark.getMetrics ().entrySet ()) {
+            System.out.printf (
+                Locale.US, "  %s: %.3f %s%n", metric.getKey (),
+                metric.getValue (), benchmark.getMetricUnit (metric.getKey ())
+            );
+        }
+        results.add (toJson (benchmark, params, mean, error, scores));
+    }
+
+    /**
+     *  Write the results to a JSON file.
+     *
+     *  @param file The JSON file.
+     */
+    public void write (File file) throws IOException {
+        BufferedWriter out = new BufferedWriter (new FileWriter (file));
+        try {
+            out.write ("[\n");
+            for (int i = 0; i < results.size (); i ++) {
+                out.write (results.get (i));
+                out.write (i < results.size () - 1 ? ",\n" : "\n");
+            }
+            out.write ("]\n");
+        }
+        finally {
+            out.close ();
+        }
+    }
+
+    /**
+     *  Run the benchmark until the iteration time has passed.
+     *
+     *  @param benchmark The benchmark.
+     *  @return The average time of each operation in milliseconds.
+     */
+    private double iteration (Benchmark benchmark) throws Exception {
+        long limit = (long)(iterationTime * 1.0e9d);
+        long begin = System.nanoTime ();
+        long elapsed = 0L;
+        long operations = 0L;
+        // Only the operation is timed, but the iteration ends once the
+        // iteration time has passed including the preparation.
+        while (System.nanoTime () - begin < limit || operations == 0L) {
+            benchmark.prepare ();
+            long start = System.nanoTime ();
+            Object result = benchmark.run ();
+            elapsed += System.nanoTime () - start;
+            // Keep the result so that the operation is not optimized away.
+            sink ^= System.identityHashCode (result);
+            operations ++;
+        }
+        return elapsed / 1.0e6d / operations;
+    }
+
+    /**
+     *  Format the result of a benchmark as a JMH style JSON object.
+     */
+    private String toJson (Benchmark benchmark, Map<String, String> params,
+        double mean, double error, double[] scores) {
+        StringBuilder json = new StringBuilder ();
+        json.append ("  {\n");
+        json.append ("    \"benchmark\" : ").append (
+            quote (benchmark.getName () + ".run")
+        ).append (",\n");
+        json.append ("    \"mode\" : \"avgt\",\n");
+        json.append ("    \"threads\" : 1,\n");
+        json.append ("    \"forks\" : 1,\n");
+        json.append ("    \"jvm\" : ").append (
+            quote (System.getProperty ("java.home"))
+        ).append (",\n");
+        json.append ("    \"jvmArgs\" : [");
+        List<String> jvmArgs =
+            ManagementFactory.getRuntimeMXBean ().getInputArguments ();
+        for (int i = 0; i < jvmArgs.size (); i ++) {
+            if (i > 0) json.append (", ");
+            json.append (quote (jvmArgs.get (i)));
+        }
+        json.append ("],\n");
+        json.append ("    \"jdkVersion\" : ").append (
+            quote (System.getProperty ("java.version"))
+        ).append (",\n");
+        json.append ("    \"warmupIterations\" : ").append (
+            warmupIterations
+        ).append (",\n");
+        json.append ("    \"warmupTime\" : ").append (
+            quote (iterationTime + " s")
+        ).append (",\n");
+        json.append ("    \"measurementIterations\" : ").append (
+            measurementIterations
+        ).append (",\n");
+        json.append ("    \"measurementTime\" : ").append (
+            quote (iterationTime + " s")
+        ).append (",\n");
+        json.append ("    \"params\" : {");
+        int i = 0;
+        for (Map.Entry<String, String> param: params.entrySet ()) {
+            if (i ++ > 0) json.append (",");
+            json.append ("\n      ").append (quote (param.getKey ()));
+            json.append (" : ").append (quote (param.getValue ()));
+        }
+        json.append ("\n    },\n");
+        json.append ("    \"primaryMetric\" : {\n");
+        json.append ("      \"score\" : ").append (number (mean));
+        json.append (",\n      \"scoreError\" : ").append (number (error));
+        json.append (",\n      \"scoreConfidence\" : [");
+        json.append (number (mean - error)).append (", ");
+        json.append (number (mean + error)).append ("],\n");
+        json.append ("      \"scoreUnit\" : \"ms/op\",\n");
+        json.append ("      \"rawData\" : [[");
+        for (i = 0; i < scores.length; i ++) {
+            if (i > 0) json.append (", ");
+            json.append (number (scores[i]));
+        }
+        json.append ("]]\n");
+        json.append ("    },\n");
+        json.append ("    \"secondaryMetrics\" : {");
+        i = 0;
+        for (Map.Entry<String, Double> metric:
+            benchmark.getMetrics ().entrySet ()) {
+            if (i ++ > 0) json.append (",");
+            json.append ("\n      ").append (quote (metric.getKey ()));
+            json.append (" : {\n        \"score\" : ");
+            json.append (number (metric.getValue ()));
+            json.append (",\n        \"scoreUnit\" : ");
+            json.append (quote (benchmark.getMetricUnit (metric.getKey ())));
+            json.append ("\n      }");
+        }
+        json.append (i > 0 ? "\n    }\n" : "}\n");
+        json.append ("  }");
+        return json.toString ();
+    }
+
+    /**
+     *  Expand the parameters into every combination of their values.
+     */
+    private static List<Map<String, String>> combinations (
+        LinkedHashMap<String, String[]> parameters) {
+        List<Map<String, String>> combinations =
+            new ArrayList<Map<String, String>> ();
+        combinations.add (new LinkedHashMap<String, String> ());
+        for (Map.Entry<String, String[]> parameter: parameters.entrySet ()) {
+            List<Map<String, String>> expanded =
+                new ArrayList<Map<String, String>> ();
+            for (Map<String, String> combination: combinations) {
+                for (String value: parameter.getValue ()) {
+                    Map<String, String> params =
+                        new LinkedHashMap<String, String> (combination);
+                    params.put (parameter.getKey (), value);
+                    expanded.add (params);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    /**
+     *  The 99.9% quantile of the Student's t distribution, used for the
+     *  confidence interval of the score.
+     */
+    private static double quantile (int degreesOfFreedom) {
+        if (degreesOfFreedom <= T_QUANTILES.length) {
+            return T_QUANTILES[degreesOfFreedom - 1];
+        }
+        return 3.291d;
+    }
+
+    /**
+     *  Quote a string for JSON.
+     */
+    private static String quote (String string) {
+        StringBuilder quoted = new StringBuilder ("\"");
+        for (char c: string.toCharArray ()) {
+            switch (c) {
+                case '"': quoted.append ("\\\""); break;
+                case '\\': quoted.append ("\\\\"); break;
+                case '\n': quoted.append ("\\n"); break;
+                case '\t': quoted.append ("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append (String.format ("\\u%04x", (int)c));
+                    }
+                    else {
+                        quoted.append (c);
+                    }
+            }
+        }
+        return quoted.append ('"').toString ();
+    }
+
+    /**
+     *  Format a number for JSON.
+     */
+    private static String number (double value) {
+        if (Double.isNaN (value) || Double.isInfinite (value)) {
+            return "\"NaN\"";
+        }
+        return String.format (Locale.US, "%.6f", value);
+    }
+
+    private static final double[] T_QUANTILES = {
+        636.619d, 31.599d, 12.924d, 8.610d, 6.869d, 5.959d, 5.408d, 5.041d,
+        4.781d, 4.587d, 4.437d, 4.318d, 4.221d, 4.140d, 4.073d, 4.015d,
+        3.965d, 3.922d, 3.883d, 3.850d, 3.819d, 3.792d, 3.768d, 3.745d,
+        3.725d, 3.707d, 3.690d, 3.674d, 3.659d, 3.646d
+    };
+
+    private static volatile int sink;
+
+    private int warmupIterations;
+    private int measurementIterations;
+    private double iterationTime;
+    private ArrayList<String> results;
+
+}
@@ -0,0 +1,34 @@
+import java.util.Map;
+
+import ecosim.Binning;
+import ecosim.tree.Tree;
+
+/**
+ *  Time the complete-linkage binning of a tree at every crit level.
+ */
+public class BinningBenchmark extends Benchmark {
+
+    public BinningBenchmark () {
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) throws Exception {
+        tree = new Tree (SyntheticData.newick (
+            params.get ("shape"), Integer.parseInt (params.get ("leaves"))
+        ));
+    }
+
+    public Object run () {
+        Binning binning = new Binning (tree);
+        binning.run ();
+        return binning.getBins ();
+    }
+
+    public void teardown () {
+        tree = null;
+    }
+
+    private Tree tree;
+
+}
@@ -0,0 +1,101 @@
+import java.io.File;
+import java.util.Map;
+
+import ecosim.Demarcation;
+import ecosim.Execs;
+import ecosim.Logger;
+import ecosim.MainVariables;
+import ecosim.ParameterSet;
+import ecosim.SimulationCodec;
+import ecosim.api.SimulationEngine;
+import ecosim.tree.Tree;
+
+/**
+ *  Time the demarcation of a tree, with the simulations replaced by a stub
+ *  that finds a single ecotype in any sample of at most ECOTYPE_SIZE
+ *  sequences, so that only the Java side of demarcation is timed.
+ */
+public class DemarcationBenchmark extends Benchmark {
+
+    public DemarcationBenchmark () {
+        addParameter ("method", MONOPHYLY);
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", "100", "1000");
+    }
+
+    public void setup (Map<String, String> params) throws Exception {
+        leaves = Integer.parseInt (params.get ("leaves"));
+        method = Demarcation.DEMARCATION_METHOD_MONOPHYLY;
+        if (params.get ("method").equals (PARAPHYLY)) {
+            method = Demarcation.DEMARCATION_METHOD_PARAPHYLY;
+        }
+        mainVariables = new MainVariables ();
+        execs = new StubExecs (new Logger (), mainVariables);
+        tree = new Tree (SyntheticData.newick (params.get ("shape"), leaves));
+        tree.makeBinary ();
+        tree.reroot (tree.getDescendant ("seq0"));
+    }
+
+    public void prepare () throws Exception {
+        // A new demarcation starts with an empty cache.
+        demarcation = new Demarcation (
+            mainVariables, execs, leaves - 1, 300, "seq0", tree, ESTIMATE,
+            method
+        );
+    }
+
+    public Object run () throws Exception {
+        demarcation.run ();
+        return demarcation.getEcotypes ();
+    }
+
+    public void teardown () {
+        mainVariables.exit ();
+        tree = null;
+        demarcation = null;
+    }
+
+    /**
+     *  Replaces the simulations with a stub.
+     */
+    private static class StubExecs extends Execs {
+
+        public StubExecs (Logger log, MainVariables mainVariables) {
+            super (log, mainVariables);
+        }
+
+        public SimulationEngine getSimulationEngine () {
+            return null;
+        }
+
+        public ParameterSet[] runProgram (SimulationCodec request,
+            File input, File output, int numberThreads) {
+            long npop = 1L;
+            if (request.getInput ().getNu () > ECOTYPE_SIZE) npop = 2L;
+            return new ParameterSet[] {
+                new ParameterSet (1L, 0.01d, 0.1d, 0.1d),
+                new ParameterSet (npop, 0.01d, 0.1d, 0.5d)
+            };
+        }
+
+    }
+
+    /**
+     *  The largest sample that the stub finds to be a single ecotype.
+     */
+    private static final int ECOTYPE_SIZE = 8;
+
+    private static final ParameterSet ESTIMATE =
+        new ParameterSet (12L, 0.01d, 0.1d, 0.5d);
+
+    private static final String MONOPHYLY = "monophyly";
+    private static final String PARAPHYLY = "paraphyly";
+
+    private int leaves;
+    private int method;
+    private MainVariables mainVariables;
+    private Execs execs;
+    private Tree tree;
+    private Demarcation demarcation;
+
+}
@@ -0,0 +1,51 @@
+import java.io.File;
+import java.util.Map;
+
+import ecosim.Fasta;
+
+/**
+ *  Time opening and indexing a Fasta file, either a synthetic file with
+ *  the given number of sequences or one of the example data sets.
+ */
+public class FastaBenchmark extends Benchmark {
+
+    public FastaBenchmark () {
+        addParameter (
+            "data", "1000", "10000", "200000",
+            "example-data/cya.fasta.gz", "example-data/cyb.fasta.gz"
+        );
+    }
+
+    public void setup (Map<String, String> params) throws Exception {
+        String data = params.get ("data");
+        if (data.matches ("\\d+")) {
+            file = SyntheticData.fasta (Integer.parseInt (data), LENGTH);
+            synthetic = true;
+        }
+        else {
+            file = new File (data);
+            synthetic = false;
+        }
+    }
+
+    public Object run () throws Exception {
+        Fasta fasta = new Fasta (file);
+        long size = fasta.size ();
+        fasta.close ();
+        return size;
+    }
+
+    public void teardown () {
+        if (synthetic) file.delete ();
+        file = null;
+    }
+
+    /**
+     *  The length of the synthetic sequences.
+     */
+    private static final int LENGTH = 300;
+
+    private File file;
+    private boolean synthetic;
+
+}
@@ -0,0 +1,46 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import ecosim.Heapsorter;
+
+/**
+ *  Time sorting a list of random values.
+ */
+public class HeapsorterBenchmark extends Benchmark {
+
+    public HeapsorterBenchmark () {
+        addParameter ("size", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) {
+        int size = Integer.parseInt (params.get ("size"));
+        random = new Random (1L);
+        values = new ArrayList<Double> (size);
+        for (int i = 0; i < size; i ++) {
+            values.add (random.nextDouble ());
+        }
+    }
+
+    public void prepare () {
+        Collections.shuffle (values, random);
+        list = new ArrayList<Double> (values);
+    }
+
+    public Object run () {
+        Heapsorter<Double> sorter = new Heapsorter<Double> ();
+        sorter.sort (list);
+        return list.get (0);
+    }
+
+    public void teardown () {
+        values = null;
+        list = null;
+    }
+
+    private Random random;
+    private ArrayList<Double> values;
+    private ArrayList<Double> list;
+
+}
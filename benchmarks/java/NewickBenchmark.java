@@ -0,0 +1,38 @@
+import java.io.StringReader;
+import java.util.Map;
+
+import ecosim.tree.NewickReader;
+
+/**
+ *  Time reading a Newick tree.
+ */
+public class NewickBenchmark extends Benchmark {
+
+    public NewickBenchmark () {
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) {
+        newick = SyntheticData.newick (
+            params.get ("shape"), Integer.parseInt (params.get ("leaves"))
+        );
+    }
+
+    public Object run () throws Exception {
+        NewickReader reader = new NewickReader (new StringReader (newick));
+        try {
+            return reader.readTree ();
+        }
+        finally {
+            reader.close ();
+        }
+    }
+
+    public void teardown () {
+        newick = null;
+    }
+
+    private String newick;
+
+}
@@ -0,0 +1,38 @@
+import java.util.Map;
+
+import ecosim.tree.Tree;
+
+/**
+ *  Time calculating the maximum distance between the leaves of a tree that
+ *  has not been examined yet.
+ */
+public class NodeBenchmark extends Benchmark {
+
+    public NodeBenchmark () {
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) {
+        newick = SyntheticData.newick (
+            params.get ("shape"), Integer.parseInt (params.get ("leaves"))
+        );
+    }
+
+    public void prepare () throws Exception {
+        tree = new Tree (newick);
+    }
+
+    public Object run () {
+        return tree.getRoot ().maximumDistanceBetweenLeafNodes ();
+    }
+
+    public void teardown () {
+        newick = null;
+        tree = null;
+    }
+
+    private String newick;
+    private Tree tree;
+
+}
@@ -0,0 +1,74 @@
+import java.io.File;
+import java.util.Map;
+
+import ecosim.Binning;
+import ecosim.Execs;
+import ecosim.Logger;
+import ecosim.MainVariables;
+import ecosim.ProjectFileIO;
+import ecosim.tree.Tree;
+
+/**
+ *  Time saving and loading a project file holding a tree and its binning,
+ *  in the XML and in the binary format.
+ */
+public class ProjectFileIOBenchmark extends Benchmark {
+
+    public ProjectFileIOBenchmark () {
+        addParameter ("operation", SAVE, LOAD);
+        addParameter ("format", XML, BINARY);
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) throws Exception {
+        operation = params.get ("operation");
+        int leaves = Integer.parseInt (params.get ("leaves"));
+        mainVariables = new MainVariables ();
+        execs = new Execs (new Logger (), mainVariables);
+        Tree tree = new Tree (
+            SyntheticData.newick (params.get ("shape"), leaves)
+        );
+        Binning binning = new Binning (tree);
+        binning.run ();
+        projectFileIO = new ProjectFileIO (
+            mainVariables, execs, leaves, 300, "seq0", tree, binning,
+            null, null, null, null, null, null
+        );
+        String extension = ".xml";
+        if (params.get ("format").equals (BINARY)) {
+            extension = "." + ProjectFileIO.BINARY_EXTENSION;
+        }
+        file = File.createTempFile ("benchmark", extension);
+        file.deleteOnExit ();
+        projectFileIO.save (file);
+    }
+
+    public Object run () {
+        if (operation.equals (SAVE)) {
+            projectFileIO.save (file);
+            return file;
+        }
+        ProjectFileIO loaded = new ProjectFileIO (mainVariables, execs);
+        loaded.load (file);
+        return loaded.getTree ();
+    }
+
+    public void teardown () {
+        file.delete ();
+        mainVariables.exit ();
+        projectFileIO = null;
+    }
+
+    private static final String SAVE = "save";
+    private static final String LOAD = "load";
+    private static final String XML = "xml";
+    private static final String BINARY = "binary";
+
+    private String operation;
+    private MainVariables mainVariables;
+    private Execs execs;
+    private ProjectFileIO projectFileIO;
+    private File file;
+
+}
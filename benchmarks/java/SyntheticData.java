@@ -0,0 +1,121 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ *  Generates the synthetic trees and sequences used by the benchmarks.  The
+ *  same seed always generates the same data.
+ */
+public class SyntheticData {
+
+    /**
+     *  Generate a Newick tree of the provided shape.  The leaves are named
+     *  seq0 to seqN, and seq0 is the deepest leaf of a caterpillar tree.
+     *
+     *  @param shape The shape, BALANCED or CATERPILLAR.
+     *  @param leaves The number of leaves.
+     *  @return The Newick tree.
+     */
+    public static String newick (String shape, int leaves) {
+        Random random = new Random (SEED);
+        StringBuilder newick = new StringBuilder ();
+        if (shape.equals (CATERPILLAR)) {
+            caterpillar (newick, leaves, random);
+        }
+        else {
+            newick.append ('(');
+            balanced (newick, 0, leaves / 2, random);
+            newick.append (',');
+            balanced (newick, leaves / 2, leaves, random);
+            newick.append (')');
+        }
+        return newick.append (';').toString ();
+    }
+
+    /**
+     *  Write a Fasta file of random sequences, named seq0 to seqN, to a
+     *  temporary file.
+     *
+     *  @param sequences The number of sequences.
+     *  @param length The length of each sequence.
+     *  @return The Fasta file.
+     */
+    public static File fasta (int sequences, int length) throws IOException {
+        Random random = new Random (SEED);
+        File file = File.createTempFile ("benchmark", ".fa");
+        file.deleteOnExit ();
+        BufferedWriter out = new BufferedWriter (new FileWriter (file));
+        char[] residues = new char[length];
+        try {
+            for (int i = 0; i < sequences; i ++) {
+                out.write (">seq" + i + " synthetic sequence\n");
+                for (int j = 0; j < length; j ++) {
+                    residues[j] = "acgt".charAt (random.nextInt (4));
+                }
+                for (int j = 0; j < length; j += 60) {
+                    out.write (residues, j, Math.min (60, length - j));
+                    out.write ('\n');
+                }
+            }
+        }
+        finally {
+            out.close ();
+        }
+        return file;
+    }
+
+    /**
+     *  Append a balanced subtree holding the leaves from start to end.
+     */
+    private static void balanced (StringBuilder newick, int start, int end,
+        Random random) {
+        if (end - start == 1) {
+            newick.append ("seq").append (start);
+        }
+        else {
+            int middle = (start + end) >>> 1;
+            newick.append ('(');
+            balanced (newick, start, middle, random);
+            newick.append (',');
+            balanced (newick, middle, end, random);
+            newick.append (')');
+        }
+        distance (newick, random);
+    }
+
+    /**
+     *  Append a caterpillar tree, adding one leaf at each level.
+     */
+    private static void caterpillar (StringBuilder newick, int leaves,
+        Random random) {
+        for (int i = 1; i < leaves; i ++) {
+            newick.append ('(');
+        }
+        newick.append ("seq0");
+        distance (newick, random);
+        for (int i = 1; i < leaves; i ++) {
+            newick.append (",seq").append (i);
+            distance (newick, random);
+            newick.append (')');
+            if (i < leaves - 1) distance (newick, random);
+        }
+    }
+
+    /**
+     *  Append a random branch length.
+     */
+    private static void distance (StringBuilder newick, Random random) {
+        newick.append (String.format (
+            Locale.US, ":%.5f", random.nextDouble () * 0.01d
+        ));
+    }
+
+    public static final String BALANCED = "balanced";
+    public static final String CATERPILLAR = "caterpillar";
+
+    private static final long SEED = 1L;
+
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayDeque;
+import java.util.Map;
+
+import ecosim.Binning;
+import ecosim.tree.CompactTree;
+import ecosim.tree.Node;
+import ecosim.tree.Tree;
+
+/**
+ *  Compare the memory use and traversal speed of the Node based Tree with
+ *  the array-backed CompactTree.  Each operation copies the tree, sums the
+ *  maximum distance between the leaves of every node, and bins the copy.
+ *  The memory used by a copy is reported as a secondary metric.
+ */
+public class TreeBenchmark extends Benchmark {
+
+    public TreeBenchmark () {
+        addParameter ("tree", NODE, COMPACT);
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) throws Exception {
+        compact = params.get ("tree").equals (COMPACT);
+        tree = new Tree (SyntheticData.newick (
+            params.get ("shape"), Integer.parseInt (params.get ("leaves"))
+        ));
+        // Measure the memory used by a copy of the tree.
+        long before = usedMemory ();
+        Object copy = copy ();
+        long memory = usedMemory () - before;
+        int nodes = new CompactTree (tree).numberOfNodes ();
+        addMetric ("memory", 1.0d * memory / nodes, "bytes/node");
+        // Keep the copy until it has been measured.
+        sink = copy.hashCode ();
+    }
+
+    public Object run () throws Exception {
+        if (compact) {
+            CompactTree copy = new CompactTree (tree);
+            double sum = traverse (copy);
+            Binning binning = new Binning (copy);
+            binning.run ();
+            return sum + binning.getBins ().size ();
+        }
+        Tree copy = new Tree (tree);
+        double sum = traverse (copy.getRoot ());
+        Binning binning = new Binning (copy);
+        binning.run ();
+        return sum + binning.getBins ().size ();
+    }
+
+    public void teardown () {
+        tree = null;
+    }
+
+    /**
+     *  Copy the tree in the representation being tested.
+     */
+    private Object copy () throws Exception {
+        if (compact) {
+            return new CompactTree (tree);
+        }
+        return new Tree (tree);
+    }
+
+    /**
+     *  Sum the maximum distance between the leaves of every node.
+     */
+    private static double traverse (Node root) {
+        double sum = 0.0d;
+        ArrayDeque<Node> stack = new ArrayDeque<Node> ();
+        stack.push (root);
+        while (! stack.isEmpty ()) {
+            Node node = stack.pop ();
+            sum += node.maximumDistanceBetweenLeafNodes ();
+            for (Node child: node.getChildren ()) {
+                stack.push (child);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     *  Sum the maximum distance between the leaves of every node.
+     */
+    private static double traverse (CompactTree tree) {
+        double sum = 0.0d;
+        for (int i = 0; i < tree.numberOfNodes (); i ++) {
+            sum += tree.maximumDistanceBetweenLeafNodes (i);
+        }
+        return sum;
+    }
+
+    /**
+     *  Returns the memory in use after a garbage collection.
+     */
+    private static long usedMemory () {
+        Runtime runtime = Runtime.getRuntime ();
+        for (int i = 0; i < 3; i ++) {
+            System.gc ();
+        }
+        return runtime.totalMemory () - runtime.freeMemory ();
+    }
+
+    private static final String NODE = "node";
+    private static final String COMPACT = "compact";
+
+    private boolean compact;
+    private Tree tree;
+    private int sink;
+
+}
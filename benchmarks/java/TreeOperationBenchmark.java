@@ -0,0 +1,57 @@
+import java.util.Map;
+
+import ecosim.tree.Node;
+import ecosim.tree.Tree;
+
+/**
+ *  Time rerooting a tree on its first leaf, seq0, and making a tree binary.
+ */
+public class TreeOperationBenchmark extends Benchmark {
+
+    public TreeOperationBenchmark () {
+        addParameter ("operation", REROOT, MAKE_BINARY);
+        addParameter ("shape", SHAPES);
+        addParameter ("leaves", LEAVES);
+    }
+
+    public void setup (Map<String, String> params) {
+        operation = params.get ("operation");
+        newick = SyntheticData.newick (
+            params.get ("shape"), Integer.parseInt (params.get ("leaves"))
+        );
+    }
+
+    public void prepare () throws Exception {
+        tree = new Tree (newick);
+        // The first leaf is seq0, found without searching every leaf.
+        outgroup = tree.getRoot ();
+        while (! outgroup.isLeafNode ()) {
+            outgroup = outgroup.getChildren ().get (0);
+        }
+    }
+
+    public Object run () {
+        if (operation.equals (REROOT)) {
+            tree.reroot (outgroup);
+        }
+        else {
+            tree.makeBinary ();
+        }
+        return tree.getRoot ();
+    }
+
+    public void teardown () {
+        newick = null;
+        tree = null;
+        outgroup = null;
+    }
+
+    private static final String REROOT = "reroot";
+    private static final String MAKE_BINARY = "makeBinary";
+
+    private String operation;
+    private String newick;
+    private Tree tree;
+    private Node outgroup;
+
+}
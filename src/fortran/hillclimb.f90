@@ -30,6 +30,20 @@
 !>
 !> @post Generates the hillclimbOut.dat file that contains the optimized
 !>         solution.
+!>
+!> @note If the input file is '-', the program runs as a worker: each
+!>         request is read from standard input in the format of the
+!>         input file, and each line of the response is written to
+!>         standard output prefixed by '#', followed by a '#end' line.
+!>
+!> @note If the input file is '=', the program runs as a binary worker:
+!>         each request is read from standard input in the shared binary
+!>         format, and each response is written to standard output in the
+!>         binary format, framed by its own header.
+!>
+!> @note If the input file starts with the BINARY_REQUEST magic number, it
+!>         is read in the shared binary format and the output file is
+!>         written in the binary format, starting with BINARY_RESPONSE.
 !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
 program hillclimb
   ! Load intrinsic modules.
@@ -44,6 +58,9 @@ program hillclimb
   character(len = 256)             :: inputFile
   character(len = 256)             :: outputFile
   logical                          :: fileExists
+  logical                          :: worker
+  logical                          :: binary
+  character(len = 1)               :: frame
   integer(kind = int32)            :: npop
   integer(kind = int32)            :: i
   integer(kind = int32)            :: ier
@@ -54,6 +71,9 @@ program hillclimb
   integer(kind = int32)            :: nloop
   integer(kind = int32), parameter :: nparams = 3
   integer(kind = int32), parameter :: outputUnit = 4
+  integer(kind = int32), parameter :: workerInputUnit = 3
+  integer(kind = int32)            :: outUnit
+  integer(kind = int32)            :: ios
   real(kind = real64)              :: omega
   real(kind = real64)              :: sigma
   real(kind = real64)              :: simp
@@ -96,63 +116,113 @@ program hillclimb
         stop
     end select
   end do
+  ! Run as a worker if the input file is '-' or '=', reading each request
+  ! from standard input and writing each response to standard output.
+  worker = trim (inputFile) .eq. '-' .or. trim (inputFile) .eq. '='
+  ! A binary worker reads and writes the standard streams without records.
+  if (trim (inputFile) .eq. '=') then
+    open (unit = workerInputUnit, file = '/dev/stdin', action = 'read', &
+      access = 'stream', form = 'unformatted', iostat = ios)
+    if (ios .eq. 0) then
+      open (unit = outputUnit, file = '/dev/stdout', action = 'write', &
+        access = 'stream', form = 'unformatted', iostat = ios)
+    end if
+    if (ios .ne. 0) then
+      write (unit = *, fmt = *) "The standard streams could not be opened."
+      ! Error, exit the program.
+      stop
+    end if
+  end if
   ! Verify that the input file exists.
   inquire (file = trim (inputFile), exist = fileExists)
-  if (fileExists .neqv. .true.) then
+  if (.not. worker .and. (fileExists .neqv. .true.)) then
     write (unit = *, fmt = *) "The hillclimb input file was not found at: ", &
       trim (inputFile)
     ! Error, exit the program.
     stop
   end if
-  ! Read the input file.
-  call readinput (trim (inputFile), omega, sigma, npop)
-  ! Open the output file.
-  open (unit = outputUnit, file = trim (outputFile), &
-    access = 'sequential', form = 'formatted')
-  ! Set max. no. of function evaluations = maxf, print every iprint.
-  maxf = 100
-  if (debug) then
-    iprint = 1
-  else
-    iprint = -1
-  end if
-  ! Send output to stdout (usually unit 6)
-  lout = 6
-  ! Set value for stopping criterion.  Stopping occurs when the
-  ! standard deviation of the values of the objective function at
-  ! the points of the current simplex < stopcr.
-  stopcr = 1.0d-1
-  nloop = 8
-  ! Fit a quadratic surface to be sure a minimum has been found.
-  iquad = 0
-  ! As function value is being evaluated in double precision, it
-  ! should be accurate to about 15 decimals.  If we set simp = 1.0d-6,
-  ! we should get about 9 dec. digits accuracy in fitting the surface.
-  simp = 1.0d-6
-  ! Return value starts off at zero.
-  yvalue = 0.0
-  ! Make sure omega and sigma are greater than zero.
-  if (omega .gt. 0.0 .and. sigma .gt. 0.0) then
-    ! Setup the parameters for Nelder-Mead.
-    params(1) = log (omega)
-    step(1) = log (omega) / 2.0
-    params(2) = log (sigma)
-    step(2) = log (sigma) / 2.0
-    params(3) = npop
-    step(3) = npop / 2.0
-    call nelmead (params, step, nparams, yvalue, maxf, iprint, stopcr, &
-      nloop, iquad, simp, var, functn, ier, lout)
-    omega = exp (params(1))
-    sigma = exp (params(2))
-    npop = nint (params(3), kind = int32)
-  end if
-  yvalue = -1.0d0 * yvalue
-  ! Output the answer.
-  write (unit = outputUnit, fmt = *) omega, sigma, npop, yvalue
+  ! Handle each request, there is only one unless running as a worker.
+  do
+    ! Read the input file.
+    call readinput (trim (inputFile), omega, sigma, npop, binary, ios)
+    if (ios .ne. 0) exit
+    ! Open the output file, or respond on standard output as a worker.
+    ! Each line of a worker's response starts with the frame marker.
+    ! The output file is binary if the input file was binary.
+    if (worker .and. binary) then
+      outUnit = outputUnit
+    else if (worker) then
+      outUnit = output_unit
+      frame = '#'
+    else if (binary) then
+      outUnit = outputUnit
+      open (unit = outputUnit, file = trim (outputFile), &
+        access = 'stream', form = 'unformatted', status = 'replace')
+    else
+      outUnit = outputUnit
+      frame = ' '
+      open (unit = outputUnit, file = trim (outputFile), &
+        access = 'sequential', form = 'formatted')
+    end if
+    ! Set max. no. of function evaluations = maxf, print every iprint.
+    maxf = 100
+    if (debug) then
+      iprint = 1
+    else
+      iprint = -1
+    end if
+    ! Send output to stdout (usually unit 6)
+    lout = 6
+    ! Set value for stopping criterion.  Stopping occurs when the
+    ! standard deviation of the values of the objective function at
+    ! the points of the current simplex < stopcr.
+    stopcr = 1.0d-1
+    nloop = 8
+    ! Fit a quadratic surface to be sure a minimum has been found.
+    iquad = 0
+    ! As function value is being evaluated in double precision, it
+    ! should be accurate to about 15 decimals.  If we set simp = 1.0d-6,
+    ! we should get about 9 dec. digits accuracy in fitting the surface.
+    simp = 1.0d-6
+    ! Return value starts off at zero.
+    yvalue = 0.0
+    ! Make sure omega and sigma are greater than zero.
+    if (omega .gt. 0.0 .and. sigma .gt. 0.0) then
+      ! Setup the parameters for Nelder-Mead.
+      params(1) = log (omega)
+      step(1) = log (omega) / 2.0
+      params(2) = log (sigma)
+      step(2) = log (sigma) / 2.0
+      params(3) = npop
+      step(3) = npop / 2.0
+      call nelmead (params, step, nparams, yvalue, maxf, iprint, stopcr, &
+        nloop, iquad, simp, var, functn, ier, lout)
+      omega = exp (params(1))
+      sigma = exp (params(2))
+      npop = nint (params(3), kind = int32)
+    end if
+    yvalue = -1.0d0 * yvalue
+    ! Output the answer.
+    if (binary) then
+      write (unit = outUnit) BINARY_RESPONSE, 1_int32
+      write (unit = outUnit) omega, sigma, npop, yvalue
+    else
+      write (unit = outUnit, fmt = *) trim (frame), omega, sigma, npop, &
+        yvalue
+    end if
+    ! Close the output file.
+    if (.not. worker) then
+      close (unit = outputUnit)
+      exit
+    end if
+    ! Mark the end of a text response.
+    if (.not. binary) then
+      write (unit = outUnit, fmt = '(a)') '#end'
+    end if
+    flush (outUnit)
+  end do
   ! Close the random number generator.
   call randomClose ()
-  ! Close the output file.
-  close (unit = outputUnit)
   ! Successful termination of program.
   stop
 
@@ -224,16 +294,23 @@ program hillclimb
   !> @param[out]    omega         The omega value to be tested.
   !> @param[out]    sigma         The sigma value to be tested.
   !> @param[out]    npop          The npop value to be tested.
+  !> @param[out]    binary        True if the input file is binary.
+  !> @param[out]    ios           Nonzero at the end of the input.
   !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-  subroutine readinput (fname, omega, sigma, npop)
+  subroutine readinput (fname, omega, sigma, npop, binary, ios)
     character(len = *), intent(in)       :: fname
     integer(kind = int32), intent(out)   :: npop
     real(kind = real64), intent(out)     :: omega
     real(kind = real64), intent(out)     :: sigma
+    logical, intent(out)                 :: binary
+    integer(kind = int32), intent(out)   :: ios
     ! Local variables
     integer(kind = int32)            :: iii
     integer(kind = int32)            :: jcrit
-    integer(kind = int32), parameter :: input_unit = 1
+    integer(kind = int32)            :: inUnit
+    integer(kind = int32)            :: magic
+    integer(kind = int32)            :: unusedInteger
+    real(kind = real64)              :: unusedReal(2)
     ! bldanny common block
     integer(kind = int32) :: numcrit
     integer(kind = int32) :: nu
@@ -243,46 +320,87 @@ program hillclimb
     integer(kind = int32) :: jwhichxavg
     real(kind = real32)   :: crit(1000)
     common/bldanny/numcrit,nu,nrep,lengthseq,realdata,crit,jwhichxavg
-    ! Open the input file.
-    open (unit = input_unit, file = fname, action = 'read', &
-      access = 'sequential', form = 'formatted')
+    ! Open the input file, or read from standard input as a worker.
+    binary = .false.
+    if (fname .eq. '-') then
+      inUnit = input_unit
+    else if (fname .eq. '=') then
+      ! Each binary request starts with the magic number.
+      inUnit = workerInputUnit
+      read (unit = inUnit, iostat = ios) magic
+      if (ios .ne. 0) return
+      if (magic .ne. BINARY_REQUEST) then
+        ios = 1
+        return
+      end if
+      binary = .true.
+    else
+      inUnit = 1
+      ! The input file is binary if it starts with the magic number.
+      open (unit = inUnit, file = fname, action = 'read', &
+        access = 'stream', form = 'unformatted')
+      read (unit = inUnit, iostat = ios) magic
+      binary = ios .eq. 0 .and. magic .eq. BINARY_REQUEST
+      if (.not. binary) then
+        close (unit = inUnit)
+        open (unit = inUnit, file = fname, action = 'read', &
+          access = 'sequential', form = 'formatted')
+      end if
+    end if
+    if (binary) then
+      ! Every program shares the same binary layout, in the order of
+      ! the text format, ignoring the values it doesn't use.
+      read (unit = inUnit, iostat = ios) numcrit
+      if (ios .ne. 0) return
+      do jcrit = 1, numcrit
+        read (unit = inUnit) crit(jcrit), realdata(jcrit)
+      end do
+      read (unit = inUnit) omega, sigma, npop, unusedInteger, unusedReal(1), &
+        nu, nrep, iii, lengthseq, jwhichxavg, unusedReal(2)
+      call randomInitialize (iii)
+      crit(numcrit) = 1.0 - 1.0 / (2.0 * lengthseq)
+      if (fname .ne. '=') close (unit = inUnit)
+      return
+    end if
     ! numcrit is the number of criteria for making cluster bins
-    read (unit = input_unit, fmt = *) numcrit
+    read (unit = inUnit, fmt = *, iostat = ios) numcrit
+    ! Stop at the end of the input.
+    if (ios .ne. 0) return
     do jcrit = 1, numcrit
       ! crit() is the criterion value
       ! realdata() is the number of bins in the real data
-      read (unit = input_unit, fmt = *) crit(jcrit), realdata(jcrit)
+      read (unit = inUnit, fmt = *) crit(jcrit), realdata(jcrit)
     end do
     ! omega is the rate of niche invasion per eligible parental population
     ! measured as niche invasions per nucleotide substitution in a given gene
-    read (unit = input_unit, fmt = *) omega
+    read (unit = inUnit, fmt = *) omega
     ! sigma is the rate of periodic selection per eligible population,
     ! measured as periodic selection events per population per nucleotide
     ! substitution in a given gene
-    read (unit = input_unit, fmt = *) sigma
+    read (unit = inUnit, fmt = *) sigma
     ! npop is the number of ecotypes assumed to be in the environmental DNA
     ! sample
-    read (unit = input_unit, fmt = *) npop
+    read (unit = inUnit, fmt = *) npop
     ! nu is the number of homologous gene sequences in the environmental
     ! sample following Acinas et al., this should be in the thousands.
-    read (unit = input_unit, fmt = *) nu
+    read (unit = inUnit, fmt = *) nu
     ! nrep is the number of replicate simulations for a given set of sigma,
     ! omega, and npop
-    read (unit = input_unit, fmt = *) nrep
+    read (unit = inUnit, fmt = *) nrep
     ! iii is the odd random number seed (up to nine digits)
-    read (unit = input_unit, fmt = *) iii
+    read (unit = inUnit, fmt = *) iii
     ! Initialize the random number generator.
     call randomInitialize (iii)
     ! lengthseq is the length in nucleotides of the sequence analyzed
-    read (unit = input_unit, fmt = *) lengthseq
+    read (unit = inUnit, fmt = *) lengthseq
     ! jwhichxavg gives the precision:
     ! 1=5x, 2=2x, 3=1.5x, 4=1.25x, 5=1.1x, 6=1.05x
-    read (unit = input_unit, fmt = *) jwhichxavg
+    read (unit = inUnit, fmt = *) jwhichxavg
     ! The highest sequence identity criterion cannot be 1.0 but should be
     ! 1-(1/(2*lengthseq))
     crit(numcrit) = 1.0 - 1.0 / (2.0 * lengthseq)
     ! Close the input file.
-    close (unit = input_unit)
+    if (fname .ne. '-') close (unit = inUnit)
     return
   end subroutine readinput
 
@@ -52,6 +52,13 @@ module methods
   integer(kind = int32), public :: &
     numberThreads = 1                      !< The number of threads to start.
 
+  ! Declare public parameters, the magic numbers at the start of the binary
+  ! input and output files ("ESRQ" and "ESRP" in little-endian order).
+  integer(kind = int32), parameter, public :: &
+    BINARY_REQUEST           = 1364349765  !< Binary request.
+  integer(kind = int32), parameter, public :: &
+    BINARY_RESPONSE          = 1347572549  !< Binary response.
+
   ! Declare private global parameters.
   integer(kind = int32), parameter :: &
     EVENT_NICHE_INVASION     = 1001        !< Niche invasion event.
@@ -485,6 +492,8 @@ module methods
   subroutine randomClose ()
     ! Local variables.
     integer(kind = int32) :: allocateStatus
+    ! Nothing to do if the RNG was never initialized.
+    if (.not. allocated (rng)) return
     ! Deallocate space for the RNG.
     deallocate (rng, stat = allocateStatus)
     if (allocateStatus .gt. 0) then
@@ -507,6 +516,9 @@ module methods
     integer(kind = int32) :: i
     integer(kind = int32) :: allocateStatus
     real(kind = real32)   :: x
+    ! Keep the current state of the RNG if it has already been initialized,
+    ! as happens when a worker handles more than one request.
+    if (allocated (rng)) return
     ! Allocate space for each thread's RNG.
     allocate (rng(numberThreads), stat = allocateStatus)
     if (allocateStatus .gt. 0) then
@@ -22,7 +22,7 @@
 
 package ecosim;
 
-import ecosim.tree.Node;
+import ecosim.tree.CompactTree;
 import ecosim.tree.Tree;
 
 import java.util.ArrayList;
@@ -54,17 +54,30 @@ public class Binning implements Runnable {
         this.tree = tree;
     }
 
+    /**
+     *  Object to estimate the number of bins in a provided compact tree.
+     *
+     *  @param tree The CompactTree object.
+     */
+    public Binning (CompactTree tree) {
+        bins = new ArrayList<BinLevel> ();
+        compactTree = tree;
+    }
+
     /**
      *  Run the binning program.
      */
     public void run () {
         // Only run binning if a tree has been loaded.
-        if (tree == null) return;
-        // Run complete-linkage binning on the provided tree for each
-        // sequence criterion level.
-        for (Double crit: binLevels) {
-            Integer level = getNumberBins (crit, tree.getRoot ());
-            bins.add (new BinLevel (crit, level));
+        if (tree == null && compactTree == null) return;
+        // Run complete-linkage binning on the provided tree for every
+        // sequence criterion level at once.
+        if (compactTree == null) {
+            compactTree = new CompactTree (tree);
+        }
+        Integer[] levels = getNumberBins (binLevels, compactTree);
+        for (int i = 0; i < binLevels.length; i ++) {
+            bins.add (new BinLevel (binLevels[i], levels[i]));
         }
     }
 
@@ -112,37 +125,131 @@ public class Binning implements Runnable {
     }
 
     /**
-     *  A private recursive method to estimate the number of bins in a
-     *  provided tree using a complete-linkage method.
+     *  A private method to estimate the number of bins in a provided tree
+     *  using a complete-linkage method, for each sequence criterion level.
+     *
+     *  A node is collapsed into a bin at a given crit level when the
+     *  maximum distance between its leaf nodes does not exceed the crit
+     *  threshold, but that of each of its ancestors does.  The maximum
+     *  distance of each node is calculated once, and the range of crit
+     *  levels where the node forms a bin is found by searching the sorted
+     *  crit thresholds.
+     *
+     *  @param crits The sequence criterion levels.
+     *  @param tree The tree.
+     *  @return The number of bins at each sequence criterion level.
+     */
+    private Integer[] getNumberBins (Double[] crits, CompactTree tree) {
+        int numCrits = crits.length;
+        // Sort the crit thresholds in ascending order, keeping track of
+        // the crit level that each threshold belongs to.
+        ArrayList<Double> sorted = new ArrayList<Double> ();
+        for (int i = 0; i < numCrits; i ++) {
+            sorted.add (1.000d - crits[i] - MainVariables.EPSILON);
+        }
+        Double[] original = sorted.toArray (new Double[numCrits]);
+        Heapsorter<Double> sorter = new Heapsorter<Double> ();
+        sorter.sort (sorted);
+        double[] thresholds = new double[numCrits];
+        for (int i = 0; i < numCrits; i ++) {
+            // The sorter returns the values in descending order.
+            thresholds[i] = sorted.get (numCrits - i - 1);
+        }
+        // Count the bins formed by each node over the range of thresholds
+        // where it is collapsed.
+        int[] changes = new int[numCrits + 1];
+        countBins (tree, thresholds, changes);
+        int[] counts = new int[numCrits];
+        int count = 0;
+        for (int i = 0; i < numCrits; i ++) {
+            count += changes[i];
+            counts[i] = count;
+        }
+        // Return the counts in the order of the provided crit levels.
+        Integer[] levels = new Integer[numCrits];
+        for (int i = 0; i < numCrits; i ++) {
+            levels[i] = counts[firstAtLeast (thresholds, original[i])];
+        }
+        return levels;
+    }
+
+    /**
+     *  A private method to count the bins formed by each node of the tree.
      *
-     *  @param crit The sequence criterion level.
-     *  @param node The current node in the tree to examine.
-     *  @return The number of bins.
+     *  @param tree The tree to examine.
+     *  @param thresholds The crit thresholds, in ascending order.
+     *  @param changes The change in the number of bins at each threshold.
      */
-    private Integer getNumberBins (Double crit, Node node) {
-        Integer num = 0;
-        // Return zero bins if the node is the outgroup.
-        if (node.isOutgroup ()) return 0;
-        // Return one bin if the node is a leaf node.
-        if (node.isLeafNode ()) return 1;
-        // Calculate the maximum distance between the leaf node ancestors of
-        // the current node.
-        Double distance = node.maximumDistanceBetweenLeafNodes ();
-        // Recurse on the child nodes if the maximum distance exceeds the
-        // crit value, otherwise colapse this branch into one bin.
-        if (distance > 1.000d - crit - MainVariables.EPSILON) {
-            for (Node child: node.getChildren ()) {
-                num += getNumberBins (crit, child);
+    private void countBins (CompactTree tree, double[] thresholds,
+        int[] changes) {
+        int size = tree.numberOfNodes ();
+        // The smallest maximum distance between the leaf nodes of the
+        // ancestors of each node, and whether the node is in the outgroup.
+        double[] ancestor = new double[size];
+        boolean[] outgroup = new boolean[size];
+        // The nodes are in pre-order, so each parent is visited before its
+        // children.
+        for (int node = 0; node < size; node ++) {
+            int parent = tree.getParent (node);
+            ancestor[node] = Double.POSITIVE_INFINITY;
+            if (parent != CompactTree.NONE) {
+                ancestor[node] = Math.min (
+                    ancestor[parent],
+                    tree.maximumDistanceBetweenLeafNodes (parent)
+                );
+                outgroup[node] = outgroup[parent];
+            }
+            // The outgroup does not form a bin.
+            outgroup[node] |= tree.isOutgroup (node);
+            if (outgroup[node]) continue;
+            // Each of the ancestors is split below this threshold.
+            int last = firstAtLeast (thresholds, ancestor[node]);
+            // A leaf node forms one bin at each threshold where its
+            // ancestors are split.
+            if (tree.isLeafNode (node)) {
+                changes[0] ++;
+                changes[last] --;
+                continue;
+            }
+            // An internal node is collapsed into one bin at each threshold
+            // that is not exceeded by its maximum distance.  Its descendants
+            // are only split where it is split too.
+            double distance = tree.maximumDistanceBetweenLeafNodes (node);
+            int first = firstAtLeast (thresholds, distance);
+            if (first < last) {
+                changes[first] ++;
+                changes[last] --;
             }
         }
-        else {
-            num = 1;
+    }
+
+    /**
+     *  A private method to find the first threshold that is at least the
+     *  provided value.
+     *
+     *  @param thresholds The thresholds, in ascending order.
+     *  @param value The value to search for.
+     *  @return The index of the first threshold not less than the value, or
+     *  the number of thresholds if there is none.
+     */
+    private int firstAtLeast (double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (thresholds[middle] < value) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
         }
-        return num;
+        return low;
     }
 
     private ArrayList<BinLevel> bins;
     private Tree tree;
+    private CompactTree compactTree;
 
     /**
      *  The default bin levels.
@@ -0,0 +1,243 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+/**
+ *  The profile likelihood of a parameter at positions stepping away from
+ *  the hillclimbing solution, with the other parameters optimized by the
+ *  simplex method.  Each simplex is warm started from the parameter values
+ *  and the size of the final simplex found at the last accepted position,
+ *  instead of from the solution.  The profile is used to search for one
+ *  bound of a confidence interval.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public abstract class BoundProfile {
+
+    /**
+     *  The largest number of steps away from the solution that is tested.
+     */
+    public static final int MAXIMUM_POSITION = 1 << 20;
+
+    /**
+     *  Create the profile likelihood of a parameter.
+     *
+     *  @param params The initial values of the optimized parameters.
+     *  @param steps The initial step sizes of the optimized parameters.
+     *  @param minimum The smallest step sizes used to warm start.
+     *  @param lastPosition The last position within the range of the
+     *  parameter, capped at MAXIMUM_POSITION.
+     */
+    public BoundProfile (double[] params, double[] steps,
+        double[] minimum, int lastPosition) {
+        this.initialParams = params;
+        this.initialSteps = steps;
+        this.params = params;
+        this.steps = steps;
+        this.minimum = minimum;
+        this.lastPosition = Math.min (lastPosition, MAXIMUM_POSITION);
+    }
+
+    /**
+     *  Returns the last position stepping from a value towards a limit
+     *  that does not pass the limit, such as the last npop value between
+     *  the solution and 1 or the number of environmental sequences.
+     *
+     *  @param value The value at the solution.
+     *  @param limit The limit of the value.
+     *  @param step The change in the value at each position, negative to
+     *  step towards a smaller limit.
+     *  @return The last position, or 0 if the first position passes the
+     *  limit.
+     */
+    public static int lastPosition (long value, long limit, long step) {
+        long position = (limit - value) / step;
+        return (int)Math.max (0L, Math.min (position, MAXIMUM_POSITION));
+    }
+
+    /**
+     *  Returns the last position multiplying a value by a factor whose
+     *  previous position does not pass a cap, such as the sigma cap.  The
+     *  value at the last position may pass the cap, so that the bound
+     *  can reach the cap.
+     *
+     *  @param value The value at the solution.
+     *  @param cap The cap of the value.
+     *  @param factor The factor between positions, greater than 1.
+     *  @return The last position, or 0 if the value passes the cap.
+     */
+    public static int lastPosition (double value, double cap,
+        double factor) {
+        if (value > cap) return 0;
+        double estimate = Math.log (cap / value) / Math.log (factor) + 1.0d;
+        if (estimate >= MAXIMUM_POSITION) return MAXIMUM_POSITION;
+        int position = (int)Math.floor (estimate);
+        // Correct any rounding in the estimate.
+        while (value * Math.pow (factor, position) <= cap) position ++;
+        while (value * Math.pow (factor, position - 1) > cap) position --;
+        return position;
+    }
+
+    /**
+     *  Optimize the other parameters at a position.
+     *
+     *  @param position The number of steps away from the solution.
+     *  @return The parameter values found and their likelihood.
+     */
+    public abstract ParameterSet evaluate (int position);
+
+    /**
+     *  Search for the furthest position from the solution that passes the
+     *  likelihood ratio test, with the same precision as stepping away
+     *  from the solution one position at a time.  The bound is bracketed
+     *  by doubling the distance from the solution until the test fails or
+     *  the last position is reached, and the bracket is then bisected down
+     *  to a single position.  This assumes that the test fails at every
+     *  position past the first one to fail, which stepping one position at
+     *  a time also assumes.
+     *
+     *  @param solution The hillclimbing solution, at position zero.
+     *  @return The bound.
+     */
+    public ParameterSet search (ParameterSet solution) {
+        ParameterSet bound = solution;
+        int accepted = 0;
+        // The positions past the last position are out of range.
+        int rejected = lastPosition + 1;
+        // Bracket the bound.
+        int position = 1;
+        while (position < rejected) {
+            ParameterSet tested = test (position, solution);
+            if (tested == null) {
+                rejected = position;
+                break;
+            }
+            accepted = position;
+            bound = tested;
+            if (position == lastPosition) break;
+            position = (int)Math.min (2L * position, lastPosition);
+        }
+        // Bisect the bracket.
+        while (rejected - accepted > 1) {
+            position = accepted + (rejected - accepted) / 2;
+            ParameterSet tested = test (position, solution);
+            if (tested == null) {
+                rejected = position;
+            }
+            else {
+                accepted = position;
+                bound = tested;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     *  Returns true if the next simplex is warm started, false if it
+     *  starts from the solution.
+     *
+     *  @return True if the next simplex is warm started.
+     */
+    protected boolean isWarm () {
+        return ! cold && params != initialParams;
+    }
+
+    /**
+     *  Minimize the function with the simplex method.  The values found
+     *  are stored in found.
+     *
+     *  @param function The function to minimize.
+     *  @return The value of the function at the minimum.
+     */
+    protected double minimize (NelderMead.Function function) {
+        double[] start = cold ? initialParams : params;
+        double[] step = cold ? initialSteps : steps;
+        found = start.clone ();
+        NelderMead simplex = new NelderMead (
+            function, JavaSimulationEngine.MAXF, JavaSimulationEngine.STOPCR,
+            JavaSimulationEngine.NLOOP
+        );
+        double yvalue = simplex.minimize (found, step.clone ());
+        double[] spread = simplex.getSpread ();
+        foundSteps = new double[step.length];
+        for (int i = 0; i < step.length; i ++) {
+            foundSteps[i] = Math.max (spread[i], minimum[i]);
+        }
+        return yvalue;
+    }
+
+    /**
+     *  Test if a position is within the confidence interval of the
+     *  solution.  A warm started simplex that fails the test is run again
+     *  from the solution, so that a poor starting point does not end the
+     *  search early.
+     *
+     *  @param position The number of steps away from the solution.
+     *  @param solution The hillclimbing solution.
+     *  @return The parameter values found, or null if the position fails
+     *  the test.
+     */
+    private ParameterSet test (int position, ParameterSet solution) {
+        for (int attempt = 0; attempt < 2; attempt ++) {
+            cold = attempt > 0;
+            ParameterSet tested = evaluate (position);
+            if (accept (solution.getLikelihood (), tested.getLikelihood ())) {
+                // Warm start the next simplex from this position.
+                params = found;
+                steps = foundSteps;
+                cold = false;
+                return tested;
+            }
+            if (! isWarm ()) break;
+        }
+        return null;
+    }
+
+    /**
+     *  Test if the likelihood of a bound is within the confidence interval
+     *  of the solution using the likelihood ratio test.
+     *
+     *  @param likelihoodsolution The likelihood of the solution.
+     *  @param likelihood The likelihood of the bound.
+     *  @return True if the bound is within the confidence interval.
+     */
+    private boolean accept (double likelihoodsolution, double likelihood) {
+        if (likelihoodsolution < MainVariables.EPSILON) return false;
+        if (likelihood < MainVariables.EPSILON) return false;
+        double ratio = -2.0d * Math.log (likelihoodsolution / likelihood);
+        return ratio <= JavaSimulationEngine.RATIO;
+    }
+
+    protected double[] found;
+
+    private double[] initialParams;
+    private double[] initialSteps;
+    private double[] params;
+    private double[] steps;
+    private double[] minimum;
+    private double[] foundSteps;
+    private int lastPosition;
+    private boolean cold;
+
+}
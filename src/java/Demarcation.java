@@ -23,22 +23,23 @@
 
 package ecosim;
 
+import ecosim.api.SimulationEngine;
+import ecosim.tree.CompactTree;
 import ecosim.tree.Node;
 import ecosim.tree.InvalidTreeException;
 import ecosim.tree.Tree;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.NumberFormat;
-import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Locale;
-import java.util.StringTokenizer;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 /**
  *  Demarcates ecotypes based on the hillclimbing values and the phylogeny of
@@ -80,6 +81,7 @@ public class Demarcation extends Tree {
         hasRun = false;
         ecotypes = new ArrayList<ArrayList<String>> ();
         workingDirectory = mainVariables.getWorkingDirectory ();
+        cache = new DemarcationCache ();
     }
 
     /**
@@ -99,14 +101,14 @@ public class Demarcation extends Tree {
      *  @return the demarcation result.
      */
     public String toString () {
-        String string = "";
+        StringBuilder string = new StringBuilder ();
         // Append the ecotypes to the string.
         for (int i = 0; i < ecotypes.size (); i++) {
-            string += String.format (
+            string.append (String.format (
                 "  Ecotype %4d: %s\n", (i + 1), ecotypes.get (i)
-            );
+            ));
         }
-        return string;
+        return string.toString ();
     }
 
     /**
@@ -133,8 +135,10 @@ public class Demarcation extends Tree {
      *  @param ecotypes The ecotypes.
      */
     public void setEcotypes (ArrayList<ArrayList<String>> ecotypes) {
+        // Find the descendants once for all of the ecotypes.
+        HashMap<String, Node> descendants = getDescendantsByName ();
         for (ArrayList<String> ecotype: ecotypes) {
-            addEcotype (ecotype);
+            addEcotype (ecotype, lastCommonAncestor (ecotype, descendants));
         }
         hasRun = true;
     }
@@ -145,7 +149,17 @@ public class Demarcation extends Tree {
      *  @param ecotype The ecotype to add.
      */
     public void addEcotype (ArrayList<String> ecotype) {
-        Node node = lastCommonAncestor (ecotype);
+        addEcotype (ecotype, lastCommonAncestor (ecotype));
+    }
+
+    /**
+     *  A private helper method to add an ecotype, collapsing the last common
+     *  ancestor node of its members.
+     *
+     *  @param ecotype The ecotype to add.
+     *  @param node The last common ancestor node of the ecotype.
+     */
+    private void addEcotype (ArrayList<String> ecotype, Node node) {
         ecotypes.add (ecotype);
         String name = String.format (
             "Ecotype%04d-%.4f",
@@ -177,6 +191,25 @@ public class Demarcation extends Tree {
         this.hasRun = hasRun;
     }
 
+    /**
+     *  Get the cache of demarcation results.
+     *
+     *  @return The DemarcationCache object.
+     */
+    public DemarcationCache getCache () {
+        return cache;
+    }
+
+    /**
+     *  Set the cache of demarcation results, allowing results to be shared
+     *  between runs of demarcation.
+     *
+     *  @param cache The DemarcationCache object.
+     */
+    public void setCache (DemarcationCache cache) {
+        this.cache = cache;
+    }
+
     /**
      *  Find ecotypes using the provided phylogeny data.
      *
@@ -246,7 +279,10 @@ public class Demarcation extends Tree {
                 if (parent.isRootNode ()) break;
                 // Predict the number of ecotypes using the parent node and
                 // exit the loop if the result is greater than one.
-                NpopValue result = runSample (parent);
+                NpopValue result = runSample (
+                    new CompactTree (parent), 0,
+                    mainVariables.getNumberThreads ()
+                );
                 if (result.npop > 1L) break;
                 // Move the node pointer to the parent node.
                 node = parent;
@@ -279,84 +315,166 @@ public class Demarcation extends Tree {
     /**
      *  Find monophyletic ecotypes using the provided phylogeny data.  If the
      *  subclade of the tree represented by node has an optimal npop value of
-     *  1, demarcate the subclade as an ecotype. Otherwise, recurse on the
-     *  node's children.
+     *  1, demarcate the subclade as an ecotype. Otherwise, test the node's
+     *  children.  The ecotypes are demarcated in depth-first order once all
+     *  tests are finished.
      *
      *  @param node The current node representing the subclade.
      */
     private void findMonophylyEcotypes (Node node) throws InvalidTreeException {
-        ArrayList<String> sample = new ArrayList<String> ();
-        String ecotype = String.format (
-            "Ecotype%04d-%.4f",
-            ecotypes.size () + 1,
-            node.maximumDistanceBetweenLeafNodes ()
-        );
-        if (node.isLeafNode ()) {
-            String name = node.getName ();
-            if (! name.equals (outgroup)) {
+        ArrayList<Integer> found = findMonophylyNodes (new CompactTree (node));
+        if (found == null) return;
+        // Number the nodes in pre-order, matching the compact tree.
+        ArrayList<Node> nodes = new ArrayList<Node> ();
+        ArrayDeque<Node> stack = new ArrayDeque<Node> ();
+        stack.push (node);
+        while (! stack.isEmpty ()) {
+            Node current = stack.pop ();
+            nodes.add (current);
+            ArrayList<Node> children = current.getChildren ();
+            for (int i = children.size () - 1; i >= 0; i --) {
+                stack.push (children.get (i));
+            }
+        }
+        // Demarcate the ecotypes in depth-first order.
+        for (int index: found) {
+            Node ecotypeNode = nodes.get (index);
+            ArrayList<String> sample = new ArrayList<String> ();
+            String ecotype = String.format (
+                "Ecotype%04d-%.4f",
+                ecotypes.size () + 1,
+                ecotypeNode.maximumDistanceBetweenLeafNodes ()
+            );
+            if (ecotypeNode.isLeafNode ()) {
+                String name = ecotypeNode.getName ();
                 sample.add (name);
                 ecotypes.add (sample);
-                node.setName (ecotype);
-                node.addChild (new Node (name, 0.0d));
-                node.collapse ();
+                ecotypeNode.setName (ecotype);
+                ecotypeNode.addChild (new Node (name, 0.0d));
+                ecotypeNode.collapse ();
             }
-        }
-        else {
-            ArrayList<Node> leaves = node.getDescendants ();
-            for (int i = 0; i < leaves.size (); i ++) {
-                String name = leaves.get (i).getName ();
-                if (! name.equals (outgroup)) {
-                    sample.add (name);
+            else {
+                for (Node leaf: ecotypeNode.getDescendants ()) {
+                    String name = leaf.getName ();
+                    if (! name.equals (outgroup)) {
+                        sample.add (name);
+                    }
                 }
-            }
-            if (sample.size () == 0) {
-                return;
-            }
-            // Predict the npop value for the sample.
-            NpopValue result = runSample (node);
-            // If npop = 1, demarcate the list of sequences as a new ecotype.
-            if (result.npop == 1L) {
                 ecotypes.add (sample);
-                node.setName (ecotype);
-                node.collapse ();
+                ecotypeNode.setName (ecotype);
+                ecotypeNode.collapse ();
             }
-            else {
-                // Npop > 1, recurse on children nodes.
-                ArrayList<Node> children = node.getChildren ();
-                for (int i = 0; i < children.size (); i ++) {
-                    findMonophylyEcotypes (children.get (i));
+        }
+    }
+
+    /**
+     *  Find the nodes whose subclades have an optimal npop value of 1.  The
+     *  subclades are tested concurrently, and the children of a subclade
+     *  are submitted as soon as its own test finishes, without waiting for
+     *  the other subclades.  The tree is searched without recursion, so
+     *  that deep trees don't overflow the stack.
+     *
+     *  @param tree The tree.
+     *  @return The indices of the nodes to demarcate as ecotypes, in
+     *  depth-first order, or null if interrupted.
+     */
+    private ArrayList<Integer> findMonophylyNodes (final CompactTree tree)
+        throws InvalidTreeException {
+        ArrayList<Integer> found = new ArrayList<Integer> ();
+        // Split the threads evenly between the samples being tested.
+        int numberThreads = Math.max (1, mainVariables.getNumberThreads ());
+        int poolSize = Math.max (1, (int)Math.sqrt (numberThreads));
+        final int sampleThreads = numberThreads / poolSize;
+        CompletionService<NpopValue> tests =
+            new ExecutorCompletionService<NpopValue> (
+                execs.getExecutor (poolSize)
+            );
+        // The tests that are running, and the nodes they are testing.
+        HashMap<Future<NpopValue>, Integer> running =
+            new HashMap<Future<NpopValue>, Integer> ();
+        ArrayDeque<Integer> untested = new ArrayDeque<Integer> ();
+        untested.push (tree.getRoot ());
+        try {
+            while (true) {
+                while (! untested.isEmpty ()) {
+                    int node = untested.pop ();
+                    if (tree.isLeafNode (node)) {
+                        if (! tree.getName (node).equals (outgroup)) {
+                            found.add (node);
+                        }
+                        continue;
+                    }
+                    boolean empty = true;
+                    for (int leaf: tree.getDescendants (node)) {
+                        if (! tree.getName (leaf).equals (outgroup)) {
+                            empty = false;
+                            break;
+                        }
+                    }
+                    if (empty) continue;
+                    // Predict the npop value for the sample.
+                    final int sample = node;
+                    Future<NpopValue> test = tests.submit (
+                        new Callable<NpopValue> () {
+                            public NpopValue call ()
+                                throws InvalidTreeException {
+                                return runSample (tree, sample, sampleThreads);
+                            }
+                        }
+                    );
+                    running.put (test, sample);
+                }
+                if (running.isEmpty ()) break;
+                // If npop = 1, demarcate the sample as a new ecotype.
+                // Otherwise, test the children of the sample.
+                Future<NpopValue> test = tests.take ();
+                int sample = running.remove (test);
+                if (test.get ().npop == 1L) {
+                    found.add (sample);
+                }
+                else {
+                    for (int child: tree.getChildren (sample)) {
+                        untested.push (child);
+                    }
                 }
             }
         }
+        catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            return null;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause () instanceof InvalidTreeException) {
+                throw (InvalidTreeException) e.getCause ();
+            }
+            throw new RuntimeException (e.getCause ());
+        }
+        finally {
+            for (Future<NpopValue> test: running.keySet ()) {
+                test.cancel (true);
+            }
+        }
+        // The nodes are numbered in pre-order, which is depth-first order.
+        Collections.sort (found);
+        return found;
     }
 
    /**
     *  A private helper method to run a sample through the demarcation
     *  program.
     *
-    *  @param node The Node describing the sample to run.
+    *  @param tree The tree containing the sample.
+    *  @param node The index of the node describing the sample to run.
+    *  @param numberThreads The number of threads for the sample.
     *  @return The npop value tested and its likelihood
     */
-   private NpopValue runSample (Node node) throws InvalidTreeException {
-        // Increment the iteration variable used in the file names.
-        iteration ++;
-        File inputFile = new File (
-            workingDirectory + "demarcationIn-" + iteration + ".dat"
-        );
-        File outputFile = new File (
-            workingDirectory + "demarcationOut-" + iteration + ".dat"
+   private NpopValue runSample (CompactTree tree, int node,
+        int numberThreads) throws InvalidTreeException {
+        SimulationEngine engine = execs.getSimulationEngine ();
+        String newick = tree.toString (node);
+        Integer sampleNu = tree.numberOfDescendants (
+            node, getPaintMethod () == PAINT_METHOD_COLLAPSED
         );
-        File newickFile = new File (
-            workingDirectory + "demarcationTree-" + iteration + ".dat"
-        );
-        // Create a new Tree containing just the sequences to
-        // be tested.
-        Tree sampleTree = new Tree (node.toString ());
-        sampleTree.toNewick (newickFile);
-        Integer sampleNu = numberOfDescendants (node);
-        // Run the binning program on the sample tree.
-        Binning sampleBinning = new Binning (sampleTree);
-        sampleBinning.run ();
         // Use the omega and sigma values from hillclimbing.
         Double omega = hclimbResult.getOmega ();
         Double sigma = hclimbResult.getSigma ();
@@ -367,175 +485,93 @@ public class Demarcation extends Tree {
         if (npop < 1L) {
             npop = 1L;
         }
-        // Write the input values for the demarcation program.
-        writeInputFile (
-            inputFile, sampleBinning, sampleNu, omega, sigma, npop,
-            hclimbResult.getLikelihood ()
+        ParameterSet estimate = new ParameterSet (
+            npop, omega, sigma, hclimbResult.getLikelihood ()
         );
-        // Run the demarcation program.
-        execs.runDemarcation (inputFile, outputFile);
-        // Get the output provided by the demarcation program.
-        // [0] npop=1
-        // [1] most likely npop
-        NpopValue[] results = readOutputFile (outputFile);
-        return results[1];
-    }
-
-    /**
-     *  Private method to write the input file for the demarcation program.
-     *
-     *  @param inputFile The file to write to.
-     *  @param binning The binning results.
-     *  @param sampleNu The number of environmental sequences.
-     *  @param omega The omega estimate.
-     *  @param sigma The sigma estimate.
-     *  @param npop The npop estimate.
-     *  @param likelihood The likelihood of the omega, sigma, npop estimates.
-     */
-    private void writeInputFile (File inputFile, Binning binning,
-        Integer sampleNu, Double omega, Double sigma, Long npop,
-        Double likelihood) {
-        ArrayList<BinLevel> bins = binning.getBins ();
-        BufferedWriter writer = null;
-        try {
-            writer = new BufferedWriter (new FileWriter (inputFile));
-            writer.write (String.format (
-                Locale.US,
-                "%-20d numcrit\n",
-                bins.size ()
-            ));
-            // Output the crit levels and the number of bins.
-            for (int j = 0; j < bins.size (); j ++) {
-                writer.write (String.format (
-                    Locale.US,
-                    "%-20.6f %-20d\n",
-                    bins.get (j).getCrit (),
-                    bins.get (j).getLevel ()
-                ));
-            }
-            // Write the omega value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f omega\n",
-                omega
-            ));
-            // Write the sigma value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f sigma\n",
-                sigma
-            ));
-            // Write the npop value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d npop\n",
-                npop
-            ));
-            // Write the step value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d step\n",
-                step
-            ));
-            // Write the nu value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d nu\n",
-                sampleNu
-            ));
-            // Write the nrep value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d nrep\n",
-                nrep
-            ));
-            // Create the random number seed; an odd integer less than nine
-            // digits long.
-            long iii = (long)(100000000 * Math.random ());
-            if (iii % 2 == 0) {
-                iii ++;
-            }
-            // Write the random number seed.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d iii (random number seed)\n",
-                iii
-            ));
-            // Write the length of the sequences.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d lengthseq (after deleting gaps, etc.)\n",
-                length
-            ));
-            // Write the whichavg value.
-            int whichavg = mainVariables.getCriterion ();
-            writer.write (String.format (
-                Locale.US,
-                "%-20d whichavg\n",
-                whichavg
-            ));
+        // Check the cache for an identical sample that was already tested,
+        // avoiding the binning of the sample if the tree has been seen.
+        String alias = DemarcationCache.getKey (
+            newick, length, nrep, mainVariables.getCriterion (), estimate, step
+        );
+        ParameterSet cached = cache.getByAlias (alias);
+        if (cached != null) {
+            return new NpopValue (cached.getNpop (), cached.getLikelihood ());
         }
-        catch (IOException e) {
-            System.out.println ("Error writing the input file.");
+        // Increment the iteration variable used in the file names.
+        int sampleNumber = nextIteration ();
+        File inputFile = new File (
+            workingDirectory + "demarcationIn-" + sampleNumber + ".dat"
+        );
+        File outputFile = new File (
+            workingDirectory + "demarcationOut-" + sampleNumber + ".dat"
+        );
+        File newickFile = new File (
+            workingDirectory + "demarcationTree-" + sampleNumber + ".dat"
+        );
+        // Copy the subtree containing just the sequences to be tested.
+        CompactTree sampleTree = new CompactTree (tree, node);
+        if (mainVariables.getDebug ()) {
+            new Tree (newick).toNewick (newickFile);
         }
-        finally {
-            if (writer != null) {
-                try {
-                    writer.close ();
-                }
-                catch (IOException e) {
-                    System.out.println ("Error closing the input file.");
-                }
+        // Run the binning program on the sample tree.
+        Binning sampleBinning = new Binning (sampleTree);
+        sampleBinning.run ();
+        SimulationInput input = new SimulationInput (
+            sampleBinning, sampleNu, length, nrep,
+            mainVariables.getCriterion ()
+        );
+        // Check the cache for a sample with an identical bin profile.
+        String key = DemarcationCache.getKey (input, estimate, step);
+        cache.putAlias (alias, key);
+        cached = cache.get (key);
+        if (cached != null) {
+            return new NpopValue (cached.getNpop (), cached.getLikelihood ());
+        }
+        NpopValue result;
+        if (engine != null) {
+            // Run the demarcation program inside of the JVM.
+            ParameterSet[] results = engine.demarcation (
+                input, estimate, step
+            );
+            result = new NpopValue (
+                results[1].getNpop (), results[1].getLikelihood ()
+            );
+        }
+        else {
+            // Run the demarcation program with the share of the threads
+            // given to this sample.
+            SimulationCodec request = new SimulationCodec (
+                SimulationCodec.PROGRAM_DEMARCATION, input, estimate
+            );
+            request.setStep (step);
+            ParameterSet[] results = execs.runProgram (
+                request, inputFile, outputFile, numberThreads
+            );
+            // Get the output provided by the demarcation program.
+            // [0] npop=1
+            // [1] most likely npop
+            if (results == null) {
+                // Don't cache the empty result of a failed run.
+                return new NpopValue (0L, 0.0d);
             }
+            result = new NpopValue (
+                results[1].getNpop (), results[1].getLikelihood ()
+            );
         }
+        cache.put (key, new ParameterSet (
+            result.npop, omega, sigma, result.likelihood
+        ));
+        return result;
     }
 
     /**
-     *  Private method to read the output file from the demarcation program.
+     *  Increment the iteration used in the file names.
      *
-     *  @param outputFile The file to read from.
-     *  @return The npop values tested and their likelihood.
+     *  @return The new iteration.
      */
-    private NpopValue[] readOutputFile (File outputFile) {
-        BufferedReader reader = null;
-        NumberFormat format = NumberFormat.getInstance (Locale.US);
-        NpopValue result[] = {
-            new NpopValue (0L, 0.0d),
-            new NpopValue (0L, 0.0d)
-        };
-        try {
-            reader = new BufferedReader (new FileReader (outputFile));
-            String nextLine = reader.readLine ();
-            Integer i = 0;
-            // Each line of the output contains the tested npop value and
-            // its likelihood.
-            while (nextLine != null) {
-                StringTokenizer st = new StringTokenizer (nextLine);
-                st.nextToken (); // "npop".
-                result[i].npop = format.parse (st.nextToken ()).longValue ();
-                st.nextToken (); // "likelihood".
-                result[i].likelihood = format.parse (st.nextToken ()).doubleValue ();
-                nextLine = reader.readLine ();
-                i ++;
-            }
-        }
-        catch (IOException e) {
-            System.out.println ("Error reading the output file.");
-        }
-        catch (ParseException e) {
-            System.out.println ("Error parsing a number.");
-        }
-        finally {
-            if (reader != null) {
-                try {
-                    reader.close ();
-                }
-                catch (IOException e) {
-                    System.out.println ("Error closing the output file.");
-                }
-            }
-        }
-        return result;
+    private synchronized int nextIteration () {
+        iteration ++;
+        return iteration;
     }
 
     /**
@@ -566,5 +602,6 @@ public class Demarcation extends Tree {
     private Integer step = 1;
 
     private int iteration;
+    private DemarcationCache cache;
 
 }
@@ -0,0 +1,329 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  A content-addressed cache of the results of the demarcation program.
+ *  Results are keyed by a digest of everything that the demarcation
+ *  program reads: the bin profile of the sample, the number and length of
+ *  the sequences, the number of replicates, the precision, and the omega,
+ *  sigma, and npop values being tested.  Subtrees with identical bin
+ *  profiles therefore share a result.
+ *
+ *  The most recently used results are kept in memory.  When a spill file
+ *  is provided, results evicted from memory are appended to that file and
+ *  read back when requested again.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class DemarcationCache {
+
+    /**
+     *  The default number of results to keep in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     *  Create a memory-only cache with the default capacity.
+     */
+    public DemarcationCache () {
+        this (DEFAULT_CAPACITY, null);
+    }
+
+    /**
+     *  Create a cache.
+     *
+     *  @param capacity The number of results to keep in memory.
+     *  @param spillFile The file to store results evicted from memory, or
+     *  null to discard them.
+     */
+    public DemarcationCache (int capacity, File spillFile) {
+        this.capacity = Math.max (1, capacity);
+        this.spillFile = spillFile;
+        spillIndex = new HashMap<String, Long> ();
+        results = new LinkedHashMap<String, ParameterSet> (16, 0.75f, true) {
+            protected boolean removeEldestEntry (
+                Map.Entry<String, ParameterSet> eldest) {
+                if (size () <= DemarcationCache.this.capacity) {
+                    return false;
+                }
+                spill (eldest.getKey (), eldest.getValue ());
+                return true;
+            }
+        };
+        aliases = new LinkedHashMap<String, String> (16, 0.75f, true) {
+            protected boolean removeEldestEntry (
+                Map.Entry<String, String> eldest) {
+                return size () > DemarcationCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     *  Get the key of a demarcation test from the bin profile of the
+     *  sample.
+     *
+     *  @param input The input values of the sample.
+     *  @param estimate The parameter values being tested.
+     *  @param step The step size used for npop.
+     *  @return The key.
+     */
+    public static String getKey (SimulationInput input,
+        ParameterSet estimate, int step) {
+        StringBuilder key = new StringBuilder ();
+        float[] crit = input.getCrit ();
+        int[] realdata = input.getRealdata ();
+        key.append (input.getNumcrit ());
+        for (int i = 0; i < input.getNumcrit (); i ++) {
+            key.append (' ');
+            key.append (Float.floatToIntBits (crit[i]));
+            key.append (':');
+            key.append (realdata[i]);
+        }
+        key.append (String.format (
+            " %d %d %d %d %d %d ", input.getNu (), input.getLength (),
+            input.getNrep (), input.getWhichavg (), estimate.getNpop (), step
+        ));
+        key.append (Double.doubleToLongBits (estimate.getOmega ()));
+        key.append (' ');
+        key.append (Double.doubleToLongBits (estimate.getSigma ()));
+        return digest (key.toString ());
+    }
+
+    /**
+     *  Get the key of a demarcation test from the Newick formatted tree of
+     *  the sample, for use as an alias that avoids recalculating the bin
+     *  profile.
+     *
+     *  @param newick The Newick formatted tree of the sample.
+     *  @param length The length of the sequences.
+     *  @param nrep The number of replicates.
+     *  @param whichavg The precision used for the likelihood.
+     *  @param estimate The parameter values being tested.
+     *  @param step The step size used for npop.
+     *  @return The key.
+     */
+    public static String getKey (String newick, int length, int nrep,
+        int whichavg, ParameterSet estimate, int step) {
+        return digest (String.format (
+            "%s %d %d %d %d %d %d %d", newick, length, nrep, whichavg,
+            estimate.getNpop (), step,
+            Double.doubleToLongBits (estimate.getOmega ()),
+            Double.doubleToLongBits (estimate.getSigma ())
+        ));
+    }
+
+    /**
+     *  Get the result of a demarcation test.
+     *
+     *  @param key The key of the test.
+     *  @return The result, or null if the test has not been run.
+     */
+    public synchronized ParameterSet get (String key) {
+        ParameterSet result = find (key);
+        if (result == null) {
+            misses ++;
+        }
+        else {
+            hits ++;
+        }
+        return result;
+    }
+
+    /**
+     *  Store the result of a demarcation test.
+     *
+     *  @param key The key of the test.
+     *  @param result The result.
+     */
+    public synchronized void put (String key, ParameterSet result) {
+        results.put (key, result);
+    }
+
+    /**
+     *  Get the result of a demarcation test from an alias of its key.  A
+     *  result that is not found is not counted as a miss, as the request
+     *  is expected to be retried with the key itself.
+     *
+     *  @param alias The alias.
+     *  @return The result, or null if the alias is unknown or the result
+     *  is no longer cached.
+     */
+    public synchronized ParameterSet getByAlias (String alias) {
+        String key = aliases.get (alias);
+        if (key == null) return null;
+        ParameterSet result = find (key);
+        if (result != null) {
+            hits ++;
+        }
+        return result;
+    }
+
+    /**
+     *  Store an alias for a key.
+     *
+     *  @param alias The alias.
+     *  @param key The key.
+     */
+    public synchronized void putAlias (String alias, String key) {
+        aliases.put (alias, key);
+    }
+
+    /**
+     *  Get the number of requests that were answered by the cache.
+     *
+     *  @return The number of hits.
+     */
+    public synchronized long getHits () {
+        return hits;
+    }
+
+    /**
+     *  Get the number of requests that were not answered by the cache.
+     *
+     *  @return The number of misses.
+     */
+    public synchronized long getMisses () {
+        return misses;
+    }
+
+    /**
+     *  Returns a String representation of the hit and miss counters.
+     *
+     *  @return The String representation.
+     */
+    public synchronized String toString () {
+        return String.format (
+            "%d hits, %d misses, %d in memory, %d spilled",
+            hits, misses, results.size (), spillIndex.size ()
+        );
+    }
+
+    /**
+     *  Calculate the SHA-256 digest of a String.
+     *
+     *  @param value The String.
+     *  @return The digest in hexadecimal.
+     */
+    private static String digest (String value) {
+        byte[] bytes;
+        try {
+            MessageDigest md = MessageDigest.getInstance ("SHA-256");
+            bytes = md.digest (value.getBytes (StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256, but fall
+            // back on the value itself just in case.
+            return value;
+        }
+        StringBuilder hex = new StringBuilder ();
+        for (int i = 0; i < bytes.length; i ++) {
+            hex.append (String.format ("%02x", bytes[i]));
+        }
+        return hex.toString ();
+    }
+
+    /**
+     *  Find the result of a demarcation test in memory or in the spill
+     *  file, without counting the request.
+     *
+     *  @param key The key of the test.
+     *  @return The result, or null if the test is not cached.
+     */
+    private ParameterSet find (String key) {
+        ParameterSet result = results.get (key);
+        if (result == null && spillIndex.containsKey (key)) {
+            result = unspill (key, spillIndex.get (key));
+            if (result != null) {
+                results.put (key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     *  Append a result evicted from memory to the spill file.
+     *
+     *  @param key The key of the result.
+     *  @param result The result.
+     */
+    private void spill (String key, ParameterSet result) {
+        if (spillFile == null || spillIndex.containsKey (key)) return;
+        try (RandomAccessFile raf = new RandomAccessFile (spillFile, "rw")) {
+            long offset = raf.length ();
+            raf.seek (offset);
+            raf.writeUTF (key);
+            raf.writeLong (result.getNpop ());
+            raf.writeDouble (result.getOmega ());
+            raf.writeDouble (result.getSigma ());
+            raf.writeDouble (result.getLikelihood ());
+            spillIndex.put (key, offset);
+        }
+        catch (IOException e) {
+            System.out.println ("Error writing the demarcation cache.");
+        }
+    }
+
+    /**
+     *  Read a result from the spill file.
+     *
+     *  @param key The key of the result.
+     *  @param offset The offset of the result in the spill file.
+     *  @return The result, or null if it could not be read.
+     */
+    private ParameterSet unspill (String key, long offset) {
+        try (RandomAccessFile raf = new RandomAccessFile (spillFile, "r")) {
+            raf.seek (offset);
+            if (! key.equals (raf.readUTF ())) return null;
+            Long npop = raf.readLong ();
+            Double omega = raf.readDouble ();
+            Double sigma = raf.readDouble ();
+            Double likelihood = raf.readDouble ();
+            return new ParameterSet (npop, omega, sigma, likelihood);
+        }
+        catch (IOException e) {
+            System.out.println ("Error reading the demarcation cache.");
+            return null;
+        }
+    }
+
+    private int capacity;
+    private File spillFile;
+    private LinkedHashMap<String, ParameterSet> results;
+    private LinkedHashMap<String, String> aliases;
+    private HashMap<String, Long> spillIndex;
+    private long hits;
+    private long misses;
+
+}
@@ -25,6 +25,7 @@ package ecosim;
 import ecosim.gui.MainWindow;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Observable;
 import java.util.Observer;
 import javax.swing.SwingUtilities;
@@ -56,19 +57,24 @@ import javax.swing.SwingUtilities;
  * The newick formated tree file must include the same leaf node names and
  * number as the sequences in the fasta file.
  *
- * Output is saved in XML format.
+ * Output is saved in XML format, or in the binary project format if the
+ * name of the output file ends with .ecosim.
  *
  * Options:
  *
- *     -i, --input=[file]     : A XML formated save file for input.
- *     -o, --output=[file]    : A XML formated save for for output.
+ *     -i, --input=[file]     : A XML or binary save file for input.
+ *     -o, --output=[file]    : A XML or binary (.ecosim) save file for
+ *                              output.
  *     -s, --sequences=[file] : A Fasta formated file for input.
  *     -p, --phylogeny=[file] : A Newick formatted file for input.
  *     -O, --omega=[float]    : Initial value for Omega. Requires Sigma and Npop.
  *     -S, --sigma=[float]    : Initial value for Sigma. Requires Omega and Npop.
  *     -N, --npop=[int]       : Inital value for Npop. Requires Sigma and Omega.
  *     -d, --debug            : Display debugging output.
+ *     -e, --engine=[name]    : The simulation engine to use, native
+ *                              (default) or java.
  *     -h, --help             : Display helpful information.
+ *     -l, --log=[file]       : Write the full log to a file.
  *     -n, --nogui            : Hide the default GUI.  Implies --runall.
  *     -r, --runall           : Run everything, including demarcation.
  *     -t, --threads=[n]      : Set the number of threads (n) to start,
@@ -95,23 +101,33 @@ import javax.swing.SwingUtilities;
  * @li @b Binning - Object to run the binning algorithm.
  * @li @b Demarcation - Demarcates ecotypes based on the hillclimbing values
  *        and the phylogeny of the sequences using the ::demarcation program.
+ * @li @b DemarcationCache - A cache of the results of demarcation.
  * @li @b Execs - Holds the executable methods for the various programs.
  * @li @b Fasta - Handles the input and output of fasta formatted text files.
+ * @li @b FredMethod - The simulation used to calculate likelihoods.
  * @li @b Heapsorter - Runs the heapsort on a given set of data.
  * @li @b Hillclimb - Object to interact with the ::hillclimb program.
  * @li @b InvalidFastaException - Report a malformed Fasta file.
+ * @li @b JavaSimulationEngine - Runs the simulation programs in the JVM.
+ * @li @b LikelihoodCache - A cache of the likelihoods of a simulation.
  * @li @b Logger - Display text to the user.
  * @li @b MainVariables - Common variables used through the program.
+ * @li @b NativeWorker - A long-lived Fortran program in worker mode.
+ * @li @b NelderMead - The Nelder-Mead Simplex Method.
  * @li @b NpopConfidenceInterval - Run the ::npopci program.
  * @li @b OmegaConfidenceInterval - Run the ::omegaci program.
  * @li @b ParameterEstimate - An object to estimate the parameter values.
  * @li @b ParameterSet - An object to store the parameter values.
- * @li @b ProjectFileIO - Perform IO operations for the XML project file.
+ * @li @b ProjectFileIO - Perform IO operations for the project file.
+ * @li @b SequentialTest - Stops replicates once a likelihood is settled.
  * @li @b SigmaConfidenceInterval - Run the ::sigmaci program.
  * @li @b Simulation - The shared methods of the simulation.
+ * @li @b SimulationCodec - Encodes the requests to the Fortran programs.
+ * @li @b SimulationInput - Stores the values shared by each simulation.
  * @li @b StreamGobbler - Captures output from the Fortran programs.
  * @li @b Summary - An object to hold summary data.
  * @li @b api.Painter - Defines a custom method to paint on a surface.
+ * @li @b api.SimulationEngine - Defines the methods of a simulation engine.
  * @li @b gui.ButtonPane - Defines the main button panel for the GUI.
  * @li @b gui.FileChooser - Defines a custom file chooser for the GUI.
  * @li @b gui.HelpAboutWindow - Displays a Help/About GUI window.
@@ -121,6 +137,9 @@ import javax.swing.SwingUtilities;
  * @li @b gui.OptionsPane - Defines a custom panel to display the options.
  * @li @b gui.SummaryPane - Defines a custom panel to display the summary.
  * @li @b gui.TiledPainter - Defines a custom tile-based painter for the GUI.
+ * @li @b gui.TreePane - Defines a panel that paints a tree in the background.
+ * @li @b gui.ViewportPainter - Paints only the visible part of a tree.
+ * @li @b tree.CompactTree - An array-backed tree for large phylogenies.
  * @li @b tree.InvalidTreeException - Report a malformed tree.
  * @li @b tree.NewickReader - Read a Newick formatted tree.
  * @li @b tree.NewickWriter - Write the tree in Newick format.
@@ -274,6 +293,27 @@ public class EcotypeSimulation implements Runnable {
                 case "--debug":
                     mainVariables.setDebug (true);
                     break;
+                case "-e":
+                case "--engine":
+                    switch (value) {
+                        case "java":
+                            mainVariables.setEngine (
+                                MainVariables.ENGINE_JAVA
+                            );
+                            break;
+                        case "native":
+                            mainVariables.setEngine (
+                                MainVariables.ENGINE_NATIVE
+                            );
+                            break;
+                        default:
+                            System.out.println (String.format (
+                                "Syntax error: Unknown engine %s.\n%s",
+                                value, usage
+                            ));
+                            System.exit (1);
+                    }
+                    break;
                 case "-h":
                 case "--help":
                     System.out.println (usage);
@@ -285,6 +325,21 @@ public class EcotypeSimulation implements Runnable {
                         inputFile = new File (value);
                     }
                     break;
+                case "-l":
+                case "--log":
+                    if (value.length () > 0) {
+                        try {
+                            log.setFile (new File (value));
+                        }
+                        catch (IOException e) {
+                            System.out.println (String.format (
+                                "Error, unable to write the log file %s.",
+                                value
+                            ));
+                            System.exit (1);
+                        }
+                    }
+                    break;
                 case "-n":
                 case "--nogui":
                     noGUI = true;
@@ -463,11 +518,13 @@ public class EcotypeSimulation implements Runnable {
         "  The Newick formated tree file must include the same leaf node\n" +
         "  names and number as the sequences in the Fasta file.\n" +
         "\n" +
-        "  Output is saved in XML format.\n" +
+        "  Output is saved in XML format, or in the binary project format\n" +
+        "  if the name of the output file ends with .ecosim.\n" +
         "\n" +
         "  Options:\n" +
-        "    -i, --input=[file]     : A XML formated save file for input.\n" +
-        "    -o, --output=[file]    : A XML formated save for for output.\n" +
+        "    -i, --input=[file]     : A XML or binary save file for input.\n" +
+        "    -o, --output=[file]    : A XML or binary (.ecosim) save file" +
+                                    " for output.\n" +
         "    -s, --sequences=[file] : A Fasta formated file for input.\n" +
         "    -p, --phylogeny=[file] : A Newick formatted file for input.\n" +
         "    -O, --omega=[float]    : Initial value for Omega.  Requires" +
@@ -477,7 +534,10 @@ public class EcotypeSimulation implements Runnable {
         "    -N, --npop=[int]       : Inital value for Npop.  Requires" +
                                     " Omega and Sigma.\n" +
         "    -d, --debug            : Display debugging output.\n" +
+        "    -e, --engine=[name]    : The simulation engine to use, native" +
+                                    " (default) or java.\n" +
         "    -h, --help             : Display helpful information.\n" +
+        "    -l, --log=[file]       : Write the full log to a file.\n" +
         "    -n, --nogui            : Hide the default GUI.  Implies" +
                                     " --runall.\n" +
         "    -r, --runall           : Run everything, including" +
@@ -24,6 +24,7 @@
 package ecosim;
 
 import ecosim.api.OperatingSystem;
+import ecosim.api.SimulationEngine;
 import ecosim.os.Windows;
 import ecosim.os.Linux;
 import ecosim.os.Mac;
@@ -34,6 +35,13 @@ import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  *  Holds the executable methods for Ecotype Simulation.
@@ -77,114 +85,57 @@ public class Execs {
     }
 
     /**
-     *  Runs the hillclimb program.
+     *  Get the simulation engine that runs inside of the JVM.
      *
-     *  @param input The hillclimb input file.
-     *  @param output The hillclimb output file.
-     *  @return The exit value.
+     *  @return The simulation engine, or null if the native Fortran
+     *  programs should be used instead.
      */
-    public int runHillclimb (File input, File output) {
-        String[] command = {
-            binaryDirectory + "hillclimb" + os.getBinaryExtension (),
-            input.getAbsolutePath (),
-            output.getAbsolutePath (),
-            Integer.toString (mainVariables.getNumberThreads ()),
-            Boolean.toString (mainVariables.getDebug ())
-        };
-        PrintStream errorStream = null;
-        PrintStream outputStream = null;
-        // Catch program output if debugging is enabled.
-        if (mainVariables.getDebug ()) {
-            errorStream = System.err;
-            outputStream = System.out;
+    public synchronized SimulationEngine getSimulationEngine () {
+        if (mainVariables.getEngine () != MainVariables.ENGINE_JAVA) {
+            return null;
         }
-        return runApplication (
-            command,
-            errorStream,
-            "ERROR (Hill Climb)>",
-            outputStream,
-            "Hill Climb>",
-            true
-        );
-    }
-
-    /**
-     *  Runs the Npop Confidence Interval application.
-     *
-     *  @param input The npopCI input file.
-     *  @param output The npopCI output file.
-     *  @return The exit value.
-     */
-    public int runNpopCI (File input, File output) {
-        String[] command = {
-            binaryDirectory + "npopCI" + os.getBinaryExtension (),
-            input.getAbsolutePath (),
-            output.getAbsolutePath (),
-            Integer.toString (mainVariables.getNumberThreads ()),
-            Boolean.toString (mainVariables.getDebug ())
-        };
-        PrintStream errorStream = null;
-        PrintStream outputStream = null;
-        // Catch program output if debugging is enabled.
-        if (mainVariables.getDebug ()) {
-            errorStream = System.err;
-            outputStream = System.out;
+        if (engine == null) {
+            engine = new JavaSimulationEngine (mainVariables);
         }
-        return runApplication (
-            command,
-            errorStream,
-            "ERROR (Npop CI)>",
-            outputStream,
-            "Npop CI>",
-            true
-        );
+        return engine;
     }
 
     /**
-     *  Runs the Demarcation application.
+     *  Runs one of the simulation programs.
      *
-     *  @param input The demarcation input file.
-     *  @param output The demarcation output file.
-     *  @return The exit value.
+     *  @param request The request for the program.
+     *  @param input The input file.
+     *  @param output The output file.
+     *  @return The records of the response, or null if the program failed.
      */
-    public int runDemarcation (File input, File output) {
-        String[] command = {
-            binaryDirectory + "demarcation" + os.getBinaryExtension (),
-            input.getAbsolutePath (),
-            output.getAbsolutePath (),
-            Integer.toString (mainVariables.getNumberThreads ()),
-            Boolean.toString (mainVariables.getDebug ())
-        };
-        PrintStream errorStream = null;
-        PrintStream outputStream = null;
-        // Catch program output if debugging is enabled.
-        if (mainVariables.getDebug ()) {
-            errorStream = System.err;
-            outputStream = System.out;
-        }
-        return runApplication (
-            command,
-            errorStream,
-            "ERROR (Demarcation)>",
-            outputStream,
-            "Demarcation>",
-            true
+    public ParameterSet[] runProgram (SimulationCodec request, File input,
+        File output) {
+        return runProgram (
+            request, input, output, mainVariables.getNumberThreads ()
         );
     }
 
     /**
-     *  Runs the Omega Confidence Interval application.
+     *  Runs one of the simulation programs using the provided number of
+     *  threads.  The request is sent to a worker if possible, in the binary
+     *  format, or the text format if debugging is enabled.  Otherwise it is
+     *  written to the input file in the same format and the program is run.
      *
-     *  @param input The omegaCI input file.
-     *  @param output The omegaCI output file.
-     *  @return The exit value.
+     *  @param request The request for the program.
+     *  @param input The input file.
+     *  @param output The output file.
+     *  @param numberThreads The number of threads to use.
+     *  @return The records of the response, or null if the program failed.
      */
-    public int runOmegaCI (File input, File output) {
+    public ParameterSet[] runProgram (SimulationCodec request, File input,
+        File output, int numberThreads) {
+        String title = request.getProgramTitle ();
         String[] command = {
-            binaryDirectory + "omegaCI" + os.getBinaryExtension (),
+            binaryDirectory + request.getProgramName () +
+                os.getBinaryExtension (),
             input.getAbsolutePath (),
             output.getAbsolutePath (),
-            Integer.toString (mainVariables.getNumberThreads ()),
+            Integer.toString (numberThreads),
             Boolean.toString (mainVariables.getDebug ())
         };
         PrintStream errorStream = null;
@@ -194,46 +145,42 @@ public class Execs {
             errorStream = System.err;
             outputStream = System.out;
         }
-        return runApplication (
-            command,
-            errorStream,
-            "ERROR (Omega CI)>",
-            outputStream,
-            "Omega CI>",
-            true
-        );
-    }
-
-    /**
-     *  Runs the Sigma Confidence Interval application.
-     *
-     *  @param input The sigmaCI input file.
-     *  @param output The sigmaCI output file.
-     *  @return The exit value.
-     */
-    public int runSigmaCI (File input, File output) {
-        String[] command = {
-            binaryDirectory + "sigmaCI" + os.getBinaryExtension (),
-            input.getAbsolutePath (),
-            output.getAbsolutePath (),
-            Integer.toString (mainVariables.getNumberThreads ()),
-            Boolean.toString (mainVariables.getDebug ())
-        };
-        PrintStream errorStream = null;
-        PrintStream outputStream = null;
-        // Catch program output if debugging is enabled.
-        if (mainVariables.getDebug ()) {
-            errorStream = System.err;
-            outputStream = System.out;
+        try {
+            // Keep a copy of the request in the text format if debugging.
+            if (mainVariables.getDebug ()) {
+                request.writeRequest (input, true);
+            }
+            // Send the request to a worker if possible.
+            ParameterSet[] response = runWorker (
+                command, request,
+                errorStream,
+                "ERROR (" + title + ")>",
+                outputStream,
+                title + ">"
+            );
+            if (response != null) {
+                return response;
+            }
+            if (! mainVariables.getDebug ()) {
+                request.writeRequest (input, false);
+            }
+            runApplication (
+                command,
+                errorStream,
+                "ERROR (" + title + ")>",
+                outputStream,
+                title + ">",
+                true
+            );
+            return request.readResponse (output);
+        }
+        catch (IOException e) {
+            System.out.println (
+                "Error running the " + request.getProgramName () +
+                " program."
+            );
+            return null;
         }
-        return runApplication (
-            command,
-            errorStream,
-            "ERROR (Sigma CI)>",
-            outputStream,
-            "Sigma CI>",
-            true
-        );
     }
 
     /**
@@ -273,6 +220,186 @@ public class Execs {
         );
     }
 
+    /**
+     *  Get the executor used to run samples concurrently, such as the
+     *  subclades tested in demarcation.  The executor is shared between
+     *  runs, and is replaced if a different number of threads is needed.
+     *
+     *  @param numberThreads The number of threads to run samples on.
+     *  @return The executor.
+     */
+    public synchronized ExecutorService getExecutor (int numberThreads) {
+        if (executor == null || executorThreads != numberThreads) {
+            if (executor != null) executor.shutdown ();
+            executor = Executors.newFixedThreadPool (
+                numberThreads, new ThreadFactory () {
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread (runnable, "Sample");
+                        thread.setDaemon (true);
+                        return thread;
+                    }
+                }
+            );
+            executorThreads = numberThreads;
+        }
+        return executor;
+    }
+
+    /**
+     *  Stop the executor, the simulation engine and all of the workers.
+     */
+    public synchronized void exit () {
+        if (engine != null) {
+            engine.shutdown ();
+            engine = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow ();
+            executor = null;
+        }
+        for (NativeWorker worker: workers.keySet ()) {
+            worker.close ();
+        }
+        workers.clear ();
+    }
+
+    /**
+     *  Sends a request to a worker started from the provided command.
+     *  Workers are kept in a pool between requests, avoiding the cost of
+     *  starting the program and initializing the random number generator
+     *  for each request.  Requests and responses are exchanged over the
+     *  pipes of the worker in the binary format, or in the text format if
+     *  debugging is enabled.  The binary format needs the standard streams
+     *  to be available as files, so without debugging the application is
+     *  run instead on systems that lack them.
+     *
+     *  @param command A String array containing the path and filename of the
+     *  application, the input and output files, and any other arguments.
+     *  @param request The request.
+     *  @param errorStream The IO Stream to print error messages to.
+     *  @param errorMessage The title for error messages.
+     *  @param outputStream The IO Stream to print standard messages to.
+     *  @param outputMessage The title for the output messages.
+     *  @return The records of the response, or null if the application
+     *  should be run instead.
+     */
+    private ParameterSet[] runWorker (
+        String[] command, SimulationCodec request, PrintStream errorStream,
+        String errorMessage, PrintStream outputStream, String outputMessage
+    ) {
+        boolean binary = ! mainVariables.getDebug ();
+        if (os == null || (binary && ! os.hasStandardStreamFiles ())) {
+            return null;
+        }
+        // The worker reads requests from standard input and writes
+        // responses to standard output in place of the files.
+        String workerFile = binary ? BINARY_WORKER_FILE : TEXT_WORKER_FILE;
+        String[] workerCommand = command.clone ();
+        workerCommand[1] = workerFile;
+        workerCommand[2] = workerFile;
+        String key = String.join (" ", workerCommand);
+        NativeWorker worker = borrowWorker (
+            key, workerCommand, errorStream, errorMessage, outputStream,
+            outputMessage, binary
+        );
+        if (worker == null) return null;
+        ParameterSet[] response;
+        try {
+            if (binary) {
+                response = worker.request (request);
+            }
+            else {
+                response = request.decodeText (
+                    worker.request (request.encodeText ())
+                );
+            }
+        }
+        catch (IOException e) {
+            worker.close ();
+            // Older versions of the program don't support the worker mode,
+            // run the application instead from now on.
+            if (worker.getRequests () == 0) {
+                synchronized (this) {
+                    unsupported.add (key);
+                }
+            }
+            return null;
+        }
+        returnWorker (key, worker);
+        return response;
+    }
+
+    /**
+     *  Take an idle worker from the pool, starting a new worker if there
+     *  are none.
+     *
+     *  @param key The key of the workers in the pool.
+     *  @param command A String array containing the path and filename of the
+     *  application, and any arguments.
+     *  @param errorStream The IO Stream to print error messages to.
+     *  @param errorMessage The title for error messages.
+     *  @param outputStream The IO Stream to print standard messages to.
+     *  @param outputMessage The title for the output messages.
+     *  @param binary True to exchange binary requests and responses, false
+     *  to exchange text.
+     *  @return The worker, or null if a worker could not be started.
+     */
+    private synchronized NativeWorker borrowWorker (
+        String key, String[] command, PrintStream errorStream,
+        String errorMessage, PrintStream outputStream, String outputMessage,
+        boolean binary
+    ) {
+        if (os == null || unsupported.contains (key)) return null;
+        // Take the most recently used of the idle workers with this key.
+        NativeWorker idle = null;
+        for (Map.Entry<NativeWorker, String> entry: workers.entrySet ()) {
+            if (entry.getValue ().equals (key)) idle = entry.getKey ();
+        }
+        if (idle != null) {
+            workers.remove (idle);
+            return idle;
+        }
+        Path path = Paths.get (command[0]);
+        // Let runApplication report a missing or incompatible application.
+        if (! Files.isExecutable (path) || ! os.verifyExecutable (path)) {
+            return null;
+        }
+        // Display debugging output if needed.
+        if (mainVariables.getDebug ()) {
+            System.out.println ("Worker: " + key);
+        }
+        try {
+            return new NativeWorker (
+                command, errorStream, errorMessage, outputStream,
+                outputMessage, binary
+            );
+        }
+        catch (IOException e) {
+            unsupported.add (key);
+            return null;
+        }
+    }
+
+    /**
+     *  Return a worker to the pool.  The pool holds at most one idle worker
+     *  per thread across all keys, and the least recently used workers are
+     *  stopped when it is full.  The key includes the arguments of the
+     *  program, such as the number of threads, so the cap is not per key.
+     *
+     *  @param key The key of the workers in the pool.
+     *  @param worker The worker.
+     */
+    private synchronized void returnWorker (String key, NativeWorker worker) {
+        workers.put (worker, key);
+        int capacity = Math.max (1, mainVariables.getNumberThreads ());
+        Iterator<NativeWorker> idle = workers.keySet ().iterator ();
+        while (workers.size () > capacity) {
+            NativeWorker eldest = idle.next ();
+            idle.remove ();
+            eldest.close ();
+        }
+    }
+
     /**
      *  Runs the provided application with the provided args.
      *  If the wait boolean is set, waits for the application to finish.
@@ -364,9 +491,25 @@ public class Execs {
         return exitVal;
     }
 
+    /**
+     *  The file name that tells a program to run as a binary worker.
+     */
+    private static final String BINARY_WORKER_FILE = "=";
+
+    /**
+     *  The file name that tells a program to run as a text worker.
+     */
+    private static final String TEXT_WORKER_FILE = "-";
+
     private OperatingSystem os;
     private MainVariables mainVariables;
     private Logger log;
     private String binaryDirectory;
+    private SimulationEngine engine;
+    private ExecutorService executor;
+    private int executorThreads;
+    private LinkedHashMap<NativeWorker, String> workers =
+        new LinkedHashMap<NativeWorker, String> ();
+    private HashSet<String> unsupported = new HashSet<String> ();
 
 }
@@ -22,15 +22,42 @@
 
 package ecosim;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.RandomAccessFile;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.FileNotFoundException;
-import java.util.Hashtable;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
 
 /**
  *  Handles the input and output of fasta formatted text files.
  *
+ *  A plain file is opened read-only and memory-mapped, in chunks for files
+ *  larger than a single mapping allows.  A gzip compressed file is read
+ *  directly through a large buffer, and a BGZF compressed file, made of
+ *  independent gzip blocks, is read one block at a time so that it can be
+ *  accessed randomly as well.  The offset and length of every sequence is
+ *  indexed in one pass when the file is opened, or read from a samtools
+ *  style .fai index saved next to the file, so that any sequence can be
+ *  read by its identifier.
+ *
  *  @author Jason M. Wood
  *  @copyright GNU General Public License
  */
@@ -40,10 +67,10 @@ public class Fasta {
      *  Constructor for a Fasta object.
      */
     public Fasta () {
-        file = null;
         outgroup = null;
         size = 0L; // does not include outgroup.
-        offsets = new Hashtable<String, Long> ();
+        records = 0;
+        index = new HashMap<String, Integer> ();
     }
 
     /**
@@ -52,31 +79,25 @@ public class Fasta {
      *  @param fastaFile A File containing Fasta formatted data.
      */
     public Fasta (File fastaFile) throws InvalidFastaException {
+        this ();
+        this.fastaFile = fastaFile;
         try {
-            file = new RandomAccessFile (fastaFile, "rw");
-            // Load the first sequence as the outgroup.
-            outgroup = parseSequence ();
-            if (outgroup == null) {
-                throw new InvalidFastaException (
-                    "Fasta file contains no sequences"
-                );
+            if (! isCompressed (fastaFile)) {
+                source = new MappedSource (fastaFile);
             }
-            // Verify Fasta file and count sequences.
-            size = 0L; // does not include outgroup.
-            Sequence seq;
-            offsets = new Hashtable<String, Long> ();
-            long offset = file.getFilePointer ();
-            while ((seq = nextSequence ()) != null) {
-              String id = seq.getIdentifier ();
-              if (offsets.containsKey (id)) {
-                  throw new InvalidFastaException (
-                      "Fasta file contains duplicate sequence identifier: " +
-                      id
-                  );
-              }
-              offsets.put (id, Long.valueOf (offset));
-              size ++;
-              offset = file.getFilePointer ();
+            else if (BgzfSource.isBgzf (fastaFile)) {
+                source = new BgzfSource (fastaFile);
+            }
+            else {
+                source = new GzipSource (fastaFile);
+            }
+            // Use the saved index if it is up to date, otherwise index the
+            // file.
+            File indexFile = getIndexFile ();
+            if (source.length () < 0L || ! indexFile.exists () ||
+                indexFile.lastModified () < fastaFile.lastModified () ||
+                ! readIndex (indexFile)) {
+                buildIndex ();
             }
         }
         catch (FileNotFoundException e) {
@@ -85,16 +106,77 @@ public class Fasta {
         catch (IOException e) {
             throw new InvalidFastaException ("Fasta IO Error: " + e);
         }
+        // Load the first sequence as the outgroup.
+        if (records == 0) {
+            throw new InvalidFastaException (
+                "Fasta file contains no sequences"
+            );
+        }
+        outgroup = getSequence (0);
+        size = records - 1L; // does not include outgroup.
+        nextRecord = 1;
+    }
+
+    /**
+     *  Check if a file is gzip compressed.
+     *
+     *  @param file The file to check.
+     *  @return True if the file starts with the gzip magic number.
+     */
+    public static boolean isCompressed (File file) {
+        try {
+            InputStream in = new FileInputStream (file);
+            try {
+                return in.read () == 0x1f && in.read () == 0x8b;
+            }
+            finally {
+                in.close ();
+            }
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
 
+    /**
+     *  Uncompress a gzip compressed file, for programs that need a plain
+     *  file.
+     *
+     *  @param input The compressed file.
+     *  @param output The uncompressed file.
+     */
+    public static void uncompress (File input, File output)
+        throws InvalidFastaException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            InputStream in = new GZIPInputStream (
+                new FileInputStream (input), BUFFER_SIZE
+            );
+            OutputStream out = new FileOutputStream (output);
+            try {
+                int len;
+                while ((len = in.read (buffer)) != -1) {
+                    out.write (buffer, 0, len);
+                }
+            }
+            finally {
+                out.close ();
+                in.close ();
+            }
+        }
+        catch (IOException e) {
+            throw new InvalidFastaException ("Fasta IO Error: " + e);
+        }
     }
 
     /**
      *  Close this Fasta.
      */
     public void close () throws InvalidFastaException {
-        if (file == null) return;
+        if (source == null) return;
         try {
-            file.close ();
+            source.close ();
+            source = null;
         }
         catch (IOException e) {
             throw new InvalidFastaException ("Fasta IO error: " + e);
@@ -119,78 +201,734 @@ public class Fasta {
         return outgroup;
     }
 
+    /**
+     *  Get the number of sequences, not including the outgroup.
+     *
+     *  @return The number of sequences.
+     */
+    public long size () {
+        return size;
+    }
+
     /**
      *  Retrieves the next sequence from the Fasta formated file.
      *
      *  @return The next sequence in the buffer.
      */
     public Sequence nextSequence () throws InvalidFastaException {
-        if (file == null) return null;
-        // Parse the current sequence.
-        return parseSequence ();
+        if (source == null || nextRecord >= records) return null;
+        return getSequence (nextRecord ++);
     }
 
     /**
-     *  Private method to parse a Fasta formatted sequence.
+     *  Retrieves the sequence with the given identifier.  Random access
+     *  into a gzip compressed file that is not BGZF compressed has to read
+     *  the file from the start again.
      *
-     *  @return A Sequence object.
+     *  @param id The identifier of the sequence.
+     *  @return The sequence, or null if it is not in the file.
      */
-    private Sequence parseSequence () throws InvalidFastaException {
-        Sequence seq = null;
+    public Sequence getSequence (String id) throws InvalidFastaException {
+        Integer record = index.get (id);
+        if (source == null || record == null) return null;
+        return getSequence (record);
+    }
+
+    /**
+     *  Retrieves the residues of the sequence with the given identifier.
+     *  The returned buffer is a read-only view of the mapped file when the
+     *  file is not compressed and the sequence is on a single line, and a
+     *  copy otherwise.
+     *
+     *  @param id The identifier of the sequence.
+     *  @return The residues, or null if the sequence is not in the file.
+     */
+    public ByteBuffer getResidues (String id) throws InvalidFastaException {
+        Integer record = index.get (id);
+        if (source == null || record == null) return null;
+        long start = offsets[record];
+        int residues = lengths[record];
+        // Return a view of the file if the residues are contiguous.
+        if (residues > 0 && residues <= lineBases[record]) {
+            ByteBuffer view = source.view (start, residues);
+            if (view != null) return view;
+        }
+        return ByteBuffer.wrap (readResidues (record)).asReadOnlyBuffer ();
+    }
+
+    /**
+     *  Returns the identifiers of the sequences, including the outgroup, in
+     *  the order of the file.
+     *
+     *  @return The identifiers.
+     */
+    public ArrayList<String> getIdentifiers () {
+        return new ArrayList<String> (Arrays.asList (ids).subList (0, records));
+    }
+
+    /**
+     *  Save the index of this Fasta next to the file, as a samtools style
+     *  .fai index.  The index can only be saved if every sequence has lines
+     *  of the same length, except for its last line.  The offsets of a
+     *  compressed file are offsets into the uncompressed data.
+     *
+     *  @return True if the index was saved.
+     */
+    public boolean saveIndex () throws InvalidFastaException {
+        if (source == null) return false;
+        for (int i = 0; i < records; i ++) {
+            if (lineBases[i] == IRREGULAR) return false;
+        }
+        BufferedWriter out = null;
         try {
-            // Read the line at the current location into a buffer.
-            String buffer = "";
-            // Ignore empty lines at the start of the file.
-            while (buffer.length () == 0) {
-                // Don't try to read past the end of the file.
-                if (file.getFilePointer () == file.length ()) {
-                    return seq;
+            out = new BufferedWriter (new FileWriter (getIndexFile ()));
+            for (int i = 0; i < records; i ++) {
+                out.write (String.format (
+                    "%s\t%d\t%d\t%d\t%d\n",
+                    ids[i], lengths[i], offsets[i], lineBases[i],
+                    lineWidths[i]
+                ));
+            }
+        }
+        catch (IOException e) {
+            throw new InvalidFastaException ("Fasta IO Error: " + e);
+        }
+        finally {
+            try {
+                if (out != null) out.close ();
+            }
+            catch (IOException e) {
+                throw new InvalidFastaException ("Fasta IO Error: " + e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  Returns the index file that belongs next to the Fasta file.
+     *
+     *  @return The index file.
+     */
+    public File getIndexFile () {
+        return new File (fastaFile.getPath () + ".fai");
+    }
+
+    /**
+     *  Private method to index the Fasta file in a single pass.
+     */
+    private void buildIndex () throws IOException, InvalidFastaException {
+        long position = 0L;
+        int record = -1;
+        // The number of lines in the current sequence, and whether a line
+        // was shorter than the first.
+        int lines = 0;
+        boolean shortLine = false;
+        while (source.get (position) != EOF) {
+            long end = findLineEnd (position);
+            long next = end;
+            if (source.get (end) != EOF) next ++;
+            long contentEnd = end;
+            if (contentEnd > position && source.get (contentEnd - 1) == '\r') {
+                contentEnd --;
+            }
+            int content = (int)(contentEnd - position);
+            if (content > 0 && source.get (position) == '>') {
+                // Start a new sequence.
+                if (record >= 0) ends[record] = position;
+                record ++;
+                ensureCapacity (record + 1);
+                String id = parseHeader (position)[0];
+                if (index.containsKey (id)) {
+                    throw new InvalidFastaException (
+                        "Fasta file contains duplicate sequence " +
+                        "identifier: " + id
+                    );
                 }
-                // Read the line at the current location into a buffer.
-                buffer = file.readLine ();
+                index.put (id, record);
+                ids[record] = id;
+                headers[record] = position;
+                offsets[record] = next;
+                lengths[record] = 0;
+                lineBases[record] = 0;
+                lineWidths[record] = 0;
+                lines = 0;
+                shortLine = false;
             }
-            // Make sure there is a sequence at the current location.
-            if (buffer.charAt (0) != '>') {
-                throw new InvalidFastaException (
-                    "Not a fasta formated sequence."
-                );
+            else if (record < 0) {
+                // Ignore empty lines at the start of the file.
+                if (content > 0) {
+                    throw new InvalidFastaException (
+                        "Not a fasta formated sequence."
+                    );
+                }
+            }
+            else {
+                // Keep track of the length of the lines, which must all be
+                // the same except for the last line of the sequence.
+                int width = (int)(next - position);
+                if (lineBases[record] == IRREGULAR) {
+                    // The lines are already known to be irregular.
+                }
+                else if (lines == 0) {
+                    lineBases[record] = content;
+                    lineWidths[record] = width;
+                }
+                else if (shortLine) {
+                    if (content > 0) lineBases[record] = IRREGULAR;
+                }
+                else if (content > lineBases[record] || (next > end &&
+                    content == lineBases[record] &&
+                    width != lineWidths[record])) {
+                    lineBases[record] = IRREGULAR;
+                }
+                if (content < lineBases[record]) shortLine = true;
+                // Store the sequence data.
+                lengths[record] += content;
+                lines ++;
+            }
+            position = next;
+        }
+        if (record >= 0) ends[record] = position;
+        records = record + 1;
+    }
+
+    /**
+     *  Private method to read a samtools style .fai index.
+     *
+     *  @param indexFile The index file.
+     *  @return True if the index was read.
+     */
+    private boolean readIndex (File indexFile) throws IOException {
+        BufferedReader in = null;
+        long length = source.length ();
+        try {
+            in = new BufferedReader (new FileReader (indexFile));
+            String line;
+            int record = 0;
+            while ((line = in.readLine ()) != null) {
+                if (line.length () == 0) continue;
+                String[] fields = line.split ("\t");
+                if (fields.length < 5) return false;
+                ensureCapacity (record + 1);
+                ids[record] = fields[0];
+                lengths[record] = Integer.parseInt (fields[1]);
+                offsets[record] = Long.parseLong (fields[2]);
+                lineBases[record] = Integer.parseInt (fields[3]);
+                lineWidths[record] = Integer.parseInt (fields[4]);
+                if (offsets[record] < 1L || offsets[record] > length) {
+                    return false;
+                }
+                // The header is on the line before the sequence.
+                long header = offsets[record] - 1L;
+                while (header > 0L && source.get (header - 1L) != '\n') {
+                    header --;
+                }
+                if (source.get (header) != '>') return false;
+                headers[record] = header;
+                if (record > 0) ends[record - 1] = header;
+                index.put (ids[record], record);
+                record ++;
             }
-            // Grab the sequence identifier and description from the buffer.
-            String[] header = buffer.split ("\\s+", 2);
-            String id = header[0].substring (1);
+            if (record > 0) ends[record - 1] = length;
+            records = record;
+            return records > 0;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+        finally {
+            if (records == 0) index.clear ();
+            if (in != null) in.close ();
+        }
+    }
+
+    /**
+     *  Private method to read a sequence.
+     *
+     *  @param record The index of the sequence.
+     *  @return A Sequence object.
+     */
+    private Sequence getSequence (int record) throws InvalidFastaException {
+        try {
+            String[] header = parseHeader (headers[record]);
             String description = "";
             if (header.length == 2) {
                 description = header[1];
             }
-            // Save the current file offset.
-            long offset = file.getFilePointer ();
-            // Grab the sequence data from the buffer.
-            String sequence = "";
-            while ((buffer = file.readLine ()) != null) {
-                // Stop when the next sequence is found.
-                if (buffer.length () > 0 && buffer.charAt (0) == '>') {
-                    file.seek (offset);
-                    break;
-                }
-                // Store the sequence data.
-                sequence += buffer;
-                // Update the file offset.
-                offset = file.getFilePointer ();
-            }
-            // Store the sequence.
-            if (! id.equals ("null")) {
-                seq = new Sequence (id, description, sequence);
+            byte[] residues = readResidues (record);
+            return new Sequence (
+                header[0], description,
+                new String (residues, StandardCharsets.ISO_8859_1)
+            );
+        }
+        catch (IOException e) {
+            throw new InvalidFastaException ("Fasta IO Error: " + e);
+        }
+    }
+
+    /**
+     *  Private method to parse the identifier and description of a
+     *  sequence from its header.
+     *
+     *  @param position The offset of the header.
+     *  @return The identifier, and the description if there is one.
+     */
+    private String[] parseHeader (long position) throws IOException {
+        long end = findLineEnd (position);
+        if (end > position && source.get (end - 1) == '\r') end --;
+        byte[] bytes = new byte[(int)(end - position)];
+        for (int i = 0; i < bytes.length; i ++) {
+            bytes[i] = (byte)source.get (position + i);
+        }
+        String line = new String (bytes, StandardCharsets.ISO_8859_1);
+        String[] header = line.split ("\\s+", 2);
+        header[0] = header[0].substring (1);
+        return header;
+    }
+
+    /**
+     *  Private method to copy the residues of a sequence, without the line
+     *  breaks.
+     *
+     *  @param record The index of the sequence.
+     *  @return The residues.
+     */
+    private byte[] readResidues (int record) throws InvalidFastaException {
+        byte[] residues = new byte[lengths[record]];
+        int i = 0;
+        try {
+            for (long p = offsets[record]; p < ends[record]; p ++) {
+                int b = source.get (p);
+                if (b == EOF) break;
+                if (b != '\n' && b != '\r') residues[i ++] = (byte)b;
             }
         }
         catch (IOException e) {
             throw new InvalidFastaException ("Fasta IO Error: " + e);
         }
-        return seq;
+        return residues;
+    }
+
+    /**
+     *  Private method to find the end of the line starting at the given
+     *  offset.
+     *
+     *  @param position The offset of the start of the line.
+     *  @return The offset of the line break, or the end of the file.
+     */
+    private long findLineEnd (long position) throws IOException {
+        int b = source.get (position);
+        while (b != '\n' && b != EOF) {
+            b = source.get (++ position);
+        }
+        return position;
+    }
+
+    /**
+     *  Private method to make room in the index for more sequences.
+     *
+     *  @param capacity The number of sequences needed.
+     */
+    private void ensureCapacity (int capacity) {
+        if (ids != null && ids.length >= capacity) return;
+        int newCapacity = 16;
+        if (ids != null) newCapacity = ids.length * 2;
+        if (newCapacity < capacity) newCapacity = capacity;
+        if (ids == null) {
+            ids = new String[newCapacity];
+            headers = new long[newCapacity];
+            offsets = new long[newCapacity];
+            ends = new long[newCapacity];
+            lengths = new int[newCapacity];
+            lineBases = new int[newCapacity];
+            lineWidths = new int[newCapacity];
+            return;
+        }
+        ids = Arrays.copyOf (ids, newCapacity);
+        headers = Arrays.copyOf (headers, newCapacity);
+        offsets = Arrays.copyOf (offsets, newCapacity);
+        ends = Arrays.copyOf (ends, newCapacity);
+        lengths = Arrays.copyOf (lengths, newCapacity);
+        lineBases = Arrays.copyOf (lineBases, newCapacity);
+        lineWidths = Arrays.copyOf (lineWidths, newCapacity);
+    }
+
+    /**
+     *  The bytes of a Fasta file, addressed by their offset in the
+     *  uncompressed file.
+     */
+    private abstract static class Source {
+
+        /**
+         *  Get the byte at the given offset.
+         *
+         *  @param position The offset.
+         *  @return The byte, or EOF if the offset is past the end.
+         */
+        abstract int get (long position) throws IOException;
+
+        /**
+         *  Get the length of the uncompressed file.
+         *
+         *  @return The length, or -1 if it is not known.
+         */
+        abstract long length ();
+
+        /**
+         *  Get a read-only view of the given bytes without copying them.
+         *
+         *  @param position The offset of the first byte.
+         *  @param length The number of bytes.
+         *  @return The view, or null if a view is not possible.
+         */
+        ByteBuffer view (long position, int length) {
+            return null;
+        }
+
+        /**
+         *  Close the file.
+         */
+        abstract void close () throws IOException;
+
     }
 
-    private RandomAccessFile file;
+    /**
+     *  A plain file, memory-mapped in chunks.
+     */
+    private static class MappedSource extends Source {
+
+        MappedSource (File file) throws IOException {
+            this.file = new RandomAccessFile (file, "r");
+            length = this.file.length ();
+            FileChannel channel = this.file.getChannel ();
+            int numChunks = (int)((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            chunks = new MappedByteBuffer[numChunks];
+            for (int i = 0; i < numChunks; i ++) {
+                long start = (long)i * CHUNK_SIZE;
+                chunks[i] = channel.map (
+                    FileChannel.MapMode.READ_ONLY, start,
+                    Math.min (CHUNK_SIZE, length - start)
+                );
+            }
+        }
+
+        int get (long position) {
+            if (position >= length) return EOF;
+            return chunks[(int)(position >>> CHUNK_BITS)].get (
+                (int)(position & CHUNK_MASK)
+            ) & 0xff;
+        }
+
+        long length () {
+            return length;
+        }
+
+        ByteBuffer view (long position, int length) {
+            int chunk = (int)(position >>> CHUNK_BITS);
+            if ((position + length - 1) >>> CHUNK_BITS != chunk) return null;
+            ByteBuffer view = chunks[chunk].duplicate ();
+            int start = (int)(position & CHUNK_MASK);
+            view.position (start);
+            view.limit (start + length);
+            return view.slice ().asReadOnlyBuffer ();
+        }
+
+        void close () throws IOException {
+            chunks = null;
+            file.close ();
+        }
+
+        private RandomAccessFile file;
+        private MappedByteBuffer[] chunks;
+        private long length;
+
+    }
+
+    /**
+     *  A gzip compressed file, read forward through a buffered stream.  The
+     *  last buffer read is kept, and the file is read again from the start
+     *  to go back further than that.
+     */
+    private static class GzipSource extends Source {
+
+        GzipSource (File file) throws IOException {
+            this.file = file;
+            buffer = new byte[BUFFER_SIZE];
+            open ();
+        }
+
+        int get (long position) throws IOException {
+            if (position < start) open ();
+            while (position >= start + filled) {
+                if (filled == -1) return EOF;
+                start += filled;
+                filled = fill ();
+                if (filled == -1) {
+                    length = start;
+                    return EOF;
+                }
+            }
+            return buffer[(int)(position - start)] & 0xff;
+        }
+
+        long length () {
+            return length;
+        }
+
+        void close () throws IOException {
+            in.close ();
+        }
+
+        /**
+         *  Open the file again from the start.
+         */
+        private void open () throws IOException {
+            if (in != null) in.close ();
+            in = new GZIPInputStream (
+                new BufferedInputStream (
+                    new FileInputStream (file), BUFFER_SIZE
+                ),
+                BUFFER_SIZE
+            );
+            start = 0L;
+            filled = fill ();
+        }
+
+        /**
+         *  Fill the buffer from the stream.
+         *
+         *  @return The number of bytes read, or -1 at the end of the file.
+         */
+        private int fill () throws IOException {
+            int total = 0;
+            while (total < buffer.length) {
+                int len = in.read (buffer, total, buffer.length - total);
+                if (len == -1) break;
+                total += len;
+            }
+            if (total == 0) return -1;
+            return total;
+        }
+
+        private File file;
+        private InputStream in;
+        private byte[] buffer;
+        private long start;
+        private int filled;
+        private long length = -1L;
+
+    }
+
+    /**
+     *  A BGZF compressed file, made of independent gzip blocks that are
+     *  each uncompressed when needed.  The offset and size of every block
+     *  are read from the block headers when the file is opened.
+     */
+    private static class BgzfSource extends Source {
+
+        BgzfSource (File file) throws IOException {
+            this.file = new RandomAccessFile (file, "r");
+            blockOffsets = new long[16];
+            blockStarts = new long[16];
+            long offset = 0L;
+            long fileLength = this.file.length ();
+            byte[] header = new byte[BGZF_HEADER];
+            numBlocks = 0;
+            while (offset < fileLength) {
+                this.file.seek (offset);
+                this.file.readFully (header);
+                int blockSize = blockSize (header);
+                if (blockSize < 0) {
+                    throw new IOException ("Malformed BGZF block.");
+                }
+                this.file.seek (offset + blockSize - 4);
+                long inflated = Integer.reverseBytes (this.file.readInt ()) &
+                    0xffffffffL;
+                if (numBlocks + 1 >= blockStarts.length) {
+                    int capacity = blockStarts.length * 2;
+                    blockOffsets = Arrays.copyOf (blockOffsets, capacity);
+                    blockStarts = Arrays.copyOf (blockStarts, capacity);
+                }
+                blockOffsets[numBlocks] = offset;
+                blockStarts[numBlocks + 1] = blockStarts[numBlocks] +
+                    inflated;
+                numBlocks ++;
+                offset += blockSize;
+            }
+            length = blockStarts[numBlocks];
+            inflater = new Inflater (true);
+            compressed = new byte[MAX_BLOCK];
+            block = new byte[MAX_BLOCK];
+            current = -1;
+        }
+
+        /**
+         *  Check if a file is BGZF compressed.
+         *
+         *  @param file The file to check.
+         *  @return True if the first block has a BGZF header.
+         */
+        static boolean isBgzf (File file) throws IOException {
+            RandomAccessFile in = new RandomAccessFile (file, "r");
+            try {
+                byte[] header = new byte[BGZF_HEADER];
+                if (in.length () < BGZF_HEADER) return false;
+                in.readFully (header);
+                return blockSize (header) > 0;
+            }
+            finally {
+                in.close ();
+            }
+        }
+
+        /**
+         *  Read the size of a block from its header.
+         *
+         *  @param header The first bytes of the block.
+         *  @return The size of the block, or -1 if it is not a BGZF block.
+         */
+        private static int blockSize (byte[] header) {
+            // The gzip magic number, deflate, and an extra field holding
+            // the BC subfield with the block size.
+            if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b ||
+                header[2] != 8 || (header[3] & 4) == 0 ||
+                header[12] != 'B' || header[13] != 'C' || header[14] != 2) {
+                return -1;
+            }
+            return ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+        }
+
+        int get (long position) throws IOException {
+            if (position >= length) return EOF;
+            if (current < 0 || position < blockStarts[current] ||
+                position >= blockStarts[current + 1]) {
+                load (findBlock (position));
+            }
+            return block[(int)(position - blockStarts[current])] & 0xff;
+        }
+
+        long length () {
+            return length;
+        }
+
+        void close () throws IOException {
+            inflater.end ();
+            file.close ();
+        }
+
+        /**
+         *  Find the block holding the given offset.
+         *
+         *  @param position The offset in the uncompressed file.
+         *  @return The index of the block.
+         */
+        private int findBlock (long position) {
+            // Usually the next block.
+            if (current >= 0 && current + 1 < numBlocks &&
+                position >= blockStarts[current + 1] &&
+                position < blockStarts[current + 2]) {
+                return current + 1;
+            }
+            int low = 0;
+            int high = numBlocks - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (blockStarts[middle] <= position) {
+                    low = middle;
+                }
+                else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         *  Uncompress a block.
+         *
+         *  @param number The index of the block.
+         */
+        private void load (int number) throws IOException {
+            long offset = blockOffsets[number];
+            int size = (int)((number + 1 < numBlocks ?
+                blockOffsets[number + 1] : file.length ()) - offset);
+            file.seek (offset);
+            file.readFully (compressed, 0, size);
+            int extra = (compressed[10] & 0xff) | (compressed[11] & 0xff) << 8;
+            int data = 12 + extra;
+            inflater.reset ();
+            inflater.setInput (compressed, data, size - data - 8);
+            int inflated = (int)(blockStarts[number + 1] - blockStarts[number]);
+            try {
+                int total = 0;
+                while (total < inflated && ! inflater.finished ()) {
+                    total += inflater.inflate (block, total, inflated - total);
+                }
+            }
+            catch (DataFormatException e) {
+                throw new IOException ("Malformed BGZF block: " + e);
+            }
+            current = number;
+        }
+
+        private static final int BGZF_HEADER = 18;
+        private static final int MAX_BLOCK = 65536;
+
+        private RandomAccessFile file;
+        private long[] blockOffsets;
+        private long[] blockStarts;
+        private int numBlocks;
+        private long length;
+        private Inflater inflater;
+        private byte[] compressed;
+        private byte[] block;
+        private int current;
+
+    }
+
+    /**
+     *  The value returned past the end of the file.
+     */
+    private static final int EOF = -1;
+
+    /**
+     *  The size of each memory-mapped chunk of the file.
+     */
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1L;
+
+    /**
+     *  The size of the buffers used to read compressed files.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     *  The number of residues per line of a sequence with lines of
+     *  different lengths.
+     */
+    private static final int IRREGULAR = -1;
+
+    private File fastaFile;
+    private Source source;
     private Sequence outgroup;
     private Long size;
-    private Hashtable<String,Long> offsets;
+    private int nextRecord;
+
+    /**
+     *  The index of the sequences, in the order of the file.  For each
+     *  sequence the offset of its header, the offset of its first residue,
+     *  the offset of its end, the number of residues, and the number of
+     *  residues and bytes in each line.
+     */
+    private int records;
+    private String[] ids;
+    private long[] headers;
+    private long[] offsets;
+    private long[] ends;
+    private int[] lengths;
+    private int[] lineBases;
+    private int[] lineWidths;
+    private HashMap<String, Integer> index;
 
 }
@@ -0,0 +1,550 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ *  The simulation used to calculate the likelihood of a set of parameter
+ *  values (omega, sigma, npop).  This is a port of the runFredProgram and
+ *  simulation subroutines found in the ::methods Fortran module.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class FredMethod {
+
+    /**
+     *  The FredMethod constructor.
+     *
+     *  @param numberThreads The number of threads to run replicates on.
+     */
+    public FredMethod (int numberThreads) {
+        this (numberThreads, (long)(Long.MAX_VALUE * Math.random ()));
+    }
+
+    /**
+     *  The FredMethod constructor.
+     *
+     *  @param numberThreads The number of threads to run replicates on.
+     *  @param seed The seed for the random number generator.
+     */
+    public FredMethod (int numberThreads, long seed) {
+        this.numberThreads = numberThreads;
+        random = new SplittableRandom (seed);
+        if (numberThreads > 1) {
+            pool = new ForkJoinPool (numberThreads);
+        }
+    }
+
+    /**
+     *  Stop the threads used to run replicates.  Replicates still being
+     *  run are finished, and any later replicates are run on the calling
+     *  thread.
+     */
+    public void shutdown () {
+        if (pool != null) pool.shutdown ();
+    }
+
+    /**
+     *  Get the number of threads used to run replicates.
+     *
+     *  @return The number of threads.
+     */
+    public int getNumberThreads () {
+        return numberThreads;
+    }
+
+    /**
+     *  Run the simulation nrep times and return the fraction of replicates
+     *  that succeeded at each of the six levels of precision.
+     *
+     *  @param omega The rate of niche invasion.
+     *  @param sigma The rate of periodic selection.
+     *  @param npop The number of ecotypes.
+     *  @param input The input values shared by each replicate.
+     *  @return The average success at each of the six levels of precision.
+     */
+    public double[] runFredProgram (double omega, double sigma, long npop,
+        SimulationInput input) {
+        return runFredProgram (omega, sigma, npop, input, random);
+    }
+
+    /**
+     *  Run the simulation nrep times using the provided stream of random
+     *  numbers, and return the fraction of replicates that succeeded at
+     *  each of the six levels of precision.
+     *
+     *  @param omega The rate of niche invasion.
+     *  @param sigma The rate of periodic selection.
+     *  @param npop The number of ecotypes.
+     *  @param input The input values shared by each replicate.
+     *  @param random The stream of random numbers to use.
+     *  @return The average success at each of the six levels of precision.
+     */
+    public double[] runFredProgram (double omega, double sigma, long npop,
+        SimulationInput input, SplittableRandom random) {
+        return runFredProgram (omega, sigma, npop, input, random, null);
+    }
+
+    /**
+     *  Run the simulation in batches of replicates, stopping early once
+     *  the sequential test is settled, and return the fraction of the
+     *  replicates run that succeeded at each of the six levels of
+     *  precision.  The number of replicates run is kept by the test.
+     *
+     *  @param omega The rate of niche invasion.
+     *  @param sigma The rate of periodic selection.
+     *  @param npop The number of ecotypes.
+     *  @param input The input values shared by each replicate.
+     *  @param test The sequential test used to stop early.
+     *  @return The average success at each of the six levels of precision.
+     */
+    public double[] runFredProgram (double omega, double sigma, long npop,
+        SimulationInput input, SequentialTest test) {
+        return runFredProgram (omega, sigma, npop, input, random, test);
+    }
+
+    /**
+     *  Run the simulation using the provided stream of random numbers,
+     *  stopping early once the sequential test is settled if one is
+     *  provided, and return the fraction of the replicates run that
+     *  succeeded at each of the six levels of precision.
+     *
+     *  @param omega The rate of niche invasion.
+     *  @param sigma The rate of periodic selection.
+     *  @param npop The number of ecotypes.
+     *  @param input The input values shared by each replicate.
+     *  @param random The stream of random numbers to use.
+     *  @param test The sequential test used to stop early, or null to run
+     *  every replicate.
+     *  @return The average success at each of the six levels of precision.
+     */
+    public double[] runFredProgram (double omega, double sigma, long npop,
+        SimulationInput input, SplittableRandom random,
+        SequentialTest test) {
+        double[] avgsuccess = new double[PRECISION_LEVELS];
+        int nrep = input.getNrep ();
+        // Return a likelihood of zero for invalid parameter values.
+        if (Double.isNaN (omega) || omega < DOUBLE_EPSILON) return avgsuccess;
+        if (omega > Float.MAX_VALUE) return avgsuccess;
+        if (Double.isNaN (sigma) || sigma < DOUBLE_EPSILON) return avgsuccess;
+        if (sigma > Float.MAX_VALUE) return avgsuccess;
+        if (npop > input.getNu () || npop <= 0L) return avgsuccess;
+        if (nrep <= 0) return avgsuccess;
+        // Split the replicates into blocks, each with its own random number
+        // generator so that the result does not depend on the number of
+        // threads used.
+        int blocks = Math.min (nrep, REPLICATE_BLOCKS);
+        ArrayList<ReplicateBlock> tasks = new ArrayList<ReplicateBlock> ();
+        synchronized (random) {
+            for (int i = 0; i < blocks; i ++) {
+                int first = (int)((long)nrep * i / blocks);
+                int last = (int)((long)nrep * (i + 1) / blocks);
+                tasks.add (new ReplicateBlock (
+                    omega, sigma, (int)npop, input, last - first,
+                    random.split ()
+                ));
+            }
+        }
+        // Run every block at once, or in batches of blocks when testing
+        // sequentially.  The streams of the blocks are split before any
+        // block is run, so stopping early does not change later results.
+        int batch = blocks;
+        if (test != null) batch = BATCH_BLOCKS;
+        long[] success = new long[PRECISION_LEVELS];
+        int replicates = 0;
+        try {
+            for (int i = 0; i < blocks; i += batch) {
+                List<ReplicateBlock> batchTasks = tasks.subList (
+                    i, Math.min (blocks, i + batch)
+                );
+                if (pool == null || pool.isShutdown ()) {
+                    for (ReplicateBlock task: batchTasks) {
+                        addSuccess (success, task.call ());
+                    }
+                }
+                else {
+                    for (Future<long[]> future: pool.invokeAll (batchTasks)) {
+                        addSuccess (success, future.get ());
+                    }
+                }
+                for (ReplicateBlock task: batchTasks) {
+                    replicates += task.nrep;
+                }
+                if (test != null && test.isSettled (success, replicates)) {
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            return avgsuccess;
+        }
+        catch (ExecutionException e) {
+            e.printStackTrace ();
+            return avgsuccess;
+        }
+        for (int i = 0; i < PRECISION_LEVELS; i ++) {
+            avgsuccess[i] = success[i] / (double)replicates;
+        }
+        return avgsuccess;
+    }
+
+    /**
+     *  Split a new stream of random numbers from the one used by this
+     *  FredMethod, for a caller that runs simulations at the same time as
+     *  others.
+     *
+     *  @return The new stream of random numbers.
+     */
+    public SplittableRandom split () {
+        synchronized (random) {
+            return random.split ();
+        }
+    }
+
+    /**
+     *  Add the success counts of a block of replicates to the total.
+     *
+     *  @param total The total success counts.
+     *  @param block The success counts of the block.
+     */
+    private void addSuccess (long[] total, long[] block) {
+        for (int i = 0; i < PRECISION_LEVELS; i ++) {
+            total[i] += block[i];
+        }
+    }
+
+    /**
+     *  The number of levels of precision measured by the simulation.
+     *
+     *  (1: 500%, 2: 200%, 3: 150%, 4: 125%, 5: 110%, 6: 105%)
+     */
+    public static final int PRECISION_LEVELS = 6;
+
+    /**
+     *  The tolerance allowed between the simulated and observed number of
+     *  bins at each level of precision.
+     */
+    private static final float[] TOLERANCE = {
+        5.0f, 2.0f, 1.5f, 1.25f, 1.1f, 1.05f
+    };
+
+    /**
+     *  The machine epsilon of a double, as used by the Fortran code.
+     */
+    private static final double DOUBLE_EPSILON = Math.ulp (1.0d);
+
+    /**
+     *  The number of blocks the replicates are divided into.
+     */
+    private static final int REPLICATE_BLOCKS = 64;
+
+    /**
+     *  The number of blocks run between sequential tests.
+     */
+    private static final int BATCH_BLOCKS = 8;
+
+    private int numberThreads;
+    private ForkJoinPool pool;
+    private final SplittableRandom random;
+
+    /**
+     *  A block of replicate simulations sharing a random number generator
+     *  and working arrays.
+     */
+    private class ReplicateBlock implements Callable<long[]> {
+
+        /**
+         *  Create a block of replicate simulations.
+         *
+         *  @param omega The rate of niche invasion.
+         *  @param sigma The rate of periodic selection.
+         *  @param npop The number of ecotypes.
+         *  @param input The input values shared by each replicate.
+         *  @param nrep The number of replicates in this block.
+         *  @param rng The random number generator for this block.
+         */
+        public ReplicateBlock (double omega, double sigma, int npop,
+            SimulationInput input, int nrep, SplittableRandom rng) {
+            this.omega = omega;
+            this.sigma = sigma;
+            this.npop = npop;
+            this.input = input;
+            this.nrep = nrep;
+            this.rng = rng;
+        }
+
+        /**
+         *  Run the replicates in this block.
+         *
+         *  @return The number of replicates that succeeded at each level of
+         *  precision.
+         */
+        public long[] call () {
+            long[] success = new long[PRECISION_LEVELS];
+            int nu = input.getNu ();
+            numstrain = new int[nu];
+            ncoalesce = new int[4 * nu];
+            div = new float[4 * nu];
+            bin = new int[input.getNumcrit ()];
+            for (int irep = 0; irep < nrep; irep ++) {
+                int levels = simulation ();
+                for (int i = 0; i < levels; i ++) {
+                    success[i] ++;
+                }
+            }
+            return success;
+        }
+
+        /**
+         *  Run a single simulation.
+         *
+         *  @return The number of levels of precision that succeeded.
+         */
+        private int simulation () {
+            startpops ();
+            while (true) {
+                boolean nicheInvasion = whichEventAndWhen ();
+                if (nicheInvasion) {
+                    doNicheInvasion ();
+                }
+                else {
+                    doPeriodicSelection ();
+                }
+                int ntotalpop = 0;
+                for (int jpop = 0; jpop < activepop; jpop ++) {
+                    ntotalpop += numstrain[jpop];
+                }
+                if (ntotalpop <= 1) break;
+            }
+            binning ();
+            return testForSuccessFit ();
+        }
+
+        /**
+         *  Setup the initial populations.
+         */
+        private void startpops () {
+            int nu = input.getNu ();
+            activepop = npop;
+            numanctot = nu;
+            canonical ();
+            time = 0.0f;
+            for (int i = 0; i < nu; i ++) {
+                div[i] = 0.0f;
+            }
+        }
+
+        /**
+         *  Randomly divide the nu sequences among the npop ecotypes.
+         */
+        private void canonical () {
+            numstrain[0] = input.getNu ();
+            for (int upto = 1; upto < npop; upto ++) {
+                int ipop;
+                int numberofstrains;
+                do {
+                    ipop = (int)(randomNumber () * upto);
+                    numberofstrains = numstrain[ipop];
+                } while (numberofstrains <= 1);
+                int istrain = (int)(
+                    randomNumber () * (numberofstrains - 1)
+                ) + 1;
+                numstrain[ipop] = istrain;
+                numstrain[upto] = numberofstrains - istrain;
+            }
+        }
+
+        /**
+         *  Choose the next event and the time to wait for it.
+         *
+         *  @return True for a niche invasion event, false for a periodic
+         *  selection event.
+         */
+        private boolean whichEventAndWhen () {
+            int eligibleNI = activepop;
+            if (activepop == 1) eligibleNI = 0;
+            int eligiblePS = 0;
+            for (int jpop = 0; jpop < activepop; jpop ++) {
+                if (numstrain[jpop] != 1) eligiblePS ++;
+            }
+            double effectiveOmega = eligibleNI * omega;
+            double effectiveSigma = eligiblePS * sigma;
+            double rateKey = effectiveOmega + effectiveSigma;
+            float x = randomNumber ();
+            if (x < 1.0e-6f) x = 1.0e-6f;
+            double timeWait = -1.0d * (float)Math.log (x) / rateKey;
+            time = time + (int)poisson (timeWait);
+            x = randomNumber ();
+            return x < effectiveOmega / rateKey;
+        }
+
+        /**
+         *  Draw the number of substitutions from a Poisson distribution.
+         *
+         *  @param expect The mean of the distribution.
+         *  @return The number of substitutions.
+         */
+        private long poisson (double expect) {
+            float x = randomNumber ();
+            double accumprob = 0.0d;
+            double prob = Math.exp (-1.0d * expect);
+            for (int jmut = 0; jmut <= 100; jmut ++) {
+                if (jmut != 0) {
+                    prob = (prob * expect) / jmut;
+                }
+                accumprob = accumprob + prob;
+                if (x < accumprob) return jmut;
+            }
+            return (long)expect;
+        }
+
+        /**
+         *  Perform a niche invasion event.
+         */
+        private void doNicheInvasion () {
+            if (activepop == 0) return;
+            int popfornascent = (int)(randomNumber () * activepop);
+            store (numstrain[popfornascent] + 1);
+            numstrain[popfornascent] = numstrain[activepop - 1];
+            activepop --;
+        }
+
+        /**
+         *  Perform a periodic selection event.
+         */
+        private void doPeriodicSelection () {
+            int numeligible = 0;
+            for (int jpop = 0; jpop < activepop; jpop ++) {
+                if (numstrain[jpop] > 1) numeligible ++;
+            }
+            if (numeligible == 0) return;
+            int chosen = (int)(randomNumber () * numeligible);
+            for (int jpop = 0; jpop < activepop; jpop ++) {
+                if (numstrain[jpop] <= 1) continue;
+                if (chosen == 0) {
+                    store (numstrain[jpop]);
+                    numstrain[jpop] = 1;
+                    return;
+                }
+                chosen --;
+            }
+        }
+
+        /**
+         *  Store a coalescence event at the current time.
+         *
+         *  @param numcoalesce The number of lineages coalescing.
+         */
+        private void store (int numcoalesce) {
+            if (numanctot == ncoalesce.length) {
+                ncoalesce = Arrays.copyOf (ncoalesce, 2 * numanctot);
+                div = Arrays.copyOf (div, 2 * numanctot);
+            }
+            ncoalesce[numanctot] = numcoalesce;
+            div[numanctot] = time / input.getLength ();
+            numanctot ++;
+        }
+
+        /**
+         *  Calculate the number of bins at each crit level from the
+         *  coalescence events.
+         */
+        private void binning () {
+            float[] crit = input.getCrit ();
+            int nbins = 1;
+            int lused = 0;
+            for (int jcrit = 0; jcrit < crit.length; jcrit ++) {
+                float criterion = crit[jcrit];
+                int janc = numanctot - lused;
+                while (janc >= 1) {
+                    float div2 = -1.5f * (
+                        (float)Math.exp ((-4.0f / 3.0f) * div[janc - 1]) - 1.0f
+                    );
+                    if (div2 < 1.0f - criterion) {
+                        bin[jcrit] = nbins;
+                        break;
+                    }
+                    nbins = nbins + ncoalesce[janc - 1] - 1;
+                    lused ++;
+                    janc --;
+                }
+            }
+        }
+
+        /**
+         *  Test the simulated bins against the observed bins.
+         *
+         *  @return The number of levels of precision that succeeded.
+         */
+        private int testForSuccessFit () {
+            int[] realdata = input.getRealdata ();
+            for (int level = 0; level < PRECISION_LEVELS; level ++) {
+                float tolerance = TOLERANCE[level];
+                for (int jcrit = 0; jcrit < realdata.length; jcrit ++) {
+                    float xreal = realdata[jcrit];
+                    float xbin = bin[jcrit];
+                    if (xreal < 1.0e-6f || xbin < 1.0e-6f) return level;
+                    if (xreal / xbin > tolerance || xbin / xreal > tolerance) {
+                        return level;
+                    }
+                }
+            }
+            return PRECISION_LEVELS;
+        }
+
+        /**
+         *  Generate a uniform random number in the interval [0, 1).
+         *
+         *  @return The random number.
+         */
+        private float randomNumber () {
+            return (rng.nextInt () >>> 8) * 0x1.0p-24f;
+        }
+
+        private double omega;
+        private double sigma;
+        private int npop;
+        private SimulationInput input;
+        private int nrep;
+        private SplittableRandom rng;
+
+        private int activepop;
+        private int numanctot;
+        private float time;
+        private int[] numstrain;
+        private int[] ncoalesce;
+        private float[] div;
+        private int[] bin;
+    }
+
+}
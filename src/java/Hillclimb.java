@@ -22,17 +22,9 @@
 
 package ecosim;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import ecosim.api.SimulationEngine;
+
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Locale;
-import java.util.StringTokenizer;
 
 /**
  *  Object to interact with the hillclimbing program.
@@ -71,14 +63,40 @@ public class Hillclimb implements Runnable {
      *  Run the hillclimb program.
      */
     public void run () {
-        File inputFile = new File (inputFileName);
-        File outputFile = new File (outputFileName);
-        // Write the input values for the program to the hclimbIn.dat file.
-        writeInputFile (inputFile);
-        // Run the hillclimb program.
-        execs.runHillclimb (inputFile, outputFile);
-        // Get the output provided by the hillclimb program.
-        result = readOutputFile (outputFile);
+        run (false);
+    }
+
+    /**
+     *  Run the hillclimb program, resuming the last run at a lower
+     *  precision if requested.  Only the engine inside of the JVM can
+     *  resume, reusing the likelihoods already measured.
+     *
+     *  @param resume True to resume the last run, false to start a new one.
+     */
+    public void run (boolean resume) {
+        SimulationEngine engine = execs.getSimulationEngine ();
+        SimulationInput input = new SimulationInput (
+            binning, nu, length, nrep, mainVariables.getCriterion ()
+        );
+        if (engine != null) {
+            // Run hillclimbing inside of the JVM.
+            result = engine.hillclimb (input, parameterSet, resume);
+        }
+        else {
+            // Run the hillclimb program.
+            SimulationCodec request = new SimulationCodec (
+                SimulationCodec.PROGRAM_HILLCLIMB, input, parameterSet
+            );
+            ParameterSet[] response = execs.runProgram (
+                request, new File (inputFileName), new File (outputFileName)
+            );
+            if (response != null) {
+                result = response[0];
+            }
+            else {
+                result = new ParameterSet (0L, 0.0d, 0.0d, 0.0d);
+            }
+        }
         // Set the flag stating that the hillclimb program has been run.
         if (result.getNpop () > 0) {
             hasRun = true;
@@ -130,144 +148,6 @@ public class Hillclimb implements Runnable {
         return result.toString ();
     }
 
-    /**
-     *  Private method to write the input file for the hillclimb program.
-     *
-     *  @param inputFile The file to write to.
-     */
-    private void writeInputFile (File inputFile) {
-        ArrayList<BinLevel> bins = binning.getBins ();
-        BufferedWriter writer = null;
-        try {
-            writer = new BufferedWriter (new FileWriter (inputFile));
-            writer.write (String.format (
-                Locale.US,
-                "%-20d numcrit\n",
-                bins.size ()
-            ));
-            // Output the crit levels and the number of bins.
-            for (int j = 0; j < bins.size (); j ++) {
-                writer.write (String.format (
-                    Locale.US,
-                    "%-20.6f %-20d\n",
-                    bins.get (j).getCrit (),
-                    bins.get (j).getLevel ()
-                ));
-            }
-            // Write the omega value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f omega\n",
-                parameterSet.getOmega ()
-            ));
-            // Write the sigma value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f sigma\n",
-                parameterSet.getSigma ()
-            ));
-            // Write the npop value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d npop\n",
-                parameterSet.getNpop ()
-            ));
-            // Write the nu value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d nu\n",
-                nu
-            ));
-            // Write the nrep value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d nrep\n",
-                nrep
-            ));
-            // Create the random number seed; an odd integer less than nine
-            // digits long.
-            long iii = (long)(100000000 * Math.random ());
-            if (iii % 2 == 0) {
-                iii ++;
-            }
-            // Write the random number seed.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d iii (random number seed)\n",
-                iii
-            ));
-            // Write the length of the sequences.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d lengthseq (after deleting gaps, etc.)\n",
-                length
-            ));
-            // Write the whichavg value.
-            int whichavg = mainVariables.getCriterion ();
-            writer.write (String.format (
-                Locale.US,
-                "%-20d whichavg\n",
-                whichavg
-            ));
-        }
-        catch (IOException e) {
-            System.out.println ("Error writing the input file.");
-        }
-        finally {
-            if (writer != null) {
-                try {
-                    writer.close ();
-                }
-                catch (IOException e) {
-                    System.out.println ("Error closing the input file.");
-                }
-            }
-        }
-    }
-
-    /**
-     *  Private method to read the output file from the hillclimb program.
-     *
-     *  @param outputFile The file to read from.
-     */
-    private ParameterSet readOutputFile (File outputFile) {
-        ParameterSet result = new ParameterSet ();
-        BufferedReader reader = null;
-        NumberFormat format = NumberFormat.getInstance (Locale.US);
-        try {
-            reader = new BufferedReader (new FileReader (outputFile));
-            String nextLine = reader.readLine ();
-            while (nextLine != null) {
-                StringTokenizer st = new StringTokenizer (nextLine);
-                // There should only be one line containing omega, sigma,
-                // npop, and the likelihood of that result.
-                Double omega = format.parse (st.nextToken ()).doubleValue ();
-                Double sigma = format.parse (st.nextToken ()).doubleValue ();
-                Long npop = format.parse (st.nextToken ()).longValue ();
-                Double likelihood = format.parse (st.nextToken ()).doubleValue ();
-                result = new ParameterSet (npop, omega, sigma, likelihood);
-                nextLine = reader.readLine ();
-            }
-        }
-        catch (IOException e) {
-            System.out.println ("Error reading the output file.");
-        }
-        catch (ParseException e) {
-            System.out.println ("Error parsing a number.");
-        }
-        finally {
-            if (reader != null) {
-                try {
-                    reader.close ();
-                }
-                catch (IOException e) {
-                    System.out.println ("Error closing the output file.");
-                }
-            }
-        }
-        return result;
-    }
-
     private String inputFileName;
     private String outputFileName;
 
@@ -0,0 +1,695 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+import ecosim.api.SimulationEngine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  Runs the hillclimb, demarcation, and confidence interval programs inside
+ *  of the JVM.  This is a port of the ::hillclimb, ::demarcation, ::npopci,
+ *  ::omegaci, and ::sigmaci Fortran programs.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class JavaSimulationEngine implements SimulationEngine {
+
+    /**
+     *  The JavaSimulationEngine constructor.
+     *
+     *  @param mainVariables The MainVariables.
+     */
+    public JavaSimulationEngine (MainVariables mainVariables) {
+        this.mainVariables = mainVariables;
+    }
+
+    /**
+     *  Optimize the parameter values using the Nelder-Mead simplex method.
+     *  The likelihoods at every level of precision are kept for each set
+     *  of parameter values measured.  A new hillclimb starts from the
+     *  provided parameter values with none of the likelihoods measured
+     *  before.  When resuming a hillclimb of the same simulation, for
+     *  example at a lower precision after a higher one found a likelihood
+     *  of zero, the simplex starts from the most likely parameter values
+     *  measured at this precision, and reuses the likelihoods already
+     *  measured.
+     *
+     *  @param input The input values for the simulation.
+     *  @param parameterSet The initial parameter values.
+     *  @param resume True to resume an earlier hillclimb of the same
+     *  simulation at a lower precision, false to start a new one.
+     *  @return The optimized parameter values and their likelihood.
+     */
+    public ParameterSet hillclimb (final SimulationInput input,
+        ParameterSet parameterSet, boolean resume) {
+        final LikelihoodCache cache = getLikelihoodCache (input, resume);
+        ParameterSet best = cache.getBest (input.getWhichavg ());
+        if (resume && best != null) parameterSet = best;
+        double omega = parameterSet.getOmega ();
+        double sigma = parameterSet.getSigma ();
+        long npop = parameterSet.getNpop ();
+        double yvalue = 0.0d;
+        if (omega > 0.0d && sigma > 0.0d) {
+            double[] params = { Math.log (omega), Math.log (sigma), npop };
+            double[] step = { params[0] / 2.0d, params[1] / 2.0d, npop / 2.0d };
+            NelderMead simplex = new NelderMead (
+                new NelderMead.Function () {
+                    public double evaluate (double[] params) {
+                        // Keep npop between 2 and nu.
+                        if (params[2] < 2.0d) params[2] = 2.0d;
+                        if (params[2] > input.getNu ()) {
+                            params[2] = input.getNu ();
+                        }
+                        return -1.0d * likelihood (
+                            expParameter (params[0]),
+                            expParameter (params[1]),
+                            nint (params[2]),
+                            input,
+                            cache
+                        );
+                    }
+                },
+                MAXF, STOPCR, NLOOP
+            );
+            yvalue = simplex.minimize (params, step);
+            omega = Math.exp (params[0]);
+            sigma = Math.exp (params[1]);
+            npop = nint (params[2]);
+        }
+        return new ParameterSet (npop, omega, sigma, -1.0d * yvalue);
+    }
+
+    /**
+     *  Find the most likely npop value, testing npop = 1 first and then
+     *  every step value up to the provided npop.
+     *
+     *  @param input The input values for the simulation.
+     *  @param parameterSet The omega and sigma values to use, and the
+     *  largest npop value to test.
+     *  @param step The step between tested npop values.
+     *  @return The likelihood of npop = 1 and the most likely npop value.
+     */
+    public ParameterSet[] demarcation (SimulationInput input,
+        ParameterSet parameterSet, int step) {
+        double omega = parameterSet.getOmega ();
+        double sigma = parameterSet.getSigma ();
+        long npop = parameterSet.getNpop ();
+        long bestnpop = npop;
+        double bestlikelihood = 0.0d;
+        double likelihoodone = 0.0d;
+        // The number of replicates run, and the number that would have
+        // been run without stopping early.
+        long replicates = 0L;
+        long planned = 0L;
+        if (omega > MainVariables.EPSILON && sigma > MainVariables.EPSILON) {
+            likelihoodone = likelihood (omega, sigma, 1L, input);
+            replicates += input.getNrep ();
+            planned += input.getNrep ();
+            if (likelihoodone > MainVariables.EPSILON) {
+                bestnpop = 1L;
+                bestlikelihood = likelihoodone;
+                for (long tested = step + 1; tested <= npop; tested += step) {
+                    // Stop the replicates early once the likelihood can
+                    // not pass the likelihood ratio test against the best.
+                    SequentialTest test = new SequentialTest (
+                        input.getWhichavg (),
+                        bestlikelihood * Math.exp (RATIO / 2.0d)
+                    );
+                    double likelihood = likelihood (
+                        omega, sigma, tested, input, test
+                    );
+                    replicates += test.getReplicates ();
+                    planned += input.getNrep ();
+                    if (test.isBelow ()) continue;
+                    if (likelihood < MainVariables.EPSILON) continue;
+                    double ratio = -2.0d * Math.log (
+                        bestlikelihood / likelihood
+                    );
+                    if (likelihood > bestlikelihood && ratio > RATIO) {
+                        bestnpop = tested;
+                        bestlikelihood = likelihood;
+                    }
+                }
+            }
+        }
+        // Display the number of replicates run if debugging.
+        if (mainVariables.getDebug ()) {
+            System.out.println (String.format (
+                "Demarcation: %d of %d replicates run for npop <= %d.",
+                replicates, planned, npop
+            ));
+        }
+        return new ParameterSet[] {
+            new ParameterSet (1L, omega, sigma, likelihoodone),
+            new ParameterSet (bestnpop, omega, sigma, bestlikelihood)
+        };
+    }
+
+    /**
+     *  Find the confidence interval of npop, stepping away from the
+     *  solution until the likelihood ratio test fails.  The lower and upper
+     *  bounds are searched for at the same time.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution.
+     *  @param step The step between tested npop values.
+     *  @return The lower and upper bounds.
+     */
+    public ParameterSet[] npopConfidenceInterval (
+        final SimulationInput input, final ParameterSet solution,
+        final int step) {
+        return searchBounds (new BoundSearch () {
+            public ParameterSet search (boolean upper,
+                SplittableRandom random) {
+                return npopBound (input, solution, step, upper, random);
+            }
+        });
+    }
+
+    /**
+     *  Find the confidence interval of omega, multiplying and dividing the
+     *  solution by the step factor until the likelihood ratio test fails.
+     *  The lower and upper bounds are searched for at the same time.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution.
+     *  @param step The factor between tested omega values.
+     *  @return The lower and upper bounds.
+     */
+    public ParameterSet[] omegaConfidenceInterval (
+        final SimulationInput input, final ParameterSet solution,
+        final double step) {
+        return searchBounds (new BoundSearch () {
+            public ParameterSet search (boolean upper,
+                SplittableRandom random) {
+                return omegaBound (input, solution, step, upper, random);
+            }
+        });
+    }
+
+    /**
+     *  Find the confidence interval of sigma, multiplying and dividing the
+     *  solution by the step factor until the likelihood ratio test fails.
+     *  The upper bound is capped at 100.  The lower and upper bounds are
+     *  searched for at the same time.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution.
+     *  @param step The factor between tested sigma values.
+     *  @return The lower and upper bounds.
+     */
+    public ParameterSet[] sigmaConfidenceInterval (
+        final SimulationInput input, final ParameterSet solution,
+        final double step) {
+        return searchBounds (new BoundSearch () {
+            public ParameterSet search (boolean upper,
+                SplittableRandom random) {
+                return sigmaBound (input, solution, step, upper, random);
+            }
+        });
+    }
+
+    /**
+     *  Calculate the likelihood of a set of parameter values.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @param input The input values for the simulation.
+     *  @return The likelihood.
+     */
+    public double likelihood (double omega, double sigma, long npop,
+        SimulationInput input) {
+        double[] avgsuccess = getFredMethod ().runFredProgram (
+            omega, sigma, npop, input
+        );
+        return avgsuccess[input.getWhichavg () - 1];
+    }
+
+    /**
+     *  Calculate the likelihood of a set of parameter values using the
+     *  provided stream of random numbers.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @param input The input values for the simulation.
+     *  @param random The stream of random numbers to use.
+     *  @return The likelihood.
+     */
+    private double likelihood (double omega, double sigma, long npop,
+        SimulationInput input, SplittableRandom random) {
+        double[] avgsuccess = getFredMethod ().runFredProgram (
+            omega, sigma, npop, input, random
+        );
+        return avgsuccess[input.getWhichavg () - 1];
+    }
+
+    /**
+     *  Calculate the likelihood of a set of parameter values, using the
+     *  likelihoods already measured when possible.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @param input The input values for the simulation.
+     *  @param cache The likelihoods measured for the simulation.
+     *  @return The likelihood.
+     */
+    private double likelihood (double omega, double sigma, long npop,
+        SimulationInput input, LikelihoodCache cache) {
+        double[] avgsuccess = cache.get (omega, sigma, npop);
+        if (avgsuccess == null) {
+            avgsuccess = getFredMethod ().runFredProgram (
+                omega, sigma, npop, input
+            );
+            cache.put (omega, sigma, npop, avgsuccess);
+        }
+        return avgsuccess[input.getWhichavg () - 1];
+    }
+
+    /**
+     *  Calculate the likelihood of a set of parameter values, stopping the
+     *  replicates early once the sequential test is settled.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @param input The input values for the simulation.
+     *  @param test The sequential test used to stop early.
+     *  @return The likelihood, measured with the replicates run.
+     */
+    private double likelihood (double omega, double sigma, long npop,
+        SimulationInput input, SequentialTest test) {
+        double[] avgsuccess = getFredMethod ().runFredProgram (
+            omega, sigma, npop, input, test
+        );
+        return avgsuccess[input.getWhichavg () - 1];
+    }
+
+    /**
+     *  Stop the threads used to run replicates and to search for the
+     *  bounds of the confidence intervals.
+     */
+    public synchronized void shutdown () {
+        if (fredMethod != null) {
+            fredMethod.shutdown ();
+            fredMethod = null;
+        }
+        if (executor != null) {
+            executor.shutdown ();
+            executor = null;
+        }
+    }
+
+    /**
+     *  Search for one bound of the npop confidence interval.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution.
+     *  @param step The step between tested npop values.
+     *  @param upper True to search for the upper bound, false for the lower.
+     *  @param random The stream of random numbers to use.
+     *  @return The bound.
+     */
+    private ParameterSet npopBound (final SimulationInput input,
+        final ParameterSet solution, int step, boolean upper,
+        final SplittableRandom random) {
+        if (solution.getOmega () <= 0.0d || solution.getSigma () <= 0.0d) {
+            return solution;
+        }
+        final long direction = upper ? step : -step;
+        double[] params = {
+            Math.log (solution.getOmega ()), Math.log (solution.getSigma ())
+        };
+        // Stay within the range of npop values.
+        int lastPosition = BoundProfile.lastPosition (
+            solution.getNpop (), upper ? input.getNu () : 1L, direction
+        );
+        BoundProfile profile = new BoundProfile (
+            params,
+            new double[] { stepSize (params[0]), stepSize (params[1]) },
+            new double[] { MINIMUM_STEP, MINIMUM_STEP },
+            lastPosition
+        ) {
+            public ParameterSet evaluate (int position) {
+                final long npop = solution.getNpop () + direction * position;
+                double yvalue = minimize (new NelderMead.Function () {
+                    public double evaluate (double[] params) {
+                        return -1.0d * likelihood (
+                            expParameter (params[0]),
+                            expParameter (params[1]),
+                            npop,
+                            input,
+                            random
+                        );
+                    }
+                });
+                return new ParameterSet (
+                    npop, Math.exp (found[0]), Math.exp (found[1]),
+                    -1.0d * yvalue
+                );
+            }
+        };
+        return profile.search (solution);
+    }
+
+    /**
+     *  Search for one bound of the omega confidence interval.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution.
+     *  @param step The factor between tested omega values.
+     *  @param upper True to search for the upper bound, false for the lower.
+     *  @param random The stream of random numbers to use.
+     *  @return The bound.
+     */
+    private ParameterSet omegaBound (final SimulationInput input,
+        final ParameterSet solution, double step, boolean upper,
+        final SplittableRandom random) {
+        if (solution.getSigma () <= 0.0d) return solution;
+        final double xfactor = upper ?
+            stepFactor (step) : 1.0d / stepFactor (step);
+        long npop = solution.getNpop ();
+        double[] params = { Math.log (solution.getSigma ()), npop };
+        BoundProfile profile = new BoundProfile (
+            params,
+            new double[] { stepSize (params[0]), npop / 2.0d },
+            new double[] { MINIMUM_STEP, MINIMUM_NPOP_STEP },
+            BoundProfile.MAXIMUM_POSITION
+        ) {
+            public ParameterSet evaluate (int position) {
+                final double omega = solution.getOmega () *
+                    Math.pow (xfactor, position);
+                double yvalue = minimize (new NelderMead.Function () {
+                    public double evaluate (double[] params) {
+                        return -1.0d * likelihood (
+                            omega,
+                            expParameter (params[0]),
+                            nint (params[1]),
+                            input,
+                            random
+                        );
+                    }
+                });
+                return new ParameterSet (
+                    nint (found[1]), omega, Math.exp (found[0]),
+                    -1.0d * yvalue
+                );
+            }
+        };
+        return profile.search (solution);
+    }
+
+    /**
+     *  Search for one bound of the sigma confidence interval.  The upper
+     *  bound is capped at 100.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution.
+     *  @param step The factor between tested sigma values.
+     *  @param upper True to search for the upper bound, false for the lower.
+     *  @param random The stream of random numbers to use.
+     *  @return The bound.
+     */
+    private ParameterSet sigmaBound (final SimulationInput input,
+        final ParameterSet solution, double step, final boolean upper,
+        final SplittableRandom random) {
+        if (solution.getOmega () <= 0.0d) return solution;
+        final double xfactor = upper ?
+            stepFactor (step) : 1.0d / stepFactor (step);
+        long npop = solution.getNpop ();
+        double[] params = { Math.log (solution.getOmega ()), npop };
+        // The search stops at the first sigma past the cap.
+        int lastPosition = BoundProfile.MAXIMUM_POSITION;
+        if (upper) {
+            lastPosition = BoundProfile.lastPosition (
+                solution.getSigma (), MAXIMUM_SIGMA, xfactor
+            );
+        }
+        BoundProfile profile = new BoundProfile (
+            params,
+            new double[] { stepSize (params[0]), npop / 2.0d },
+            new double[] { MINIMUM_STEP, MINIMUM_NPOP_STEP },
+            lastPosition
+        ) {
+            public ParameterSet evaluate (int position) {
+                final double sigma = solution.getSigma () *
+                    Math.pow (xfactor, position);
+                double yvalue = minimize (new NelderMead.Function () {
+                    public double evaluate (double[] params) {
+                        return -1.0d * likelihood (
+                            expParameter (params[0]),
+                            sigma,
+                            nint (params[1]),
+                            input,
+                            random
+                        );
+                    }
+                });
+                return new ParameterSet (
+                    nint (found[1]), Math.exp (found[0]), sigma,
+                    -1.0d * yvalue
+                );
+            }
+        };
+        ParameterSet bound = profile.search (solution);
+        if (bound.getSigma () > MAXIMUM_SIGMA) {
+            bound = new ParameterSet (
+                bound.getNpop (), bound.getOmega (), MAXIMUM_SIGMA,
+                bound.getLikelihood ()
+            );
+        }
+        return bound;
+    }
+
+    /**
+     *  Search for the lower and upper bounds of a confidence interval at
+     *  the same time, each with its own stream of random numbers.  The
+     *  upper bound is searched for on another thread while the lower bound
+     *  is searched for on this one.
+     *
+     *  @param search The search for a bound.
+     *  @return The lower and upper bounds, or null if the search failed.
+     */
+    private ParameterSet[] searchBounds (final BoundSearch search) {
+        FredMethod fred = getFredMethod ();
+        SplittableRandom lowerRandom = fred.split ();
+        final SplittableRandom upperRandom = fred.split ();
+        Future<ParameterSet> upper = getExecutor ().submit (
+            new Callable<ParameterSet> () {
+                public ParameterSet call () {
+                    return search.search (true, upperRandom);
+                }
+            }
+        );
+        ParameterSet lower = search.search (false, lowerRandom);
+        try {
+            return new ParameterSet[] { lower, upper.get () };
+        }
+        catch (InterruptedException e) {
+            upper.cancel (true);
+            Thread.currentThread ().interrupt ();
+            return null;
+        }
+        catch (ExecutionException e) {
+            e.printStackTrace ();
+            return null;
+        }
+    }
+
+    /**
+     *  Get the executor used to search for the upper bounds of the
+     *  confidence intervals.
+     *
+     *  @return The executor.
+     */
+    private synchronized ExecutorService getExecutor () {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool (new ThreadFactory () {
+                public Thread newThread (Runnable runnable) {
+                    Thread thread = new Thread (runnable, "BoundSearch");
+                    thread.setDaemon (true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     *  Get the FredMethod, creating a new one if the number of threads has
+     *  changed.  The threads of the old FredMethod are stopped.
+     *
+     *  @return The FredMethod.
+     */
+    private synchronized FredMethod getFredMethod () {
+        int numberThreads = mainVariables.getNumberThreads ();
+        if (fredMethod == null ||
+            fredMethod.getNumberThreads () != numberThreads) {
+            if (fredMethod != null) fredMethod.shutdown ();
+            fredMethod = new FredMethod (numberThreads);
+        }
+        return fredMethod;
+    }
+
+    /**
+     *  Get the likelihoods measured for a simulation, starting a new cache
+     *  unless resuming a hillclimb of the same simulation.
+     *
+     *  @param input The input values for the simulation.
+     *  @param resume True to keep the likelihoods already measured.
+     *  @return The likelihoods measured for the simulation.
+     */
+    private synchronized LikelihoodCache getLikelihoodCache (
+        SimulationInput input, boolean resume) {
+        if (! resume || likelihoodCache == null ||
+            ! likelihoodCache.isFor (input)) {
+            likelihoodCache = new LikelihoodCache (input);
+        }
+        return likelihoodCache;
+    }
+
+    /**
+     *  Convert a parameter from log space, capping it at the largest
+     *  supported value.
+     *
+     *  @param param The log of the parameter.
+     *  @return The parameter.
+     */
+    private double expParameter (double param) {
+        if (param < MAXIMUM_LOG) {
+            return Math.exp (param);
+        }
+        return MAXIMUM_LOG;
+    }
+
+    /**
+     *  Calculate the initial simplex step size for a parameter in log space.
+     *
+     *  @param param The log of the parameter.
+     *  @return The step size.
+     */
+    private double stepSize (double param) {
+        if (param < 0.3d && param > -0.3d) {
+            return 0.15d;
+        }
+        return param / 2.0d;
+    }
+
+    /**
+     *  Convert the step provided for the omega and sigma confidence
+     *  intervals into a factor of at least 1.05.
+     *
+     *  @param step The step.
+     *  @return The factor.
+     */
+    private double stepFactor (double step) {
+        double xfactor = step;
+        if (xfactor < 1.0d) xfactor = 1.0d / xfactor;
+        if (xfactor < 1.05d) xfactor = 1.05d;
+        return xfactor;
+    }
+
+    /**
+     *  Round to the nearest integer, with halves rounded away from zero.
+     *
+     *  @param value The value to round.
+     *  @return The nearest integer.
+     */
+    private static long nint (double value) {
+        if (value < 0.0d) {
+            return - Math.round (- value);
+        }
+        return Math.round (value);
+    }
+
+    /**
+     *  The maximum number of function evaluations for the simplex method.
+     */
+    static final int MAXF = 100;
+
+    /**
+     *  The stopping criterion for the simplex method.
+     */
+    static final double STOPCR = 0.1d;
+
+    /**
+     *  The number of iterations between convergence tests.
+     */
+    static final int NLOOP = 8;
+
+    /**
+     *  The smallest step sizes used to warm start the simplex method, for
+     *  the log of omega or sigma, and for npop.
+     */
+    private static final double MINIMUM_STEP = 0.15d;
+    private static final double MINIMUM_NPOP_STEP = 1.0d;
+
+    /**
+     *  The critical value of the likelihood ratio test (chi-square, one
+     *  degree of freedom, 95%).
+     */
+    static final double RATIO = 3.84d;
+
+    /**
+     *  The upper limit of the sigma confidence interval.
+     */
+    private static final double MAXIMUM_SIGMA = 100.0d;
+
+    /**
+     *  The log of the largest double value.
+     */
+    private static final double MAXIMUM_LOG = Math.log (Double.MAX_VALUE);
+
+    private MainVariables mainVariables;
+    private FredMethod fredMethod;
+    private ExecutorService executor;
+    private LikelihoodCache likelihoodCache;
+
+    /**
+     *  The search for one bound of a confidence interval.
+     */
+    private interface BoundSearch {
+
+        /**
+         *  Search for one bound of a confidence interval.
+         *
+         *  @param upper True to search for the upper bound, false for the
+         *  lower.
+         *  @param random The stream of random numbers to use.
+         *  @return The bound.
+         */
+        public ParameterSet search (boolean upper, SplittableRandom random);
+
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package ecosim;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  A cache of the likelihoods measured for a simulation, keyed by the
+ *  omega, sigma, and npop values.  The average success at all six levels
+ *  of precision is kept for each set of parameter values.  The cache can
+ *  then be used at any precision, so lowering the precision after a
+ *  hillclimb with zero likelihood reuses the evaluations already made.
+ *
+ *  The cache only holds the likelihoods of one simulation: the bin
+ *  profile, the number and length of the sequences, and the number of
+ *  replicates.  The most recently used likelihoods are kept.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class LikelihoodCache {
+
+    /**
+     *  The default number of likelihoods to keep.
+     */
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    /**
+     *  Create a cache with the default capacity.
+     *
+     *  @param input The input values of the simulation.
+     */
+    public LikelihoodCache (SimulationInput input) {
+        this (input, DEFAULT_CAPACITY);
+    }
+
+    /**
+     *  Create a cache.
+     *
+     *  @param input The input values of the simulation.
+     *  @param capacity The number of likelihoods to keep.
+     */
+    public LikelihoodCache (SimulationInput input, int capacity) {
+        this.capacity = Math.max (1, capacity);
+        simulation = getSimulationKey (input);
+        likelihoods = new LinkedHashMap<String, Likelihood> (
+            16, 0.75f, true
+        ) {
+            protected boolean removeEldestEntry (
+                Map.Entry<String, Likelihood> eldest) {
+                return size () > LikelihoodCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     *  Returns true if this cache holds the likelihoods of the simulation
+     *  run with the provided input values, at any precision.
+     *
+     *  @param input The input values of the simulation.
+     *  @return True if the cache is for the simulation.
+     */
+    public boolean isFor (SimulationInput input) {
+        return simulation.equals (getSimulationKey (input));
+    }
+
+    /**
+     *  Get the average success at each level of precision measured for a
+     *  set of parameter values.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @return The average success at each level of precision, or null if
+     *  the parameter values have not been measured.
+     */
+    public synchronized double[] get (double omega, double sigma,
+        long npop) {
+        Likelihood likelihood = likelihoods.get (getKey (omega, sigma, npop));
+        if (likelihood == null) {
+            misses ++;
+            return null;
+        }
+        hits ++;
+        return likelihood.avgsuccess;
+    }
+
+    /**
+     *  Store the average success at each level of precision measured for a
+     *  set of parameter values.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @param avgsuccess The average success at each level of precision.
+     */
+    public synchronized void put (double omega, double sigma, long npop,
+        double[] avgsuccess) {
+        likelihoods.put (
+            getKey (omega, sigma, npop),
+            new Likelihood (omega, sigma, npop, avgsuccess)
+        );
+    }
+
+    /**
+     *  Get the most likely parameter values measured so far at a level of
+     *  precision.
+     *
+     *  @param whichavg The level of precision, from 1 to 6.
+     *  @return The most likely parameter values and their likelihood, or
+     *  null if no parameter values have a likelihood above zero.
+     */
+    public synchronized ParameterSet getBest (int whichavg) {
+        Likelihood best = null;
+        for (Likelihood likelihood: likelihoods.values ()) {
+            double value = likelihood.avgsuccess[whichavg - 1];
+            if (value < MainVariables.EPSILON) continue;
+            if (best == null || value > best.avgsuccess[whichavg - 1]) {
+                best = likelihood;
+            }
+        }
+        if (best == null) return null;
+        return new ParameterSet (
+            best.npop, best.omega, best.sigma, best.avgsuccess[whichavg - 1]
+        );
+    }
+
+    /**
+     *  Get the number of likelihoods in the cache.
+     *
+     *  @return The number of likelihoods.
+     */
+    public synchronized int size () {
+        return likelihoods.size ();
+    }
+
+    /**
+     *  Get the number of requests found in the cache.
+     *
+     *  @return The number of hits.
+     */
+    public synchronized long getHits () {
+        return hits;
+    }
+
+    /**
+     *  Get the number of requests not found in the cache.
+     *
+     *  @return The number of misses.
+     */
+    public synchronized long getMisses () {
+        return misses;
+    }
+
+    /**
+     *  Get the key of a simulation, from everything that the simulation
+     *  reads except for the level of precision.
+     *
+     *  @param input The input values of the simulation.
+     *  @return The key.
+     */
+    private static String getSimulationKey (SimulationInput input) {
+        StringBuilder key = new StringBuilder ();
+        float[] crit = input.getCrit ();
+        int[] realdata = input.getRealdata ();
+        key.append (input.getNumcrit ());
+        for (int i = 0; i < input.getNumcrit (); i ++) {
+            key.append (' ');
+            key.append (Float.floatToIntBits (crit[i]));
+            key.append (':');
+            key.append (realdata[i]);
+        }
+        key.append (String.format (
+            " %d %d %d", input.getNu (), input.getLength (), input.getNrep ()
+        ));
+        return key.toString ();
+    }
+
+    /**
+     *  Get the key of a set of parameter values.
+     *
+     *  @param omega The omega value.
+     *  @param sigma The sigma value.
+     *  @param npop The npop value.
+     *  @return The key.
+     */
+    private static String getKey (double omega, double sigma, long npop) {
+        return Double.doubleToLongBits (omega) + " " +
+            Double.doubleToLongBits (sigma) + " " + npop;
+    }
+
+    /**
+     *  The average success measured for a set of parameter values.
+     */
+    private static class Likelihood {
+
+        public Likelihood (double omega, double sigma, long npop,
+            double[] avgsuccess) {
+            this.omega = omega;
+            this.sigma = sigma;
+            this.npop = npop;
+            this.avgsuccess = avgsuccess;
+        }
+
+        private double omega;
+        private double sigma;
+        private long npop;
+        private double[] avgsuccess;
+
+    }
+
+    private int capacity;
+    private String simulation;
+    private LinkedHashMap<String, Likelihood> likelihoods;
+    private long hits;
+    private long misses;
+
+}
@@ -22,12 +22,25 @@
 
 package ecosim;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.Observable;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
  *  The logger class is used to display text to the user.  This class utilizes
  *  the observer pattern to update listeners when the log has changed.
  *
+ *  The text is stored in a list of chunks, and only the most recent text up
+ *  to the retention limit is kept in memory.  The full log can be streamed
+ *  to a file instead.  Observers are notified of the new text in batches,
+ *  at most once per notification interval, rather than once per append.
+ *
  *  @author Jason M. Wood
  *  @copyright GNU General Public License
  */
@@ -37,7 +50,25 @@ public class Logger extends Observable {
      *  Logger constructor.
      */
     public Logger () {
-        log = "";
+        this (DEFAULT_RETENTION, DEFAULT_INTERVAL);
+    }
+
+    /**
+     *  Logger constructor.
+     *
+     *  @param retention The number of characters to keep in memory.
+     *  @param interval The number of milliseconds to collect text before
+     *  notifying the observers, or zero to notify them on every append.
+     */
+    public Logger (int retention, long interval) {
+        this.retention = retention;
+        this.interval = interval;
+        chunks = new ArrayDeque<String> ();
+        current = new StringBuilder ();
+        pending = new StringBuilder ();
+        flushLock = new Object ();
+        length = 0;
+        scheduled = false;
     }
 
     /**
@@ -46,12 +77,54 @@ public class Logger extends Observable {
      *  @param str The text to append to the log.
      */
    public void append (String str) {
-        // Append the text to the log.
-        log += str;
-        // Mark this log as changed.
-        setChanged ();
-        // Notify observers of the change.
-        notifyObservers (str);
+        synchronized (this) {
+            // Append the text to the log.
+            current.append (str);
+            length += str.length ();
+            if (current.length () >= CHUNK_SIZE) {
+                chunks.addLast (current.toString ());
+                current.setLength (0);
+            }
+            // Forget the oldest text that isn't needed to keep the
+            // retention limit.
+            while (! chunks.isEmpty () &&
+                length - chunks.peekFirst ().length () >= retention) {
+                length -= chunks.removeFirst ().length ();
+            }
+            // Stream the text to the log file.
+            if (writer != null) {
+                try {
+                    writer.write (str);
+                }
+                catch (IOException e) {
+                    System.out.println ("Error writing the log file: " + e);
+                    writer = null;
+                }
+            }
+            // Collect the text for the observers.
+            pending.append (str);
+            if (interval > 0 && ! scheduled) {
+                if (timer == null) {
+                    timer = new Timer ("Logger", true);
+                    // Don't lose the last batch when the program exits.
+                    shutdownHook = new Thread () {
+                        public void run () {
+                            flush ();
+                        }
+                    };
+                    Runtime.getRuntime ().addShutdownHook (shutdownHook);
+                }
+                timer.schedule (new TimerTask () {
+                    public void run () {
+                        flush ();
+                    }
+                }, interval);
+                scheduled = true;
+            }
+        }
+        if (interval <= 0) {
+            flush ();
+        }
     }
 
     /**
@@ -70,23 +143,146 @@ public class Logger extends Observable {
         append (System.getProperty ("line.separator"));
     }
 
+    /**
+     *  Notify the observers of the text appended since they were last
+     *  notified.
+     */
+    public void flush () {
+        // Keep the batches in order.
+        synchronized (flushLock) {
+            String batch;
+            synchronized (this) {
+                scheduled = false;
+                if (writer != null) {
+                    try {
+                        writer.flush ();
+                    }
+                    catch (IOException e) {
+                        System.out.println (
+                            "Error writing the log file: " + e
+                        );
+                        writer = null;
+                    }
+                }
+                if (pending.length () == 0) return;
+                batch = pending.toString ();
+                pending.setLength (0);
+            }
+            // Mark this log as changed.
+            setChanged ();
+            // Notify observers of the change.
+            notifyObservers (batch);
+        }
+    }
+
+    /**
+     *  Stream the full log to a file from now on.  The text already in
+     *  memory is written to the file first.
+     *
+     *  @param file The log file.
+     */
+    public synchronized void setFile (File file) throws IOException {
+        if (writer != null) writer.close ();
+        writer = new BufferedWriter (new FileWriter (file));
+        writeTo (writer);
+    }
+
+    /**
+     *  Flush the observers, and close the log file.
+     */
+    public void close () {
+        flush ();
+        synchronized (this) {
+            if (timer != null) {
+                timer.cancel ();
+                timer = null;
+                try {
+                    Runtime.getRuntime ().removeShutdownHook (shutdownHook);
+                }
+                catch (IllegalStateException e) {
+                    // The program is already exiting.
+                }
+                shutdownHook = null;
+            }
+            if (writer != null) {
+                try {
+                    writer.close ();
+                }
+                catch (IOException e) {
+                    System.out.println ("Error closing the log file: " + e);
+                }
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     *  Return the number of characters kept in memory.
+     *
+     *  @return The retention limit.
+     */
+    public int getRetention () {
+        return retention;
+    }
+
+    /**
+     *  Write the text currently in the log.
+     *
+     *  @param out The Writer to write the log to.
+     */
+    public synchronized void writeTo (Writer out) throws IOException {
+        for (String chunk: chunks) {
+            out.write (chunk);
+        }
+        out.write (current.toString ());
+    }
 
     /**
      *  Return the length in number of characters in the log.
      *
      *  @return the length of the log.
      */
-    public int length () {
-        return log.length ();
+    public synchronized int length () {
+        return length;
     }
 
     /**
      *  Return the text currently in the log.
      */
-    public String toString () {
-        return log;
+    public synchronized String toString () {
+        StringBuilder log = new StringBuilder (length);
+        for (String chunk: chunks) {
+            log.append (chunk);
+        }
+        log.append (current);
+        return log.toString ();
     }
 
-    private String log;
+    /**
+     *  The default number of characters kept in memory.
+     */
+    public static final int DEFAULT_RETENTION = 1 << 20;
+
+    /**
+     *  The default number of milliseconds between notifications.
+     */
+    public static final long DEFAULT_INTERVAL = 100L;
+
+    /**
+     *  The number of characters in each chunk of the log.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    private int retention;
+    private long interval;
+    private ArrayDeque<String> chunks;
+    private StringBuilder current;
+    private StringBuilder pending;
+    private Object flushLock;
+    private int length;
+    private boolean scheduled;
+    private Timer timer;
+    private Thread shutdownHook;
+    private Writer writer;
 
 }
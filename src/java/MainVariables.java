@@ -176,6 +176,15 @@ public class MainVariables {
         return numThreads;
     }
 
+    /**
+     *  Returns the simulation engine to use.
+     *
+     *  @return The simulation engine, either ENGINE_JAVA or ENGINE_NATIVE.
+     */
+    public Integer getEngine () {
+        return engine;
+    }
+
     /**
      *  Return the current debug status.
      *
@@ -229,6 +238,16 @@ public class MainVariables {
         this.numThreads = numThreads;
     }
 
+    /**
+     *  Set the simulation engine to use.
+     *
+     *  @param engine The simulation engine, either ENGINE_JAVA or
+     *  ENGINE_NATIVE.
+     */
+    public void setEngine (Integer engine) {
+        this.engine = engine;
+    }
+
     /**
      *  Set the current debug status.
      *
@@ -326,6 +345,16 @@ public class MainVariables {
      */
     public static final Double EPSILON = 1.0e-6;
 
+    /**
+     *  Run the simulation inside of the JVM.
+     */
+    public static final int ENGINE_JAVA = 1601;
+
+    /**
+     *  Run the simulation using the native Fortran programs.
+     */
+    public static final int ENGINE_NATIVE = 1602;
+
     /**
      *  The default criterion value for when auto is selected.
      *
@@ -345,6 +374,13 @@ public class MainVariables {
      */
     private Integer numThreads = Runtime.getRuntime ().availableProcessors ();
 
+    /**
+     *  The default simulation engine runs the native Fortran programs,
+     *  until the results of the engine inside of the JVM have been shown
+     *  to agree with them.
+     */
+    private Integer engine = ENGINE_NATIVE;
+
     /**
      *  The Ecotype Simulation version number.
      */
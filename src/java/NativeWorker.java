@@ -0,0 +1,206 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ *  A long-lived Fortran program started in worker mode.
+ *
+ *  A binary worker exchanges the binary requests and responses of
+ *  SimulationCodec over the standard input and output of the program.
+ *  Each response is framed by its own header and record count.
+ *
+ *  A text worker, used for debugging, is sent each request in the format
+ *  of the input file.  Each line of the response is read from the standard
+ *  output of the program, framed by a leading '#' and terminated by a
+ *  '#end' line.  Any other output of the program is passed along as
+ *  debugging output.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+class NativeWorker {
+
+    /**
+     *  Start a worker.
+     *
+     *  @param command A String array containing the path and filename of the
+     *  application, and any arguments.
+     *  @param errorStream The IO Stream to print error messages to, or null
+     *  to discard them.
+     *  @param errorMessage The title for error messages.
+     *  @param outputStream The IO Stream to print standard messages to, or
+     *  null to discard them.
+     *  @param outputMessage The title for the output messages.
+     *  @param binary True to exchange binary requests and responses, false
+     *  to exchange text.
+     */
+    public NativeWorker (String[] command, PrintStream errorStream,
+        String errorMessage, PrintStream outputStream, String outputMessage,
+        boolean binary) throws IOException {
+        if (errorStream == null) {
+            errorStream = new PrintStream (new OutputStream () {
+                public void write (int b) {
+                }
+            });
+        }
+        this.outputStream = outputStream;
+        this.outputMessage = outputMessage;
+        ProcessBuilder pb = new ProcessBuilder (command);
+        process = pb.start ();
+        this.binary = binary;
+        if (binary) {
+            binaryInput = new BufferedOutputStream (process.getOutputStream ());
+            binaryOutput = new BufferedInputStream (process.getInputStream ());
+        }
+        else {
+            input = new BufferedWriter (
+                new OutputStreamWriter (process.getOutputStream ())
+            );
+            output = new BufferedReader (
+                new InputStreamReader (process.getInputStream ())
+            );
+        }
+        // Grab error messages.
+        StreamGobbler errorGobbler = new StreamGobbler (
+            process.getErrorStream (), errorStream, errorMessage
+        );
+        errorGobbler.setDaemon (true);
+        errorGobbler.start ();
+        requests = 0;
+    }
+
+    /**
+     *  Send a binary request to the worker and wait for the response.
+     *
+     *  @param request The request.
+     *  @return The records of the response.
+     */
+    public synchronized ParameterSet[] request (SimulationCodec request)
+        throws IOException {
+        ByteBuffer buffer = request.encode ();
+        binaryInput.write (
+            buffer.array (), buffer.arrayOffset () + buffer.position (),
+            buffer.remaining ()
+        );
+        binaryInput.flush ();
+        ParameterSet[] response = request.readResponse (binaryOutput);
+        requests ++;
+        return response;
+    }
+
+    /**
+     *  Send a text request to the worker and wait for the response.
+     *
+     *  @param request The request, in the format of the input file.
+     *  @return The lines of the response, in the format of the output file.
+     */
+    public synchronized ArrayList<String> request (String request)
+        throws IOException {
+        input.write (request);
+        if (! request.endsWith ("\n")) {
+            input.newLine ();
+        }
+        input.flush ();
+        ArrayList<String> response = new ArrayList<String> ();
+        String line;
+        while ((line = output.readLine ()) != null) {
+            String trimmed = line.trim ();
+            if (trimmed.equals (END)) {
+                requests ++;
+                return response;
+            }
+            if (trimmed.startsWith (FRAME)) {
+                response.add (trimmed.substring (FRAME.length ()).trim ());
+            }
+            else if (outputStream != null) {
+                // Pass along any debugging output.
+                if (outputMessage.length () > 0) {
+                    outputStream.print (outputMessage + " ");
+                }
+                outputStream.println (line);
+            }
+        }
+        throw new IOException ("The worker exited before responding.");
+    }
+
+    /**
+     *  Get the number of requests answered by this worker.
+     *
+     *  @return The number of requests answered.
+     */
+    public int getRequests () {
+        return requests;
+    }
+
+    /**
+     *  Stop the worker.
+     */
+    public void close () {
+        try {
+            if (binary) {
+                binaryInput.close ();
+            }
+            else {
+                input.close ();
+            }
+        }
+        catch (IOException e) {
+            // The worker has already exited.
+        }
+        process.destroy ();
+    }
+
+    /**
+     *  The marker at the start of each line of a response.
+     */
+    private static final String FRAME = "#";
+
+    /**
+     *  The line marking the end of a response.
+     */
+    private static final String END = "#end";
+
+    private Process process;
+    private boolean binary;
+    private OutputStream binaryInput;
+    private InputStream binaryOutput;
+    private BufferedWriter input;
+    private BufferedReader output;
+    private PrintStream outputStream;
+    private String outputMessage;
+    private int requests;
+
+}
@@ -0,0 +1,346 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+/**
+ *  The Nelder-Mead Simplex Method, used to minimize a function.  This is a
+ *  port of the nelmead subroutine found in the ::simplexmethod Fortran
+ *  module, without the optional quadratic surface fitting.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class NelderMead {
+
+    /**
+     *  The function to be minimized.  The function is allowed to modify the
+     *  parameters it is given, for example to keep them within bounds.
+     */
+    public interface Function {
+        public double evaluate (double[] params);
+    }
+
+    /**
+     *  The NelderMead constructor.
+     *
+     *  @param function The function to be minimized.
+     *  @param maxf The maximum number of function evaluations.
+     *  @param stopcr The stopping criterion.
+     *  @param nloop The number of iterations between convergence tests.
+     */
+    public NelderMead (Function function, int maxf, double stopcr,
+        int nloop) {
+        this.function = function;
+        this.maxf = maxf;
+        this.stopcr = stopcr;
+        this.nloop = nloop;
+    }
+
+    /**
+     *  Minimize the function.
+     *
+     *  @param p The initial parameter values, replaced by the values found
+     *  at the minimum.
+     *  @param step The initial step sizes.  Parameters with a step size of
+     *  zero are held constant.
+     *  @return The value of the function at the minimum.
+     */
+    public double minimize (double[] p, double[] step) {
+        int nop = p.length;
+        neval = 0;
+        ifault = 0;
+        // Count the number of parameters that are allowed to vary.
+        boolean[] varies = new boolean[nop];
+        int nap = 0;
+        for (int i = 0; i < nop; i ++) {
+            varies[i] = step[i] < - ETA || step[i] > ETA;
+            if (varies[i]) nap ++;
+        }
+        spread = new double[nop];
+        if (nap == 0) {
+            neval ++;
+            return function.evaluate (p);
+        }
+        // Setup the initial simplex.
+        int np1 = nap + 1;
+        double[][] g = new double[np1][nop];
+        double[] h = new double[np1];
+        for (int j = 0; j < nop; j ++) {
+            g[0][j] = p[j];
+        }
+        int irow = 1;
+        for (int i = 0; i < nop; i ++) {
+            if (! varies[i]) continue;
+            for (int j = 0; j < nop; j ++) {
+                g[irow][j] = p[j];
+            }
+            g[irow][i] = p[i] + step[i];
+            irow ++;
+        }
+        for (int i = 0; i < np1; i ++) {
+            for (int j = 0; j < nop; j ++) {
+                p[j] = g[i][j];
+            }
+            h[i] = evaluate (p);
+        }
+        double[] pbar = new double[nop];
+        double[] pstar = new double[nop];
+        double[] pstst = new double[nop];
+        int loop = 0;
+        boolean converging = false;
+        double savemn = 0.0d;
+        while (true) {
+            loop ++;
+            // Find the highest and lowest values in the simplex.
+            int imax = 0;
+            int imin = 0;
+            double hmax = h[0];
+            double hmin = h[0];
+            for (int i = 1; i < np1; i ++) {
+                if (h[i] > hmax) {
+                    imax = i;
+                    hmax = h[i];
+                }
+                else if (h[i] < hmin) {
+                    imin = i;
+                    hmin = h[i];
+                }
+            }
+            // Find the centroid of the vertices other than the highest.
+            for (int j = 0; j < nop; j ++) {
+                pbar[j] = 0.0d;
+            }
+            for (int i = 0; i < np1; i ++) {
+                if (i == imax) continue;
+                for (int j = 0; j < nop; j ++) {
+                    pbar[j] += g[i][j];
+                }
+            }
+            for (int j = 0; j < nop; j ++) {
+                pbar[j] /= nap;
+            }
+            // Reflect the highest vertex through the centroid.
+            for (int j = 0; j < nop; j ++) {
+                pstar[j] = A * (pbar[j] - g[imax][j]) + pbar[j];
+            }
+            double hstar = evaluate (pstar);
+            if (hstar < hmin) {
+                // Try expanding the reflection.
+                for (int j = 0; j < nop; j ++) {
+                    pstst[j] = C * (pstar[j] - pbar[j]) + pbar[j];
+                }
+                double hstst = evaluate (pstst);
+                if (hstst < hmin) {
+                    replace (g[imax], pstst, varies);
+                    h[imax] = hstst;
+                }
+                else {
+                    // The Fortran code stores pstst here while keeping the
+                    // value of pstar; store the point that was measured.
+                    replace (g[imax], pstar, varies);
+                    h[imax] = hstar;
+                }
+            }
+            else {
+                boolean better = false;
+                for (int i = 0; i < np1; i ++) {
+                    if (i != imax && hstar < h[i]) better = true;
+                }
+                if (better) {
+                    replace (g[imax], pstar, varies);
+                    h[imax] = hstar;
+                }
+                else {
+                    if (hstar <= hmax) {
+                        replace (g[imax], pstar, varies);
+                        hmax = hstar;
+                        h[imax] = hstar;
+                    }
+                    // Contract the highest vertex towards the centroid.
+                    for (int j = 0; j < nop; j ++) {
+                        pstst[j] = B * g[imax][j] + (1.0d - B) * pbar[j];
+                    }
+                    double hstst = evaluate (pstst);
+                    if (hstst <= hmax) {
+                        replace (g[imax], pstst, varies);
+                        h[imax] = hstst;
+                    }
+                    else {
+                        // Shrink the simplex towards the lowest vertex.
+                        for (int i = 0; i < np1; i ++) {
+                            if (i == imin) continue;
+                            for (int j = 0; j < nop; j ++) {
+                                if (varies[j]) {
+                                    g[i][j] = (g[i][j] + g[imin][j]) * 0.5d;
+                                }
+                                p[j] = g[i][j];
+                            }
+                            h[i] = evaluate (p);
+                        }
+                    }
+                }
+            }
+            if (loop < nloop) continue;
+            // Test for convergence.
+            double hmean = 0.0d;
+            for (int i = 0; i < np1; i ++) {
+                hmean += h[i];
+            }
+            hmean /= np1;
+            double hstd = 0.0d;
+            for (int i = 0; i < np1; i ++) {
+                hstd += (h[i] - hmean) * (h[i] - hmean);
+            }
+            hstd = Math.sqrt (hstd / np1);
+            loop = 0;
+            if (hstd > stopcr && neval <= maxf) {
+                converging = false;
+                continue;
+            }
+            // Use the centroid of the simplex as the minimum.
+            for (int i = 0; i < nop; i ++) {
+                if (! varies[i]) continue;
+                p[i] = 0.0d;
+                for (int j = 0; j < np1; j ++) {
+                    p[i] += g[j][i];
+                }
+                p[i] /= np1;
+            }
+            double func = evaluate (p);
+            measureSpread (g);
+            if (neval > maxf) {
+                ifault = 1;
+                return func;
+            }
+            // Require the mean to be stable over two convergence tests.
+            if (converging && Math.abs (savemn - hmean) < stopcr) {
+                return func;
+            }
+            converging = true;
+            savemn = hmean;
+        }
+    }
+
+    /**
+     *  Get the number of function evaluations used by the last call to
+     *  minimize.
+     *
+     *  @return The number of function evaluations.
+     */
+    public int getEvaluations () {
+        return neval;
+    }
+
+    /**
+     *  Get the size of the final simplex of the last call to minimize
+     *  along each parameter, the distance between its lowest and highest
+     *  vertex.  This can be used as the step sizes of a later call
+     *  that starts near the same minimum.
+     *
+     *  @return The size of the final simplex along each parameter.
+     */
+    public double[] getSpread () {
+        return spread;
+    }
+
+    /**
+     *  Get the fault indicator of the last call to minimize.
+     *
+     *  @return 0 for no fault, 1 if the maximum number of function
+     *  evaluations was exceeded.
+     */
+    public int getFault () {
+        return ifault;
+    }
+
+    /**
+     *  Evaluate the function, counting the number of evaluations.
+     *
+     *  @param params The parameters to evaluate.
+     *  @return The value of the function.
+     */
+    private double evaluate (double[] params) {
+        neval ++;
+        return function.evaluate (params);
+    }
+
+    /**
+     *  Measure the size of the simplex along each parameter.
+     *
+     *  @param g The vertices of the simplex.
+     */
+    private void measureSpread (double[][] g) {
+        for (int j = 0; j < spread.length; j ++) {
+            double min = g[0][j];
+            double max = g[0][j];
+            for (int i = 1; i < g.length; i ++) {
+                min = Math.min (min, g[i][j]);
+                max = Math.max (max, g[i][j]);
+            }
+            spread[j] = max - min;
+        }
+    }
+
+    /**
+     *  Replace the parameters of a vertex that are allowed to vary.
+     *
+     *  @param vertex The vertex to modify.
+     *  @param values The new values.
+     *  @param varies True for each parameter that is allowed to vary.
+     */
+    private void replace (double[] vertex, double[] values,
+        boolean[] varies) {
+        for (int j = 0; j < vertex.length; j ++) {
+            if (varies[j]) vertex[j] = values[j];
+        }
+    }
+
+    /**
+     *  The reflection coefficient.
+     */
+    private static final double A = 1.0d;
+
+    /**
+     *  The contraction coefficient.
+     */
+    private static final double B = 0.5d;
+
+    /**
+     *  The expansion coefficient.
+     */
+    private static final double C = 2.0d;
+
+    /**
+     *  Step sizes smaller than this are treated as zero.
+     */
+    private static final double ETA = Math.ulp (1.0d);
+
+    private Function function;
+    private int maxf;
+    private double stopcr;
+    private int nloop;
+    private int neval;
+    private int ifault;
+    private double[] spread;
+
+}
@@ -22,32 +22,60 @@
 
 package ecosim;
 
+import ecosim.tree.CompactTree;
 import ecosim.tree.InvalidTreeException;
+import ecosim.tree.Node;
 import ecosim.tree.Tree;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
- *  Perform input and output operations for the XML formatted project file.
+ *  Perform input and output operations for the project file, saved either
+ *  in the XML format or in a compact binary format.
  *
  *  @author Jason M. Wood
  *  @copyright GNU General Public License
  */
 public class ProjectFileIO {
 
+    /**
+     *  The extension of a project file saved in the binary format.
+     */
+    public static final String BINARY_EXTENSION = "ecosim";
+
     /**
      *  Load and save the current project.
      *
@@ -111,158 +139,158 @@ public class ProjectFileIO {
     }
 
     /**
-     *  Save the project file.
+     *  Save the project file, in the binary format if the name of the file
+     *  ends with the binary extension, and in the XML format otherwise.
      *
      *  @param projectFile The project file to save.
      */
     public void save (File projectFile) {
+        if (projectFile.getName ().endsWith ("." + BINARY_EXTENSION)) {
+            saveBinary (projectFile);
+        }
+        else {
+            saveXML (projectFile);
+        }
+    }
+
+    /**
+     *  Save the project file in the XML format.  The file is written as it
+     *  is generated, and the tree and the ecotypes are written one node or
+     *  member at a time, so that a large project is never held in memory as
+     *  a String.
+     *
+     *  @param projectFile The project file to save.
+     */
+    public void saveXML (File projectFile) {
+        Writer out = null;
         try {
-            BufferedWriter out = new BufferedWriter (
-                new FileWriter (projectFile)
-            );
-            // Output the XML header.
-            out.write ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            out.write (String.format (
-                Locale.US,
-                "<ecosim type=\"savefile\" version=\"%s\">\n",
-                mainVariables.getVersion ()
+            out = new BufferedWriter (new OutputStreamWriter (
+                new FileOutputStream (projectFile), StandardCharsets.UTF_8
             ));
+            XMLStreamWriter xml =
+                XMLOutputFactory.newInstance ().createXMLStreamWriter (out);
+            // Output the XML header.
+            xml.writeStartDocument ("UTF-8", "1.0");
+            writeStart (
+                xml, 0, "ecosim",
+                "type", "savefile",
+                "version", String.valueOf (mainVariables.getVersion ())
+            );
             // Output the current criterion.
-            out.write (
-                "  <criterion value=\"" +
-                mainVariables.getCriterion () + "\"/>\n"
+            writeEmpty (
+                xml, 1, "criterion",
+                "value", String.valueOf (mainVariables.getCriterion ())
             );
             // Output the phylogeny data.
             if (tree != null && tree.isValid ()) {
-                out.write (String.format (
-                    Locale.US,
-                    "  <phylogeny size=\"%d\" length=\"%d\">\n", nu, length
-                ));
-                out.write (String.format (
-                    Locale.US,
-                    "    <outgroup value=\"%s\"/>\n", outgroup
-                ));
-                out.write (String.format (
-                    Locale.US,
-                    "    <tree value=\"%s\"/>\n", tree.toString ()
-                ));
-                out.write (
-                    "  </phylogeny>\n"
+                writeStart (
+                    xml, 1, "phylogeny",
+                    "size", String.format (Locale.US, "%d", nu),
+                    "length", String.format (Locale.US, "%d", length)
+                );
+                writeEmpty (
+                    xml, 2, "outgroup", "value", String.valueOf (outgroup)
                 );
+                // The tree is written as the text of the element, without
+                // any whitespace that would become part of the tree.
+                writeStart (xml, 2, "tree");
+                tree.toNewick (new CharactersWriter (xml));
+                xml.writeEndElement ();
+                writeEnd (xml, 1);
             }
             // Output the binning data.
             if (binning != null) {
                 ArrayList<BinLevel> bins = binning.getBins ();
-                out.write ("  <binning>\n");
-                out.write ("    <bins size=\"" + bins.size () + "\">\n");
+                writeStart (xml, 1, "binning");
+                writeStart (
+                    xml, 2, "bins", "size", String.valueOf (bins.size ())
+                );
                 // Output the crit levels and the number of bins.
                 for (int i = 0; i < bins.size (); i ++) {
-                    out.write (
-                        "      <bin crit=\"" +
-                        String.format (
-                            Locale.US,
-                            "%.6f", bins.get (i).getCrit ()
-                        ) +
-                        "\" value=\"" + bins.get (i).getLevel () + "\"/>\n"
+                    writeEmpty (
+                        xml, 3, "bin",
+                        "crit", String.format (
+                            Locale.US, "%.6f", bins.get (i).getCrit ()
+                        ),
+                        "value", String.valueOf (bins.get (i).getLevel ())
                     );
                 }
-                out.write ("    </bins>\n");
-                out.write ("  </binning>\n");
+                writeEnd (xml, 2);
+                writeEnd (xml, 1);
             }
             // Output the parameter estimate data.
             if (estimate != null && estimate.hasRun ()) {
                 ParameterSet result = estimate.getResult ();
-                out.write ("  <estimate>\n");
-                out.write (String.format (
-                    Locale.US,
-                    "    " +
-                    "<result npop=\"%d\" omega=\"%.5f\" sigma=\"%.5f\"/>\n",
-                    result.getNpop (), result.getOmega (), result.getSigma ()
-                ));
+                writeStart (xml, 1, "estimate");
+                writeEmpty (
+                    xml, 2, "result",
+                    "npop", String.format (Locale.US, "%d", result.getNpop ()),
+                    "omega", String.format (
+                        Locale.US, "%.5f", result.getOmega ()
+                    ),
+                    "sigma", String.format (
+                        Locale.US, "%.5f", result.getSigma ()
+                    )
+                );
                 double omega[] = estimate.getOmega ();
-                out.write (String.format (
-                    Locale.US,
-                    "    " +
-                    "<omega slope=\"%.5f\" intercept=\"%.5f\"/>\n",
-                    omega[0], omega[1]
-                ));
+                writeEmpty (
+                    xml, 2, "omega",
+                    "slope", String.format (Locale.US, "%.5f", omega[0]),
+                    "intercept", String.format (Locale.US, "%.5f", omega[1])
+                );
                 double sigma[] = estimate.getSigma ();
-                out.write (String.format ("    " +
-                    "<sigma slope=\"%.5f\" intercept=\"%.5f\"/>\n",
-                    sigma[0], sigma[1]
-                ));
-                out.write ("  </estimate>\n");
+                writeEmpty (
+                    xml, 2, "sigma",
+                    "slope", String.format (Locale.US, "%.5f", sigma[0]),
+                    "intercept", String.format (Locale.US, "%.5f", sigma[1])
+                );
+                writeEnd (xml, 1);
             }
             // Output the hillclimb data.
             if (hillclimb != null && hillclimb.hasRun ()) {
                 ParameterSet result = hillclimb.getResult ();
-                out.write ("  <hillclimb>\n");
-                out.write (String.format (
-                    Locale.US,
-                    "    " +
-                    "<result npop=\"%d\" omega=\"%.5f\" sigma=\"%.5f\" " +
-                    "likelihood=\"%.5g\"/>\n",
-                    result.getNpop (), result.getOmega (), result.getSigma (),
-                    result.getLikelihood ()
-                ));
-                out.write ("  </hillclimb>\n");
+                writeStart (xml, 1, "hillclimb");
+                writeEmpty (
+                    xml, 2, "result",
+                    "npop", String.format (Locale.US, "%d", result.getNpop ()),
+                    "omega", String.format (
+                        Locale.US, "%.5f", result.getOmega ()
+                    ),
+                    "sigma", String.format (
+                        Locale.US, "%.5f", result.getSigma ()
+                    ),
+                    "likelihood", String.format (
+                        Locale.US, "%.5g", result.getLikelihood ()
+                    )
+                );
+                writeEnd (xml, 1);
             }
             // Output the NpopCI data.
             if (npopCI != null && npopCI.hasRun ()) {
                 Long [] result = npopCI.getResult ();
                 Double [] likelihood = npopCI.getLikelihood ();
-                out.write ("  <npopCI>\n");
-                out.write (String.format (
-                    Locale.US,
-                    "    <lower value=\"%d\" likelihood=\"%.5g\"/>\n",
-                    result[0],
-                    likelihood[0]
-                ));
-                out.write (String.format (
-                    Locale.US,
-                    "    <upper value=\"%d\" likelihood=\"%.5g\"/>\n",
-                    result[1],
-                    likelihood[1]
-                ));
-                out.write ("  </npopCI>\n");
+                writeStart (xml, 1, "npopCI");
+                writeBound (xml, "lower", "%d", result[0], likelihood[0]);
+                writeBound (xml, "upper", "%d", result[1], likelihood[1]);
+                writeEnd (xml, 1);
             }
             // Output the OmegaCI data.
             if (omegaCI != null && omegaCI.hasRun ()) {
                 Double[] result = omegaCI.getResult ();
                 Double[] likelihood = omegaCI.getLikelihood ();
-                out.write ("  <omegaCI>\n");
-                out.write (String.format (
-                    Locale.US,
-                    "    <lower value=\"%.5f\" likelihood=\"%.5g\"/>\n",
-                    result[0],
-                    likelihood[0]
-                ));
-                out.write (String.format (
-                    Locale.US,
-                    "    <upper value=\"%.5f\" likelihood=\"%.5g\"/>\n",
-                    result[1],
-                    likelihood[1]
-                ));
-                out.write ("  </omegaCI>\n");
+                writeStart (xml, 1, "omegaCI");
+                writeBound (xml, "lower", "%.5f", result[0], likelihood[0]);
+                writeBound (xml, "upper", "%.5f", result[1], likelihood[1]);
+                writeEnd (xml, 1);
             }
             // Output the SigmaCI data.
             if (sigmaCI != null && sigmaCI.hasRun ()) {
                 Double[] result = sigmaCI.getResult ();
                 Double[] likelihood = sigmaCI.getLikelihood ();
-                out.write ("  <sigmaCI>\n");
-                out.write (String.format (
-                    Locale.US,
-                    "    <lower value=\"%.5f\" likelihood=\"%.5g\"/>\n",
-                    result[0],
-                    likelihood[0]
-                ));
-                out.write (String.format (
-                    Locale.US,
-                    "    <upper value=\"%.5f\" likelihood=\"%.5g\"/>\n",
-                    result[1],
-                    likelihood[1]
-                ));
-                out.write ("  </sigmaCI>\n");
+                writeStart (xml, 1, "sigmaCI");
+                writeBound (xml, "lower", "%.5f", result[0], likelihood[0]);
+                writeBound (xml, "upper", "%.5f", result[1], likelihood[1]);
+                writeEnd (xml, 1);
             }
             // Output the Demarcation data.
             if (demarcation != null && demarcation.hasRun ()) {
@@ -286,57 +314,446 @@ public class ProjectFileIO {
                         paintMethod = "bars";
                         break;
                 }
-                out.write ("  <demarcation>\n");
-                out.write ("    <method value=\"" + method + "\"/>\n");
-                out.write ("    <paintmethod value=\"" + paintMethod + "\"/>\n");
-                out.write (String.format (
-                    Locale.US,
-                    "    <ecotypes size=\"%d\">\n",
-                    ecotypes.size ()
-                ));
+                writeStart (xml, 1, "demarcation");
+                writeEmpty (xml, 2, "method", "value", method);
+                writeEmpty (xml, 2, "paintmethod", "value", paintMethod);
+                writeStart (
+                    xml, 2, "ecotypes",
+                    "size", String.valueOf (ecotypes.size ())
+                );
                 for (int i = 0; i < ecotypes.size (); i ++) {
                     ArrayList<String> ecotype = ecotypes.get (i);
-                    out.write (String.format (
-                        Locale.US,
-                        "      <ecotype number=\"%d\" size=\"%d\">\n",
-                        (i + 1), ecotype.size ()
-                    ));
+                    writeStart (
+                        xml, 3, "ecotype",
+                        "number", String.valueOf (i + 1),
+                        "size", String.valueOf (ecotype.size ())
+                    );
                     for (int j = 0; j < ecotype.size (); j ++) {
-                        out.write (String.format (
-                            Locale.US,
-                            "        <member name=\"%s\"/>\n",
-                            ecotype.get (j)
-                        ));
+                        writeEmpty (xml, 4, "member", "name", ecotype.get (j));
                     }
-                    out.write ("      </ecotype>\n");
+                    writeEnd (xml, 3);
                 }
-                out.write ("    </ecotypes>\n");
-                out.write ("  </demarcation>\n");
+                writeEnd (xml, 2);
+                writeEnd (xml, 1);
+            }
+            writeEnd (xml, 0);
+            xml.writeCharacters ("\n");
+            xml.writeEndDocument ();
+            xml.close ();
+        }
+        catch (IOException | XMLStreamException e) {
+            e.printStackTrace ();
+        }
+        finally {
+            try {
+                if (out != null) out.close ();
+            }
+            catch (IOException e) {
+                e.printStackTrace ();
+            }
+        }
+    }
+
+    /**
+     *  Save the project file in the binary format.
+     *
+     *  The file starts with the magic bytes and the version of the format,
+     *  followed by sections of an int id, an int length and that many bytes
+     *  of deflated data, in big-endian byte order.  The names of the
+     *  sequences are stored once, in the names section, and the tree and
+     *  the ecotypes refer to them by their index.  The tree is stored in
+     *  pre-order, one column at a time: the number of children of each
+     *  node, the name of each node, the distance of each node as a float,
+     *  and whether each node is the outgroup or collapsed.
+     *
+     *  @param projectFile The project file to save.
+     */
+    public void saveBinary (File projectFile) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream (new BufferedOutputStream (
+                new FileOutputStream (projectFile)
+            ));
+            out.write (MAGIC);
+            out.writeInt (BINARY_VERSION);
+            // Output the program version and the current criterion.
+            Section section = new Section (SECTION_HEADER);
+            section.writeUTF (mainVariables.getVersion ());
+            section.writeInt (mainVariables.getCriterion ());
+            section.writeTo (out);
+            // Collect the names of the sequences.
+            HashMap<String, Integer> ids = new HashMap<String, Integer> ();
+            ArrayList<String> names = new ArrayList<String> ();
+            CompactTree compact = null;
+            if (tree != null && tree.isValid ()) {
+                compact = new CompactTree (tree);
+                for (int i = 0; i < compact.numberOfNodes (); i ++) {
+                    addName (compact.getName (i), ids, names);
+                }
+            }
+            boolean hasDemarcation = demarcation != null &&
+                demarcation.hasRun ();
+            if (hasDemarcation) {
+                for (ArrayList<String> ecotype: demarcation.getEcotypes ()) {
+                    for (String name: ecotype) {
+                        addName (name, ids, names);
+                    }
+                }
+            }
+            section = new Section (SECTION_NAMES);
+            section.writeInt (names.size ());
+            for (String name: names) {
+                section.writeUTF (name);
+            }
+            section.writeTo (out);
+            // Output the phylogeny data.
+            if (compact != null) {
+                section = new Section (SECTION_PHYLOGENY);
+                section.writeInt (nu);
+                section.writeInt (length);
+                section.writeBoolean (outgroup != null);
+                if (outgroup != null) section.writeUTF (outgroup);
+                section.writeTo (out);
+                int size = compact.numberOfNodes ();
+                section = new Section (SECTION_TREE);
+                section.writeInt (size);
+                for (int i = 0; i < size; i ++) {
+                    section.writeInt (compact.getChildren (i).length);
+                }
+                for (int i = 0; i < size; i ++) {
+                    section.writeInt (ids.get (name (compact.getName (i))));
+                }
+                for (int i = 0; i < size; i ++) {
+                    section.writeFloat ((float)compact.getDistance (i));
+                }
+                for (int i = 0; i < size; i ++) {
+                    int flags = 0;
+                    if (compact.isOutgroup (i)) flags |= OUTGROUP;
+                    if (compact.isCollapsed (i)) flags |= COLLAPSED;
+                    section.writeByte (flags);
+                }
+                section.writeTo (out);
+            }
+            // Output the binning data.
+            if (binning != null) {
+                ArrayList<BinLevel> bins = binning.getBins ();
+                section = new Section (SECTION_BINNING);
+                section.writeInt (bins.size ());
+                for (BinLevel bin: bins) {
+                    section.writeDouble (bin.getCrit ());
+                    section.writeInt (bin.getLevel ());
+                }
+                section.writeTo (out);
+            }
+            // Output the parameter estimate data.
+            if (estimate != null && estimate.hasRun ()) {
+                section = new Section (SECTION_ESTIMATE);
+                writeParameterSet (section, estimate.getResult ());
+                double omega[] = estimate.getOmega ();
+                double sigma[] = estimate.getSigma ();
+                section.writeDouble (omega[0]);
+                section.writeDouble (omega[1]);
+                section.writeDouble (sigma[0]);
+                section.writeDouble (sigma[1]);
+                section.writeTo (out);
+            }
+            // Output the hillclimb data.
+            if (hillclimb != null && hillclimb.hasRun ()) {
+                section = new Section (SECTION_HILLCLIMB);
+                writeParameterSet (section, hillclimb.getResult ());
+                section.writeTo (out);
+            }
+            // Output the NpopCI data.
+            if (npopCI != null && npopCI.hasRun ()) {
+                Long [] result = npopCI.getResult ();
+                Double [] likelihood = npopCI.getLikelihood ();
+                section = new Section (SECTION_NPOP_CI);
+                section.writeLong (result[0]);
+                section.writeDouble (likelihood[0]);
+                section.writeLong (result[1]);
+                section.writeDouble (likelihood[1]);
+                section.writeTo (out);
+            }
+            // Output the OmegaCI data.
+            if (omegaCI != null && omegaCI.hasRun ()) {
+                Double[] result = omegaCI.getResult ();
+                Double[] likelihood = omegaCI.getLikelihood ();
+                section = new Section (SECTION_OMEGA_CI);
+                section.writeDouble (result[0]);
+                section.writeDouble (likelihood[0]);
+                section.writeDouble (result[1]);
+                section.writeDouble (likelihood[1]);
+                section.writeTo (out);
+            }
+            // Output the SigmaCI data.
+            if (sigmaCI != null && sigmaCI.hasRun ()) {
+                Double[] result = sigmaCI.getResult ();
+                Double[] likelihood = sigmaCI.getLikelihood ();
+                section = new Section (SECTION_SIGMA_CI);
+                section.writeDouble (result[0]);
+                section.writeDouble (likelihood[0]);
+                section.writeDouble (result[1]);
+                section.writeDouble (likelihood[1]);
+                section.writeTo (out);
+            }
+            // Output the Demarcation data.
+            if (hasDemarcation) {
+                ArrayList<ArrayList<String>> ecotypes =
+                    demarcation.getEcotypes ();
+                section = new Section (SECTION_DEMARCATION);
+                section.writeInt (demarcation.getMethod ());
+                section.writeInt (demarcation.getPaintMethod ());
+                section.writeInt (ecotypes.size ());
+                for (ArrayList<String> ecotype: ecotypes) {
+                    section.writeInt (ecotype.size ());
+                    for (String name: ecotype) {
+                        section.writeInt (ids.get (name (name)));
+                    }
+                }
+                section.writeTo (out);
             }
-            out.write ("</ecosim>\n");
-            out.close ();
         }
         catch (IOException e) {
             e.printStackTrace ();
         }
+        finally {
+            try {
+                if (out != null) out.close ();
+            }
+            catch (IOException e) {
+                e.printStackTrace ();
+            }
+        }
     }
 
     /**
-     *  Load the project file.
+     *  Load the project file.  The format of the file, binary or XML, is
+     *  detected from its first bytes.  The tree is only parsed, and the
+     *  demarcation only rebuilt, when they are first requested.
      *
      *  @param projectFile The project file to load.
      */
     public void load (File projectFile) {
-        XMLHandler handler = new XMLHandler ();
+        InputStream in = null;
         try {
-            XMLReader xr = XMLReaderFactory.createXMLReader ();
-            xr.setContentHandler (handler);
-            xr.setErrorHandler (handler);
-            xr.parse (new InputSource (new FileReader (projectFile)));
+            in = new BufferedInputStream (new FileInputStream (projectFile));
+            byte[] magic = new byte[MAGIC.length];
+            in.mark (magic.length);
+            int read = 0;
+            while (read < magic.length) {
+                int n = in.read (magic, read, magic.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            if (Arrays.equals (magic, MAGIC)) {
+                loadBinary (new DataInputStream (in));
+            }
+            else {
+                in.reset ();
+                loadXML (in);
+            }
         }
         catch (Exception e) {
             e.printStackTrace ();
         }
+        finally {
+            try {
+                if (in != null) in.close ();
+            }
+            catch (IOException e) {
+                e.printStackTrace ();
+            }
+        }
+    }
+
+    /**
+     *  A private method to load the sections of a binary project file,
+     *  after the magic bytes.  The tree section is kept as it is until the
+     *  tree is requested.
+     *
+     *  @param in The stream to read the project file from.
+     */
+    private void loadBinary (DataInputStream in) throws IOException {
+        int version = in.readInt ();
+        if (version > BINARY_VERSION) {
+            System.err.println (
+                "Error in project file: unsupported version " + version + "."
+            );
+            return;
+        }
+        String[] names = new String[0];
+        while (true) {
+            int id;
+            try {
+                id = in.readInt ();
+            }
+            catch (EOFException e) {
+                break;
+            }
+            byte[] data = new byte[in.readInt ()];
+            in.readFully (data);
+            // The tree is decoded when it is requested.
+            if (id == SECTION_TREE) {
+                treeSection = data;
+                continue;
+            }
+            DataInputStream section = readSection (data);
+            try {
+                switch (id) {
+                    case SECTION_HEADER:
+                        section.readUTF ();
+                        mainVariables.setCriterion (section.readInt ());
+                        break;
+                    case SECTION_NAMES:
+                        names = new String[section.readInt ()];
+                        for (int i = 0; i < names.length; i ++) {
+                            names[i] = section.readUTF ();
+                        }
+                        break;
+                    case SECTION_PHYLOGENY:
+                        nu = section.readInt ();
+                        length = section.readInt ();
+                        if (section.readBoolean ()) {
+                            outgroup = section.readUTF ();
+                        }
+                        break;
+                    case SECTION_BINNING:
+                        binning = new Binning ();
+                        int bins = section.readInt ();
+                        for (int i = 0; i < bins; i ++) {
+                            double crit = section.readDouble ();
+                            binning.addBinLevel (
+                                new BinLevel (crit, section.readInt ())
+                            );
+                        }
+                        break;
+                    case SECTION_ESTIMATE:
+                        if (binning == null) {
+                            missing ("estimated", "Binning");
+                        }
+                        estimate = new ParameterEstimate (
+                            nu, length, binning
+                        );
+                        estimate.setResult (readParameterSet (section));
+                        double omegaSlope = section.readDouble ();
+                        estimate.setOmega (omegaSlope, section.readDouble ());
+                        double sigmaSlope = section.readDouble ();
+                        estimate.setSigma (sigmaSlope, section.readDouble ());
+                        estimate.setHasRun (true);
+                        break;
+                    case SECTION_HILLCLIMB:
+                        if (binning == null) {
+                            missing ("hillclimb", "Binning");
+                        }
+                        if (estimate == null) {
+                            missing ("hillclimb", "ParameterEstimate");
+                        }
+                        hillclimb = new Hillclimb (
+                            mainVariables, execs, nu, length, binning,
+                            estimate.getResult ()
+                        );
+                        hillclimb.setResult (readParameterSet (section));
+                        hillclimb.setHasRun (true);
+                        break;
+                    case SECTION_NPOP_CI:
+                        checkHillclimb ("npopCI");
+                        npopCI = new NpopConfidenceInterval (
+                            mainVariables, execs, nu, length, binning,
+                            hillclimb.getResult ()
+                        );
+                        long lower = section.readLong ();
+                        npopCI.setLowerResult (lower, section.readDouble ());
+                        long upper = section.readLong ();
+                        npopCI.setUpperResult (upper, section.readDouble ());
+                        npopCI.setHasRun (true);
+                        break;
+                    case SECTION_OMEGA_CI:
+                        checkHillclimb ("omegaCI");
+                        omegaCI = new OmegaConfidenceInterval (
+                            mainVariables, execs, nu, length, binning,
+                            hillclimb.getResult ()
+                        );
+                        omegaCI.setLowerResult (
+                            section.readDouble (), section.readDouble ()
+                        );
+                        omegaCI.setUpperResult (
+                            section.readDouble (), section.readDouble ()
+                        );
+                        omegaCI.setHasRun (true);
+                        break;
+                    case SECTION_SIGMA_CI:
+                        checkHillclimb ("sigmaCI");
+                        sigmaCI = new SigmaConfidenceInterval (
+                            mainVariables, execs, nu, length, binning,
+                            hillclimb.getResult ()
+                        );
+                        sigmaCI.setLowerResult (
+                            section.readDouble (), section.readDouble ()
+                        );
+                        sigmaCI.setUpperResult (
+                            section.readDouble (), section.readDouble ()
+                        );
+                        sigmaCI.setHasRun (true);
+                        break;
+                    case SECTION_DEMARCATION:
+                        if (outgroup == null) {
+                            missing ("demarcation", "an outgroup");
+                        }
+                        if (treeSection == null) {
+                            missing ("demarcation", "a phylogeny");
+                        }
+                        if (hillclimb == null) {
+                            missing ("demarcation", "Hillclimb");
+                        }
+                        // The demarcation is rebuilt when it is requested.
+                        demarcationMethod = section.readInt ();
+                        demarcationPaintMethod = section.readInt ();
+                        int size = section.readInt ();
+                        demarcationEcotypes =
+                            new ArrayList<ArrayList<String>> (size);
+                        for (int i = 0; i < size; i ++) {
+                            int members = section.readInt ();
+                            ArrayList<String> ecotype =
+                                new ArrayList<String> (members);
+                            for (int j = 0; j < members; j ++) {
+                                ecotype.add (names[section.readInt ()]);
+                            }
+                            demarcationEcotypes.add (ecotype);
+                        }
+                        break;
+                    default:
+                        // Skip the sections added by a newer version.
+                        break;
+                }
+            }
+            finally {
+                section.close ();
+            }
+        }
+        this.names = names;
+    }
+
+    /**
+     *  A private method to load a project file in the XML format.
+     *
+     *  @param in The stream to read the project file from.
+     */
+    private void loadXML (InputStream in) throws XMLStreamException {
+        XMLHandler handler = new XMLHandler ();
+        XMLInputFactory factory = XMLInputFactory.newInstance ();
+        factory.setProperty (XMLInputFactory.SUPPORT_DTD, false);
+        XMLStreamReader reader = factory.createXMLStreamReader (in);
+        while (reader.hasNext ()) {
+            switch (reader.next ()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    handler.startElement (reader);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    handler.endElement (reader.getLocalName ());
+                    break;
+            }
+        }
+        reader.close ();
     }
 
     /**
@@ -372,6 +789,25 @@ public class ProjectFileIO {
      *  @return The Tree object.
      */
     public Tree getTree () {
+        // Parse the tree the first time that it is requested.
+        if (tree == null && newick != null) {
+            try {
+                tree = new Tree (newick);
+            }
+            catch (InvalidTreeException e) {
+                System.err.println ("Invalid Newick formatted tree found.");
+            }
+            newick = null;
+        }
+        if (tree == null && treeSection != null) {
+            try {
+                tree = readTree (treeSection);
+            }
+            catch (IOException e) {
+                System.err.println ("Invalid binary tree found.");
+            }
+            treeSection = null;
+        }
         return tree;
     }
 
@@ -435,9 +871,323 @@ public class ProjectFileIO {
      *  @return The Demarcation object.
      */
     public Demarcation getDemarcation () {
+        // Rebuild the demarcation the first time that it is requested.
+        if (demarcation == null && demarcationEcotypes != null) {
+            Tree phylogeny = getTree ();
+            if (phylogeny != null) {
+                try {
+                    demarcation = new Demarcation (
+                        mainVariables,
+                        execs,
+                        nu,
+                        length,
+                        outgroup,
+                        phylogeny,
+                        hillclimb.getResult (),
+                        demarcationMethod
+                    );
+                    demarcation.setPaintMethod (demarcationPaintMethod);
+                    demarcation.setEcotypes (demarcationEcotypes);
+                    demarcation.setHasRun (true);
+                }
+                catch (InvalidTreeException e) {
+                    System.err.println (
+                        "Error in project file: invalid tree."
+                    );
+                }
+            }
+            demarcationEcotypes = null;
+        }
         return demarcation;
     }
 
+    /**
+     *  A private method to decode the tree section of a binary project
+     *  file.
+     *
+     *  @param data The deflated tree section.
+     *  @return The Tree.
+     */
+    private Tree readTree (byte[] data) throws IOException {
+        // Read the columns straight from the inflated bytes.
+        ByteBuffer section = ByteBuffer.wrap (inflate (data));
+        try {
+            int size = section.getInt ();
+            int[] children = new int[size];
+            for (int i = 0; i < size; i ++) {
+                children[i] = section.getInt ();
+            }
+            int[] name = new int[size];
+            for (int i = 0; i < size; i ++) {
+                name[i] = section.getInt ();
+            }
+            Node[] nodes = new Node[size];
+            for (int i = 0; i < size; i ++) {
+                nodes[i] = new Node (
+                    names[name[i]], (double)section.getFloat ()
+                );
+            }
+            for (int i = 0; i < size; i ++) {
+                byte flags = section.get ();
+                nodes[i].setOutgroup ((flags & OUTGROUP) != 0);
+                nodes[i].collapse ((flags & COLLAPSED) != 0);
+            }
+            // The nodes are in pre-order, so each node is the next child of
+            // the last node found that is still missing children.
+            int[] parents = new int[size];
+            int open = 0;
+            for (int i = 0; i < size; i ++) {
+                if (i > 0) {
+                    if (open == 0) {
+                        throw new IOException ("Too many nodes in the tree.");
+                    }
+                    int parent = parents[open - 1];
+                    nodes[parent].addChild (nodes[i]);
+                    if (-- children[parent] == 0) open --;
+                }
+                if (children[i] > 0) parents[open ++] = i;
+            }
+            if (size == 0 || open > 0) {
+                throw new IOException ("Too few nodes in the tree.");
+            }
+            return new Tree (nodes[0]);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException |
+            NegativeArraySizeException e) {
+            throw new IOException ("Truncated tree section.", e);
+        }
+    }
+
+    /**
+     *  A private helper method to read a deflated section of a binary
+     *  project file.
+     *
+     *  @param data The deflated section.
+     *  @return The stream to read the section from.
+     */
+    private static DataInputStream readSection (byte[] data)
+        throws IOException {
+        return new DataInputStream (new ByteArrayInputStream (inflate (data)));
+    }
+
+    /**
+     *  A private helper method to inflate a section of a binary project
+     *  file.
+     *
+     *  @param data The deflated section.
+     *  @return The inflated section.
+     */
+    private static byte[] inflate (byte[] data) throws IOException {
+        Inflater inflater = new Inflater ();
+        try {
+            inflater.setInput (data);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream (
+                data.length * 4
+            );
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (! inflater.finished ()) {
+                int n = inflater.inflate (buffer);
+                if (n == 0 && inflater.needsInput ()) {
+                    throw new IOException ("Truncated section.");
+                }
+                bytes.write (buffer, 0, n);
+            }
+            return bytes.toByteArray ();
+        }
+        catch (DataFormatException e) {
+            throw new IOException (e);
+        }
+        finally {
+            inflater.end ();
+        }
+    }
+
+    /**
+     *  A private helper method to write a ParameterSet to a section.
+     */
+    private static void writeParameterSet (DataOutputStream section,
+        ParameterSet parameterSet) throws IOException {
+        section.writeLong (parameterSet.getNpop ());
+        section.writeDouble (parameterSet.getOmega ());
+        section.writeDouble (parameterSet.getSigma ());
+        section.writeDouble (parameterSet.getLikelihood ());
+    }
+
+    /**
+     *  A private helper method to read a ParameterSet from a section.
+     */
+    private static ParameterSet readParameterSet (DataInputStream section)
+        throws IOException {
+        long npop = section.readLong ();
+        double omega = section.readDouble ();
+        double sigma = section.readDouble ();
+        return new ParameterSet (
+            npop, omega, sigma, section.readDouble ()
+        );
+    }
+
+    /**
+     *  A private helper method to add a name to the names of the sequences
+     *  if it is not there already.
+     */
+    private static void addName (String name, HashMap<String, Integer> ids,
+        ArrayList<String> names) {
+        name = name (name);
+        if (! ids.containsKey (name)) {
+            ids.put (name, names.size ());
+            names.add (name);
+        }
+    }
+
+    /**
+     *  A private helper method to store a missing name as an empty name.
+     */
+    private static String name (String name) {
+        return name == null ? "" : name;
+    }
+
+    /**
+     *  A private helper method to check that the values a confidence
+     *  interval depends on were loaded.
+     *
+     *  @param value The name of the confidence interval.
+     */
+    private void checkHillclimb (String value) {
+        if (binning == null) {
+            missing (value, "Binning");
+        }
+        if (hillclimb == null) {
+            missing (value, "Hillclimb");
+        }
+    }
+
+    /**
+     *  A private helper method to report a value found in the project file
+     *  without a value that it depends on, and exit.
+     *
+     *  @param value The name of the value found.
+     *  @param dependency The name of the missing value.
+     */
+    private static void missing (String value, String dependency) {
+        System.err.println (
+            "Error in project file: " + value + " value without " +
+            dependency + "."
+        );
+        System.exit (1);
+    }
+
+    /**
+     *  A private helper method to start an element on a new line.
+     *
+     *  @param xml The XMLStreamWriter to write to.
+     *  @param depth The depth of the element.
+     *  @param name The name of the element.
+     *  @param attributes The names and values of the attributes.
+     */
+    private static void writeStart (XMLStreamWriter xml, int depth,
+        String name, String ... attributes) throws XMLStreamException {
+        indent (xml, depth);
+        xml.writeStartElement (name);
+        writeAttributes (xml, attributes);
+    }
+
+    /**
+     *  A private helper method to write an empty element on a new line.
+     *
+     *  @param xml The XMLStreamWriter to write to.
+     *  @param depth The depth of the element.
+     *  @param name The name of the element.
+     *  @param attributes The names and values of the attributes.
+     */
+    private static void writeEmpty (XMLStreamWriter xml, int depth,
+        String name, String ... attributes) throws XMLStreamException {
+        indent (xml, depth);
+        xml.writeEmptyElement (name);
+        writeAttributes (xml, attributes);
+    }
+
+    /**
+     *  A private helper method to end an element on a new line.
+     *
+     *  @param xml The XMLStreamWriter to write to.
+     *  @param depth The depth of the element.
+     */
+    private static void writeEnd (XMLStreamWriter xml, int depth)
+        throws XMLStreamException {
+        indent (xml, depth);
+        xml.writeEndElement ();
+    }
+
+    /**
+     *  A private helper method to write a bound of a confidence interval.
+     *
+     *  @param xml The XMLStreamWriter to write to.
+     *  @param name The name of the bound, lower or upper.
+     *  @param format The format of the value.
+     *  @param value The value of the bound.
+     *  @param likelihood The likelihood of the bound.
+     */
+    private static void writeBound (XMLStreamWriter xml, String name,
+        String format, Object value, Double likelihood)
+        throws XMLStreamException {
+        writeEmpty (
+            xml, 2, name,
+            "value", String.format (Locale.US, format, value),
+            "likelihood", String.format (Locale.US, "%.5g", likelihood)
+        );
+    }
+
+    /**
+     *  A private helper method to write the attributes of an element.
+     */
+    private static void writeAttributes (XMLStreamWriter xml,
+        String ... attributes) throws XMLStreamException {
+        for (int i = 0; i < attributes.length; i += 2) {
+            xml.writeAttribute (attributes[i], attributes[i + 1]);
+        }
+    }
+
+    /**
+     *  A private helper method to start a new line at the requested depth.
+     */
+    private static void indent (XMLStreamWriter xml, int depth)
+        throws XMLStreamException {
+        xml.writeCharacters ("\n");
+        for (int i = 0; i < depth; i ++) {
+            xml.writeCharacters ("  ");
+        }
+    }
+
+    /**
+     *  The magic bytes at the start of a binary project file ("ESPF"), and
+     *  the version of the binary format.
+     */
+    private static final byte[] MAGIC = { 'E', 'S', 'P', 'F' };
+    private static final int BINARY_VERSION = 1;
+
+    /**
+     *  The ids of the sections of a binary project file.
+     */
+    private static final int SECTION_HEADER = 1;
+    private static final int SECTION_NAMES = 2;
+    private static final int SECTION_PHYLOGENY = 3;
+    private static final int SECTION_TREE = 4;
+    private static final int SECTION_BINNING = 5;
+    private static final int SECTION_ESTIMATE = 6;
+    private static final int SECTION_HILLCLIMB = 7;
+    private static final int SECTION_NPOP_CI = 8;
+    private static final int SECTION_OMEGA_CI = 9;
+    private static final int SECTION_SIGMA_CI = 10;
+    private static final int SECTION_DEMARCATION = 11;
+
+    /**
+     *  The flags of a node in the tree section.
+     */
+    private static final int OUTGROUP = 1;
+    private static final int COLLAPSED = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
     private MainVariables mainVariables;
     private Execs execs;
     private Integer nu;
@@ -453,9 +1203,93 @@ public class ProjectFileIO {
     private Demarcation demarcation;
 
     /**
-     *  Create a DefaultHandler for parsing the options file.
+     *  The Newick formatted tree, and the demarcation, loaded but not yet
+     *  requested.
+     */
+    private String newick;
+    private byte[] treeSection;
+    private String[] names;
+    private ArrayList<ArrayList<String>> demarcationEcotypes;
+    private int demarcationMethod;
+    private int demarcationPaintMethod;
+
+    /**
+     *  A section of a binary project file, deflated as it is written.
+     */
+    private static class Section extends DataOutputStream {
+
+        public Section (int id) {
+            this (id, new ByteArrayOutputStream (),
+                new Deflater (Deflater.BEST_SPEED));
+        }
+
+        private Section (int id, ByteArrayOutputStream bytes,
+            Deflater deflater) {
+            super (new BufferedOutputStream (
+                new DeflaterOutputStream (bytes, deflater)
+            ));
+            this.id = id;
+            this.bytes = bytes;
+            this.deflater = deflater;
+        }
+
+        /**
+         *  Finish deflating the section, and write it to the project file.
+         *
+         *  @param out The project file.
+         */
+        public void writeTo (DataOutputStream out) throws IOException {
+            close ();
+            deflater.end ();
+            out.writeInt (id);
+            out.writeInt (bytes.size ());
+            bytes.writeTo (out);
+        }
+
+        private int id;
+        private ByteArrayOutputStream bytes;
+        private Deflater deflater;
+    }
+
+    /**
+     *  Write the characters written to this Writer as the text of the
+     *  current element of an XMLStreamWriter.
+     */
+    private static class CharactersWriter extends Writer {
+
+        public CharactersWriter (XMLStreamWriter xml) {
+            this.xml = xml;
+        }
+
+        public void write (char[] buffer, int offset, int length)
+            throws IOException {
+            try {
+                xml.writeCharacters (buffer, offset, length);
+            }
+            catch (XMLStreamException e) {
+                throw new IOException (e);
+            }
+        }
+
+        /**
+         *  The XMLStreamWriter is flushed when it is closed.
+         */
+        public void flush () {
+        }
+
+        /**
+         *  The XMLStreamWriter is left open.
+         */
+        public void close () {
+        }
+
+        private XMLStreamWriter xml;
+    }
+
+    /**
+     *  Handle the events of the StAX parser reading the project file.
      */
-    private class XMLHandler extends DefaultHandler  {
+    private class XMLHandler {
 
         /**
          *  The XMLHandler constructor.
@@ -477,15 +1311,18 @@ public class ProjectFileIO {
         }
 
         /**
-         *  Override the startElement method in DefaultHandler to grab the
-         *  key/value pairs stored in the XML document.
+         *  Grab the key/value pairs stored in the XML document at the start
+         *  of an element.
+         *
+         *  @param reader The XMLStreamReader positioned at the element.
          */
-        public void startElement (String uri, String localName, String qName,
-            Attributes attrs) {
+        public void startElement (XMLStreamReader reader)
+            throws XMLStreamException {
+            String localName = reader.getLocalName ();
             NumberFormat format = NumberFormat.getInstance (Locale.US);
             // Make sure that this is a save file.
             if (localName.equals ("ecosim") &&
-                attrs.getValue (uri, "type").equals ("savefile")) {
+                reader.getAttributeValue (null, "type").equals ("savefile")) {
                 isProjectFile = true;
             }
             if (isProjectFile) {
@@ -497,35 +1334,32 @@ public class ProjectFileIO {
                     // Look for the criterion element.
                     if (localName.equals ("criterion")) {
                         mainVariables.setCriterion (format.parse (
-                            attrs.getValue (uri, "value")
+                            reader.getAttributeValue (null, "value")
                         ).intValue ());
                     }
                     // Look for the phylogeny element.
                     if (localName.equals ("phylogeny")) {
                         nu = format.parse (
-                            attrs.getValue (uri, "size")
+                            reader.getAttributeValue (null, "size")
                         ).intValue ();
                         length = format.parse (
-                            attrs.getValue (uri, "length")
+                            reader.getAttributeValue (null, "length")
                         ).intValue ();
                     }
                     // Look for the elements within phylogeny.
                     if (activeElement.equals ("phylogeny")) {
                         // Look for the outgroup element.
                         if (localName.equals ("outgroup")) {
-                            outgroup = attrs.getValue (uri, "value");
+                            outgroup = reader.getAttributeValue (null, "value");
                         }
                         // Look for the tree element.
                         if (localName.equals ("tree")) {
-                            try {
-                                tree = new Tree (
-                                    attrs.getValue (uri, "value")
-                                );
-                            }
-                            catch (InvalidTreeException e) {
-                                System.err.println (
-                                    "Invalid Newick formatted tree found."
-                                );
+                            // Older project files hold the tree in the
+                            // value attribute.  The tree is parsed when it
+                            // is requested.
+                            newick = reader.getAttributeValue (null, "value");
+                            if (newick == null) {
+                                newick = reader.getElementText ();
                             }
                         }
                     }
@@ -537,10 +1371,10 @@ public class ProjectFileIO {
                         if (localName.equals ("bin")) {
                             binning.addBinLevel (new BinLevel (
                                 format.parse (
-                                    attrs.getValue (uri, "crit")
+                                    reader.getAttributeValue (null, "crit")
                                 ).doubleValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "value")
+                                    reader.getAttributeValue (null, "value")
                                 ).intValue ()
                             ));
                         }
@@ -566,13 +1400,13 @@ public class ProjectFileIO {
                         if (localName.equals ("result")) {
                             estimate.setResult (new ParameterSet (
                                 format.parse (
-                                    attrs.getValue (uri, "npop")
+                                    reader.getAttributeValue (null, "npop")
                                 ).longValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "omega")
+                                    reader.getAttributeValue (null, "omega")
                                 ).doubleValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "sigma")
+                                    reader.getAttributeValue (null, "sigma")
                                 ).doubleValue (),
                                 0.0d
                             ));
@@ -581,10 +1415,10 @@ public class ProjectFileIO {
                         if (localName.equals ("omega")) {
                             estimate.setOmega (
                                 format.parse (
-                                    attrs.getValue (uri, "slope")
+                                    reader.getAttributeValue (null, "slope")
                                 ).doubleValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "intercept")
+                                    reader.getAttributeValue (null, "intercept")
                                 ).doubleValue ()
                             );
                         }
@@ -592,10 +1426,10 @@ public class ProjectFileIO {
                         if (localName.equals ("sigma")) {
                             estimate.setSigma (
                                 format.parse (
-                                    attrs.getValue (uri, "slope")
+                                    reader.getAttributeValue (null, "slope")
                                 ).doubleValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "intercept")
+                                    reader.getAttributeValue (null, "intercept")
                                 ).doubleValue ()
                             );
                         }
@@ -633,17 +1467,17 @@ public class ProjectFileIO {
                         if (localName.equals ("result")) {
                             hillclimb.setResult (new ParameterSet (
                                 format.parse (
-                                    attrs.getValue (uri, "npop")
+                                    reader.getAttributeValue (null, "npop")
                                 ).longValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "omega")
+                                    reader.getAttributeValue (null, "omega")
                                 ).doubleValue (),
                                 format.parse (
-                                    attrs.getValue (uri, "sigma")
+                                    reader.getAttributeValue (null, "sigma")
                                 ).doubleValue (),
-                                format.parse (
-                                    attrs.getValue (uri, "likelihood")
-                                ).doubleValue ()
+                                format.parse (reader.getAttributeValue (
+                                    null, "likelihood"
+                                )).doubleValue ()
                             ));
                         }
                     }
@@ -679,20 +1513,20 @@ public class ProjectFileIO {
                         // Look for the lower bound of the confidence interval.
                         if (localName.equals ("lower")) {
                             Long value = format.parse (
-                                attrs.getValue (uri, "value")
+                                reader.getAttributeValue (null, "value")
                             ).longValue ();
                             Double likelihood = format.parse (
-                                attrs.getValue (uri, "likelihood")
+                                reader.getAttributeValue (null, "likelihood")
                             ).doubleValue ();
                             npopCI.setLowerResult (value, likelihood);
                         }
                         // Look for the upper bound of the confidence interval.
                         if (localName.equals ("upper")) {
                             Long value = format.parse (
-                                attrs.getValue (uri, "value")
+                                reader.getAttributeValue (null, "value")
                             ).longValue ();
                             Double likelihood = format.parse (
-                                attrs.getValue (uri, "likelihood")
+                                reader.getAttributeValue (null, "likelihood")
                             ).doubleValue ();
                             npopCI.setUpperResult (value, likelihood);
                         }
@@ -729,20 +1563,20 @@ public class ProjectFileIO {
                         // Look for the lower bound of the confidence interval.
                         if (localName.equals ("lower")) {
                             Double value = format.parse (
-                                attrs.getValue (uri, "value")
+                                reader.getAttributeValue (null, "value")
                             ).doubleValue ();
                             Double likelihood = format.parse (
-                                attrs.getValue (uri, "likelihood")
+                                reader.getAttributeValue (null, "likelihood")
                             ).doubleValue ();
                             omegaCI.setLowerResult (value, likelihood);
                         }
                         // Look for the upper bound of the confidence interval.
                         if (localName.equals ("upper")) {
                             Double value = format.parse (
-                                attrs.getValue (uri, "value")
+                                reader.getAttributeValue (null, "value")
                             ).doubleValue ();
                             Double likelihood = format.parse (
-                                attrs.getValue (uri, "likelihood")
+                                reader.getAttributeValue (null, "likelihood")
                             ).doubleValue ();
                             omegaCI.setUpperResult (value, likelihood);
                         }
@@ -779,20 +1613,20 @@ public class ProjectFileIO {
                         // Look for the lower bound of the confidence interval.
                         if (localName.equals ("lower")) {
                             Double value = format.parse (
-                                attrs.getValue (uri, "value")
+                                reader.getAttributeValue (null, "value")
                             ).doubleValue ();
                             Double likelihood = format.parse (
-                                attrs.getValue (uri, "likelihood")
+                                reader.getAttributeValue (null, "likelihood")
                             ).doubleValue ();
                             sigmaCI.setLowerResult (value, likelihood);
                         }
                         // Look for the upper bound of the confidence interval.
                         if (localName.equals ("upper")) {
                             Double value = format.parse (
-                                attrs.getValue (uri, "value")
+                                reader.getAttributeValue (null, "value")
                             ).doubleValue ();
                             Double likelihood = format.parse (
-                                attrs.getValue (uri, "likelihood")
+                                reader.getAttributeValue (null, "likelihood")
                             ).doubleValue ();
                             sigmaCI.setUpperResult (value, likelihood);
                         }
@@ -800,7 +1634,7 @@ public class ProjectFileIO {
                     // Look for elements within demarcation.
                     if (activeElement.equals ("demarcation")) {
                         if (localName.equals ("method")) {
-                            switch (attrs.getValue (uri, "value")) {
+                            switch (reader.getAttributeValue (null, "value")) {
                                 case "monophyly":
                                     method = Demarcation.DEMARCATION_METHOD_MONOPHYLY;
                                     break;
@@ -810,7 +1644,7 @@ public class ProjectFileIO {
                             }
                         }
                         if (localName.equals ("paintmethod")) {
-                            switch (attrs.getValue (uri, "value")) {
+                            switch (reader.getAttributeValue (null, "value")) {
                                 case "bars":
                                     paintMethod = Demarcation.PAINT_METHOD_DEMARCATED;
                                     break;
@@ -821,22 +1655,22 @@ public class ProjectFileIO {
                         }
                         if (localName.equals ("ecotypes")) {
                             Integer size = format.parse (
-                                attrs.getValue (uri, "size")
+                                reader.getAttributeValue (null, "size")
                             ).intValue ();
                             ecotypes = new ArrayList<ArrayList<String>> (size);
                         }
                         if (localName.equals ("ecotype")) {
                             Integer size = format.parse (
-                                attrs.getValue (uri, "size")
+                                reader.getAttributeValue (null, "size")
                             ).intValue ();
                             ecotypes.add (new ArrayList<String> (size));
                             ecotypeNumber = format.parse (
-                                attrs.getValue (uri, "number")
+                                reader.getAttributeValue (null, "number")
                             ).intValue ();
                         }
                         if (localName.equals ("member") && ecotypes != null) {
                             ecotypes.get (ecotypeNumber - 1).add (
-                                attrs.getValue (uri, "name")
+                                reader.getAttributeValue (null, "name")
                             );
                         }
                     }
@@ -848,10 +1682,12 @@ public class ProjectFileIO {
         }
 
         /**
-         *  Override the endElement method in DefaultHandler to help keep
-         *  track of our location in the XML document.
+         *  Keep track of our location in the XML document at the end of an
+         *  element.
+         *
+         *  @param localName The name of the element.
          */
-        public void endElement (String uri, String localName, String qName) {
+        public void endElement (String localName) {
             if (isProjectFile) {
                 // Look for the end of the ecosim save file.
                 if (localName.equals ("ecosim")) {
@@ -879,58 +1715,44 @@ public class ProjectFileIO {
                 }
                 // Look for the end of the demarcation element.
                 if (localName.equals ("demarcation")) {
-                    if (demarcation == null) {
-                        if (
-                            outgroup != null && tree != null &&
-                            hillclimb != null && method != null
-                        ) {
-                            if (paintMethod == null) {
-                                paintMethod = Demarcation.PAINT_METHOD_DEMARCATED;
-                            }
-                            try {
-                                demarcation = new Demarcation (
-                                    mainVariables,
-                                    execs,
-                                    nu,
-                                    length,
-                                    outgroup,
-                                    tree,
-                                    hillclimb.getResult (),
-                                    method
-                                );
-                                demarcation.setPaintMethod (paintMethod);
-                            }
-                            catch (InvalidTreeException e) {
-                                System.err.println (
-                                    "Error in project file: invalid tree."
-                                );
-                            }
-                        }
-                        else if (outgroup == null) {
-                            System.err.println (
-                                "Error in project file: " +
-                                "demarcation value without an outgroup."
-                            );
-                            System.exit (1);
-
+                    if (
+                        outgroup != null && newick != null &&
+                        hillclimb != null && method != null
+                    ) {
+                        if (paintMethod == null) {
+                            paintMethod = Demarcation.PAINT_METHOD_DEMARCATED;
                         }
-                        else if (tree == null) {
-                            System.err.println (
-                                "Error in project file: " +
-                                "demarcation value without a phylogeny."
-                            );
-                            System.exit (1);
-                        }
-                        else {
-                            System.err.println (
-                                "Error in project file: " +
-                                "demarcation value without Hillclimb."
-                            );
-                            System.exit (1);
+                        // The demarcation is rebuilt when it is requested.
+                        demarcationMethod = method;
+                        demarcationPaintMethod = paintMethod;
+                        demarcationEcotypes = ecotypes;
+                        if (demarcationEcotypes == null) {
+                            demarcationEcotypes =
+                                new ArrayList<ArrayList<String>> ();
                         }
                     }
-                    demarcation.setEcotypes (ecotypes);
-                    demarcation.setHasRun (true);
+                    else if (outgroup == null) {
+                        System.err.println (
+                            "Error in project file: " +
+                            "demarcation value without an outgroup."
+                        );
+                        System.exit (1);
+
+                    }
+                    else if (newick == null) {
+                        System.err.println (
+                            "Error in project file: " +
+                            "demarcation value without a phylogeny."
+                        );
+                        System.exit (1);
+                    }
+                    else {
+                        System.err.println (
+                            "Error in project file: " +
+                            "demarcation value without Hillclimb."
+                        );
+                        System.exit (1);
+                    }
                 }
                 // Update the active element.
                 if (elements.contains (localName)) {
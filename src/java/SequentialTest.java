@@ -0,0 +1,108 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+/**
+ *  A sequential test of whether a likelihood can reach a threshold,
+ *  used to stop running replicates once the answer is settled.  After
+ *  each batch of replicates, the fraction that succeeded at the level of
+ *  precision used is compared to the threshold with a Wilson score
+ *  interval.  The replicates are stopped when the upper end of the
+ *  interval falls below the threshold.  A likelihood that may reach the
+ *  threshold is measured with every replicate, so it is as precise as
+ *  it would be without the test.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class SequentialTest {
+
+    /**
+     *  Create a sequential test.
+     *
+     *  @param whichavg The level of precision used to measure the
+     *  likelihood, from 1 to 6.
+     *  @param threshold The likelihood to test against.
+     */
+    public SequentialTest (int whichavg, double threshold) {
+        this.level = whichavg - 1;
+        this.threshold = threshold;
+        replicates = 0;
+        below = false;
+    }
+
+    /**
+     *  Test the replicates run so far.
+     *
+     *  @param success The number of replicates that succeeded at each
+     *  level of precision.
+     *  @param replicates The number of replicates run.
+     *  @return True if the likelihood is settled below the threshold and
+     *  no more replicates are needed.
+     */
+    public boolean isSettled (long[] success, int replicates) {
+        this.replicates = replicates;
+        if (replicates <= 0) return false;
+        double n = replicates;
+        double p = success[level] / n;
+        double z2 = Z * Z;
+        double center = (p + z2 / (2.0d * n)) / (1.0d + z2 / n);
+        double half = Z / (1.0d + z2 / n) * Math.sqrt (
+            p * (1.0d - p) / n + z2 / (4.0d * n * n)
+        );
+        below = center + half < threshold;
+        return below;
+    }
+
+    /**
+     *  Returns true if the likelihood was settled below the threshold
+     *  before every replicate was run.
+     *
+     *  @return True if the likelihood is below the threshold.
+     */
+    public boolean isBelow () {
+        return below;
+    }
+
+    /**
+     *  Returns the number of replicates that were actually run.
+     *
+     *  @return The number of replicates.
+     */
+    public int getReplicates () {
+        return replicates;
+    }
+
+    /**
+     *  The number of standard deviations used for the confidence bound.
+     *  This is wider than a single 99% bound, since the bound is checked
+     *  after every batch.
+     */
+    private static final double Z = 3.0d;
+
+    private int level;
+    private double threshold;
+    private int replicates;
+    private boolean below;
+
+}
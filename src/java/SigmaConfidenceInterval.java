@@ -22,17 +22,9 @@
 
 package ecosim;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import ecosim.api.SimulationEngine;
+
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Locale;
-import java.util.StringTokenizer;
 
 /**
  *  Run the sigma confidence interval program.
@@ -71,14 +63,49 @@ public class SigmaConfidenceInterval implements Runnable {
      *  Run the sigma confidence interval program.
      */
     public void run () {
-        File inputFile = new File (inputFileName);
-        File outputFile = new File (outputFileName);
-        // Write the input values for the program to the sigmaIn.dat file.
-        writeInputFile (inputFile);
-        // Run the sigmaCI program.
-        execs.runSigmaCI (inputFile, outputFile);
-        // Get the output provided by the sigmaCI program.
-        readOutputFile (outputFile);
+        run (mainVariables.getNumberThreads ());
+    }
+
+    /**
+     *  Run the sigma confidence interval program using the provided number of
+     *  threads.  The number of threads only applies to the native program.
+     *  The Java engine runs the replicates of every confidence interval on
+     *  one shared pool, sized by the number of threads in MainVariables,
+     *  so intervals run at the same time share that pool.
+     *
+     *  @param numberThreads The number of threads for the native program.
+     */
+    public void run (int numberThreads) {
+        SimulationEngine engine = execs.getSimulationEngine ();
+        SimulationInput input = new SimulationInput (
+            binning, nu, length, nrep, mainVariables.getCriterion ()
+        );
+        ParameterSet[] bounds;
+        if (engine != null) {
+            // Run the sigma confidence interval inside of the JVM.
+            bounds = engine.sigmaConfidenceInterval (
+                input, hillclimbResult, step
+            );
+        }
+        else {
+            // Run the sigmaCI program.
+            SimulationCodec request = new SimulationCodec (
+                SimulationCodec.PROGRAM_SIGMA_CI, input, hillclimbResult
+            );
+            request.setStep (step);
+            bounds = execs.runProgram (
+                request, new File (inputFileName), new File (outputFileName),
+                numberThreads
+            );
+        }
+        if (bounds != null) {
+            setLowerResult (
+                bounds[0].getSigma (), bounds[0].getLikelihood ()
+            );
+            setUpperResult (
+                bounds[1].getSigma (), bounds[1].getLikelihood ()
+            );
+        }
         // Set the flag stating that the confidence interval program has run.
         if (result[0] > 0.0 && result[1] > 0.0) {
             hasRun = true;
@@ -165,170 +192,6 @@ public class SigmaConfidenceInterval implements Runnable {
         this.likelihood[1] = likelihood;
     }
 
-    /**
-     *  Private method to write the input file for the sigma confidence
-     *  interval program.
-     *
-     *  @param inputFile The file to write to.
-     */
-    private void writeInputFile (File inputFile) {
-        ArrayList<BinLevel> bins = binning.getBins ();
-        BufferedWriter writer = null;
-        try {
-            writer = new BufferedWriter (new FileWriter (inputFile));
-            writer.write (String.format (
-                Locale.US,
-                "%-20d numcrit\n",
-                bins.size ()
-            ));
-            // Output the crit levels and the number of bins.
-            for (int j = 0; j < bins.size (); j ++) {
-                writer.write (String.format (
-                    Locale.US,
-                    "%-20.6f %-20d\n",
-                    bins.get (j).getCrit (),
-                    bins.get (j).getLevel ()
-                ));
-            }
-            // Write the omega value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f omega\n",
-                hillclimbResult.getOmega ()
-            ));
-            // Write the sigma value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f sigma\n",
-                hillclimbResult.getSigma ()
-            ));
-            // Write the npop value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d npop\n",
-                hillclimbResult.getNpop ()
-            ));
-            // Write the step value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d step\n",
-                step
-            ));
-            // Write the nu value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d nu\n",
-                nu
-            ));
-            // Write the nrep value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d nrep\n",
-                nrep
-            ));
-            // Create the random number seed; an odd integer less than nine
-            // digits long.
-            long iii = (long)(100000000 * Math.random ());
-            if (iii % 2 == 0) {
-                iii ++;
-            }
-            // Write the random number seed.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d iii (random number seed)\n",
-                iii
-            ));
-            // Write the length of the sequences.
-            writer.write (String.format (
-                Locale.US,
-                "%-20d lengthseq (after deleting gaps, etc.)\n",
-                length
-            ));
-            // Write the whichavg value.
-            int whichavg = mainVariables.getCriterion ();
-            writer.write (String.format (
-                Locale.US,
-                "%-20d whichavg\n",
-                whichavg
-            ));
-            // Write the likelihoodsolution value.
-            writer.write (String.format (
-                Locale.US,
-                "%-20.5f likelihoodsolution\n",
-                hillclimbResult.getLikelihood ()
-            ));
-        }
-        catch (IOException e) {
-            System.out.println ("Error writing the input file.");
-        }
-        finally {
-            if (writer != null) {
-                try {
-                    writer.close ();
-                }
-                catch (IOException e) {
-                    System.out.println ("Error closing the input file.");
-                }
-            }
-        }
-    }
-
-    /**
-     *  Private method to read the output file from the sigma confidence
-     *  interval program.
-     *
-     *  @param outputFile The file to read from.
-     */
-    private void readOutputFile (File outputFile) {
-        BufferedReader reader = null;
-        NumberFormat format = NumberFormat.getInstance (Locale.US);
-        try {
-            reader = new BufferedReader (new FileReader (outputFile));
-            String nextLine = reader.readLine ();
-            while (nextLine != null) {
-                StringTokenizer st = new StringTokenizer (nextLine);
-                // The first line contains the upper value of the confidence
-                // interval for sigma, and the likelihood for that values.
-                // The second line contains the lower value.
-                String upperLower = st.nextToken (); // "upper" or "lower".
-                st.nextToken (); // "bound".
-                st.nextToken (); // "sigma".
-                int index;
-                switch (upperLower) {
-                    case "lower": index = 0;
-                                  break;
-                    case "upper": index = 1;
-                                  break;
-                    default:      System.out.println (
-                                      "Unexpected error in input file: " +
-                                      outputFile.getName ()
-                                  );
-                                  return;
-                }
-                result[index] = format.parse (st.nextToken ()).doubleValue ();
-                st.nextToken (); // "likelihood".
-                likelihood[index] = format.parse (st.nextToken ()).doubleValue ();
-                nextLine = reader.readLine ();
-            }
-        }
-        catch (IOException e) {
-            System.out.println ("Error reading the output file.");
-        }
-        catch (ParseException e) {
-            System.out.println ("Error parsing a number.");
-        }
-        finally {
-            if (reader != null) {
-                try {
-                    reader.close ();
-                }
-                catch (IOException e) {
-                    System.out.println ("Error closing the output file.");
-                }
-            }
-        }
-    }
-
     private String inputFileName;
     private String outputFileName;
 
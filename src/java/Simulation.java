@@ -27,11 +27,12 @@ import ecosim.tree.SVGPainter;
 import ecosim.tree.Tree;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.util.ArrayList;
-import java.io.IOException;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *  The shared methods of the simulation used by SimulationCLI and
@@ -69,7 +70,9 @@ public class Simulation {
         if (outputFile != null) {
             saveProjectFile (outputFile);
         }
+        execs.exit ();
         mainVariables.exit ();
+        log.close ();
         System.exit (0);
     }
 
@@ -219,7 +222,8 @@ public class Simulation {
     }
 
     /**
-     *  Save the project to a XML formated file.
+     *  Save the project to a binary or XML formated file, depending on the
+     *  extension of the file.
      *
      *  @param file The file to save the project to.
      */
@@ -243,36 +247,6 @@ public class Simulation {
             return false;
         }
         log.appendln ("Opening sequence file...");
-        // Check the file extension for compressed files.
-        String name = file.getName ();
-        int lastIndexOf = name.lastIndexOf (".");
-        if (lastIndexOf > -1) {
-            String newFile = mainVariables.getWorkingDirectory () + "sequences.fa";
-            switch (name.substring (lastIndexOf + 1)) {
-                case "gz":
-                case "gzip":
-                    log.appendln ("Sequence file compressed with gzip, uncompressing...");
-                    try {
-                        GZIPInputStream gis = new GZIPInputStream (new FileInputStream (file));
-                        FileOutputStream fos = new FileOutputStream (newFile);
-                        byte[] buffer = new byte[1024];
-                        int len;
-                        while ((len = gis.read (buffer)) != -1) {
-                            fos.write (buffer, 0, len);
-                        }
-                        fos.close ();
-                        gis.close ();
-                    } catch (IOException e) {
-                        System.out.println ("Error unziping the sequence file.");
-                        e.printStackTrace ();
-                        return false;
-                    }
-                    mainVariables.setSequenceFile (new File (newFile));
-                    break;
-                default:
-                    break;
-            }
-        }
         try {
             fasta = new Fasta (mainVariables.getSequenceFile ());
             Sequence outgroupSequence = fasta.getOutgroup ();
@@ -349,8 +323,27 @@ public class Simulation {
         File newickFile = new File (
             mainVariables.getWorkingDirectory () + "fasttree.nwk"
         );
+        // FastTree needs an uncompressed sequence file.
+        File sequenceFile = mainVariables.getSequenceFile ();
+        if (Fasta.isCompressed (sequenceFile)) {
+            log.appendln (
+                "Sequence file compressed with gzip, uncompressing for " +
+                "FastTree..."
+            );
+            File uncompressed = new File (
+                mainVariables.getWorkingDirectory () + "sequences.fa"
+            );
+            try {
+                Fasta.uncompress (sequenceFile, uncompressed);
+            }
+            catch (InvalidFastaException e) {
+                log.appendln ("Error uncompressing the sequence file.\n" + e);
+                return newickFile;
+            }
+            sequenceFile = uncompressed;
+        }
         // Generate a tree using FastTree.
-        execs.runFastTree (mainVariables.getSequenceFile (), newickFile);
+        execs.runFastTree (sequenceFile, newickFile);
         return newickFile;
     }
 
@@ -453,9 +446,12 @@ public class Simulation {
         hillclimb = new Hillclimb (
             mainVariables, execs, nu, length, binning, estimate.getResult ()
         );
+        // Each reduced precision resumes from the run before it.
+        boolean resume = false;
         while (likelihood < mainVariables.EPSILON)  {
             // Run hillclimbing using the current criterion.
-            hillclimb.run ();
+            hillclimb.run (resume);
+            resume = true;
             // Verify that hillclimbing ran correctly.
             if (! hillclimb.hasRun ()) {
                 log.appendln ("  Error running the hillclimbing program!");
@@ -491,107 +487,228 @@ public class Simulation {
     public void runNpopConfidenceInterval () {
         // Start running the confidence interval.
         running = true;
+        if (! npopConfidenceInterval (mainVariables.getNumberThreads ())) {
+            return;
+        }
+        // Done running the confidence interval.
+        running = false;
+    }
+
+    /**
+     *  Run the omega confidence interval program.
+     */
+    public void runOmegaConfidenceInterval () {
+        // Start running the confidence interval.
+        running = true;
+        if (! omegaConfidenceInterval (mainVariables.getNumberThreads ())) {
+            return;
+        }
+        // Done running the confidence interval.
+        running = false;
+    }
+
+    /**
+     *  Run the sigma confidence interval program.
+     */
+    public void runSigmaConfidenceInterval () {
+        // Start running the confidence interval.
+        running = true;
+        if (! sigmaConfidenceInterval (mainVariables.getNumberThreads ())) {
+            return;
+        }
+        // Done running the confidence interval.
+        running = false;
+    }
+
+    /**
+     *  Run the omega, sigma, and npop confidence interval programs.  Each
+     *  of them only depends on the hillclimb result, so they are run at the
+     *  same time, with the threads available split between them.  The
+     *  summary is updated as each of them finishes.
+     */
+    public void runConfidenceIntervals () {
+        // Start running the confidence intervals.
+        running = true;
+        // Initialize the confidence interval.
+        confidenceInterval = new ParameterSet[] {
+            new ParameterSet (), new ParameterSet ()
+        };
+        final int numberThreads = Math.max (
+            1, mainVariables.getNumberThreads ()
+        );
+        ArrayList<Callable<Void>> intervals = new ArrayList<Callable<Void>> ();
+        // Run the npop confidence interval.
+        intervals.add (new Callable<Void> () {
+            public Void call () {
+                if (npopConfidenceInterval (
+                    shareThreads (numberThreads, 0))) {
+                    Long[] npop = npopCI.getResult ();
+                    synchronized (confidenceInterval) {
+                        confidenceInterval[0].setNpop (npop[0]);
+                        confidenceInterval[1].setNpop (npop[1]);
+                        summary.setConfidenceInterval (confidenceInterval);
+                    }
+                }
+                return null;
+            }
+        });
+        // Run the omega confidence interval.
+        intervals.add (new Callable<Void> () {
+            public Void call () {
+                if (omegaConfidenceInterval (
+                    shareThreads (numberThreads, 1))) {
+                    Double[] omega = omegaCI.getResult ();
+                    synchronized (confidenceInterval) {
+                        confidenceInterval[0].setOmega (omega[0]);
+                        confidenceInterval[1].setOmega (omega[1]);
+                        summary.setConfidenceInterval (confidenceInterval);
+                    }
+                }
+                return null;
+            }
+        });
+        // Run the sigma confidence interval.
+        intervals.add (new Callable<Void> () {
+            public Void call () {
+                if (sigmaConfidenceInterval (
+                    shareThreads (numberThreads, 2))) {
+                    Double[] sigma = sigmaCI.getResult ();
+                    synchronized (confidenceInterval) {
+                        confidenceInterval[0].setSigma (sigma[0]);
+                        confidenceInterval[1].setSigma (sigma[1]);
+                        summary.setConfidenceInterval (confidenceInterval);
+                    }
+                }
+                return null;
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool (
+            NUMBER_CONFIDENCE_INTERVALS
+        );
+        try {
+            for (Future<Void> interval: executor.invokeAll (intervals)) {
+                interval.get ();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            return;
+        }
+        catch (ExecutionException e) {
+            log.appendln (
+                "  Error running the confidence interval programs!"
+            );
+            e.printStackTrace ();
+            return;
+        }
+        finally {
+            executor.shutdownNow ();
+        }
+        // Done running the confidence intervals.
+        running = false;
+    }
+
+    /**
+     *  A private helper method to run the npop confidence interval program
+     *  and output the result.
+     *
+     *  @param numberThreads The number of threads to use.
+     *  @return True if the program ran correctly, False otherwise.
+     */
+    private boolean npopConfidenceInterval (int numberThreads) {
         log.appendln ("Running npop confidence interval...");
         npopCI = new NpopConfidenceInterval (
             mainVariables, execs, nu, length, binning,
             hillclimb.getResult ()
         );
-        npopCI.run ();
+        npopCI.run (numberThreads);
         // Verify that npopCI ran correctly.
         if (! npopCI.hasRun ()) {
             log.appendln (
                 "  Error running the npop confidence interval program!"
             );
-            return;
+            return false;
         }
-        // Output the npopCI result.
-        log.appendln ("The result from npopCI:");
-        log.appendln ("  " + npopCI.toString ());
-        log.appendln ();
-        // Done running the confidence interval.
-        running = false;
+        // Output the npopCI result, in one piece so that it is not mixed
+        // with the output of the other confidence intervals.
+        log.append (
+            "The result from npopCI:\n  " + npopCI.toString () + "\n\n"
+        );
+        return true;
     }
 
     /**
-     *  Run the omega confidence interval program.
+     *  A private helper method to run the omega confidence interval program
+     *  and output the result.
+     *
+     *  @param numberThreads The number of threads to use.
+     *  @return True if the program ran correctly, False otherwise.
      */
-    public void runOmegaConfidenceInterval () {
-        // Start running the confidence interval.
-        running = true;
+    private boolean omegaConfidenceInterval (int numberThreads) {
         log.appendln ("Running omega confidence interval...");
         omegaCI = new OmegaConfidenceInterval (
             mainVariables, execs, nu, length, binning,
             hillclimb.getResult ()
         );
-        omegaCI.run ();
+        omegaCI.run (numberThreads);
         // Verify that omegaCI ran correctly.
         if (! omegaCI.hasRun ()) {
             log.appendln (
                 "  Error running the omega confidence interval program!"
             );
-            return;
+            return false;
         }
         // Output the omegaCI result.
-        log.appendln ("The result from omegaCI:");
-        log.appendln ("  " + omegaCI.toString ());
-        log.appendln ();
-        // Done running the confidence interval.
-        running = false;
+        log.append (
+            "The result from omegaCI:\n  " + omegaCI.toString () + "\n\n"
+        );
+        return true;
     }
 
     /**
-     *  Run the sigma confidence interval program.
+     *  A private helper method to run the sigma confidence interval program
+     *  and output the result.
+     *
+     *  @param numberThreads The number of threads to use.
+     *  @return True if the program ran correctly, False otherwise.
      */
-    public void runSigmaConfidenceInterval () {
-        // Start running the confidence interval.
-        running = true;
+    private boolean sigmaConfidenceInterval (int numberThreads) {
         log.appendln ("Running sigma confidence interval...");
         sigmaCI = new SigmaConfidenceInterval (
             mainVariables, execs, nu, length, binning,
             hillclimb.getResult ()
         );
-        sigmaCI.run ();
+        sigmaCI.run (numberThreads);
         // Verify that sigmaCI ran correctly.
         if (! sigmaCI.hasRun ()) {
             log.appendln (
                 "  Error running the sigma confidence interval program!"
             );
-            return;
+            return false;
         }
         // Output the sigmaCI result.
-        log.appendln ("The result from sigmaCI:");
-        log.appendln ("  " + sigmaCI.toString ());
-        log.appendln ();
-        // Done running the confidence interval.
-        running = false;
+        log.append (
+            "The result from sigmaCI:\n  " + sigmaCI.toString () + "\n\n"
+        );
+        return true;
     }
 
     /**
-     *  Run the omega, sigma, and npop confidence interval programs.
+     *  A private helper method to split the threads available between the
+     *  confidence intervals, giving each at least one thread.  The share is
+     *  used by the native programs, since the Java engine already runs the
+     *  intervals on one shared pool of threads.
+     *
+     *  @param numberThreads The number of threads available.
+     *  @param interval The index of the confidence interval.
+     *  @return The number of threads for the confidence interval.
      */
-    public void runConfidenceIntervals () {
-        // Initialize the confidence interval.
-        confidenceInterval = new ParameterSet[] {
-            new ParameterSet (), new ParameterSet ()
-        };
-        // Run the npop confidence interval.
-        runNpopConfidenceInterval ();
-        Long[] npop = npopCI.getResult ();
-        confidenceInterval[0].setNpop (npop[0]);
-        confidenceInterval[1].setNpop (npop[1]);
-        summary.setConfidenceInterval (confidenceInterval);
-        // Run the omega confidence interval.
-        runOmegaConfidenceInterval ();
-        Double[] omega = omegaCI.getResult ();
-        confidenceInterval[0].setOmega (omega[0]);
-        confidenceInterval[1].setOmega (omega[1]);
-        summary.setConfidenceInterval (confidenceInterval);
-        // Run the sigma confidence interval.
-        runSigmaConfidenceInterval ();
-        Double[] sigma = sigmaCI.getResult ();
-        confidenceInterval[0].setSigma (sigma[0]);
-        confidenceInterval[1].setSigma (sigma[1]);
-        summary.setConfidenceInterval (confidenceInterval);
+    private static int shareThreads (int numberThreads, int interval) {
+        int share = numberThreads / NUMBER_CONFIDENCE_INTERVALS;
+        if (interval < numberThreads % NUMBER_CONFIDENCE_INTERVALS) {
+            share ++;
+        }
+        return Math.max (1, share);
     }
 
     /**
@@ -607,6 +724,7 @@ public class Simulation {
                 hillclimb.getResult (), demarcationMethod
             );
             demarcation.setPaintMethod (demarcationPaintMethod);
+            demarcation.setCache (getDemarcationCache ());
             demarcation.run ();
             // Verify that demarcation ran correctly.
             if (! demarcation.hasRun ()) {
@@ -624,6 +742,11 @@ public class Simulation {
             File svg = new File (dir + "demarcation.svg");
             demarcation.paintTree (new SVGPainter (svg));
         }
+        if (mainVariables.getDebug ()) {
+            log.appendln (String.format (
+                "  Demarcation cache: %s.", demarcationCache
+            ));
+        }
         // Update the summary data.
         summary.setDemarcation (demarcation);
         // Output the demarcation result.
@@ -634,6 +757,30 @@ public class Simulation {
         running = false;
     }
 
+    /**
+     *  Get the cache of demarcation results shared by every run of
+     *  demarcation, creating it if needed.  Results evicted from memory
+     *  are spilled to a file in the working directory.
+     *
+     *  @return The DemarcationCache object.
+     */
+    protected DemarcationCache getDemarcationCache () {
+        if (demarcationCache == null) {
+            File spillFile = new File (
+                mainVariables.getWorkingDirectory () + "demarcationCache.dat"
+            );
+            demarcationCache = new DemarcationCache (
+                DemarcationCache.DEFAULT_CAPACITY, spillFile
+            );
+        }
+        return demarcationCache;
+    }
+
+    /**
+     *  The number of confidence intervals run at the same time.
+     */
+    private static final int NUMBER_CONFIDENCE_INTERVALS = 3;
+
     protected Logger log;
     protected MainVariables mainVariables;
     protected Execs execs;
@@ -651,6 +798,7 @@ public class Simulation {
     protected OmegaConfidenceInterval omegaCI;
     protected SigmaConfidenceInterval sigmaCI;
     protected Demarcation demarcation;
+    protected DemarcationCache demarcationCache;
     protected Integer demarcationPaintMethod;
     protected Integer demarcationMethod;
     protected boolean running;
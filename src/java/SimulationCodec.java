@@ -0,0 +1,507 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ *  Encodes the requests sent to the Fortran programs and decodes their
+ *  responses.  Every program shares the same binary request layout, in
+ *  little-endian byte order:
+ *
+ *  <pre>
+ *  int32   BINARY_REQUEST
+ *  int32   numcrit
+ *  numcrit times: float32 crit, int32 realdata
+ *  float64 omega, float64 sigma, int32 npop, int32 step, float64 step,
+ *  int32 nu, int32 nrep, int32 seed, int32 length, int32 whichavg,
+ *  float64 likelihood
+ *  </pre>
+ *
+ *  The binary response is BINARY_RESPONSE, an int32 count, and that many
+ *  records of float64 omega, float64 sigma, int32 npop, float64 likelihood.
+ *  The response of hillclimb is the solution found, of demarcation npop = 1
+ *  and the most likely npop, and of the confidence interval programs the
+ *  lower and the upper bound.
+ *
+ *  The text format of the original input and output files is kept for
+ *  debugging and for the workers, using enough digits to keep the full
+ *  precision of each value.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class SimulationCodec {
+
+    public static final int PROGRAM_HILLCLIMB = 1701;
+    public static final int PROGRAM_DEMARCATION = 1702;
+    public static final int PROGRAM_NPOP_CI = 1703;
+    public static final int PROGRAM_OMEGA_CI = 1704;
+    public static final int PROGRAM_SIGMA_CI = 1705;
+
+    /**
+     *  The magic number at the start of a binary request ("ESRQ").
+     */
+    public static final int BINARY_REQUEST = 0x51525345;
+
+    /**
+     *  The magic number at the start of a binary response ("ESRP").
+     */
+    public static final int BINARY_RESPONSE = 0x50525345;
+
+    /**
+     *  Create a request for one of the Fortran programs.
+     *
+     *  @param program The program, one of the PROGRAM constants.
+     *  @param input The input values shared by every simulation.
+     *  @param estimate The parameter values to start from, including the
+     *  likelihood of the solution for the confidence interval programs.
+     */
+    public SimulationCodec (int program, SimulationInput input,
+        ParameterSet estimate) {
+        this.program = program;
+        this.input = input;
+        this.estimate = estimate;
+        step = 0.0d;
+        // Create the random number seed; an odd integer less than nine
+        // digits long.
+        seed = (int)(100000000 * Math.random ());
+        if (seed % 2 == 0) {
+            seed ++;
+        }
+    }
+
+    /**
+     *  Get the program that this request is for.
+     *
+     *  @return The program, one of the PROGRAM constants.
+     */
+    public int getProgram () {
+        return program;
+    }
+
+    /**
+     *  Get the input values shared by every simulation.
+     *
+     *  @return The input values.
+     */
+    public SimulationInput getInput () {
+        return input;
+    }
+
+    /**
+     *  Get the file name of the program, without an extension.
+     *
+     *  @return The file name of the program.
+     */
+    public String getProgramName () {
+        switch (program) {
+            case PROGRAM_HILLCLIMB: return "hillclimb";
+            case PROGRAM_DEMARCATION: return "demarcation";
+            case PROGRAM_NPOP_CI: return "npopCI";
+            case PROGRAM_OMEGA_CI: return "omegaCI";
+            default: return "sigmaCI";
+        }
+    }
+
+    /**
+     *  Get the title of the program used for its messages.
+     *
+     *  @return The title of the program.
+     */
+    public String getProgramTitle () {
+        switch (program) {
+            case PROGRAM_HILLCLIMB: return "Hill Climb";
+            case PROGRAM_DEMARCATION: return "Demarcation";
+            case PROGRAM_NPOP_CI: return "Npop CI";
+            case PROGRAM_OMEGA_CI: return "Omega CI";
+            default: return "Sigma CI";
+        }
+    }
+
+    /**
+     *  Set the step used by the demarcation and confidence interval
+     *  programs.  The step is an increment for npop, and a factor for
+     *  omega and sigma.
+     *
+     *  @param step The step.
+     */
+    public void setStep (double step) {
+        this.step = step;
+    }
+
+    /**
+     *  Encode the request in the binary format.
+     *
+     *  @return The request, ready to be read.
+     */
+    public ByteBuffer encode () {
+        int numcrit = input.getNumcrit ();
+        float[] crit = input.getCrit ();
+        int[] realdata = input.getRealdata ();
+        ByteBuffer buffer = ByteBuffer.allocate (
+            2 * INT_BYTES + numcrit * (FLOAT_BYTES + INT_BYTES) +
+            4 * DOUBLE_BYTES + 7 * INT_BYTES
+        );
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt (BINARY_REQUEST);
+        buffer.putInt (numcrit);
+        for (int i = 0; i < numcrit; i ++) {
+            buffer.putFloat (crit[i]);
+            buffer.putInt (realdata[i]);
+        }
+        buffer.putDouble (estimate.getOmega ());
+        buffer.putDouble (estimate.getSigma ());
+        buffer.putInt (estimate.getNpop ().intValue ());
+        buffer.putInt ((int)Math.round (step));
+        buffer.putDouble (step);
+        buffer.putInt (input.getNu ());
+        buffer.putInt (input.getNrep ());
+        buffer.putInt (seed);
+        buffer.putInt (input.getLength ());
+        buffer.putInt (input.getWhichavg ());
+        buffer.putDouble (likelihood ());
+        buffer.flip ();
+        return buffer;
+    }
+
+    /**
+     *  Encode the request in the text format of the input files.
+     *
+     *  @return The request.
+     */
+    public String encodeText () {
+        int numcrit = input.getNumcrit ();
+        float[] crit = input.getCrit ();
+        int[] realdata = input.getRealdata ();
+        StringBuilder text = new StringBuilder ();
+        text.append (String.format (Locale.US, "%-20d numcrit\n", numcrit));
+        // Output the crit levels and the number of bins.
+        for (int i = 0; i < numcrit; i ++) {
+            text.append (String.format (
+                Locale.US, "%-20.6f %-20d\n", crit[i], realdata[i]
+            ));
+        }
+        text.append (String.format (
+            Locale.US, "%-24.17g omega\n", estimate.getOmega ()
+        ));
+        text.append (String.format (
+            Locale.US, "%-24.17g sigma\n", estimate.getSigma ()
+        ));
+        text.append (String.format (
+            Locale.US, "%-24d npop\n", estimate.getNpop ()
+        ));
+        if (program == PROGRAM_OMEGA_CI || program == PROGRAM_SIGMA_CI) {
+            text.append (String.format (Locale.US, "%-24.17g step\n", step));
+        }
+        else if (program != PROGRAM_HILLCLIMB) {
+            text.append (String.format (
+                Locale.US, "%-24d step\n", Math.round (step)
+            ));
+        }
+        text.append (String.format (
+            Locale.US, "%-24d nu\n", input.getNu ()
+        ));
+        text.append (String.format (
+            Locale.US, "%-24d nrep\n", input.getNrep ()
+        ));
+        text.append (String.format (
+            Locale.US, "%-24d iii (random number seed)\n", seed
+        ));
+        text.append (String.format (
+            Locale.US, "%-24d lengthseq (after deleting gaps, etc.)\n",
+            input.getLength ()
+        ));
+        text.append (String.format (
+            Locale.US, "%-24d whichavg\n", input.getWhichavg ()
+        ));
+        if (program != PROGRAM_HILLCLIMB && program != PROGRAM_DEMARCATION) {
+            text.append (String.format (
+                Locale.US, "%-24.17g likelihoodsolution\n", likelihood ()
+            ));
+        }
+        return text.toString ();
+    }
+
+    /**
+     *  Decode a response in the binary format.
+     *
+     *  @param buffer The response.
+     *  @return The records of the response.
+     */
+    public ParameterSet[] decode (ByteBuffer buffer) throws IOException {
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining () < 2 * INT_BYTES ||
+            buffer.getInt () != BINARY_RESPONSE) {
+            throw new IOException ("Not a binary response.");
+        }
+        int count = buffer.getInt ();
+        if (count < 0 || buffer.remaining () < count * RECORD_BYTES) {
+            throw new IOException ("Truncated binary response.");
+        }
+        ArrayList<ParameterSet> records = new ArrayList<ParameterSet> ();
+        for (int i = 0; i < count; i ++) {
+            Double omega = buffer.getDouble ();
+            Double sigma = buffer.getDouble ();
+            Long npop = (long)buffer.getInt ();
+            Double likelihood = buffer.getDouble ();
+            records.add (record (omega, sigma, npop, likelihood));
+        }
+        // The confidence interval programs output the upper bound first.
+        if (program != PROGRAM_HILLCLIMB && program != PROGRAM_DEMARCATION &&
+            records.size () == 2) {
+            records.add (records.remove (0));
+        }
+        return records.toArray (new ParameterSet[records.size ()]);
+    }
+
+    /**
+     *  Decode a response in the text format of the output files.
+     *
+     *  @param lines The lines of the response.
+     *  @return The records of the response.
+     */
+    public ParameterSet[] decodeText (List<String> lines)
+        throws IOException {
+        ParameterSet[] records;
+        if (program == PROGRAM_HILLCLIMB) {
+            records = new ParameterSet[1];
+        }
+        else {
+            records = new ParameterSet[2];
+        }
+        int index = 0;
+        for (String line: lines) {
+            // Collect the numbers on the line, skipping the labels.
+            ArrayList<Double> values = new ArrayList<Double> ();
+            String label = "";
+            StringTokenizer st = new StringTokenizer (line);
+            while (st.hasMoreTokens ()) {
+                String token = st.nextToken ();
+                try {
+                    values.add (Double.parseDouble (token.replace ('D', 'E')));
+                }
+                catch (NumberFormatException e) {
+                    if (label.length () == 0) label = token;
+                }
+            }
+            if (values.size () == 0) continue;
+            if (index >= records.length) {
+                throw new IOException ("Unexpected text in the response.");
+            }
+            switch (program) {
+                case PROGRAM_HILLCLIMB:
+                    if (values.size () < 4) {
+                        throw new IOException ("Malformed response.");
+                    }
+                    records[index ++] = new ParameterSet (
+                        Math.round (values.get (2)), values.get (0),
+                        values.get (1), values.get (3)
+                    );
+                    break;
+                case PROGRAM_DEMARCATION:
+                    if (values.size () < 2) {
+                        throw new IOException ("Malformed response.");
+                    }
+                    records[index ++] = record (
+                        0.0d, 0.0d, Math.round (values.get (0)),
+                        values.get (1)
+                    );
+                    break;
+                default:
+                    if (values.size () < 2) {
+                        throw new IOException ("Malformed response.");
+                    }
+                    // The lower bound comes first in the result.
+                    int bound;
+                    switch (label) {
+                        case "lower": bound = 0;
+                                      break;
+                        case "upper": bound = 1;
+                                      break;
+                        default:      throw new IOException (
+                                          "Unexpected bound: " + label
+                                      );
+                    }
+                    double value = values.get (0);
+                    records[bound] = record (
+                        value, value, Math.round (value), values.get (1)
+                    );
+                    index ++;
+            }
+        }
+        for (int i = 0; i < records.length; i ++) {
+            if (records[i] == null) {
+                throw new IOException ("Incomplete response.");
+            }
+        }
+        return records;
+    }
+
+    /**
+     *  Write the request to a file.
+     *
+     *  @param file The file to write to.
+     *  @param text True to use the text format, false for the binary
+     *  format.
+     */
+    public void writeRequest (File file, boolean text) throws IOException {
+        if (text) {
+            Files.write (
+                file.toPath (),
+                encodeText ().getBytes (StandardCharsets.US_ASCII)
+            );
+            return;
+        }
+        try (FileChannel channel = FileChannel.open (
+            file.toPath (), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            ByteBuffer buffer = encode ();
+            while (buffer.hasRemaining ()) {
+                channel.write (buffer);
+            }
+        }
+    }
+
+    /**
+     *  Read the response from a file, in either format.
+     *
+     *  @param file The file to read from.
+     *  @return The records of the response.
+     */
+    public ParameterSet[] readResponse (File file) throws IOException {
+        byte[] bytes = Files.readAllBytes (file.toPath ());
+        ByteBuffer buffer = ByteBuffer.wrap (bytes);
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length >= INT_BYTES && buffer.getInt (0) == BINARY_RESPONSE) {
+            return decode (buffer);
+        }
+        String text = new String (bytes, StandardCharsets.US_ASCII);
+        ArrayList<String> lines = new ArrayList<String> ();
+        for (String line: text.split ("\n")) {
+            lines.add (line);
+        }
+        return decodeText (lines);
+    }
+
+    /**
+     *  Read a response in the binary format from a stream, such as the
+     *  standard output of a worker.  Exactly one response is read.
+     *
+     *  @param in The stream to read from.
+     *  @return The records of the response.
+     */
+    public ParameterSet[] readResponse (InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream (in);
+        byte[] header = new byte[2 * INT_BYTES];
+        data.readFully (header);
+        ByteBuffer buffer = ByteBuffer.wrap (header);
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt () != BINARY_RESPONSE) {
+            throw new IOException ("Not a binary response.");
+        }
+        int count = buffer.getInt ();
+        if (count < 0 || count > MAXIMUM_RECORDS) {
+            throw new IOException ("Malformed binary response.");
+        }
+        byte[] bytes = new byte[header.length + count * RECORD_BYTES];
+        System.arraycopy (header, 0, bytes, 0, header.length);
+        data.readFully (bytes, header.length, count * RECORD_BYTES);
+        return decode (ByteBuffer.wrap (bytes));
+    }
+
+    /**
+     *  Build a record of the response, using the starting parameter values
+     *  for the values that the program doesn't output.
+     *
+     *  @param omega The omega value of the record.
+     *  @param sigma The sigma value of the record.
+     *  @param npop The npop value of the record.
+     *  @param likelihood The likelihood of the record.
+     *  @return The record.
+     */
+    private ParameterSet record (Double omega, Double sigma, Long npop,
+        Double likelihood) {
+        switch (program) {
+            case PROGRAM_HILLCLIMB:
+                return new ParameterSet (npop, omega, sigma, likelihood);
+            case PROGRAM_OMEGA_CI:
+                return new ParameterSet (
+                    estimate.getNpop (), omega, estimate.getSigma (),
+                    likelihood
+                );
+            case PROGRAM_SIGMA_CI:
+                return new ParameterSet (
+                    estimate.getNpop (), estimate.getOmega (), sigma,
+                    likelihood
+                );
+            default:
+                return new ParameterSet (
+                    npop, estimate.getOmega (), estimate.getSigma (),
+                    likelihood
+                );
+        }
+    }
+
+    /**
+     *  Get the likelihood of the starting parameter values.
+     *
+     *  @return The likelihood, or zero if unknown.
+     */
+    private double likelihood () {
+        Double likelihood = estimate.getLikelihood ();
+        if (likelihood == null) return 0.0d;
+        return likelihood;
+    }
+
+    private static final int INT_BYTES = 4;
+    private static final int FLOAT_BYTES = 4;
+    private static final int DOUBLE_BYTES = 8;
+    private static final int RECORD_BYTES = 3 * DOUBLE_BYTES + INT_BYTES;
+
+    /**
+     *  The largest number of records in a response.
+     */
+    private static final int MAXIMUM_RECORDS = 2;
+
+    private int program;
+    private SimulationInput input;
+    private ParameterSet estimate;
+    private double step;
+    private int seed;
+
+}
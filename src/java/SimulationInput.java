@@ -0,0 +1,138 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim;
+
+import java.util.ArrayList;
+
+/**
+ *  Stores the values shared by every call to the simulation: the binning
+ *  result, the number and length of the sequences, the number of
+ *  replicates, and the precision used to measure the likelihood.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class SimulationInput {
+
+    /**
+     *  Collect the input values for the simulation.
+     *
+     *  @param binning The Binning object.
+     *  @param nu The number of environmental sequences.
+     *  @param length The length of the sequences being analyzed.
+     *  @param nrep The number of replicate simulations to run.
+     *  @param whichavg The precision (criterion) used for the likelihood.
+     */
+    public SimulationInput (Binning binning, Integer nu, Integer length,
+        Integer nrep, Integer whichavg) {
+        this.nu = nu;
+        this.length = length;
+        this.nrep = nrep;
+        this.whichavg = whichavg;
+        ArrayList<BinLevel> bins = binning.getBins ();
+        numcrit = bins.size ();
+        crit = new float[numcrit];
+        realdata = new int[numcrit];
+        for (int i = 0; i < numcrit; i ++) {
+            crit[i] = bins.get (i).getCrit ().floatValue ();
+            realdata[i] = bins.get (i).getLevel ();
+        }
+        // The last crit level is replaced by the value corresponding to a
+        // single nucleotide difference.
+        if (numcrit > 0) {
+            crit[numcrit - 1] = 1.0f - 1.0f / (2.0f * length);
+        }
+    }
+
+    /**
+     *  Get the number of crit levels.
+     *
+     *  @return The number of crit levels.
+     */
+    public int getNumcrit () {
+        return numcrit;
+    }
+
+    /**
+     *  Get the crit levels.
+     *
+     *  @return The crit levels.
+     */
+    public float[] getCrit () {
+        return crit;
+    }
+
+    /**
+     *  Get the number of bins observed at each crit level.
+     *
+     *  @return The number of bins observed at each crit level.
+     */
+    public int[] getRealdata () {
+        return realdata;
+    }
+
+    /**
+     *  Get the number of environmental sequences.
+     *
+     *  @return The number of environmental sequences.
+     */
+    public int getNu () {
+        return nu;
+    }
+
+    /**
+     *  Get the length of the sequences.
+     *
+     *  @return The length of the sequences.
+     */
+    public int getLength () {
+        return length;
+    }
+
+    /**
+     *  Get the number of replicate simulations to run.
+     *
+     *  @return The number of replicates.
+     */
+    public int getNrep () {
+        return nrep;
+    }
+
+    /**
+     *  Get the precision used for the likelihood (1 through 6).
+     *
+     *  @return The precision used for the likelihood.
+     */
+    public int getWhichavg () {
+        return whichavg;
+    }
+
+    private int numcrit;
+    private float[] crit;
+    private int[] realdata;
+    private int nu;
+    private int length;
+    private int nrep;
+    private int whichavg;
+
+}
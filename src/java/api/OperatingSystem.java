@@ -30,4 +30,13 @@ public interface OperatingSystem {
 
     public boolean verifyExecutable (Path path);
 
+    /**
+     *  Returns true if the standard input and output of a program can be
+     *  opened as files (/dev/stdin and /dev/stdout), which the Fortran
+     *  programs need to exchange binary requests as workers.
+     *
+     *  @return True if the standard streams can be opened as files.
+     */
+    public boolean hasStandardStreamFiles ();
+
 }
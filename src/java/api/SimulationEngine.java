@@ -0,0 +1,114 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim.api;
+
+import ecosim.ParameterSet;
+import ecosim.SimulationInput;
+
+public interface SimulationEngine {
+
+    /**
+     *  Optimize omega, sigma, and npop with the Nelder-Mead simplex method,
+     *  starting from the provided parameter values.
+     *
+     *  @param input The input values for the simulation.
+     *  @param parameterSet The initial parameter values.
+     *  @param resume True to resume an earlier hillclimb of the same
+     *  simulation at a lower precision, false to start a new one.
+     *  @return The optimized parameter values and their likelihood.
+     */
+    public ParameterSet hillclimb (
+        SimulationInput input, ParameterSet parameterSet, boolean resume
+    );
+
+    /**
+     *  Find the most likely npop value for the provided omega and sigma,
+     *  testing npop = 1 and then every step value up to the provided npop.
+     *
+     *  @param input The input values for the simulation.
+     *  @param parameterSet The omega and sigma values to use, and the
+     *  largest npop value to test.
+     *  @param step The step between tested npop values.
+     *  @return Two parameter sets: index 0 holds npop = 1 and its
+     *  likelihood, index 1 holds the most likely npop value and its
+     *  likelihood.  Both use the provided omega and sigma.
+     */
+    public ParameterSet[] demarcation (
+        SimulationInput input, ParameterSet parameterSet, int step
+    );
+
+    /**
+     *  Find the confidence interval of npop around the hillclimbing
+     *  solution using the likelihood ratio test.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution, including its
+     *  likelihood.
+     *  @param step The step between tested npop values.
+     *  @return Two parameter sets: index 0 holds the lower bound and
+     *  index 1 the upper bound, each with the omega and sigma values found
+     *  for it and its likelihood.  Null if the search failed.
+     */
+    public ParameterSet[] npopConfidenceInterval (
+        SimulationInput input, ParameterSet solution, int step
+    );
+
+    /**
+     *  Find the confidence interval of omega around the hillclimbing
+     *  solution using the likelihood ratio test.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution, including its
+     *  likelihood.
+     *  @param step The factor between tested omega values.
+     *  @return Two parameter sets: index 0 holds the lower bound and
+     *  index 1 the upper bound, each with the sigma and npop values found
+     *  for it and its likelihood.  Null if the search failed.
+     */
+    public ParameterSet[] omegaConfidenceInterval (
+        SimulationInput input, ParameterSet solution, double step
+    );
+
+    /**
+     *  Find the confidence interval of sigma around the hillclimbing
+     *  solution using the likelihood ratio test.  The upper bound is
+     *  capped at 100.
+     *
+     *  @param input The input values for the simulation.
+     *  @param solution The hillclimbing solution, including its
+     *  likelihood.
+     *  @param step The factor between tested sigma values.
+     *  @return Two parameter sets: index 0 holds the lower bound and
+     *  index 1 the upper bound, each with the omega and npop values found
+     *  for it and its likelihood.  Null if the search failed.
+     */
+    public ParameterSet[] sigmaConfidenceInterval (
+        SimulationInput input, ParameterSet solution, double step
+    );
+
+    /**
+     *  Stop any threads started by the engine.
+     */
+    public void shutdown ();
+
+}
@@ -22,6 +22,8 @@
 
 package ecosim.gui;
 
+import ecosim.ProjectFileIO;
+
 import java.io.File;
 import java.util.Arrays;
 import java.util.ArrayList;
@@ -64,6 +66,16 @@ public class FileChooser extends JFileChooser {
         String description;
         int mode;
         switch (type) {
+            case "project":
+                valid = projectExtensions;
+                description = projectDescription;
+                mode = FILES_ONLY;
+                break;
+            case "binary":
+                valid = binaryExtensions;
+                description = binaryDescription;
+                mode = FILES_ONLY;
+                break;
             case "xml": 
                 valid = xmlExtensions;
                 description = xmlDescription;
@@ -134,12 +146,20 @@ public class FileChooser extends JFileChooser {
         "*"
     };
 
+    private static final String[] projectExtensions = {
+        ProjectFileIO.BINARY_EXTENSION, "xml"
+    };
+
+    private static final String[] binaryExtensions = {
+        ProjectFileIO.BINARY_EXTENSION
+    };
+
     private static final String[] xmlExtensions = {
         "xml"
     };
 
     private static final String[] svgExtensions = {
-        "svg"
+        "svg", "svgz"
     };
 
     private static final String[] csvExtensions = {
@@ -157,6 +177,8 @@ public class FileChooser extends JFileChooser {
 
     private static final String defaultDescription = "Default";
     private static final String directoryDescription = "Directories";
+    private static final String projectDescription = "Project Files";
+    private static final String binaryDescription = "Binary Project Files";
     private static final String xmlDescription = "XML Project Files";
     private static final String svgDescription = "SVG Image Files";
     private static final String csvDescription = "CSV Save Files";
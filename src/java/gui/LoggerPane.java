@@ -29,6 +29,7 @@ import java.util.Observable;
 import java.util.Observer;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 
 /**
  *  Create a JScrollPane to display the log.
@@ -52,14 +53,28 @@ public class LoggerPane extends JScrollPane {
         textArea.setEditable (false);
         textArea.setDoubleBuffered (true);
         textArea.append (log.toString ());
-        // Update the log text area when the log changes.
+        final int retention = log.getRetention ();
+        // Update the log text area when the log changes.  The log sends the
+        // new text in batches, from outside of the event dispatch thread.
         log.addObserver (new Observer () {
-            public void update (Observable o, Object str) {
-                textArea.append ((String) str);
-                // Auto update the caret position.
-                textArea.setCaretPosition (log.length ());
-                // Repaint the log area.
-                textArea.repaint ();
+            public void update (Observable o, final Object str) {
+                SwingUtilities.invokeLater (new Runnable () {
+                    public void run () {
+                        textArea.append ((String) str);
+                        // Keep no more text than the log keeps.
+                        int excess = textArea.getDocument ().getLength () -
+                            retention;
+                        if (excess > 0) {
+                            textArea.replaceRange ("", 0, excess);
+                        }
+                        // Auto update the caret position.
+                        textArea.setCaretPosition (
+                            textArea.getDocument ().getLength ()
+                        );
+                        // Repaint the log area.
+                        textArea.repaint ();
+                    }
+                });
             }
         });
         // Add the log text area to the pane.
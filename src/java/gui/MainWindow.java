@@ -31,15 +31,12 @@ import ecosim.tree.Tree;
 import ecosim.tree.SVGPainter;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowAdapter;
 import java.io.File;
@@ -51,9 +48,7 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JMenuItem;
-import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
-import javax.swing.JViewport;
 
 /**
  *  Create a JFrame to display the main window.
@@ -126,52 +121,30 @@ public class MainWindow extends JFrame implements Runnable {
         summary.addObserver (new Observer () {
             private boolean treeDisplayed = false;
             private boolean demarcationDisplayed = false;
-            private JScrollPane treeScroll = new JScrollPane ();
-            private JScrollPane demarcationScroll = new JScrollPane ();
+            private TreePane treePane = new TreePane ();
+            private TreePane demarcationPane = new TreePane ();
             public void update (Observable o, Object obj) {
                 Summary s = (Summary)obj;
-                // Update the tree scroll pane.
+                // Update the tree pane.
                 Tree t = s.getTree ();
                 if (t == null || ! t.isValid ()) return;
                 if (! treeDisplayed) {
-                    JViewport viewport = treeScroll.getViewport ();
-                    viewport.setOpaque (true);
-                    viewport.setBackground (Color.WHITE);
-                    pane.addTab ("Phylogeny", treeScroll);
+                    pane.addTab ("Phylogeny", treePane);
                     treeDisplayed = true;
                 }
-                // Create a TiledPainter to paint the tree with.
-                TiledPainter treePainter = new TiledPainter ();
-                // Paint the tree.
-                t.paintTree (treePainter);
-                treeScroll.setViewportView (treePainter);
-                // Create a pop up menu to offer a Save as SVG prompt.
-                JPopupMenu treePopup = createSaveAsSVGPopupMenu (t);
-                treePainter.setComponentPopupMenu (treePopup);
-                // Add a mouse listener to the treePainter.
-                MouseAdapter tma = createPopupMouseAdapter (treePopup);
-                treePainter.addMouseListener (tma);
-                // Update the demarcation scroll pane.
+                // Paint the tree in the background, with a pop up menu to
+                // offer a Save as SVG prompt.
+                treePane.setTree (t, createSaveAsSVGPopupMenu (t));
+                // Update the demarcation pane.
                 Demarcation d = s.getDemarcation ();
                 if (d == null || ! d.isValid ()) return;
                 if (! demarcationDisplayed) {
-                    JViewport viewport = demarcationScroll.getViewport ();
-                    viewport.setOpaque (true);
-                    viewport.setBackground (Color.WHITE);
-                    pane.addTab ("Demarcation", demarcationScroll);
+                    pane.addTab ("Demarcation", demarcationPane);
                     demarcationDisplayed = true;
                 }
-                // Create a TiledPainter to paint the tree with.
-                TiledPainter demarcationPainter = new TiledPainter ();
-                // Paint the tree.
-                d.paintTree (demarcationPainter);
-                demarcationScroll.setViewportView (demarcationPainter);
-                // Create a pop up menu to offer a Save as SVG prompt.
-                JPopupMenu demarcationPopup = createSaveAsSVGPopupMenu (d);
-                demarcationPainter.setComponentPopupMenu (demarcationPopup);
-                // Add a mouse listener to the demarcationPainter.
-                MouseAdapter dma = createPopupMouseAdapter (demarcationPopup);
-                demarcationPainter.addMouseListener (dma);
+                // Paint the demarcation in the background, with a pop up
+                // menu to offer a Save as SVG prompt.
+                demarcationPane.setTree (d, createSaveAsSVGPopupMenu (d));
                 // Repaint the pane.
                 pane.repaint ();
             }
@@ -198,23 +171,6 @@ public class MainWindow extends JFrame implements Runnable {
         return popup;
     }
 
-    /**
-     *  Create a MouseAdapter for a popup menu.
-     *
-     *  @param popup The popup menu.
-     */
-    private MouseAdapter createPopupMouseAdapter (JPopupMenu popup) {
-        MouseAdapter adapter = new MouseAdapter () {
-            @Override
-            public void mousePressed (MouseEvent e) {
-                if (e.isPopupTrigger ()) {
-                    popup.show (e.getComponent (), e.getX (), e.getY ());
-                }
-            }
-        };
-        return adapter;
-    }
-
     /**
      *  Save the tree as an SVG file.
      *
@@ -229,7 +185,9 @@ public class MainWindow extends JFrame implements Runnable {
         if (returnVal != FileChooser.APPROVE_OPTION) return;
         mainVariables.setCurrentDirectory (file.getParent ());
         String fname = file.getAbsolutePath ();
-        if (! fname.endsWith (".svg")) file = new File (fname + ".svg");
+        if (! fname.endsWith (".svg") && ! fname.endsWith (".svgz")) {
+            file = new File (fname + ".svg");
+        }
         tree.paintTree (new SVGPainter (file));
     }
 
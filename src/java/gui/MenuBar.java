@@ -24,6 +24,7 @@ package ecosim.gui;
 
 import ecosim.Logger;
 import ecosim.MainVariables;
+import ecosim.ProjectFileIO;
 import ecosim.Simulation;
 
 import java.awt.event.ActionEvent;
@@ -79,6 +80,13 @@ public class MenuBar extends JMenuBar {
                 saveProjectFileActionPerformed ();
             }
         });
+        JMenuItem exportProjectFile = new JMenuItem ();
+        exportProjectFile.setText ("Export Project File as XML");
+        exportProjectFile.addActionListener (new ActionListener () {
+            public void actionPerformed (ActionEvent evt) {
+                exportProjectFileActionPerformed ();
+            }
+        });
         JMenuItem exitProgram = new JMenuItem ();
         exitProgram.setText ("Exit");
         exitProgram.addActionListener (new ActionListener () {
@@ -93,6 +101,7 @@ public class MenuBar extends JMenuBar {
         fileMenu.addSeparator ();
         fileMenu.add (loadProjectFile);
         fileMenu.add (saveProjectFile);
+        fileMenu.add (exportProjectFile);
         fileMenu.addSeparator ();
         fileMenu.addSeparator ();
         fileMenu.add (exitProgram);
@@ -202,7 +211,7 @@ public class MenuBar extends JMenuBar {
      */
     private void loadProjectFileActionPerformed () {
         FileChooser fc = new FileChooser (
-            mainVariables.getCurrentDirectory (), "xml"
+            mainVariables.getCurrentDirectory (), "project"
         );
         int returnVal = fc.showOpenDialog (this);
         if (returnVal == FileChooser.APPROVE_OPTION) {
@@ -222,6 +231,26 @@ public class MenuBar extends JMenuBar {
      *  The user has asked to save a project file.
      */
     private void saveProjectFileActionPerformed () {
+        FileChooser fc = new FileChooser (
+            mainVariables.getCurrentDirectory (), "binary"
+        );
+        int returnVal = fc.showSaveDialog (this);
+        if (returnVal == FileChooser.APPROVE_OPTION) {
+            File userFile = fc.getSelectedFile ();
+            mainVariables.setCurrentDirectory (userFile.getParent ());
+            String extension = "." + ProjectFileIO.BINARY_EXTENSION;
+            // if it doesn't already have the binary extension, add it.
+            if (! userFile.getName ().endsWith (extension)) {
+                userFile = new File (userFile.getPath () + extension);
+            }
+            simulation.saveProjectFile (userFile);
+        }
+    }
+
+    /**
+     *  The user has asked to export the project file as XML.
+     */
+    private void exportProjectFileActionPerformed () {
         FileChooser fc = new FileChooser (
             mainVariables.getCurrentDirectory (), "xml"
         );
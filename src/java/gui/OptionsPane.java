@@ -95,12 +95,16 @@ public class OptionsPane extends JPanel {
         scaleSlider.addChangeListener (new ChangeListener () {
             public void stateChanged (ChangeEvent evt) {
                 JSlider scale = (JSlider)evt.getSource ();
+                // Wait until the slider is released to paint the tree.
+                if (scale.getValueIsAdjusting ()) return;
                 setScaleActionPerformed ((int)scale.getValue ());
             }
         });
         scaleSlider.setMajorTickSpacing (1000);
         scaleSlider.setMinorTickSpacing (500);
         scaleSlider.setPaintTicks (true);
+        // Stop at the ticks, so that the layouts of the tree are reused.
+        scaleSlider.setSnapToTicks (true);
         JLayeredPane scaleOption = new JLayeredPane ();
         scaleOption.setLayout (new BorderLayout ());
         scaleOption.add (scaleLabel, BorderLayout.NORTH);
@@ -35,12 +35,22 @@ import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.swing.JPanel;
 import javax.swing.Scrollable;
 
 /**
  *  Create a tiled JPanel with a custom Painter.
  *
+ *  The draw commands are recorded for each tile that they hit, and a tile
+ *  is only drawn when it is first displayed.  The drawn tiles are kept in a
+ *  least recently used cache limited by a memory budget, and a tile that
+ *  was evicted is drawn again by replaying its commands.  A tile without
+ *  any commands is never allocated.
+ *
  *  @author Jason M. Wood
  *  @copyright GNU General Public License
  */
@@ -50,9 +60,48 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
      *  A custom tile-based JPanel using a custom Painter.
      *
      *  This object creates a tiled surface made up of a 2D BufferedImage grid
-     *  stored in an array named tiles.
+     *  stored in a cache named tiles.
      */
     public TiledPainter () {
+        this (DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     *  A custom tile-based JPanel using a custom Painter.
+     *
+     *  @param memoryBudget The number of bytes to use for drawn tiles.
+     */
+    public TiledPainter (long memoryBudget) {
+        // Each pixel of a binary image uses one bit.
+        long tileBytes = (long)TILE_SIZE * TILE_SIZE / 8;
+        maximumTiles = (int)Math.max (1L, memoryBudget / tileBytes);
+        commands = new HashMap<Integer, ArrayList<Command>> ();
+        tiles = new LinkedHashMap<Integer, BufferedImage> (16, 0.75f, true) {
+            protected boolean removeEldestEntry (
+                Map.Entry<Integer, BufferedImage> eldest) {
+                return size () > maximumTiles;
+            }
+        };
+    }
+
+    /**
+     *  Returns the largest number of drawn tiles kept in the cache.
+     *
+     *  @return The largest number of drawn tiles.
+     */
+    public int getMaximumTiles () {
+        return maximumTiles;
+    }
+
+    /**
+     *  Returns the number of drawn tiles in the cache.
+     *
+     *  @return The number of drawn tiles.
+     */
+    public int numberOfTiles () {
+        synchronized (tiles) {
+            return tiles.size ();
+        }
     }
 
     /**
@@ -71,7 +120,14 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
         for (int x = startX; x < stopX; x += TILE_SIZE) {
             for (int y = startY; y < stopY; y += TILE_SIZE) {
                 BufferedImage tile = getTile (x / TILE_SIZE, y / TILE_SIZE);
-                g.drawImage (tile, x, y, null);
+                if (tile != null) {
+                    g.drawImage (tile, x, y, null);
+                }
+                else {
+                    // Nothing was drawn on this tile.
+                    g.setColor (Color.WHITE);
+                    g.fillRect (x, y, TILE_SIZE, TILE_SIZE);
+                }
             }
         }
     }
@@ -143,18 +199,10 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
     public void start (int width, int height) {
         numTilesWidth = (int)Math.ceil ((float)width / TILE_SIZE);
         numTilesHeight = (int)Math.ceil ((float)height / TILE_SIZE);
-        // Create the tiles array.
-        tiles = new BufferedImage[numTilesWidth][numTilesHeight];
-        for (int i = 0; i < numTilesWidth; i ++) {
-            for (int j = 0; j < numTilesHeight; j ++) {
-                // Initialize the tile.
-                tiles[i][j] = new BufferedImage (
-                    TILE_SIZE, TILE_SIZE, IMAGE_TYPE
-                );
-                Graphics2D g2 = (Graphics2D)tiles[i][j].getGraphics ();
-                g2.setBackground (Color.WHITE);
-                g2.clearRect (0, 0, TILE_SIZE, TILE_SIZE);
-            }
+        // The tiles are created when they are first displayed.
+        synchronized (tiles) {
+            commands.clear ();
+            tiles.clear ();
         }
         // Set the preferred size.
         setPreferredSize (new Dimension (width, height));
@@ -188,7 +236,6 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
             ));
             return;
         }
-        BufferedImage tile = getTile (tileX, tileY);
         // Calculate the bounding box.
         int startX = tileX * TILE_SIZE - 1;
         int startY = tileY * TILE_SIZE - 1;
@@ -279,15 +326,9 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
         int y1pr = y1 - tileY * TILE_SIZE;
         int x2pr = pointX - tileX * TILE_SIZE;
         int y2pr = pointY - tileY * TILE_SIZE;
-        Graphics2D g2 = (Graphics2D)tile.getGraphics ();
-        g2.setColor (Color.BLACK);
-        g2.setStroke (new BasicStroke (
-            stroke, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER
-        ));
-        // Draw each line twice, from x1pr,1ypr -> x2pr,y2pr and
-        // x2pr,y2pr -> x1pr,1ypr to work around a bug in Java.
-        g2.drawLine (x1pr, y1pr, x2pr, y2pr);
-        g2.drawLine (x2pr, y2pr, x1pr, y1pr);
+        addCommand (
+            tileX, tileY, new Command (null, x1pr, y1pr, x2pr, y2pr, stroke)
+        );
     }
 
     /**
@@ -351,12 +392,10 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
             ));
             return;
         }
-        BufferedImage tile = getTile (tileX, tileY);
-        Graphics2D g2 = (Graphics2D)tile.getGraphics ();
-        g2.setColor (Color.BLACK);
-        g2.drawString (str, x, y);
+        if (tileX < 0 || tileY < 0) return;
+        addCommand (tileX, tileY, new Command (str, x, y, 0, 0, 0));
         // Get the bounds of the string.
-        Rectangle2D bounds = metrics.getStringBounds (str, g2);
+        Rectangle2D bounds = metrics.getStringBounds (str, null);
         int strHeight = (int)bounds.getHeight ();
         int strWidth = (int)bounds.getWidth ();
         // Catch strings being drawn on the north border of a tile.
@@ -370,14 +409,58 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
     }
 
     /**
-     *  Get a tile and initialize it if it is empty.
+     *  Get a tile, drawing it from its commands if it isn't in the cache.
      *
      *  @param x The X position of the tile.
      *  @param y The Y position of the tile.
-     *  @return The tile.
+     *  @return The tile, or null if nothing was drawn on it.
      */
     private BufferedImage getTile (int x, int y) {
-        return tiles[x][y];
+        int key = x * numTilesHeight + y;
+        synchronized (tiles) {
+            BufferedImage tile = tiles.get (key);
+            if (tile != null) return tile;
+            ArrayList<Command> tileCommands = commands.get (key);
+            if (tileCommands == null) return null;
+            // Initialize the tile.
+            tile = new BufferedImage (TILE_SIZE, TILE_SIZE, IMAGE_TYPE);
+            Graphics2D g2 = (Graphics2D)tile.getGraphics ();
+            g2.setBackground (Color.WHITE);
+            g2.clearRect (0, 0, TILE_SIZE, TILE_SIZE);
+            // Replay the commands that hit this tile.
+            for (Command command: tileCommands) {
+                command.draw (g2);
+            }
+            g2.dispose ();
+            tiles.put (key, tile);
+            return tile;
+        }
+    }
+
+    /**
+     *  Record a command for a tile, and draw it if the tile is in the
+     *  cache.
+     *
+     *  @param x The X position of the tile.
+     *  @param y The Y position of the tile.
+     *  @param command The command, in tile space.
+     */
+    private void addCommand (int x, int y, Command command) {
+        int key = x * numTilesHeight + y;
+        synchronized (tiles) {
+            ArrayList<Command> tileCommands = commands.get (key);
+            if (tileCommands == null) {
+                tileCommands = new ArrayList<Command> ();
+                commands.put (key, tileCommands);
+            }
+            tileCommands.add (command);
+            BufferedImage tile = tiles.get (key);
+            if (tile != null) {
+                Graphics2D g2 = (Graphics2D)tile.getGraphics ();
+                command.draw (g2);
+                g2.dispose ();
+            }
+        }
     }
 
     /**
@@ -449,10 +532,76 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
         return y.intValue ();
     }
 
+    /**
+     *  A line or a String drawn on a tile, in tile space.
+     */
+    private static class Command {
+
+        /**
+         *  Create a command.
+         *
+         *  @param str The String to draw, or null to draw a line.
+         *  @param x1 X value for the first point, or of the String.
+         *  @param y1 Y value for the first point, or of the String.
+         *  @param x2 X value for the second point.
+         *  @param y2 Y value for the second point.
+         *  @param stroke The stroke width of the line.
+         */
+        public Command (String str, int x1, int y1, int x2, int y2,
+            int stroke) {
+            this.str = str;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            this.stroke = stroke;
+        }
+
+        /**
+         *  Draw this command on a tile.
+         *
+         *  @param g2 The graphics of the tile.
+         */
+        public void draw (Graphics2D g2) {
+            g2.setColor (Color.BLACK);
+            if (str != null) {
+                g2.drawString (str, x1, y1);
+                return;
+            }
+            g2.setStroke (new BasicStroke (
+                stroke, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER
+            ));
+            // Draw each line twice, from x1,y1 -> x2,y2 and x2,y2 -> x1,y1
+            // to work around a bug in Java.
+            g2.drawLine (x1, y1, x2, y2);
+            g2.drawLine (x2, y2, x1, y1);
+        }
+
+        private String str;
+        private int x1;
+        private int y1;
+        private int x2;
+        private int y2;
+        private int stroke;
+
+    }
+
+    /**
+     *  The default number of bytes to use for drawn tiles.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    /**
+     *  The width and height of a tile, in pixels.
+     */
+    public static final int TILE_SIZE = 1000;
+
     private int numTilesWidth = 1;
     private int numTilesHeight = 1;
 
-    private BufferedImage[][] tiles;
+    private int maximumTiles;
+    private HashMap<Integer, ArrayList<Command>> commands;
+    private LinkedHashMap<Integer, BufferedImage> tiles;
 
     private final Font font = new Font ("monospaced", Font.PLAIN, 12);
     private final FontMetrics metrics = getFontMetrics (font);
@@ -460,7 +609,6 @@ public class TiledPainter extends JPanel implements Scrollable, Painter {
     private final int fontHeight = metrics.getMaxAscent ();
     private final int fontWidth = metrics.getMaxAdvance ();
 
-    private final int TILE_SIZE = 1000;
 
     private final int IMAGE_TYPE = BufferedImage.TYPE_BYTE_BINARY;
     
@@ -0,0 +1,198 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim.gui;
+
+import ecosim.api.Painter;
+import ecosim.tree.Tree;
+
+import java.awt.Color;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+/**
+ *  Create a JScrollPane that displays a tree.
+ *
+ *  The tree is laid out and painted on a background thread, and the result
+ *  is handed to the event dispatch thread when it is ready, so that a large
+ *  tree does not freeze the GUI.  A coarse preview of a large tree is
+ *  displayed first, and replaced when the full tree is ready.  Displaying
+ *  a different tree, or the same tree after it has changed, cancels the
+ *  painting that is still running.
+ *
+ *  Trees are displayed with a ViewportPainter, which draws the visible
+ *  part of the tree each time it is repainted.  Very large trees are
+ *  displayed with a TiledPainter instead, which draws each part of the
+ *  tree once into a cached tile, so that scrolling only copies tiles.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class TreePane extends JScrollPane {
+
+    /**
+     *  A JScrollPane that displays a tree.
+     */
+    public TreePane () {
+        JViewport viewport = getViewport ();
+        viewport.setOpaque (true);
+        viewport.setBackground (Color.WHITE);
+        executor = Executors.newSingleThreadExecutor (new ThreadFactory () {
+            public Thread newThread (Runnable runnable) {
+                Thread thread = new Thread (runnable, "TreePane");
+                thread.setDaemon (true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     *  Display a tree.  Nothing is done if the tree is already displayed
+     *  as it is.
+     *
+     *  @param tree The Tree to display.
+     *  @param popup The popup menu for the tree.
+     */
+    public void setTree (Tree tree, JPopupMenu popup) {
+        int modifications = tree.getRoot ().getModificationCount ();
+        int paintMethod = tree.getPaintMethod ();
+        int scale = tree.getScale ();
+        synchronized (this) {
+            if (tree == this.tree && modifications == this.modifications &&
+                paintMethod == this.paintMethod && scale == this.scale) {
+                return;
+            }
+            this.tree = tree;
+            this.modifications = modifications;
+            this.paintMethod = paintMethod;
+            this.scale = scale;
+            // Cancel the painting that is still running.
+            if (task != null) task.cancel (true);
+            final int generation = ++ this.generation;
+            task = executor.submit (new Runnable () {
+                public void run () {
+                    paintTree (tree, popup, generation);
+                }
+            });
+        }
+    }
+
+    /**
+     *  Paint a tree on the background thread, first as a coarse preview if
+     *  the tree is large.
+     *
+     *  @param tree The Tree to paint.
+     *  @param popup The popup menu for the tree.
+     *  @param generation The request that this painting is for.
+     */
+    private void paintTree (Tree tree, JPopupMenu popup, int generation) {
+        Thread thread = Thread.currentThread ();
+        if (tree.size () > PREVIEW_SIZE) {
+            // Paint the subtrees narrower than half of the tree as wedges.
+            ViewportPainter preview = new ViewportPainter ();
+            int detail = (int)Math.max (
+                preview.fontWidth (),
+                tree.maximumWidth () * tree.getScale () / 2
+            );
+            tree.paintTree (preview, detail);
+            if (thread.isInterrupted ()) return;
+            display (preview, popup, generation);
+        }
+        // Paint the subtrees narrower than a character as wedges.
+        JPanel painter;
+        if (tree.size () > TILED_SIZE) {
+            painter = new TiledPainter ();
+        }
+        else {
+            painter = new ViewportPainter ();
+        }
+        Painter treePainter = (Painter)painter;
+        tree.paintTree (treePainter, treePainter.fontWidth ());
+        if (thread.isInterrupted ()) return;
+        display (painter, popup, generation);
+    }
+
+    /**
+     *  Display a painted tree on the event dispatch thread, unless another
+     *  tree has been requested since.
+     *
+     *  @param painter The painter holding the tree.
+     *  @param popup The popup menu for the tree.
+     *  @param generation The request that the painter is for.
+     */
+    private void display (JPanel painter, JPopupMenu popup,
+        int generation) {
+        SwingUtilities.invokeLater (new Runnable () {
+            public void run () {
+                synchronized (TreePane.this) {
+                    if (generation != TreePane.this.generation) return;
+                }
+                painter.setComponentPopupMenu (popup);
+                painter.addMouseListener (new MouseAdapter () {
+                    @Override
+                    public void mousePressed (MouseEvent e) {
+                        if (e.isPopupTrigger ()) {
+                            popup.show (
+                                e.getComponent (), e.getX (), e.getY ()
+                            );
+                        }
+                    }
+                });
+                setViewportView (painter);
+            }
+        });
+    }
+
+    /**
+     *  The number of leaves above which a preview of the tree is displayed
+     *  first.
+     */
+    private static final int PREVIEW_SIZE = 10000;
+
+    /**
+     *  The number of leaves above which the tree is displayed with cached
+     *  tiles.
+     */
+    private static final int TILED_SIZE = 100000;
+
+    private ExecutorService executor;
+    private Future<?> task;
+
+    /**
+     *  The tree requested, and what it looked like when it was requested.
+     */
+    private Tree tree;
+    private int modifications;
+    private int paintMethod;
+    private int scale;
+    private int generation;
+
+}
@@ -0,0 +1,414 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim.gui;
+
+import ecosim.api.Painter;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import javax.swing.JPanel;
+import javax.swing.Scrollable;
+
+/**
+ *  Create a JPanel that draws only the visible part of a custom Painter.
+ *
+ *  The lines and Strings drawn are stored once in a spatial index, a
+ *  segment tree over the rows of the panel, so that painting the visible
+ *  rectangle only examines the items that overlap it.  The cost of each
+ *  frame depends on the size of the viewport rather than on the size of
+ *  the tree.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class ViewportPainter extends JPanel implements Scrollable, Painter {
+
+    /**
+     *  A JPanel that draws only the visible part of a custom Painter.
+     */
+    public ViewportPainter () {
+        setBackground (Color.WHITE);
+        setFont (font);
+    }
+
+    /**
+     *  Paint the items that overlap the visible rectangle.
+     *
+     *  @param g The Graphics object used to paint.
+     */
+    @Override
+    public void paintComponent (Graphics g) {
+        super.paintComponent (g);
+        Rectangle clip = g.getClipBounds ();
+        if (clip == null) {
+            clip = new Rectangle (0, 0, getWidth (), getHeight ());
+        }
+        Graphics2D g2 = (Graphics2D)g;
+        g2.setColor (Color.BLACK);
+        g2.setFont (font);
+        int currentStroke = -1;
+        synchronized (lock) {
+            int[] found = query (clip.y, clip.y + clip.height);
+            for (int i = 0; i < found.length; i ++) {
+                int item = found[i];
+                // Skip the items outside of the visible columns.
+                if (maxX[item] < clip.x ||
+                    minX[item] > clip.x + clip.width) {
+                    continue;
+                }
+                if (strings[item] != null) {
+                    g2.drawString (strings[item], x1[item], y1[item]);
+                    continue;
+                }
+                if (stroke[item] != currentStroke) {
+                    currentStroke = stroke[item];
+                    g2.setStroke (new BasicStroke (
+                        currentStroke, BasicStroke.CAP_BUTT,
+                        BasicStroke.JOIN_MITER
+                    ));
+                }
+                g2.drawLine (x1[item], y1[item], x2[item], y2[item]);
+            }
+        }
+    }
+
+    /**
+     *  Calculate the preferred scrollable viewport size.
+     *
+     *  @return The preferred scrollable viewport size.
+     */
+    @Override
+    public Dimension getPreferredScrollableViewportSize () {
+        return getPreferredSize ();
+    }
+
+    /**
+     *  Calculate the scrollable block increment.
+     *
+     *  @param r The visible rectangle.
+     *  @param o The orientation.
+     *  @param d The direction.
+     *  @return The block increment.
+     */
+    @Override
+    public int getScrollableBlockIncrement (Rectangle r, int o, int d) {
+        return Math.max (fontHeight, r.height - fontHeight);
+    }
+
+    /**
+     *  The font height is used as the scrollable unit increment.
+     *
+     *  @param r The visible rectangle.
+     *  @param o The orientation.
+     *  @param d The direction.
+     *  @return The unit increment.
+     */
+    @Override
+    public int getScrollableUnitIncrement (Rectangle r, int o, int d) {
+        return fontHeight;
+    }
+
+    /**
+     *  Don't force the height of this JPanel to track the viewport height.
+     *
+     *  @return False
+     */
+    @Override
+    public boolean getScrollableTracksViewportHeight () {
+        return false;
+    }
+
+    /**
+     *  Don't force the width of this JPanel to track the viewport width.
+     *
+     *  @return False
+     */
+    @Override
+    public boolean getScrollableTracksViewportWidth () {
+        return false;
+    }
+
+    /**
+     *  Start a Viewport Painter of the requested size.
+     *
+     *  @param width The width of the Painter.
+     *  @param height The height of the Painter.
+     */
+    public void start (int width, int height) {
+        synchronized (lock) {
+            numBuckets = Math.max (
+                1, (height + BUCKET_SIZE - 1) / BUCKET_SIZE
+            );
+            leaves = Integer.highestOneBit (numBuckets);
+            if (leaves < numBuckets) leaves <<= 1;
+            nodeItems = new int[2 * leaves][];
+            nodeSizes = new int[2 * leaves];
+            numItems = 0;
+            ensureCapacity (1024);
+            stamps = null;
+        }
+        // Set the preferred size.
+        setPreferredSize (new Dimension (width, height));
+    }
+
+    /**
+     *  End the Viewport Painter.
+     */
+    public void end () {
+        synchronized (lock) {
+            stamps = new int[numItems];
+            nodeStamps = new int[nodeSizes.length];
+            stamp = 0;
+        }
+        repaint ();
+    }
+
+    /**
+     *  Draw a line between two points.
+     *
+     *  @param x1 X value for the first point.
+     *  @param y1 Y value for the first point.
+     *  @param x2 X value for the second point.
+     *  @param y2 Y value for the second point.
+     *  @param stroke The stroke width of the line.
+     */
+    public void drawLine (int x1, int y1, int x2, int y2, int stroke) {
+        int half = (stroke + 1) / 2;
+        addItem (
+            null, x1, y1, x2, y2, stroke,
+            Math.min (x1, x2) - half, Math.max (x1, x2) + half,
+            Math.min (y1, y2) - half, Math.max (y1, y2) + half
+        );
+    }
+
+    /**
+     *  Draw a String at the provided X,Y location.
+     *
+     *  @param str The String to paint.
+     *  @param x The X location to paint the String.
+     *  @param y The Y location to paint the String.
+     */
+    public void drawString (String str, int x, int y) {
+        addItem (
+            str, x, y, x, y, 0,
+            x, x + metrics.stringWidth (str),
+            y - metrics.getMaxAscent (), y + metrics.getMaxDescent ()
+        );
+    }
+
+    /**
+     *  Return the width of the font.
+     *
+     *  @return The font width.
+     */
+    public int fontWidth () {
+        return fontWidth;
+    }
+
+    /**
+     *  Return the height of the font.
+     *
+     *  @return The font height.
+     */
+    public int fontHeight () {
+        return fontHeight;
+    }
+
+    /**
+     *  Return the width of the string as drawn.
+     *
+     *  @return The width of the string as drawn.
+     */
+    public int stringWidth (String str) {
+        return metrics.stringWidth (str + "X");
+    }
+
+    /**
+     *  Private method to store an item in the spatial index.  The item is
+     *  added to the nodes of the segment tree that cover its rows.
+     */
+    private void addItem (String str, int x1, int y1, int x2, int y2,
+        int stroke, int minX, int maxX, int minY, int maxY) {
+        synchronized (lock) {
+            ensureCapacity (numItems + 1);
+            int item = numItems ++;
+            this.strings[item] = str;
+            this.x1[item] = x1;
+            this.y1[item] = y1;
+            this.x2[item] = x2;
+            this.y2[item] = y2;
+            this.stroke[item] = stroke;
+            this.minX[item] = minX;
+            this.maxX[item] = maxX;
+            // Add the item to the canonical nodes covering its buckets.
+            int low = bucket (minY) + leaves;
+            int high = bucket (maxY) + leaves + 1;
+            while (low < high) {
+                if ((low & 1) == 1) addToNode (low ++, item);
+                if ((high & 1) == 1) addToNode (-- high, item);
+                low >>>= 1;
+                high >>>= 1;
+            }
+        }
+    }
+
+    /**
+     *  Private method to find the items that overlap the provided rows.
+     *
+     *  @param top The first row.
+     *  @param bottom The last row.
+     *  @return The items, each listed once.
+     */
+    private int[] query (int top, int bottom) {
+        if (stamps == null || stamps.length < numItems) {
+            stamps = new int[numItems];
+            nodeStamps = new int[nodeSizes.length];
+            stamp = 0;
+        }
+        stamp ++;
+        int[] found = new int[64];
+        int count = 0;
+        int first = bucket (top) + leaves;
+        int last = bucket (bottom) + leaves;
+        // Each item is held by the ancestors of the buckets that it covers.
+        // An ancestor that was already visited has had its own ancestors
+        // visited too.
+        for (int leaf = first; leaf <= last; leaf ++) {
+            for (int node = leaf; node > 0; node >>>= 1) {
+                if (nodeStamps[node] == stamp) break;
+                nodeStamps[node] = stamp;
+                for (int i = 0; i < nodeSizes[node]; i ++) {
+                    int item = nodeItems[node][i];
+                    if (stamps[item] == stamp) continue;
+                    stamps[item] = stamp;
+                    if (count == found.length) {
+                        found = Arrays.copyOf (found, count * 2);
+                    }
+                    found[count ++] = item;
+                }
+            }
+        }
+        // Draw the items in the order they were added.
+        Arrays.sort (found, 0, count);
+        return Arrays.copyOf (found, count);
+    }
+
+    /**
+     *  Private method to find the bucket holding a row.
+     */
+    private int bucket (int y) {
+        return Math.min (numBuckets - 1, Math.max (0, y / BUCKET_SIZE));
+    }
+
+    /**
+     *  Private method to add an item to a node of the segment tree.
+     */
+    private void addToNode (int node, int item) {
+        if (nodeItems[node] == null) {
+            nodeItems[node] = new int[4];
+        }
+        else if (nodeSizes[node] == nodeItems[node].length) {
+            nodeItems[node] = Arrays.copyOf (
+                nodeItems[node], nodeSizes[node] * 2
+            );
+        }
+        nodeItems[node][nodeSizes[node] ++] = item;
+    }
+
+    /**
+     *  Private method to make room for more items.
+     */
+    private void ensureCapacity (int capacity) {
+        if (strings != null && strings.length >= capacity) return;
+        int newCapacity = Math.max (capacity, numItems * 2);
+        if (strings == null) {
+            strings = new String[newCapacity];
+            x1 = new int[newCapacity];
+            y1 = new int[newCapacity];
+            x2 = new int[newCapacity];
+            y2 = new int[newCapacity];
+            stroke = new int[newCapacity];
+            minX = new int[newCapacity];
+            maxX = new int[newCapacity];
+            return;
+        }
+        strings = Arrays.copyOf (strings, newCapacity);
+        x1 = Arrays.copyOf (x1, newCapacity);
+        y1 = Arrays.copyOf (y1, newCapacity);
+        x2 = Arrays.copyOf (x2, newCapacity);
+        y2 = Arrays.copyOf (y2, newCapacity);
+        stroke = Arrays.copyOf (stroke, newCapacity);
+        minX = Arrays.copyOf (minX, newCapacity);
+        maxX = Arrays.copyOf (maxX, newCapacity);
+    }
+
+    /**
+     *  The height of the rows held by each leaf of the segment tree.
+     */
+    private static final int BUCKET_SIZE = 256;
+
+    private final Object lock = new Object ();
+
+    /**
+     *  The segment tree, with the bucket leaves starting at the index
+     *  leaves.
+     */
+    private int numBuckets = 1;
+    private int leaves = 1;
+    private int[][] nodeItems = new int[2][];
+    private int[] nodeSizes = new int[2];
+
+    /**
+     *  The items drawn, a String or a line, and their horizontal extent.
+     */
+    private int numItems;
+    private String[] strings;
+    private int[] x1;
+    private int[] y1;
+    private int[] x2;
+    private int[] y2;
+    private int[] stroke;
+    private int[] minX;
+    private int[] maxX;
+
+    /**
+     *  The query that each item and node was last found by.
+     */
+    private int[] stamps;
+    private int[] nodeStamps;
+    private int stamp;
+
+    private final Font font = new Font ("monospaced", Font.PLAIN, 12);
+    private final FontMetrics metrics = getFontMetrics (font);
+
+    private final int fontHeight = metrics.getMaxAscent ();
+    private final int fontWidth = metrics.getMaxAdvance ();
+
+}
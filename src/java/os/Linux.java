@@ -42,6 +42,11 @@ public class Linux implements OperatingSystem {
         return "";
     }
 
+    @Override
+    public boolean hasStandardStreamFiles () {
+        return true;
+    }
+
     @Override
     public boolean verifyExecutable (Path path) {
         String osArch = System.getProperty ("os.arch").toLowerCase ();
@@ -40,6 +40,11 @@ public class Mac implements OperatingSystem {
         return "";
     }
 
+    @Override
+    public boolean hasStandardStreamFiles () {
+        return true;
+    }
+
     @Override
     public boolean verifyExecutable (Path path) {
         return true;
@@ -42,6 +42,11 @@ public class Windows implements OperatingSystem {
         return ".exe";
     }
 
+    @Override
+    public boolean hasStandardStreamFiles () {
+        return false;
+    }
+
     @Override
     public boolean verifyExecutable (Path path) {
         String osArch = System.getProperty ("os.arch").toLowerCase ();
@@ -0,0 +1,686 @@
+/*
+ *    Ecotype Simulation models the sequence diversity within a bacterial
+ *    clade as the evolutionary result of net ecotype formation and periodic
+ *    selection, yielding a certain number of ecotypes.
+ *
+ *    Copyright (C) 2019  Jason M. Wood, Montana State University
+ *
+ *    This program is free software: you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation, either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ecosim.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *  A compact, array-backed representation of a tree for large phylogenies.
+ *
+ *  Each node of the tree is identified by its index in pre-order, so the
+ *  root node is always node 0 and every node has a larger index than its
+ *  parent.  The relationships between the nodes are stored in the parent,
+ *  first child and next sibling arrays, the distance of each node from its
+ *  parent in an array of doubles, and the names of the nodes in a single
+ *  name table.  Structural changes are made through the Node based Tree,
+ *  which can be converted to and from this representation.
+ *
+ *  @author Jason M. Wood
+ *  @copyright GNU General Public License
+ */
+public class CompactTree {
+
+    /**
+     *  Constructor for objects of class CompactTree.
+     *
+     *  @param tree The Tree to copy.
+     */
+    public CompactTree (Tree tree) {
+        this (tree.getRoot ());
+    }
+
+    /**
+     *  Constructor for objects of class CompactTree.  The descendants of a
+     *  node follow it in pre-order, so the subtree is copied as a single
+     *  range of each array.
+     *
+     *  @param tree The CompactTree containing the subtree.
+     *  @param node The index of the root node of the subtree to copy.
+     */
+    public CompactTree (CompactTree tree, int node) {
+        tree.calculate ();
+        size = tree.subtreeSize[node];
+        parent = new int[size];
+        firstChild = new int[size];
+        nextSibling = new int[size];
+        distance = Arrays.copyOfRange (tree.distance, node, node + size);
+        flags = Arrays.copyOfRange (tree.flags, node, node + size);
+        nameStart = new int[size + 1];
+        for (int i = 0; i < size; i ++) {
+            parent[i] = shift (tree.parent[node + i], node);
+            firstChild[i] = shift (tree.firstChild[node + i], node);
+            nextSibling[i] = shift (tree.nextSibling[node + i], node);
+            nameStart[i] = tree.nameStart[node + i] - tree.nameStart[node];
+        }
+        parent[0] = NONE;
+        nextSibling[0] = NONE;
+        nameStart[size] = tree.nameStart[node + size] - tree.nameStart[node];
+        nameTable = tree.nameTable.substring (
+            tree.nameStart[node], tree.nameStart[node + size]
+        );
+        cached = false;
+    }
+
+    /**
+     *  Constructor for objects of class CompactTree.
+     *
+     *  @param root The root Node of the tree to copy.
+     */
+    public CompactTree (Node root) {
+        // Number the nodes in pre-order, keeping track of the parent of
+        // each node.
+        ArrayList<Node> nodes = new ArrayList<Node> ();
+        ArrayList<Integer> parents = new ArrayList<Integer> ();
+        ArrayDeque<Node> stack = new ArrayDeque<Node> ();
+        ArrayDeque<Integer> stackParents = new ArrayDeque<Integer> ();
+        stack.push (root);
+        stackParents.push (NONE);
+        while (! stack.isEmpty ()) {
+            Node node = stack.pop ();
+            parents.add (stackParents.pop ());
+            nodes.add (node);
+            ArrayList<Node> children = node.getChildren ();
+            for (int i = children.size () - 1; i >= 0; i --) {
+                stack.push (children.get (i));
+                stackParents.push (nodes.size () - 1);
+            }
+        }
+        size = nodes.size ();
+        parent = new int[size];
+        firstChild = new int[size];
+        nextSibling = new int[size];
+        distance = new double[size];
+        flags = new byte[size];
+        nameStart = new int[size + 1];
+        StringBuilder names = new StringBuilder ();
+        for (int i = 0; i < size; i ++) {
+            Node node = nodes.get (i);
+            parent[i] = parents.get (i);
+            firstChild[i] = NONE;
+            nextSibling[i] = NONE;
+            distance[i] = node.getDistance ();
+            if (node.isOutgroup ()) flags[i] |= OUTGROUP;
+            if (node.isCollapsed ()) flags[i] |= COLLAPSED;
+            nameStart[i] = names.length ();
+            names.append (node.getName ());
+        }
+        nameStart[size] = names.length ();
+        nameTable = names.toString ();
+        // Link the children of each node, last child first.
+        for (int i = size - 1; i > 0; i --) {
+            nextSibling[i] = firstChild[parent[i]];
+            firstChild[parent[i]] = i;
+        }
+        cached = false;
+    }
+
+    /**
+     *  Returns the root node of this tree.
+     *
+     *  @return The index of the root node.
+     */
+    public int getRoot () {
+        return 0;
+    }
+
+    /**
+     *  Returns the number of nodes in this tree, including the internal
+     *  nodes.
+     *
+     *  @return The number of nodes.
+     */
+    public int numberOfNodes () {
+        return size;
+    }
+
+    /**
+     *  Return the number of leaf descendants of the root node.
+     *
+     *  @return The number of descendants.
+     */
+    public int size () {
+        return numberOfDescendants (0, false);
+    }
+
+    /**
+     *  Returns the parent of a node.
+     *
+     *  @param node The index of the node.
+     *  @return The index of the parent, or NONE for the root node.
+     */
+    public int getParent (int node) {
+        return parent[node];
+    }
+
+    /**
+     *  Returns the first child of a node.
+     *
+     *  @param node The index of the node.
+     *  @return The index of the first child, or NONE for a leaf node.
+     */
+    public int getFirstChild (int node) {
+        return firstChild[node];
+    }
+
+    /**
+     *  Returns the next sibling of a node.
+     *
+     *  @param node The index of the node.
+     *  @return The index of the next sibling, or NONE for the last child.
+     */
+    public int getNextSibling (int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     *  Returns the children of a node.
+     *
+     *  @param node The index of the node.
+     *  @return The indices of the children.
+     */
+    public int[] getChildren (int node) {
+        int num = 0;
+        for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+            num ++;
+        }
+        int[] children = new int[num];
+        num = 0;
+        for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+            children[num ++] = c;
+        }
+        return children;
+    }
+
+    /**
+     *  Returns the name of a node.
+     *
+     *  @param node The index of the node.
+     *  @return The name of the node.
+     */
+    public String getName (int node) {
+        return nameTable.substring (nameStart[node], nameStart[node + 1]);
+    }
+
+    /**
+     *  Get the distance from the parent of a node to the node.
+     *
+     *  @param node The index of the node.
+     *  @return The distance to the parent.
+     */
+    public double getDistance (int node) {
+        return distance[node];
+    }
+
+    /**
+     *  Set the distance from the parent of a node to the node.
+     *
+     *  @param node The index of the node.
+     *  @param distance The distance to the parent.
+     */
+    public void setDistance (int node, double distance) {
+        this.distance[node] = distance;
+        cached = false;
+    }
+
+    /**
+     *  Returns whether a node is a leaf node or not.
+     *
+     *  @param node The index of the node.
+     *  @return True if the node is a leaf node.
+     */
+    public boolean isLeafNode (int node) {
+        return firstChild[node] == NONE;
+    }
+
+    /**
+     *  Returns whether a node is the root node or not.
+     *
+     *  @param node The index of the node.
+     *  @return True if the node is the root node.
+     */
+    public boolean isRootNode (int node) {
+        return parent[node] == NONE;
+    }
+
+    /**
+     *  Returns whether a node is the outgroup or not.
+     *
+     *  @param node The index of the node.
+     *  @return True if the node is the outgroup.
+     */
+    public boolean isOutgroup (int node) {
+        return (flags[node] & OUTGROUP) != 0;
+    }
+
+    /**
+     *  Returns whether a node is collapsed or not.
+     *
+     *  @param node The index of the node.
+     *  @return True if the node is collapsed.
+     */
+    public boolean isCollapsed (int node) {
+        return (flags[node] & COLLAPSED) != 0;
+    }
+
+    /**
+     *  Collapse the children of a node.
+     *
+     *  @param node The index of the node.
+     *  @param collapsed Whether or not the node is collapsed.
+     */
+    public void collapse (int node, boolean collapsed) {
+        if (collapsed) {
+            flags[node] |= COLLAPSED;
+        }
+        else {
+            flags[node] &= ~COLLAPSED;
+        }
+        cached = false;
+    }
+
+    /**
+     *  Returns the number of living descendants of a node.
+     *
+     *  @param node The index of the node.
+     *  @param countCollapsed Whether or not a collapsed descendant is
+     *  counted as a single descendant.
+     *  @return The number of living descendants of the node.
+     */
+    public int numberOfDescendants (int node, boolean countCollapsed) {
+        calculate ();
+        if (countCollapsed) {
+            return numberOfVisibleDescendants[node];
+        }
+        return numberOfLeafDescendants[node];
+    }
+
+    /**
+     *  Returns the distance of a node from the root node.
+     *
+     *  @param node The index of the node.
+     *  @return The distance of the node from the root node.
+     */
+    public double distanceFromRootNode (int node) {
+        calculate ();
+        return distanceFromRoot[node];
+    }
+
+    /**
+     *  Returns the maximum distance of a node from a leaf node.
+     *
+     *  @param node The index of the node.
+     *  @return The maximum distance of the node from a leaf node.
+     */
+    public double maximumDistanceFromLeafNode (int node) {
+        calculate ();
+        return maximumDistanceFromLeaf[node];
+    }
+
+    /**
+     *  Returns the minimum distance of a node from a leaf node.
+     *
+     *  @param node The index of the node.
+     *  @return The minimum distance of the node from a leaf node.
+     */
+    public double minimumDistanceFromLeafNode (int node) {
+        calculate ();
+        return minimumDistanceFromLeaf[node];
+    }
+
+    /**
+     *  Returns the maximum distance between the leaf node ancestors of a
+     *  node.
+     *
+     *  @param node The index of the node.
+     *  @return The maximum distance between the leaf node ancestors.
+     */
+    public double maximumDistanceBetweenLeafNodes (int node) {
+        calculate ();
+        return maximumDistanceBetweenLeaves[node];
+    }
+
+    /**
+     *  Returns the leaf and collapsed descendants of a node.
+     *
+     *  @param node The index of the node.
+     *  @return The indices of the descendants, in order.
+     */
+    public int[] getDescendants (int node) {
+        ArrayList<Integer> descendants = new ArrayList<Integer> ();
+        // The descendants of a node follow it in pre-order.
+        calculate ();
+        int end = node + subtreeSize[node];
+        int i = node + 1;
+        while (i < end) {
+            if (isLeafNode (i) || isCollapsed (i)) {
+                descendants.add (i);
+                i += subtreeSize[i];
+            }
+            else {
+                i ++;
+            }
+        }
+        int[] array = new int[descendants.size ()];
+        for (int j = 0; j < array.length; j ++) {
+            array[j] = descendants.get (j);
+        }
+        return array;
+    }
+
+    /**
+     *  Returns the leaf or collapsed descendant of the root node with the
+     *  given name.
+     *
+     *  @param name The name of the descendant.
+     *  @return The index of the descendant, or NONE if not found.
+     */
+    public int getDescendant (String name) {
+        for (int node: getDescendants (0)) {
+            if (getName (node).equals (name)) return node;
+        }
+        return NONE;
+    }
+
+    /**
+     *  Find the last common ancestor node for the named descendants.
+     *
+     *  @param names The names of the descendants.
+     *  @return The index of the last common ancestor, or NONE if there are
+     *  no descendants.
+     */
+    public int lastCommonAncestor (ArrayList<String> names) {
+        int ancestor = NONE;
+        for (String name: names) {
+            int node = getDescendant (name);
+            if (node == NONE) continue;
+            if (ancestor == NONE) {
+                ancestor = node;
+            }
+            // An ancestor has a smaller index than all of its descendants.
+            while (! (ancestor == node || isDescendant (ancestor, node))) {
+                ancestor = parent[ancestor];
+            }
+        }
+        return ancestor;
+    }
+
+    /**
+     *  Returns a node as a Newick formatted String.
+     *
+     *  @param node The index of the node.
+     *  @return A Newick formatted String representing the node.
+     */
+    public String toString (int node) {
+        StringBuilder newick = new StringBuilder ();
+        appendNewick (newick, node);
+        if (parent[node] == NONE) {
+            newick.append (";");
+        }
+        return newick.toString ();
+    }
+
+    /**
+     *  Returns this tree as a Newick formatted String.
+     *
+     *  @return Newick formatted String containing the tree.
+     */
+    public String toString () {
+        return toString (0);
+    }
+
+    /**
+     *  Convert this tree into Node objects.
+     *
+     *  @return The root Node of the tree.
+     */
+    public Node toNode () {
+        Node[] nodes = new Node[size];
+        for (int i = 0; i < size; i ++) {
+            nodes[i] = new Node (getName (i), distance[i]);
+            nodes[i].setOutgroup (isOutgroup (i));
+            nodes[i].collapse (isCollapsed (i));
+        }
+        // Nodes are numbered in pre-order, so adding the children in order
+        // keeps the order of the siblings.
+        for (int i = 1; i < size; i ++) {
+            nodes[parent[i]].addChild (nodes[i]);
+        }
+        return nodes[0];
+    }
+
+    /**
+     *  Returns true if the second node is a descendant of the first node.
+     *
+     *  @param ancestor The index of the possible ancestor.
+     *  @param node The index of the possible descendant.
+     *  @return True if the node is a descendant of the ancestor.
+     */
+    public boolean isDescendant (int ancestor, int node) {
+        if (node <= ancestor) return false;
+        calculate ();
+        return node < ancestor + subtreeSize[ancestor];
+    }
+
+    /**
+     *  Shift the index of a node in a subtree to the index of the node in a
+     *  copy of the subtree.
+     *
+     *  @param node The index of the node, or NONE.
+     *  @param root The index of the root node of the subtree.
+     *  @return The index of the node in the copy, or NONE.
+     */
+    private static int shift (int node, int root) {
+        if (node == NONE) return NONE;
+        return node - root;
+    }
+
+    /**
+     *  Append the Newick formatted String of a node to a buffer, without
+     *  recursion.  The parent and sibling arrays already lead back out of
+     *  each subtree, so they serve as the stack of nodes being written.
+     *
+     *  @param newick The buffer.
+     *  @param node The index of the node.
+     */
+    private void appendNewick (StringBuilder newick, int node) {
+        int current = node;
+        while (true) {
+            // Descend to the first leaf node, opening each subtree.
+            while (firstChild[current] != NONE) {
+                newick.append ('(');
+                current = firstChild[current];
+            }
+            appendLabel (newick, current);
+            // Close each subtree that has no more children to write.
+            while (current != node && nextSibling[current] == NONE) {
+                current = parent[current];
+                newick.append (')');
+                appendLabel (newick, current);
+            }
+            if (current == node) break;
+            newick.append (',');
+            current = nextSibling[current];
+        }
+    }
+
+    /**
+     *  Append the name of a node, if it is a leaf or collapsed, and its
+     *  distance with five decimal places to a buffer.
+     *
+     *  @param newick The buffer.
+     *  @param node The index of the node.
+     */
+    private void appendLabel (StringBuilder newick, int node) {
+        if (isLeafNode (node) || isCollapsed (node)) {
+            newick.append (nameTable, nameStart[node], nameStart[node + 1]);
+        }
+        newick.append (':');
+        double value = distance[node];
+        long scaled = Math.round (Math.abs (value) * DECIMAL_SCALE);
+        if (value < 0.0d) {
+            newick.append ('-');
+        }
+        newick.append (scaled / DECIMAL_SCALE).append ('.');
+        for (long digit = DECIMAL_SCALE / 10; digit > 0; digit /= 10) {
+            newick.append ((char) ('0' + scaled / digit % 10));
+        }
+    }
+
+    /**
+     *  Calculate the distances, descendant counts and subtree sizes of all
+     *  nodes, if they are not already known.  Children always follow their
+     *  parent in pre-order, so a single pass in each direction is enough.
+     */
+    private synchronized void calculate () {
+        if (cached) return;
+        if (maximumDistanceFromLeaf == null) {
+            maximumDistanceFromLeaf = new double[size];
+            minimumDistanceFromLeaf = new double[size];
+            maximumDistanceBetweenLeaves = new double[size];
+            distanceFromRoot = new double[size];
+            numberOfLeafDescendants = new int[size];
+            numberOfVisibleDescendants = new int[size];
+            subtreeSize = new int[size];
+        }
+        // The largest distance of the children from a leaf node is kept in
+        // maximumDistanceBetweenLeaves until the second largest is known.
+        double[] second = new double[size];
+        int[] numChildren = new int[size];
+        for (int i = 0; i < size; i ++) {
+            maximumDistanceFromLeaf[i] = 0.0d;
+            minimumDistanceFromLeaf[i] = Double.MAX_VALUE;
+            numberOfLeafDescendants[i] = 0;
+            numberOfVisibleDescendants[i] = 0;
+            subtreeSize[i] = 1;
+        }
+        for (int i = size - 1; i > 0; i --) {
+            int p = parent[i];
+            double childMaximum = maximumDistanceFromLeaf[i] + distance[i];
+            double childMinimum = minimumDistanceFromLeaf[i] + distance[i];
+            if (childMaximum > maximumDistanceFromLeaf[p]) {
+                maximumDistanceFromLeaf[p] = childMaximum;
+            }
+            if (childMinimum < minimumDistanceFromLeaf[p]) {
+                minimumDistanceFromLeaf[p] = childMinimum;
+            }
+            double first = maximumDistanceBetweenLeaves[p];
+            if (numChildren[p] == 0 || childMaximum > first) {
+                if (numChildren[p] > 0) second[p] = first;
+                maximumDistanceBetweenLeaves[p] = childMaximum;
+            }
+            else if (numChildren[p] == 1 || childMaximum > second[p]) {
+                second[p] = childMaximum;
+            }
+            numChildren[p] ++;
+            if (isLeafNode (i)) {
+                numberOfLeafDescendants[p] ++;
+                numberOfVisibleDescendants[p] ++;
+            }
+            else {
+                numberOfLeafDescendants[p] += numberOfLeafDescendants[i];
+                if (isCollapsed (i)) {
+                    numberOfVisibleDescendants[p] ++;
+                }
+                else {
+                    numberOfVisibleDescendants[p] +=
+                        numberOfVisibleDescendants[i];
+                }
+            }
+            subtreeSize[p] += subtreeSize[i];
+        }
+        for (int i = 0; i < size; i ++) {
+            // Calculate the maximum distance between the leaf node
+            // ancestors using the two children with the maximum distance.
+            if (numChildren[i] >= 2) {
+                maximumDistanceBetweenLeaves[i] += second[i];
+            }
+            else {
+                maximumDistanceBetweenLeaves[i] = 0.0d;
+            }
+            distanceFromRoot[i] = 0.0d;
+            if (i > 0) {
+                distanceFromRoot[i] =
+                    distance[i] + distanceFromRoot[parent[i]];
+            }
+        }
+        cached = true;
+    }
+
+    /**
+     *  The index used for a missing parent, child or sibling.
+     */
+    public static final int NONE = -1;
+
+    private static final byte OUTGROUP = 1;
+    private static final byte COLLAPSED = 2;
+
+    /**
+     *  The scale of the five decimal places of the Newick distances.
+     */
+    private static final long DECIMAL_SCALE = 100000L;
+
+    /**
+     *  The number of nodes in the tree.
+     */
+    private int size;
+
+    /**
+     *  The parent, first child and next sibling of each node.
+     */
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+
+    /**
+     *  The distance of each node from its parent.
+     */
+    private double[] distance;
+
+    /**
+     *  Whether each node is the outgroup or is collapsed.
+     */
+    private byte[] flags;
+
+    /**
+     *  The names of all nodes, and the start of the name of each node in the
+     *  name table.
+     */
+    private String nameTable;
+    private int[] nameStart;
+
+    /**
+     *  The values calculated from the tree, and whether or not they are
+     *  known.
+     */
+    private double[] maximumDistanceFromLeaf;
+    private double[] minimumDistanceFromLeaf;
+    private double[] maximumDistanceBetweenLeaves;
+    private double[] distanceFromRoot;
+    private int[] numberOfLeafDescendants;
+    private int[] numberOfVisibleDescendants;
+    private int[] subtreeSize;
+    private volatile boolean cached;
+
+}
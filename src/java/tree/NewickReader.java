@@ -26,14 +26,16 @@ package ecosim.tree;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.Locale;
+import java.util.ArrayDeque;
 
 /**
  *  Read a Newick formated tree.
  *
+ *  The tree is read one character at a time in a single pass, without
+ *  holding the whole tree in memory as a String.  The nodes that are still
+ *  open are kept on a stack instead of the call stack, so deep trees can
+ *  be read too.
+ *
  *  @author Andrew Warner
  *  @author Jason M. Wood
  *  @copyright GNU General Public License
@@ -53,141 +55,163 @@ public class NewickReader extends BufferedReader {
      *  @return Node containing the root of the Newick tree.
      */
     public Node readTree () throws InvalidTreeException {
-        Node node = null;
+        // The ancestors of the current node that are still open.
+        ArrayDeque<Node> ancestors = new ArrayDeque<Node> ();
+        // The current node, and its name and distance.
+        Node node = new Node ();
+        StringBuilder meta = new StringBuilder ();
+        boolean empty = true;
+        char[] buffer = new char[BUFFER_SIZE];
         try {
-            // Create a buffer to hold the tree.
-            StringBuffer buffer = new StringBuffer ();
-            // Start reading the tree.
-            String line = readLine ();
-            while (line != null) {
-                // Replace spaces in the line.
-                line = line.replace (" ", "");
-                // Look for the end of the Newick tree.
-                if (line.contains (";")) {
-                    buffer.append (line.substring (0, line.indexOf (";")));
-                    break;
+            int length = read (buffer, 0, BUFFER_SIZE);
+            reading:
+            while (length != -1) {
+                for (int i = 0; i < length; i ++) {
+                    char c = buffer[i];
+                    switch (c) {
+                        // Spaces and line breaks are ignored.
+                        case ' ':
+                        case '\n':
+                        case '\r':
+                            break;
+                        // Look for the end of the Newick tree.
+                        case ';':
+                            break reading;
+                        // Start the first child of a new internal node.
+                        case '(':
+                            if (meta.length () > 0) {
+                                throw new InvalidTreeException (
+                                    "Malformed Newick tree, unexpected " +
+                                    "parenthesis after " + meta + "."
+                                );
+                            }
+                            ancestors.push (node);
+                            node = new Node ();
+                            empty = false;
+                            break;
+                        // Finish the current node and start its sibling.
+                        case ',':
+                            if (ancestors.isEmpty ()) {
+                                throw new InvalidTreeException (
+                                    "Malformed Newick tree, unmatched " +
+                                    "parentheses."
+                                );
+                            }
+                            setMeta (node, meta);
+                            ancestors.peek ().addChild (node);
+                            node = new Node ();
+                            break;
+                        // Finish the current node and return to its parent.
+                        case ')':
+                            if (ancestors.isEmpty ()) {
+                                throw new InvalidTreeException (
+                                    "Malformed Newick tree, unmatched " +
+                                    "parentheses."
+                                );
+                            }
+                            setMeta (node, meta);
+                            Node parent = ancestors.pop ();
+                            parent.addChild (node);
+                            node = parent;
+                            break;
+                        // Anything else is part of the name or distance of
+                        // the current node.
+                        default:
+                            meta.append (c);
+                            empty = false;
+                    }
                 }
-                // Append the line to the buffer.
-                buffer.append (line);
-                // Read the next line of the file.
-                line = readLine ();
-            }
-            // If the buffer contains data, attempt to parse the tree.
-            if (buffer.length () > 0) {
-                node = parseTree (buffer.toString ());
+                length = read (buffer, 0, BUFFER_SIZE);
             }
         }
         catch (IOException e) {
             throw new InvalidTreeException ("Unable to read from file.");
         }
+        // Return nothing if the tree was empty.
+        if (empty) return null;
+        if (! ancestors.isEmpty ()) {
+            throw new InvalidTreeException (
+                "Malformed Newick tree, unmatched parentheses."
+            );
+        }
+        setMeta (node, meta);
         return node;
     }
 
     /**
-     *  The recursive method used to parse through a Newick tree.
+     *  Set the name and distance of a node from its meta data, and clear the
+     *  meta data.
      *
-     *  @param tree The subtree to parse.
-     *  @return A Node containing the subtree.
+     *  @param node The node.
+     *  @param meta The meta data, formatted as name:distance.
      */
-    private Node parseTree (String tree) throws InvalidTreeException {
-        NumberFormat format = NumberFormat.getInstance (Locale.US);
-        Node node = new Node ();
-        String metaString;
-        // Check if the current node has a subTree.
-        if (tree.length () > 0 && tree.charAt (0) == '(') {
-            // Split the sub tree from the meta data.
-            int length = getSpaceInBetweenParens (0, tree);
-            String subTree = tree.substring (1, length);
-            metaString = tree.substring (length + 1, tree.length ());
-            // Parse this node's sub tree.
-            StringBuffer buffer = new StringBuffer ();
-            int i = 0;
-            while (i < subTree.length ()) {
-                // Check to see if this child node has a subtree, append it to
-                // the buffer.
-                if (subTree.charAt (i) == '(') {
-                    int j = getSpaceInBetweenParens (i, subTree);
-                    buffer.append (subTree.substring (i, j));
-                    i = j;
-                }
-                // Keep appending the child node's meta data to the buffer
-                // until we find a new child node.  If we do find a new child
-                // node, add it to the current node by recursion with the
-                // buffer as the subTree, then clear the buffer.
-                if (subTree.charAt (i) != ',') {
-                    buffer.append (subTree.charAt (i));
-                }
-                else {
-                    node.addChild (parseTree (buffer.toString ()));
-                    buffer = new StringBuffer ();
-                }
-                i ++;
-            }
-            // Add a new child to the current node by recursion with the
-            // buffer as the subTree.
-            node.addChild (parseTree (buffer.toString ()));
-        }
-        else {
-            metaString = tree;
-        }
-        // Parse this node's meta data.
-        if (metaString.length () > 0) {
-            String[] meta = metaString.split (":", 2);
-            if (meta.length > 0 && meta[0].length () > 0) {
-                node.setName (meta[0]);
+    private void setMeta (Node node, StringBuilder meta)
+        throws InvalidTreeException {
+        if (meta.length () > 0) {
+            int colon = meta.indexOf (":");
+            if (colon == -1) colon = meta.length ();
+            if (colon > 0) {
+                node.setName (meta.substring (0, colon));
             }
-            if (meta.length > 1 && meta[1].length () > 0) {
-                try {
-                    Double distance = format.parse (
-                        meta[1].toUpperCase ()
-                    ).doubleValue ();
-                    node.setDistance (distance);
-                }
-                catch (NumberFormatException e) {
-                    throw new InvalidTreeException (
-                        "Malformed Newick tree, expected a number." + e
-                    );
-                }
-                catch (ParseException e) {
-                    throw new InvalidTreeException (
-                        "Error parsing a number." + e
-                    );
-                }
+            if (colon + 1 < meta.length ()) {
+                node.setDistance (parseDistance (meta, colon + 1));
             }
+            meta.setLength (0);
         }
-        return node;
     }
 
     /**
-     *  Get the space in between a set of parentheses, ie (   ), which could
-     *  contain other open and close parentheses within it.
+     *  Parse the number at the start of the distance.  Anything following
+     *  the number, such as a comment, is ignored.
      *
-     *  @param index The index of the first open parenthesis.
-     *  @param tree The tree, or the tree segment.
-     *  @return The index of the close parenthesis corresponding to the given
-     *  index of the open parenthesis.
+     *  @param meta The meta data.
+     *  @param start The index of the start of the distance.
+     *  @return The distance.
      */
-    private int getSpaceInBetweenParens (int index, String tree)
+    private Double parseDistance (StringBuilder meta, int start)
         throws InvalidTreeException {
-        int numOpenParensSeen = 0;
-        for (int i = index; i < tree.length (); i ++) {
-            if (tree.charAt (i) == '(') {
-                numOpenParensSeen ++;
+        int length = meta.length ();
+        int end = start;
+        // The sign and digits of the number.
+        if (end < length && (meta.charAt (end) == '-' ||
+            meta.charAt (end) == '+')) {
+            end ++;
+        }
+        int digits = 0;
+        while (end < length && (Character.isDigit (meta.charAt (end)) ||
+            meta.charAt (end) == '.')) {
+            end ++;
+            digits ++;
+        }
+        // The exponent of the number, if it has one.
+        if (digits > 0 && end < length &&
+            Character.toUpperCase (meta.charAt (end)) == 'E') {
+            int exponent = end + 1;
+            if (exponent < length && (meta.charAt (exponent) == '-' ||
+                meta.charAt (exponent) == '+')) {
+                exponent ++;
             }
-            else if (tree.charAt (i) == ')') {
-                numOpenParensSeen --;
-                if (numOpenParensSeen == 0) {
-                    return i;
+            if (exponent < length && Character.isDigit (
+                meta.charAt (exponent))) {
+                end = exponent;
+                while (end < length && Character.isDigit (meta.charAt (end))) {
+                    end ++;
                 }
             }
         }
-        // Throw an exception if there is there are unmatched parentheses.
-        if (numOpenParensSeen != 0) {
+        try {
+            return Double.parseDouble (meta.substring (start, end));
+        }
+        catch (NumberFormatException e) {
             throw new InvalidTreeException (
-                "Malformed Newick tree, unmatched parentheses."
+                "Malformed Newick tree, expected a number." + e
             );
         }
-        return 0;
     }
 
+    /**
+     *  The number of characters read from the tree at a time.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
 }
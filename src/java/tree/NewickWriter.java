@@ -25,6 +25,9 @@ package ecosim.tree;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Locale;
 
 /**
  *  Converts a Node based tree into Newick format.
@@ -45,7 +48,48 @@ public class NewickWriter extends BufferedWriter {
      *  @param tree The tree to write.
      */
     public void write (Tree tree) throws IOException {
-        write (tree.toString () + System.getProperty ("line.separator"));
+        tree.toNewick (this);
+        write (System.getProperty ("line.separator"));
+    }
+
+    /**
+     *  Write a node and its descendants in Newick format, as they are
+     *  visited, without recursion.  A node without a parent is followed by
+     *  a semicolon.
+     *
+     *  @param node The node to write.
+     */
+    public void write (Node node) throws IOException {
+        // The nodes being written, and the index of the next child of each.
+        ArrayDeque<Node> nodes = new ArrayDeque<Node> ();
+        ArrayDeque<Integer> next = new ArrayDeque<Integer> ();
+        nodes.push (node);
+        next.push (0);
+        while (! nodes.isEmpty ()) {
+            Node current = nodes.peek ();
+            ArrayList<Node> children = current.getChildren ();
+            int i = next.pop ();
+            if (i < children.size ()) {
+                write (i == 0 ? "(" : ",");
+                next.push (i + 1);
+                nodes.push (children.get (i));
+                next.push (0);
+                continue;
+            }
+            nodes.pop ();
+            if (i > 0) {
+                write (")");
+            }
+            if (current.isLeafNode () || current.isCollapsed ()) {
+                write (current.getName ());
+            }
+            write (String.format (
+                Locale.US, ":%.5f", current.getDistance ()
+            ));
+        }
+        if (node.getParent () == null) {
+            write (";");
+        }
     }
 
 }
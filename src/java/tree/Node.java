@@ -26,8 +26,10 @@ package ecosim.tree;
 import ecosim.Heapsorter;
 import ecosim.MainVariables;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Locale;
 
 /**
  *  A Node potentially contains a name, a parent node, a distance from the
@@ -81,23 +83,32 @@ public class Node implements Comparable<Node> {
 
     /**
      *  Constructor for objects of class Node. This Node will be a copy of the
-     *  provided Node.
+     *  provided Node.  The descendants are copied without recursion.
      *
      *  @param node Node to make a copy of.
      */
     public Node (Node node) {
-        name = node.getName ();
-        distance = node.getDistance ();
-        children = new ArrayList<Node> ();
-        for (Node child: node.getChildren ()) {
-            Node clone = new Node (child);
-            clone.setParent (this);
-            children.add (clone);
-        }
+        this (node.getName (), node.getDistance ());
         outgroup = node.isOutgroup ();
         collapsed = node.isCollapsed ();
-        x = 0.0d;
-        y = 0.0d;
+        // The nodes being copied, and their copies.
+        ArrayDeque<Node> originals = new ArrayDeque<Node> ();
+        ArrayDeque<Node> copies = new ArrayDeque<Node> ();
+        originals.push (node);
+        copies.push (this);
+        while (! originals.isEmpty ()) {
+            Node original = originals.pop ();
+            Node copy = copies.pop ();
+            for (Node child: original.getChildren ()) {
+                Node clone = new Node (child.getName (), child.getDistance ());
+                clone.outgroup = child.isOutgroup ();
+                clone.collapsed = child.isCollapsed ();
+                clone.setParent (copy);
+                copy.children.add (clone);
+                originals.push (child);
+                copies.push (clone);
+            }
+        }
     }
 
     /**
@@ -171,6 +182,8 @@ public class Node implements Comparable<Node> {
      */
     public void setDistance (Double distance) {
         this.distance = distance;
+        if (parent != null) parent.invalidateSubtree ();
+        invalidateDistanceFromRoot ();
     }
 
     /**
@@ -189,6 +202,7 @@ public class Node implements Comparable<Node> {
      */
     public void setParent (Node parent) {
         this.parent = parent;
+        invalidateDistanceFromRoot ();
     }
 
     /**
@@ -199,6 +213,7 @@ public class Node implements Comparable<Node> {
     public void addChild (Node child) {
         child.setParent (this);
         children.add (child);
+        invalidateSubtree ();
     }
 
     /**
@@ -264,6 +279,7 @@ public class Node implements Comparable<Node> {
     public void removeChild (Node child) {
         children.remove (child);
         child.setParent (null);
+        invalidateSubtree ();
     }
 
     /**
@@ -280,6 +296,7 @@ public class Node implements Comparable<Node> {
      */
     public void collapse (Boolean collapsed) {
         this.collapsed = collapsed;
+        if (parent != null) parent.invalidateSubtree ();
     }
 
     /**
@@ -319,14 +336,30 @@ public class Node implements Comparable<Node> {
     }
 
     /**
-     *  Returns the distance of this Node from the root node.
+     *  Returns the distance of this Node from the root node.  The ancestors
+     *  without a known distance are found by walking up the parent chain,
+     *  then calculated from the root down without recursion.
      *
      *  @return The distance of this Node from the root node.
      */
     public Double distanceFromRootNode () {
-        Double distanceFromRoot = 0.0d;
-        if (parent != null) {
-            distanceFromRoot = distance + parent.distanceFromRootNode ();
+        if (! distanceFromRootCached) {
+            ArrayList<Node> unknown = new ArrayList<Node> ();
+            Node node = this;
+            while (node != null && ! node.distanceFromRootCached) {
+                unknown.add (node);
+                node = node.parent;
+            }
+            for (int i = unknown.size () - 1; i >= 0; i --) {
+                node = unknown.get (i);
+                double distanceFromRoot = 0.0d;
+                if (node.parent != null) {
+                    distanceFromRoot = node.distance +
+                        node.parent.distanceFromRoot;
+                }
+                node.distanceFromRoot = distanceFromRoot;
+                node.distanceFromRootCached = true;
+            }
         }
         return distanceFromRoot;
     }
@@ -337,15 +370,8 @@ public class Node implements Comparable<Node> {
      *  @return The maximum distance of this Node from a leaf node.
      */
     public Double maximumDistanceFromLeafNode () {
-        Double maximumDistance = 0.0d;
-        for (Node child: children) {
-            Double childDistance =
-                child.maximumDistanceFromLeafNode () + child.getDistance ();
-            if (childDistance > maximumDistance) {
-                maximumDistance = childDistance;
-            }
-        }
-        return maximumDistance;
+        calculateSubtree ();
+        return maximumDistanceFromLeaf;
     }
 
     /**
@@ -354,43 +380,45 @@ public class Node implements Comparable<Node> {
      *  @return The minimum distance of this Node from a leaf node.
      */
     public Double minimumDistanceFromLeafNode () {
-        Double minimumDistance = Double.MAX_VALUE;
-        for (Node child: children) {
-            Double childDistance =
-                child.minimumDistanceFromLeafNode () + child.getDistance ();
-            if (childDistance < minimumDistance) {
-                minimumDistance = childDistance;
-            }
-        }
-        return minimumDistance;
+        calculateSubtree ();
+        return minimumDistanceFromLeaf;
     }
 
     /**
-     *  Calculate the maximum distance between the leaf Node ancestors of
+     *  Returns the maximum distance between the leaf Node ancestors of
      *  this Node.
      *
      *  @return The maximum distance between the leaf Node ancestors.
      */
     public Double maximumDistanceBetweenLeafNodes () {
-        ArrayList<Double> childDistance = new ArrayList<Double> ();
-        for (Node child: children) {
-            childDistance.add (
-                child.maximumDistanceFromLeafNode () + child.getDistance ()
-            );
-        }
-        Double distance = 0.0d;
-        // Sort the child distances if there are more than two children.  The
-        // two children with the maximum distance between the leaf node
-        // ancestors will be used.
-        if (childDistance.size () > 2) {
-            Heapsorter<Double> sorter = new Heapsorter<Double> ();
-            sorter.sort (childDistance);
-        }
-        // Calculate the maximum distance between the leaf Node ancestors.
-        if (childDistance.size () >= 2) {
-            distance = childDistance.get (0) + childDistance.get (1);
+        calculateSubtree ();
+        return maximumDistanceBetweenLeaves;
+    }
+
+    /**
+     *  Returns the number of living descendants of this Node.
+     *
+     *  @param countCollapsed Whether or not a collapsed descendant is
+     *  counted as a single descendant.
+     *  @return The number of living descendants of this Node.
+     */
+    public int numberOfDescendants (boolean countCollapsed) {
+        calculateSubtree ();
+        if (countCollapsed) {
+            return numberOfVisibleDescendants;
         }
-        return distance;
+        return numberOfLeafDescendants;
+    }
+
+    /**
+     *  Returns a count that changes whenever the descendants of this Node,
+     *  their distances or whether they are collapsed change.
+     *
+     *  @return The number of times the descendants have been recalculated.
+     */
+    public int getModificationCount () {
+        calculateSubtree ();
+        return modificationCount;
     }
 
     /**
@@ -454,32 +482,16 @@ public class Node implements Comparable<Node> {
      *  @return A Newick formatted String representing this Node.
      */
     public String toString () {
-        String newick = "";
-        for (int i = 0; i < children.size (); i ++) {
-            if (i != 0) {
-                newick += ",";
-            }
-            newick += children.get (i);
-        }
-        if (newick.length () > 0) {
-            newick = "(" + newick + ")";
-        }
-        if (isLeafNode () || isCollapsed ()) {
-            newick += String.format (
-                Locale.US,
-                "%s:%.5f", name, distance
-            );
+        StringWriter newick = new StringWriter ();
+        try {
+            NewickWriter out = new NewickWriter (newick);
+            out.write (this);
+            out.flush ();
         }
-        else {
-            newick += String.format (
-                Locale.US,
-                ":%.5f", distance
-            );
+        catch (IOException e) {
+            // A StringWriter does not throw an IOException.
         }
-        if (parent == null) {
-            newick += ";";
-        }
-        return newick;
+        return newick.toString ();
     }
 
     /**
@@ -518,6 +530,117 @@ public class Node implements Comparable<Node> {
         this.y = y;
     }
 
+    /**
+     *  Calculate the distances and descendant counts of this Node, if they
+     *  are not already known.  The descendants without them are calculated
+     *  first, deepest first, so that each Node is calculated from the known
+     *  values of its children without recursion.
+     */
+    private void calculateSubtree () {
+        if (subtreeCached) return;
+        // The descendants of a Node with known values have known values.
+        ArrayList<Node> unknown = new ArrayList<Node> ();
+        unknown.add (this);
+        for (int i = 0; i < unknown.size (); i ++) {
+            for (Node child: unknown.get (i).children) {
+                if (! child.subtreeCached) unknown.add (child);
+            }
+        }
+        for (int i = unknown.size () - 1; i >= 0; i --) {
+            unknown.get (i).calculateFromChildren ();
+        }
+    }
+
+    /**
+     *  Calculate the distances and descendant counts of this Node from those
+     *  of its children.
+     */
+    private void calculateFromChildren () {
+        double maximumDistance = 0.0d;
+        double minimumDistance = Double.MAX_VALUE;
+        // The two largest distances of the children from a leaf node.
+        double first = 0.0d;
+        double second = 0.0d;
+        int leafDescendants = 0;
+        int visibleDescendants = 0;
+        for (int i = 0; i < children.size (); i ++) {
+            Node child = children.get (i);
+            double childMaximum = child.maximumDistanceFromLeafNode () +
+                child.getDistance ();
+            double childMinimum = child.minimumDistanceFromLeafNode () +
+                child.getDistance ();
+            if (childMaximum > maximumDistance) {
+                maximumDistance = childMaximum;
+            }
+            if (childMinimum < minimumDistance) {
+                minimumDistance = childMinimum;
+            }
+            if (i == 0 || childMaximum > first) {
+                if (i > 0) second = first;
+                first = childMaximum;
+            }
+            else if (i == 1 || childMaximum > second) {
+                second = childMaximum;
+            }
+            if (child.isLeafNode ()) {
+                leafDescendants ++;
+                visibleDescendants ++;
+            }
+            else {
+                leafDescendants += child.numberOfDescendants (false);
+                if (child.isCollapsed ()) {
+                    visibleDescendants ++;
+                }
+                else {
+                    visibleDescendants += child.numberOfDescendants (true);
+                }
+            }
+        }
+        maximumDistanceFromLeaf = maximumDistance;
+        minimumDistanceFromLeaf = minimumDistance;
+        // Calculate the maximum distance between the leaf Node ancestors
+        // using the two children with the maximum distance.
+        maximumDistanceBetweenLeaves = 0.0d;
+        if (children.size () >= 2) {
+            maximumDistanceBetweenLeaves = first + second;
+        }
+        numberOfLeafDescendants = leafDescendants;
+        numberOfVisibleDescendants = visibleDescendants;
+        modificationCount ++;
+        subtreeCached = true;
+    }
+
+    /**
+     *  Forget the distances and descendant counts of this Node and its
+     *  ancestors.  The ancestors of a Node without them are already
+     *  without them.
+     */
+    private void invalidateSubtree () {
+        Node node = this;
+        while (node != null && node.subtreeCached) {
+            node.subtreeCached = false;
+            node = node.getParent ();
+        }
+    }
+
+    /**
+     *  Forget the distance from the root node of this Node and its
+     *  descendants.  The descendants of a Node without it are already
+     *  without it, so they are skipped.
+     */
+    private void invalidateDistanceFromRoot () {
+        if (! distanceFromRootCached) return;
+        ArrayList<Node> known = new ArrayList<Node> ();
+        known.add (this);
+        while (! known.isEmpty ()) {
+            Node node = known.remove (known.size () - 1);
+            node.distanceFromRootCached = false;
+            for (Node child: node.children) {
+                if (child.distanceFromRootCached) known.add (child);
+            }
+        }
+    }
+
     /**
      *  The name of this Node.
      */
@@ -560,4 +683,36 @@ public class Node implements Comparable<Node> {
      */
     private Double y;
 
+    /**
+     *  The cached distance of this Node from the root node.
+     */
+    private double distanceFromRoot;
+
+    /**
+     *  The cached distances of this Node from its leaf nodes, and between
+     *  its leaf nodes.
+     */
+    private double maximumDistanceFromLeaf;
+    private double minimumDistanceFromLeaf;
+    private double maximumDistanceBetweenLeaves;
+
+    /**
+     *  The cached number of leaf descendants of this Node, and the number of
+     *  descendants when collapsed descendants are counted only once.
+     */
+    private int numberOfLeafDescendants;
+    private int numberOfVisibleDescendants;
+
+    /**
+     *  The number of times the cached values have been calculated.
+     */
+    private int modificationCount;
+
+    /**
+     *  Whether or not the cached values are known.  Written after the values
+     *  so that other threads see the values when they see the flag.
+     */
+    private volatile boolean distanceFromRootCached;
+    private volatile boolean subtreeCached;
+
 }
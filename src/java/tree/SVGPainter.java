@@ -24,13 +24,25 @@ package ecosim.tree;
 
 import ecosim.api.Painter;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 /**
  *  Paints to a SVG formatted image.
  *
+ *  The image is streamed to the file through a large buffer, so the
+ *  document is never held in memory.  Consecutive lines of the same stroke
+ *  width are merged into a single path element, and consecutive Strings
+ *  share a single group element.  A file name ending in .svgz is written
+ *  with gzip compression.
+ *
  *  @author Jason M. Wood
  *  @copyright GNU General Public License
  */
@@ -44,7 +56,14 @@ public class SVGPainter implements Painter {
      */
     public SVGPainter (File file) {
         try {
-            writer = new FileWriter (file);
+            OutputStream out = new FileOutputStream (file);
+            if (file.getName ().endsWith (".svgz")) {
+                out = new GZIPOutputStream (out, BUFFER_SIZE);
+            }
+            writer = new BufferedWriter (
+                new OutputStreamWriter (out, StandardCharsets.UTF_8),
+                BUFFER_SIZE
+            );
         }
         catch (IOException e) {
             System.out.println ("Error opening SVG file: " + e);
@@ -79,11 +98,13 @@ public class SVGPainter implements Painter {
      *  End the SVG Painter.
      */
     public void end () {
+        if (writer == null) return;
         try {
             try {
                 // End the SVG document.
+                endElement ();
                 writer.write ("</svg>");
-                writer.write (System.getProperty ("line.separator"));
+                writer.write (LINE_SEPARATOR);
             }
             finally {
                 // Close the file IO.
@@ -94,6 +115,7 @@ public class SVGPainter implements Painter {
             System.out.println ("Error closing SVG file: " + e);
             e.printStackTrace ();
         }
+        writer = null;
     }
 
     /**
@@ -106,11 +128,35 @@ public class SVGPainter implements Painter {
      *  @param stroke The stroke width of the line.
      */
     public void drawLine (int x1, int y1, int x2, int y2, int stroke) {
-        writeln (String.format (
-            "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" " +
-            "stroke=\"%s\" stroke-width=\"%d\"/>",
-            x1, y1, x2, y2, strokeColor, stroke
-        ));
+        if (writer == null) return;
+        try {
+            // Start a new path if the stroke changes or the path is long.
+            if (element != PATH || stroke != pathStroke ||
+                segments == MAXIMUM_SEGMENTS) {
+                endElement ();
+                writer.write ("<path stroke=\"");
+                writer.write (strokeColor);
+                writer.write ("\" stroke-width=\"");
+                writer.write (Integer.toString (stroke));
+                writer.write ("\" fill=\"none\" d=\"");
+                element = PATH;
+                pathStroke = stroke;
+                segments = 0;
+            }
+            // Only move when the line does not start where the last ended.
+            if (segments == 0 || x1 != pathX || y1 != pathY) {
+                writer.write (segments == 0 ? "M" : " M");
+                writePoint (x1, y1);
+            }
+            writer.write (" L");
+            writePoint (x2, y2);
+            pathX = x2;
+            pathY = y2;
+            segments ++;
+        }
+        catch (IOException e) {
+            error (e);
+        }
     }
 
     /**
@@ -121,10 +167,29 @@ public class SVGPainter implements Painter {
      *  @param y The Y location to paint the String.
      */
     public void drawString (String str, int x, int y) {
-        writeln (String.format (
-            "<text x=\"%d\" y=\"%d\" fill=\"%s\">%s</text>",
-            x, y, fontColor, str
-        ));
+        if (writer == null) return;
+        try {
+            // Consecutive Strings share the fill color of their group.
+            if (element != TEXT) {
+                endElement ();
+                writer.write ("<g fill=\"");
+                writer.write (fontColor);
+                writer.write ("\">");
+                writer.write (LINE_SEPARATOR);
+                element = TEXT;
+            }
+            writer.write ("<text x=\"");
+            writer.write (Integer.toString (x));
+            writer.write ("\" y=\"");
+            writer.write (Integer.toString (y));
+            writer.write ("\">");
+            writeEscaped (str);
+            writer.write ("</text>");
+            writer.write (LINE_SEPARATOR);
+        }
+        catch (IOException e) {
+            error (e);
+        }
     }
 
     /**
@@ -160,16 +225,98 @@ public class SVGPainter implements Painter {
      *  @param line The line of text.
      */
     private void writeln (String line) {
+        if (writer == null) return;
         try {
-            writer.write (line + System.getProperty ("line.separator"));
+            writer.write (line);
+            writer.write (LINE_SEPARATOR);
         }
         catch (IOException e) {
-            System.out.println ("Error writing to SVG file: " + line);
-            e.printStackTrace ();
+            error (e);
+        }
+    }
+
+    /**
+     *  Private method to end the path or group being written.
+     */
+    private void endElement () throws IOException {
+        if (element == PATH) {
+            writer.write ("\"/>");
+            writer.write (LINE_SEPARATOR);
+        }
+        else if (element == TEXT) {
+            writer.write ("</g>");
+            writer.write (LINE_SEPARATOR);
+        }
+        element = NONE;
+    }
+
+    /**
+     *  Private method to write a point of a path.
+     */
+    private void writePoint (int x, int y) throws IOException {
+        writer.write (Integer.toString (x));
+        writer.write (' ');
+        writer.write (Integer.toString (y));
+    }
+
+    /**
+     *  Private method to write text with the XML special characters
+     *  escaped.
+     */
+    private void writeEscaped (String str) throws IOException {
+        for (int i = 0; i < str.length (); i ++) {
+            char c = str.charAt (i);
+            switch (c) {
+                case '&': writer.write ("&amp;"); break;
+                case '<': writer.write ("&lt;"); break;
+                case '>': writer.write ("&gt;"); break;
+                default: writer.write (c); break;
+            }
+        }
+    }
+
+    /**
+     *  Private method to report an error writing the file, and stop
+     *  writing to it.
+     */
+    private void error (IOException e) {
+        System.out.println ("Error writing to SVG file: " + e);
+        e.printStackTrace ();
+        try {
+            writer.close ();
         }
+        catch (IOException ignored) {
+        }
+        writer = null;
     }
 
-    private FileWriter writer;
+    /**
+     *  The size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     *  The maximum number of lines merged into a single path.
+     */
+    private static final int MAXIMUM_SEGMENTS = 1024;
+
+    private static final String LINE_SEPARATOR =
+        System.getProperty ("line.separator");
+
+    /**
+     *  The element being written.
+     */
+    private static final int NONE = 0;
+    private static final int PATH = 1;
+    private static final int TEXT = 2;
+
+    private Writer writer;
+
+    private int element = NONE;
+    private int pathStroke;
+    private int pathX;
+    private int pathY;
+    private int segments;
 
     private int fontHeight = 12;
     private int fontWidth = 7;
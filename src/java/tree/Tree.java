@@ -32,7 +32,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  *  Reads in a Newick tree from a file and provides options to traverse it.
@@ -96,6 +104,24 @@ public class Tree {
         root = new Node (tree.getRoot ());
     }
 
+    /**
+     *  Constructor for objects of class Tree.
+     *
+     *  @param tree CompactTree to convert.
+     */
+    public Tree (CompactTree tree) {
+        root = tree.toNode ();
+    }
+
+    /**
+     *  Constructor for objects of class Tree.
+     *
+     *  @param root The root Node of the tree.
+     */
+    public Tree (Node root) {
+        this.root = root;
+    }
+
     /**
      *  Compare this tree with another.
      *
@@ -156,6 +182,15 @@ public class Tree {
         xModifier = scale;
     }
 
+    /**
+     *  Get the scale used for tree display.
+     *
+     *  @return The scale.
+     */
+    public int getScale () {
+        return xModifier;
+    }
+
     /**
      *  Returns the maximum width of the tree from root node to the most
      *  divergent leaf node.
@@ -196,18 +231,8 @@ public class Tree {
      *  @return The number of living descendants of the Node.
      */
     public int numberOfDescendants (Node node) {
-        int descendants = 0;
         boolean paintCollapsed = (paintMethod == PAINT_METHOD_COLLAPSED);
-        for (Node child: node.getChildren ()) {
-            if (child.isLeafNode () ||
-                (child.isCollapsed () && paintCollapsed)) {
-                descendants ++;
-            }
-            else {
-                descendants += numberOfDescendants (child);
-            }
-        }
-        return descendants;
+        return node.numberOfDescendants (paintCollapsed);
     }
 
     /**
@@ -227,6 +252,36 @@ public class Tree {
         return namedDescendant;
     }
 
+    /**
+     *  Returns the descendants of the root node, as found by getDescendants,
+     *  keyed by name.
+     *
+     *  @return The descendants of the root node keyed by name.
+     */
+    public HashMap<String, Node> getDescendantsByName () {
+        HashMap<String, Node> descendants = new HashMap<String, Node> ();
+        ArrayDeque<Node> nodes = new ArrayDeque<Node> ();
+        ArrayList<Node> children = root.getChildren ();
+        for (int i = children.size () - 1; i >= 0; i --) {
+            nodes.push (children.get (i));
+        }
+        while (! nodes.isEmpty ()) {
+            Node node = nodes.pop ();
+            if (node.isLeafNode () || node.isCollapsed ()) {
+                // Keep the first descendant found with each name.
+                if (! descendants.containsKey (node.getName ())) {
+                    descendants.put (node.getName (), node);
+                }
+                continue;
+            }
+            children = node.getChildren ();
+            for (int i = children.size () - 1; i >= 0; i --) {
+                nodes.push (children.get (i));
+            }
+        }
+        return descendants;
+    }
+
     /**
      *  Returns an array of nodes that are collapsed descendants of the
      *  root node.
@@ -301,28 +356,49 @@ public class Tree {
     }
 
     /**
-     *  Private recursive method to make this tree binary.
+     *  Private method to make the subtree of a node binary, without
+     *  recursion.
      *
-     *  @param node The current node being analyzed.
+     *  @param node The root node of the subtree.
      */
     private void makeBinary (Node node) {
-        ArrayList<Node> children = new ArrayList<Node> (node.getChildren ());
-        // If this node has more than 2 children, split the node in two.
-        if (children.size () > 2) {
-            // Skip the first child.
-            children.remove (0);
-            // Move all remaining children to a new parent.
-            Node parent = new Node ();
-            for (Node child: children) {
-                node.removeChild (child);
-                parent.addChild (child);
+        ArrayDeque<Node> nodes = new ArrayDeque<Node> ();
+        nodes.push (node);
+        while (! nodes.isEmpty ()) {
+            Node current = nodes.pop ();
+            ArrayList<Node> children = current.getChildren ();
+            int size = children.size ();
+            // If this node has more than 2 children, keep the first child
+            // and move the rest onto a chain of new parents, each holding
+            // one child and the next parent.  The chain is built from the
+            // bottom up, so each child is moved only once.
+            if (size > 2) {
+                ArrayList<Node> moved = new ArrayList<Node> (
+                    children.subList (1, size)
+                );
+                children.subList (1, size).clear ();
+                Node parent = new Node ();
+                parent.addChild (moved.get (size - 3));
+                parent.addChild (moved.get (size - 2));
+                for (int i = size - 4; i >= 0; i --) {
+                    Node grandparent = new Node ();
+                    grandparent.addChild (moved.get (i));
+                    grandparent.addChild (parent);
+                    parent = grandparent;
+                }
+                // Add the new chain as a child to this node.
+                current.addChild (parent);
+                // Make sure each moved child is binary as well.
+                for (Node child: moved) {
+                    nodes.push (child);
+                }
+                nodes.push (children.get (0));
+                continue;
+            }
+            // Make sure each child is binary as well.
+            for (Node child: current.getChildren ()) {
+                nodes.push (child);
             }
-            // Add the new parent as a child to this node.
-            node.addChild (parent);
-        }
-        // Make sure each child is binary as well.
-        for (Node child: node.getChildren ()) {
-            makeBinary (child);
         }
     }
 
@@ -388,8 +464,27 @@ public class Tree {
      *  @return Newick formatted String containing the tree.
      */
     public String toString () {
+        StringWriter newick = new StringWriter ();
+        try {
+            toNewick (newick);
+        }
+        catch (IOException e) {
+            // A StringWriter does not throw an IOException.
+        }
+        return newick.toString ();
+    }
+
+    /**
+     *  Write this tree in Newick format to a Writer, as the nodes are
+     *  visited, without building the whole String in memory first.
+     *
+     *  @param writer The Writer to write the Newick tree to.
+     */
+    public void toNewick (Writer writer) throws IOException {
         validateTree (root);
-        return root.toString ();
+        NewickWriter out = new NewickWriter (writer);
+        out.write (root);
+        out.flush ();
     }
 
     /**
@@ -426,23 +521,39 @@ public class Tree {
      *  @param painter The Painter to use.
      */
     public void paintTree (Painter painter) {
+        paintTree (painter, 0);
+    }
+
+    /**
+     *  Paint the tree using the given Painter, with the subtrees that are
+     *  narrower than the level of detail painted as wedges.  The layout of
+     *  the tree at each scale is cached, so returning to a scale does not
+     *  require the layout to be calculated again.  If the thread is
+     *  interrupted while the layout is calculated, the tree is not painted.
+     *
+     *  @param painter The Painter to use.
+     *  @param detail The width in pixels below which a subtree is painted
+     *  as a wedge, or 0 to paint every leaf.
+     */
+    public void paintTree (Painter painter, int detail) {
         int fontHeight = painter.fontHeight ();
         int fontWidth = painter.fontWidth ();
         int xSpacer = fontWidth / 2;
-        // Calculate the XY location of all nodes.
-        calculateNodeXY (root, 0.0d);
+        // Get the XY location of the painted nodes.
+        Layout layout = getLayout (detail);
+        if (layout == null) return;
         // Calculate the max X value.
         int max = 0;
-        for (Node node: getDescendants ()) {
-            String name = node.getName ();
-            int labelWidth = painter.stringWidth (name);
+        for (int i = 0; i < layout.size; i ++) {
+            if (layout.labels[i] == null) continue;
+            int labelWidth = painter.stringWidth (layout.labels[i]);
             int x = fontWidth + labelWidth + Math.round (
-                node.getX ().floatValue () * xModifier
+                (float)layout.x[i] * xModifier
             );
             if (x > max) max = x;
         }
         // Calculate the height and width needed for the tree.
-        int height = fontHeight * (size () + 3);
+        int height = fontHeight * (layout.rows + 3);
         int width = max;
         // Make room for the demarcation line if needed.
         if (paintMethod == PAINT_METHOD_DEMARCATED) {
@@ -459,10 +570,10 @@ public class Tree {
         }
         // Paint the tree.
         painter.start (width, height);
-        paintNode (painter, root);
+        paintNodes (painter, layout);
         paintScaleBar (painter, 25, height - fontHeight);
         if (paintMethod == PAINT_METHOD_DEMARCATED) {
-            paintDemarcation (painter, root, max + 10);
+            paintDemarcation (painter, layout, max + 10);
         }
         painter.end ();
     }
@@ -474,7 +585,7 @@ public class Tree {
      */
     public boolean isValid () {
         boolean valid = false;
-        if (root != null && root.getDescendants ().size () > 0) {
+        if (root != null && root.numberOfDescendants (false) > 0) {
             valid = true;
         }
         return valid;
@@ -487,79 +598,82 @@ public class Tree {
      *  @return The last common ancestor node of the descendants.
      */
     public Node lastCommonAncestor (ArrayList<String> names) {
-        ArrayList<Node> descendants = new ArrayList<Node> ();
-        for (String name: names) {
-            descendants.add (getDescendant (name));
-        }
-        if (descendants.isEmpty ()) return null;
-        return lastCommonAncestor (descendants, descendants.get (0));
+        return lastCommonAncestor (names, getDescendantsByName ());
     }
 
     /**
-     *  A private recursive method to find the last common ancestor node for
-     *  the given descendants.
+     *  Find the last common ancestor node for the named descendants, using
+     *  descendants already found by getDescendantsByName.  Names that are
+     *  not found are ignored.
      *
-     *  @param descendants The list of descendants.
-     *  @param node The current node being checked.
-     *  @return The last common ancestor node of the descendants.
+     *  @param names The names of the descendants.
+     *  @param descendants The descendants keyed by name.
+     *  @return The last common ancestor node of the descendants, or null if
+     *  none of them were found.
      */
-    private Node lastCommonAncestor (ArrayList<Node> descendants, Node node) {
-        boolean has = true;
-        for (Node descendant: descendants) {
-            has &= node == descendant || node.hasDescendant (descendant);
-        }
-        if (has) {
-            return node;
-        }
-        else {
-           return lastCommonAncestor (descendants, node.getParent ());
+    protected Node lastCommonAncestor (ArrayList<String> names,
+        HashMap<String, Node> descendants) {
+        Node ancestor = null;
+        // The last common ancestor found so far and its ancestors.
+        HashSet<Node> path = new HashSet<Node> ();
+        for (String name: names) {
+            Node node = descendants.get (name);
+            if (node == null) continue;
+            if (ancestor == null) {
+                ancestor = node;
+                for (Node n = node; n != null; n = n.getParent ()) {
+                    path.add (n);
+                }
+                continue;
+            }
+            // Climb from the descendant until the path is reached, and
+            // then climb the path up to the same node.
+            while (! path.contains (node)) {
+                node = node.getParent ();
+            }
+            while (ancestor != node) {
+                path.remove (ancestor);
+                ancestor = ancestor.getParent ();
+            }
         }
+        return ancestor;
     }
 
     /**
-     *  Recursive method to paint a node and all of its descendants.
+     *  Paint the nodes of a layout.  The lines are all painted before the
+     *  labels, so that a Painter can join consecutive lines.
      *
      *  @param painter The Painter to use.
-     *  @param node The Node to paint.
+     *  @param layout The Layout to paint.
      */
-    private void paintNode (Painter painter, Node node) {
+    private void paintNodes (Painter painter, Layout layout) {
         int fontHeight = painter.fontHeight ();
         int fontWidth = painter.fontWidth ();
         int stroke = 1;
-        int demarcationStroke = 10;
         int yModifier = fontHeight;
         int xSpacer = (int)Math.floor (0.5d * fontWidth);
         int ySpacer = (int)Math.floor (0.5d * fontHeight);
-        int nodeX = fontWidth + Math.round (
-            node.getX ().floatValue () * xModifier
-        );
-        int nodeY = fontHeight + Math.round (
-            node.getY ().floatValue () * yModifier
-        );
-        boolean paintCollapsed = (paintMethod == PAINT_METHOD_COLLAPSED);
-        boolean paintDemarcated = (paintMethod == PAINT_METHOD_DEMARCATED);
-        // Is this a leaf node or a collapsed node?
-        if (node.isLeafNode () || (node.isCollapsed () && paintCollapsed)) {
-            // Paint the name of the node.
-            painter.drawString (
-                node.getName (), nodeX + xSpacer, nodeY + ySpacer - 2
+        for (int i = 0; i < layout.size; i ++) {
+            int childX = fontWidth + Math.round (
+                (float)layout.x[i] * xModifier
             );
-        }
-        else {
-            for (Node child: node.getChildren ()) {
-                int childX = fontWidth + Math.round (
-                    child.getX ().floatValue () * xModifier
+            int childY = fontHeight + Math.round (
+                (float)layout.y[i] * yModifier
+            );
+            int parent = layout.parents[i];
+            if (parent >= 0) {
+                int nodeX = fontWidth + Math.round (
+                    (float)layout.x[parent] * xModifier
                 );
-                int childY = fontHeight + Math.round (
-                    child.getY ().floatValue () * yModifier
+                int nodeY = fontHeight + Math.round (
+                    (float)layout.y[parent] * yModifier
                 );
                 // Paint a vertical line connecting the node to its
                 // parent.
                 painter.drawLine (nodeX, nodeY, nodeX, childY, stroke);
-                // Paint a triangle if the child node is collapsed,
-                // otherwise draw a horizontal line.
-                int num = numberOfDescendants (child);
-                if (child.isCollapsed () && paintCollapsed && num > 1) {
+                // Paint a triangle if the child node is painted as a
+                // wedge, otherwise draw a horizontal line.
+                if (layout.wedges[i]) {
                     int a = childY - ySpacer + 1;
                     int b = childY + ySpacer - 1;
                     // Paint a triangle.
@@ -573,30 +687,52 @@ public class Tree {
                         nodeX, childY, childX, childY, stroke
                     );
                 }
-                // Paint the child node.
-                paintNode (painter, child);
             }
         }
+        // Paint the name of each leaf node, collapsed node or wedge.
+        for (int i = 0; i < layout.size; i ++) {
+            if (layout.labels[i] == null) continue;
+            int childX = fontWidth + Math.round (
+                (float)layout.x[i] * xModifier
+            );
+            int childY = fontHeight + Math.round (
+                (float)layout.y[i] * yModifier
+            );
+            painter.drawString (
+                layout.labels[i], childX + xSpacer, childY + ySpacer - 2
+            );
+        }
     }
 
     /**
-     *  Recursive method to paint demarcation bars for the tree.
+     *  Paint demarcation bars for the collapsed nodes of a layout, followed
+     *  by their labels.
      *
      *  @param painter The Painter to use.
-     *  @param node The current Node to paint.
+     *  @param layout The Layout to paint.
      *  @param x The X location to start the demarcation bars.
      */
-    private void paintDemarcation (Painter painter, Node node, int x) {
-        if (node.isCollapsed ()) {
-            int fontHeight = painter.fontHeight ();
-            int fontWidth = painter.fontWidth ();
-            int demarcationStroke = 10;
-            int ySpacer = (int)Math.floor (0.5d * fontHeight);
+    private void paintDemarcation (Painter painter, Layout layout, int x) {
+        int fontHeight = painter.fontHeight ();
+        int fontWidth = painter.fontWidth ();
+        int demarcationStroke = 10;
+        int ySpacer = (int)Math.floor (0.5d * fontHeight);
+        ArrayList<String> names = new ArrayList<String> ();
+        ArrayList<Integer> positions = new ArrayList<Integer> ();
+        int i = 0;
+        while (i < layout.size) {
+            Node node = layout.nodes[i];
+            if (! node.isCollapsed ()) {
+                i ++;
+                continue;
+            }
             int minY = Integer.MAX_VALUE;
             int maxY = 0;
-            for (Node descendant: node.getDescendants ()) {
+            // The painted descendants of the node follow it in the layout.
+            for (int j = i; j < layout.ends[i]; j ++) {
+                if (layout.labels[j] == null) continue;
                 int y = fontHeight + Math.round (
-                    descendant.getY ().floatValue () * fontHeight
+                    (float)layout.y[j] * fontHeight
                 );
                 if (y < minY) minY = y;
                 if (y > maxY) maxY = y;
@@ -605,12 +741,15 @@ public class Tree {
             int b = maxY + ySpacer - 2;
             int c = Math.round (0.5f * (minY + maxY)) + ySpacer - 2;
             painter.drawLine (x, a, x, b, demarcationStroke);
-            painter.drawString (node.getName (), x + fontWidth, c);
+            names.add (node.getName ());
+            positions.add (c);
+            i = layout.ends[i];
         }
-        else {
-            for (Node child: node.getChildren ()) {
-                paintDemarcation (painter, child, x);
-            }
+        // Paint the name of each collapsed node.
+        for (int j = 0; j < names.size (); j ++) {
+            painter.drawString (
+                names.get (j), x + fontWidth, positions.get (j)
+            );
         }
     }
 
@@ -655,80 +794,258 @@ public class Tree {
     }
 
     /**
-     *  Private recursive method to calculate the XY location of the node
-     *  and all of its descendants.
+     *  Get the layout of the tree at the current scale and paint method,
+     *  calculating it if it is not cached or the tree has changed.
+     *
+     *  @param detail The width in pixels below which a subtree is painted
+     *  as a wedge, or 0 to paint every leaf.
+     *  @return The Layout, or null if the thread was interrupted.
+     */
+    private Layout getLayout (int detail) {
+        // The scale only changes the layout when subtrees can be painted as
+        // wedges.
+        int scale = 0;
+        if (detail > 0) scale = xModifier;
+        String key = paintMethod + ":" + scale + ":" + detail;
+        synchronized (layouts) {
+            Layout layout = layouts.get (key);
+            int modifications = root.getModificationCount ();
+            if (layout == null || layout.root != root ||
+                layout.modifications != modifications) {
+                layout = new Layout (root, modifications);
+                if (! calculateNodeXY (layout, detail)) return null;
+                layouts.put (key, layout);
+            }
+            return layout;
+        }
+    }
+
+    /**
+     *  Private method to calculate the XY location of the painted nodes in
+     *  a single pass, without recursion.  The nodes are added in the order
+     *  that they are painted, and the Y location of each internal node is
+     *  then calculated from those of its children.
      *
-     *  @param node The current Node.
-     *  @param height The current height.
+     *  @param layout The Layout to add the nodes to.
+     *  @param detail The width in pixels below which a subtree is painted
+     *  as a wedge, or 0 to paint every leaf.
+     *  @return False if the thread was interrupted, True otherwise.
      */
-    private void calculateNodeXY (Node node, double height) {
+    private boolean calculateNodeXY (Layout layout, int detail) {
         boolean paintCollapsed = (paintMethod == PAINT_METHOD_COLLAPSED);
         boolean paintDemarcated = (paintMethod == PAINT_METHOD_DEMARCATED);
-        Node parent = node.getParent ();
-        double x = 0.0d;
-        // The X coordinate is based on the node's distance from its parent.
+        // The nodes waiting to be added, with the index of their parent and
+        // whether or not they are descendants of a collapsed node.
+        ArrayDeque<Node> nodes = new ArrayDeque<Node> ();
+        ArrayDeque<Integer> parents = new ArrayDeque<Integer> ();
+        ArrayDeque<Boolean> inCollapsed = new ArrayDeque<Boolean> ();
+        nodes.push (root);
+        parents.push (-1);
+        inCollapsed.push (false);
+        int height = 0;
+        while (! nodes.isEmpty ()) {
+            Node node = nodes.pop ();
+            int parent = parents.pop ();
+            boolean descendant = inCollapsed.pop () || node.isCollapsed ();
+            // Stop if a new layout has been requested.
+            if ((layout.size & 0xfff) == 0 &&
+                Thread.currentThread ().isInterrupted ()) {
+                return false;
+            }
+            int index = layout.add (node, parent);
+            double x = 0.0d;
+            // The X coordinate is based on the node's distance from its
+            // parent.
             x += node.getDistance ();
-        // Add the parent's X coordinate.
-        if (parent != null) x += parent.getX ();
-        // If the node is collapsed, add the descendants distance as well.
-        int num = numberOfDescendants (node);
-        if (node.isCollapsed () && paintCollapsed && num > 1) {
-            double max = node.maximumDistanceFromLeafNode ();
-            if (max < 0.01d) max = 0.01d;
-            x += max;
-        }
-        node.setX (x);
-        // The Y coordinate is calculated differently for leaf and internal
-        // nodes.
-        if (node.isLeafNode () || (node.isCollapsed () && paintCollapsed)) {
-            node.setY (height);
-        }
-        else {
-            double minY = Double.MAX_VALUE;
-            double maxY = 0.0d;
-            double h = height;
-            for (Node child: node.getChildren ()) {
-                calculateNodeXY (child, h);
-                int numLeaf = 1;
-                if (! (child.isLeafNode () ||
-                    (child.isCollapsed () && paintCollapsed))) {
-                    numLeaf = numberOfDescendants (child);
+            // Add the parent's X coordinate.
+            if (parent >= 0) x += layout.x[parent];
+            int num = numberOfDescendants (node);
+            boolean collapsed = node.isCollapsed () && paintCollapsed;
+            // Paint a subtree narrower than the level of detail as a wedge.
+            // The demarcation bars are painted from the descendants of
+            // collapsed nodes, so only the subtrees of those can be wedges.
+            boolean wedge = collapsed && num > 1;
+            if (! wedge && parent >= 0 && num > 1 && detail > 0 &&
+                (descendant || ! paintDemarcated)) {
+                double width = node.maximumDistanceFromLeafNode () *
+                    xModifier;
+                wedge = width < detail;
+            }
+            // If the node is a wedge, add the descendants distance as well.
+            if (wedge) {
+                double max = node.maximumDistanceFromLeafNode ();
+                if (max < 0.01d) max = 0.01d;
+                x += max;
+            }
+            layout.x[index] = x;
+            layout.wedges[index] = wedge;
+            // Leaf nodes, collapsed nodes and wedges use the next row.
+            if (node.isLeafNode () || collapsed) {
+                layout.y[index] = height ++;
+                layout.labels[index] = node.getName ();
+            }
+            else if (wedge) {
+                // Label the wedge with its first leaf.
+                Node leaf = node;
+                while (! leaf.isLeafNode ()) {
+                    leaf = leaf.getChildren ().get (0);
+                }
+                layout.y[index] = height ++;
+                layout.labels[index] = String.format (
+                    "%s and %d others", leaf.getName (),
+                    node.numberOfDescendants (false) - 1
+                );
+            }
+            else {
+                // Add the children next, the first child first.
+                ArrayList<Node> children = node.getChildren ();
+                for (int i = children.size () - 1; i >= 0; i --) {
+                    nodes.push (children.get (i));
+                    parents.push (index);
+                    inCollapsed.push (descendant);
                 }
-                h += numLeaf;
-                double childY = child.getY ();
-                if (childY < minY) minY = childY;
-                if (childY > maxY) maxY = childY;
             }
-            node.setY ((minY + maxY) / 2);
         }
+        layout.rows = height;
+        // The Y coordinate of an internal node is halfway between its first
+        // and last children.  Each child follows its parent in the layout,
+        // so the children are done before their parent.
+        double[] minY = new double[layout.size];
+        double[] maxY = new double[layout.size];
+        Arrays.fill (minY, Double.MAX_VALUE);
+        for (int i = layout.size - 1; i >= 0; i --) {
+            if (layout.labels[i] == null) {
+                layout.y[i] = (minY[i] + maxY[i]) / 2;
+            }
+            else {
+                layout.ends[i] = i + 1;
+            }
+            int parent = layout.parents[i];
+            if (parent < 0) continue;
+            if (layout.y[i] < minY[parent]) minY[parent] = layout.y[i];
+            if (layout.y[i] > maxY[parent]) maxY[parent] = layout.y[i];
+            if (layout.ends[i] > layout.ends[parent]) {
+                layout.ends[parent] = layout.ends[i];
+            }
+        }
+        return true;
     }
 
     /**
-     *  A private recursive method to validate all nodes descended from the
-     *  node requested. Valid internal nodes will have two child nodes, valid
-     *  leaf nodes will have no children.
+     *  A private method to validate all nodes descended from the node
+     *  requested, without recursion. Valid internal nodes will have two
+     *  child nodes, valid leaf nodes will have no children.
      *
-     *  @param node The current node being validated.
+     *  @param node The node to validate.
      */
     private void validateTree (Node node) {
-        ArrayList<Node> children = new ArrayList<Node> (node.getChildren ());
-        Node parent = node.getParent ();
-        if (children.size () == 1) {
-            Node child = children.get (0);
-            child.setDistance (child.getDistance () + node.getDistance ());
-            parent.addChild (child);
-            parent.removeChild (node);
-            validateTree (child);
+        ArrayDeque<Node> nodes = new ArrayDeque<Node> ();
+        nodes.push (node);
+        while (! nodes.isEmpty ()) {
+            node = nodes.pop ();
+            ArrayList<Node> children = new ArrayList<Node> (
+                node.getChildren ()
+            );
+            Node parent = node.getParent ();
+            if (children.size () == 1) {
+                Node child = children.get (0);
+                child.setDistance (child.getDistance () + node.getDistance ());
+                parent.addChild (child);
+                parent.removeChild (node);
+                nodes.push (child);
+            }
+            else {
+                // Validate the children in order.
+                for (int i = children.size () - 1; i >= 0; i --) {
+                    nodes.push (children.get (i));
+                }
+            }
         }
-        else {
-            for (Node child: children) {
-                validateTree (child);
+    }
+
+    /**
+     *  The XY location of the painted nodes of the tree at one scale, in
+     *  the order that they are painted.  The painted descendants of the
+     *  node at index i are found after it, at the indices before ends[i].
+     */
+    private static class Layout {
+        public Layout (Node root, int modifications) {
+            this.root = root;
+            this.modifications = modifications;
+            int capacity = 2 * root.numberOfDescendants (false);
+            nodes = new Node[capacity];
+            parents = new int[capacity];
+            ends = new int[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            wedges = new boolean[capacity];
+            labels = new String[capacity];
+        }
+
+        /**
+         *  Add a node to the layout.
+         *
+         *  @param node The Node to add.
+         *  @param parent The index of the parent of the Node.
+         *  @return The index of the Node.
+         */
+        public int add (Node node, int parent) {
+            if (size == nodes.length) {
+                int capacity = 2 * size;
+                nodes = Arrays.copyOf (nodes, capacity);
+                parents = Arrays.copyOf (parents, capacity);
+                ends = Arrays.copyOf (ends, capacity);
+                x = Arrays.copyOf (x, capacity);
+                y = Arrays.copyOf (y, capacity);
+                wedges = Arrays.copyOf (wedges, capacity);
+                labels = Arrays.copyOf (labels, capacity);
             }
+            nodes[size] = node;
+            parents[size] = parent;
+            return size ++;
         }
+
+        /**
+         *  The root node and its modification count when the layout was
+         *  calculated.
+         */
+        private Node root;
+        private int modifications;
+
+        /**
+         *  The number of nodes painted, and the number of rows they use.
+         */
+        private int size;
+        private int rows;
+
+        private Node[] nodes;
+        private int[] parents;
+        private int[] ends;
+        private double[] x;
+        private double[] y;
+        private boolean[] wedges;
+        private String[] labels;
     }
 
+    /**
+     *  The maximum number of cached layouts.
+     */
+    private static final int MAXIMUM_LAYOUTS = 8;
+
     private Node root;
     private int paintMethod = PAINT_METHOD_NORMAL;
     private int xModifier = 5000;
 
+    /**
+     *  The cached layouts, with the least recently used first.
+     */
+    private final LinkedHashMap<String, Layout> layouts =
+        new LinkedHashMap<String, Layout> (16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry (
+                Map.Entry<String, Layout> eldest) {
+                return size () > MAXIMUM_LAYOUTS;
+            }
+        };
+
 }
@@ -3,6 +3,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.After;
@@ -14,6 +15,7 @@ import org.junit.runners.JUnit4;
 import ecosim.Binning;
 import ecosim.BinLevel;
 import ecosim.MainVariables;
+import ecosim.tree.Node;
 import ecosim.tree.Tree;
 import ecosim.tree.InvalidTreeException;
 
@@ -61,6 +63,66 @@ public class TestBinning {
         }
     }
 
+    @Test
+    public void testSinglePass () throws InvalidTreeException {
+        binning.run ();
+        assertReference (binning, new Tree (
+            new File ("build/tests/java/assets/TestTree.nwk")
+        ));
+        // Build an unbalanced tree with polytomies.
+        Random random = new Random (42L);
+        String newick = "L0:0.001";
+        for (int i = 1; i < 200; i ++) {
+            String leaves = "";
+            for (int j = 0; j < 1 + random.nextInt (3); j ++) {
+                leaves += String.format (
+                    ",L%d_%d:%.4f", i, j, random.nextDouble () * 0.02d
+                );
+            }
+            newick = String.format (
+                "(%s%s):%.4f", newick, leaves, random.nextDouble () * 0.01d
+            );
+        }
+        Tree tree = new Tree (newick + ";");
+        Binning large = new Binning (tree);
+        large.run ();
+        assertReference (large, tree);
+    }
+
+    /**
+     *  Compare the bin levels to those found with one recursion per crit.
+     */
+    private void assertReference (Binning result, Tree tree) {
+        ArrayList<BinLevel> bins = result.getBins ();
+        assertEquals (
+            "Unexpected number of bin levels.",
+            Binning.binLevels.length, bins.size ()
+        );
+        for (int i = 0; i < bins.size (); i ++) {
+            assertEquals (
+                "Unexpected number of bins.",
+                getNumberBins (bins.get (i).getCrit (), tree.getRoot ()),
+                bins.get (i).getLevel ()
+            );
+        }
+    }
+
+    private Integer getNumberBins (Double crit, Node node) {
+        Integer num = 0;
+        if (node.isOutgroup ()) return 0;
+        if (node.isLeafNode ()) return 1;
+        Double distance = node.maximumDistanceBetweenLeafNodes ();
+        if (distance > 1.000d - crit - MainVariables.EPSILON) {
+            for (Node child: node.getChildren ()) {
+                num += getNumberBins (crit, child);
+            }
+        }
+        else {
+            num = 1;
+        }
+        return num;
+    }
+
     private Binning binning;
 
 }
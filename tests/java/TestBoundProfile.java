@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ecosim.BoundProfile;
+import ecosim.NelderMead;
+import ecosim.ParameterSet;
+
+public class TestBoundProfile {
+
+    @Test
+    public void testBisectionMatchesStepping () {
+        for (int threshold = 0; threshold <= 100; threshold ++) {
+            StepProfile profile = new StepProfile (threshold,
+                BoundProfile.MAXIMUM_POSITION);
+            ParameterSet bound = profile.search (SOLUTION);
+            long expected = stepping (
+                new StepProfile (threshold, BoundProfile.MAXIMUM_POSITION)
+            );
+            assertEquals ("Wrong bound.", expected, (long)bound.getNpop ());
+            // Each rejected position is retried from a cold start.
+            assertTrue ("Too many evaluations.",
+                profile.evaluations <= 3 * log2 (threshold + 1) + 1);
+            // Stepping evaluates every position up to the first rejected
+            // one, which is retried.
+            if (threshold >= 16) {
+                assertTrue ("No fewer evaluations.",
+                    profile.evaluations < threshold + 2);
+            }
+        }
+    }
+
+    @Test
+    public void testMaximumPosition () {
+        // A profile that never fails stops at the maximum position.
+        StepProfile profile = new StepProfile (Integer.MAX_VALUE,
+            Integer.MAX_VALUE);
+        ParameterSet bound = profile.search (SOLUTION);
+        assertEquals ("Wrong bound.", BoundProfile.MAXIMUM_POSITION,
+            (long)bound.getNpop ());
+        assertEquals ("Past the maximum.", BoundProfile.MAXIMUM_POSITION,
+            profile.furthest);
+    }
+
+    @Test
+    public void testWarmRetry () {
+        // The warm started simplex fails from position 5 on, but a cold
+        // start from the solution passes up to position 12.
+        StepProfile profile = new StepProfile (12,
+            BoundProfile.MAXIMUM_POSITION);
+        profile.warmThreshold = 4;
+        ParameterSet bound = profile.search (SOLUTION);
+        assertEquals ("Wrong bound.", 12L, (long)bound.getNpop ());
+        // A failure at the first position is not warm, so it is not retried.
+        profile = new StepProfile (0, BoundProfile.MAXIMUM_POSITION);
+        bound = profile.search (SOLUTION);
+        assertEquals ("Wrong bound.", 0L, (long)bound.getNpop ());
+        assertEquals ("Wrong evaluations.", 1, profile.evaluations);
+    }
+
+    @Test
+    public void testNpopRange () {
+        assertEquals ("Wrong upper position.", 30,
+            BoundProfile.lastPosition (10L, 100L, 3L));
+        assertEquals ("Wrong lower position.", 3,
+            BoundProfile.lastPosition (10L, 1L, -3L));
+        assertEquals ("Wrong lower position.", 9,
+            BoundProfile.lastPosition (10L, 1L, -1L));
+        assertEquals ("Wrong position at limit.", 0,
+            BoundProfile.lastPosition (1L, 1L, -1L));
+        assertEquals ("Wrong position past limit.", 0,
+            BoundProfile.lastPosition (120L, 100L, 1L));
+        // The search does not evaluate positions past the last position.
+        StepProfile profile = new StepProfile (Integer.MAX_VALUE, 9);
+        ParameterSet bound = profile.search (SOLUTION);
+        assertEquals ("Wrong bound.", 9L, (long)bound.getNpop ());
+        assertEquals ("Past the range.", 9, profile.furthest);
+        profile = new StepProfile (Integer.MAX_VALUE, 0);
+        bound = profile.search (SOLUTION);
+        assertEquals ("Wrong bound.", 0L, (long)bound.getNpop ());
+        assertEquals ("Wrong evaluations.", 0, profile.evaluations);
+    }
+
+    @Test
+    public void testSigmaCap () {
+        // The first position past the cap is the last position.
+        assertEquals ("Wrong position.", 7,
+            BoundProfile.lastPosition (1.0d, 100.0d, 2.0d));
+        assertEquals ("Wrong position at cap.", 1,
+            BoundProfile.lastPosition (100.0d, 100.0d, 2.0d));
+        assertEquals ("Wrong position past cap.", 0,
+            BoundProfile.lastPosition (150.0d, 100.0d, 2.0d));
+        double[] sigmas = { 1.0e-6d, 0.001d, 0.37d, 1.0d, 42.0d, 99.9d };
+        for (double sigma: sigmas) {
+            // Step one position at a time until the previous sigma passes
+            // the cap.
+            int expected = 1;
+            while (sigma * Math.pow (1.05d, expected) <= 100.0d) expected ++;
+            assertEquals ("Wrong position.", expected,
+                BoundProfile.lastPosition (sigma, 100.0d, 1.05d));
+        }
+    }
+
+    /**
+     *  Step away from the solution one position at a time, returning the
+     *  last position that passes.
+     */
+    private static long stepping (StepProfile profile) {
+        int position = 1;
+        while (profile.evaluate (position).getLikelihood () > 0.0d) position ++;
+        return position - 1;
+    }
+
+    private static int log2 (int value) {
+        return 32 - Integer.numberOfLeadingZeros (value);
+    }
+
+    /**
+     *  A profile that passes the likelihood ratio test up to a threshold
+     *  position and fails past it.  The position is stored as npop.
+     */
+    private static class StepProfile extends BoundProfile {
+
+        public StepProfile (int threshold, int lastPosition) {
+            super (new double[] { 0.5d }, new double[] { 0.15d },
+                new double[] { 0.15d }, lastPosition);
+            this.threshold = threshold;
+        }
+
+        public ParameterSet evaluate (int position) {
+            evaluations ++;
+            furthest = Math.max (furthest, position);
+            boolean warm = isWarm ();
+            minimize (new NelderMead.Function () {
+                public double evaluate (double[] params) {
+                    return params[0] * params[0];
+                }
+            });
+            double likelihood = SOLUTION.getLikelihood ();
+            if (position > threshold) likelihood = 0.0d;
+            if (warm && position > warmThreshold) likelihood = 0.0d;
+            return new ParameterSet ((long)position, 1.0d, 1.0d, likelihood);
+        }
+
+        public int evaluations;
+        public int furthest;
+        public int warmThreshold = Integer.MAX_VALUE;
+        private int threshold;
+
+    }
+
+    private static final ParameterSet SOLUTION = new ParameterSet (
+        0L, 1.0d, 1.0d, 0.5d
+    );
+
+}
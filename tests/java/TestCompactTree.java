@@ -0,0 +1,170 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Binning;
+import ecosim.MainVariables;
+import ecosim.tree.CompactTree;
+import ecosim.tree.Tree;
+import ecosim.tree.Node;
+import ecosim.tree.InvalidTreeException;
+
+public class TestCompactTree {
+
+    @Before
+    public void setup () throws InvalidTreeException {
+        File treeFile = new File (
+            "build/tests/java/assets/TestTree.nwk"
+        );
+        tree = new Tree (treeFile);
+        compact = new CompactTree (tree);
+    }
+
+    @Test
+    public void testToString () {
+        assertEquals (
+            "Tree mismatch.",
+            tree.toString (),
+            compact.toString ()
+        );
+    }
+
+    @Test
+    public void testDeepToString () throws InvalidTreeException {
+        // Build a caterpillar tree too deep for a recursive writer.
+        int depth = 100000;
+        StringBuilder newick = new StringBuilder ();
+        for (int i = 0; i < depth; i ++) {
+            newick.append ("(");
+        }
+        newick.append ("L0:0.10000");
+        for (int i = 1; i <= depth; i ++) {
+            newick.append (",L").append (i).append (":0.10000):0.01000");
+        }
+        newick.append (";");
+        CompactTree deep = new CompactTree (new Tree (newick.toString ()));
+        assertEquals ("Tree mismatch.", newick.toString (), deep.toString ());
+    }
+
+    @Test
+    public void testSubtree () {
+        for (int i = 0; i < compact.numberOfNodes (); i ++) {
+            CompactTree subtree = new CompactTree (compact, i);
+            assertEquals ("Subtree mismatch.",
+                compact.toString (i).replace (";", ""),
+                subtree.toString ().replace (";", ""));
+            assertEquals ("Wrong descendants.",
+                compact.numberOfDescendants (i, false), subtree.size ());
+        }
+    }
+
+    @Test
+    public void testToTree () {
+        assertEquals (
+            "Tree mismatch.",
+            0,
+            new Tree (compact).compareTo (tree)
+        );
+    }
+
+    @Test
+    public void testDistances () {
+        ArrayList<Node> nodes = new ArrayList<Node> ();
+        nodes.add (tree.getRoot ());
+        for (int i = 0; i < nodes.size (); i ++) {
+            nodes.addAll (nodes.get (i).getChildren ());
+        }
+        // Match the nodes by their Newick strings.
+        for (Node node: nodes) {
+            int index = find (node.toString ().replace (";", ""));
+            assertEquals (
+                "Wrong maximum distance between leaves.",
+                node.maximumDistanceBetweenLeafNodes (),
+                compact.maximumDistanceBetweenLeafNodes (index),
+                MainVariables.EPSILON
+            );
+            assertEquals (
+                "Wrong maximum distance from leaf.",
+                node.maximumDistanceFromLeafNode (),
+                compact.maximumDistanceFromLeafNode (index),
+                MainVariables.EPSILON
+            );
+            assertEquals (
+                "Wrong distance from root.",
+                node.distanceFromRootNode (),
+                compact.distanceFromRootNode (index),
+                MainVariables.EPSILON
+            );
+            assertEquals (
+                "Wrong descendants.",
+                node.numberOfDescendants (false),
+                compact.numberOfDescendants (index, false)
+            );
+        }
+    }
+
+    @Test
+    public void testLastCommonAncestor () {
+        ArrayList<String> clade = new ArrayList<String> (
+            Arrays.asList ("A", "D")
+        );
+        int ancestor = compact.lastCommonAncestor (clade);
+        assertEquals (
+            "Last common ancestor failed.",
+            4, compact.numberOfDescendants (ancestor, false)
+        );
+        clade = new ArrayList<String> (Arrays.asList ("C", "D"));
+        ancestor = compact.lastCommonAncestor (clade);
+        assertEquals (
+            "Last common ancestor failed.",
+            compact.getParent (compact.getDescendant ("C")), ancestor
+        );
+    }
+
+    @Test
+    public void testCollapse () {
+        int ancestor = compact.getParent (compact.getDescendant ("A"));
+        compact.collapse (ancestor, true);
+        assertEquals (
+            "Wrong descendants.", 4, compact.getDescendants (0).length
+        );
+        assertEquals (
+            "Wrong descendants.", 4, compact.numberOfDescendants (0, true)
+        );
+        assertEquals ("Wrong descendants.", 5, compact.size ());
+    }
+
+    @Test
+    public void testBinning () {
+        Binning a = new Binning (tree);
+        Binning b = new Binning (compact);
+        a.run ();
+        b.run ();
+        assertEquals ("Binning mismatch.", a.toString (), b.toString ());
+    }
+
+    /**
+     *  Find the index of the node with the given Newick string.
+     */
+    private int find (String newick) {
+        for (int i = 0; i < compact.numberOfNodes (); i ++) {
+            if (compact.toString (i).replace (";", "").equals (newick)) {
+                return i;
+            }
+        }
+        return CompactTree.NONE;
+    }
+
+    private Tree tree;
+    private CompactTree compact;
+
+}
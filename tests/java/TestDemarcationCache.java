@@ -0,0 +1,117 @@
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Binning;
+import ecosim.DemarcationCache;
+import ecosim.ParameterSet;
+import ecosim.SimulationInput;
+import ecosim.tree.Tree;
+import ecosim.tree.InvalidTreeException;
+
+public class TestDemarcationCache {
+
+    @Before
+    public void setup () throws InvalidTreeException, IOException {
+        File treeFile = new File ("build/tests/java/assets/TestTree.nwk");
+        Tree tree = new Tree (treeFile);
+        Binning binning = new Binning (tree);
+        binning.run ();
+        input = new SimulationInput (binning, tree.size (), 1000, 1000, 1);
+        spillFile = File.createTempFile ("demarcationCache", ".dat");
+        spillFile.delete ();
+    }
+
+    @After
+    public void teardown () {
+        spillFile.delete ();
+    }
+
+    @Test
+    public void testKeys () {
+        ParameterSet a = new ParameterSet (5L, 0.1d, 2.0d, 0.5d);
+        ParameterSet b = new ParameterSet (6L, 0.1d, 2.0d, 0.5d);
+        assertEquals (
+            "Identical tests have different keys.",
+            DemarcationCache.getKey (input, a, 1),
+            DemarcationCache.getKey (input, a, 1)
+        );
+        assertNotEquals (
+            "Different npop values have the same key.",
+            DemarcationCache.getKey (input, a, 1),
+            DemarcationCache.getKey (input, b, 1)
+        );
+    }
+
+    @Test
+    public void testHitsAndMisses () {
+        DemarcationCache cache = new DemarcationCache ();
+        ParameterSet estimate = new ParameterSet (5L, 0.1d, 2.0d, 0.5d);
+        String key = DemarcationCache.getKey (input, estimate, 1);
+        assertNull ("Empty cache returned a result.", cache.get (key));
+        cache.put (key, new ParameterSet (3L, 0.1d, 2.0d, 0.75d));
+        assertEquals ("Wrong npop.", 3L, (long)cache.get (key).getNpop ());
+        assertEquals ("Wrong hits.", 1L, cache.getHits ());
+        assertEquals ("Wrong misses.", 1L, cache.getMisses ());
+    }
+
+    @Test
+    public void testAliasCountedOnce () {
+        DemarcationCache cache = new DemarcationCache (1, null);
+        ParameterSet a = new ParameterSet (5L, 0.1d, 2.0d, 0.5d);
+        ParameterSet b = new ParameterSet (6L, 0.1d, 2.0d, 0.5d);
+        String keyA = DemarcationCache.getKey (input, a, 1);
+        String keyB = DemarcationCache.getKey (input, b, 1);
+        String aliasA = DemarcationCache.getKey ("(A,B);", 1000, 1000, 1, a, 1);
+        cache.putAlias (aliasA, keyA);
+        cache.put (keyA, a);
+        assertEquals ("Wrong npop.", 5L,
+            (long)cache.getByAlias (aliasA).getNpop ());
+        assertEquals ("Wrong hits.", 1L, cache.getHits ());
+        // The result of the alias is evicted, so the request falls back on
+        // the key and is counted as a single miss.
+        cache.put (keyB, b);
+        assertNull ("Evicted result returned.", cache.getByAlias (aliasA));
+        assertNull ("Evicted result returned.", cache.get (keyA));
+        assertEquals ("Wrong hits.", 1L, cache.getHits ());
+        assertEquals ("Wrong misses.", 1L, cache.getMisses ());
+    }
+
+    @Test
+    public void testSpill () {
+        DemarcationCache cache = new DemarcationCache (2, spillFile);
+        for (long npop = 1L; npop <= 5L; npop ++) {
+            ParameterSet estimate = new ParameterSet (npop, 0.1d, 2.0d, 0.5d);
+            cache.put (
+                DemarcationCache.getKey (input, estimate, 1),
+                new ParameterSet (npop, 0.1d, 2.0d, 0.1d * npop)
+            );
+        }
+        for (long npop = 1L; npop <= 5L; npop ++) {
+            ParameterSet estimate = new ParameterSet (npop, 0.1d, 2.0d, 0.5d);
+            ParameterSet result = cache.get (
+                DemarcationCache.getKey (input, estimate, 1)
+            );
+            assertEquals ("Wrong npop.", npop, (long)result.getNpop ());
+            assertEquals (
+                "Wrong likelihood.", 0.1d * npop, result.getLikelihood (), 0.0d
+            );
+        }
+        assertEquals ("Wrong hits.", 5L, cache.getHits ());
+    }
+
+    private SimulationInput input;
+    private File spillFile;
+
+}
@@ -1,7 +1,20 @@
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Before;
 import org.junit.After;
@@ -41,11 +54,144 @@ public class TestFasta {
         assertEquals ("Identifier mismatch.", "gb|CP000240.1|:c28351-26084", seq.getIdentifier ());
     }
 
+    @Test
+    public void testGetSequence () throws InvalidFastaException, IOException {
+        Sequence seq = fasta.getSequence ("gb|CP000240.1|:c28351-26084");
+        assertEquals ("Identifier mismatch.", "gb|CP000240.1|:c28351-26084",
+            seq.getIdentifier ());
+        fasta.nextSequence ();
+        assertEquals ("Sequence mismatch.",
+            fasta.nextSequence ().getSequence (), seq.getSequence ());
+        assertNull ("Unexpected sequence.", fasta.getSequence ("missing"));
+        ByteBuffer residues = fasta.getResidues ("test_sequence");
+        byte[] bytes = new byte[residues.remaining ()];
+        residues.get (bytes);
+        assertEquals ("Residue mismatch.", "acgttgca",
+            new String (bytes, "ISO-8859-1"));
+    }
+
+    @Test
+    public void testIndex () throws InvalidFastaException, IOException {
+        File copy = File.createTempFile ("TestFasta", ".fa");
+        Files.copy (
+            new File ("build/tests/java/assets/TestFasta.fa").toPath (),
+            copy.toPath (), StandardCopyOption.REPLACE_EXISTING
+        );
+        Fasta a = new Fasta (copy);
+        assertTrue ("Index not saved.", a.saveIndex ());
+        a.close ();
+        // Reopen the file using the saved index.
+        Fasta b = new Fasta (copy);
+        assertEquals ("Size mismatch.", fasta.size (), b.size ());
+        assertEquals ("Identifier mismatch.", fasta.getIdentifiers (),
+            b.getIdentifiers ());
+        for (String id: fasta.getIdentifiers ()) {
+            assertEquals ("Sequence mismatch.",
+                fasta.getSequence (id).toString (),
+                b.getSequence (id).toString ());
+        }
+        b.close ();
+        b.getIndexFile ().delete ();
+        copy.delete ();
+    }
+
+    @Test
+    public void testGzip () throws InvalidFastaException, IOException {
+        byte[] data = Files.readAllBytes (
+            new File ("build/tests/java/assets/TestFasta.fa").toPath ()
+        );
+        File compressed = File.createTempFile ("TestFasta", ".fa.gz");
+        OutputStream out = new GZIPOutputStream (
+            new FileOutputStream (compressed)
+        );
+        out.write (data);
+        out.close ();
+        assertTrue ("Not compressed.", Fasta.isCompressed (compressed));
+        File plain = new File ("build/tests/java/assets/TestFasta.fa");
+        assertFalse ("Compressed.", Fasta.isCompressed (plain));
+        Fasta gzip = new Fasta (compressed);
+        assertSameSequences (gzip);
+        gzip.close ();
+        // Uncompress the file for programs that need a plain file.
+        File uncompressed = File.createTempFile ("TestFasta", ".fa");
+        Fasta.uncompress (compressed, uncompressed);
+        assertArrayEquals ("Data mismatch.", data,
+            Files.readAllBytes (uncompressed.toPath ()));
+        uncompressed.delete ();
+        compressed.delete ();
+    }
+
+    @Test
+    public void testBgzf () throws InvalidFastaException, IOException {
+        byte[] data = Files.readAllBytes (
+            new File ("build/tests/java/assets/TestFasta.fa").toPath ()
+        );
+        File compressed = File.createTempFile ("TestFasta", ".fa.gz");
+        OutputStream out = new FileOutputStream (compressed);
+        // Use small blocks so that sequences span several blocks.
+        for (int i = 0; i < data.length; i += 100) {
+            writeBgzfBlock (out, data, i, Math.min (100, data.length - i));
+        }
+        writeBgzfBlock (out, data, 0, 0);
+        out.close ();
+        Fasta bgzf = new Fasta (compressed);
+        assertSameSequences (bgzf);
+        assertTrue ("Index not saved.", bgzf.saveIndex ());
+        bgzf.close ();
+        // Reopen the file using the saved index.
+        bgzf = new Fasta (compressed);
+        assertSameSequences (bgzf);
+        bgzf.close ();
+        new File (compressed.getPath () + ".fai").delete ();
+        compressed.delete ();
+    }
+
     @After
     public void teardown () throws InvalidFastaException {
         fasta.close ();
     }
 
+    private void assertSameSequences (Fasta other)
+        throws InvalidFastaException {
+        assertEquals ("Size mismatch.", fasta.size (), other.size ());
+        assertEquals ("Identifier mismatch.", fasta.getIdentifiers (),
+            other.getIdentifiers ());
+        // Read the sequences in reverse order to seek backwards.
+        for (int i = fasta.getIdentifiers ().size () - 1; i >= 0; i --) {
+            String id = fasta.getIdentifiers ().get (i);
+            assertEquals ("Sequence mismatch.",
+                fasta.getSequence (id).toString (),
+                other.getSequence (id).toString ());
+        }
+    }
+
+    private void writeBgzfBlock (OutputStream out, byte[] data, int offset,
+        int length) throws IOException {
+        Deflater deflater = new Deflater (Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput (data, offset, length);
+        deflater.finish ();
+        byte[] deflated = new byte[length + 1024];
+        int size = deflater.deflate (deflated);
+        deflater.end ();
+        CRC32 crc = new CRC32 ();
+        crc.update (data, offset, length);
+        int blockSize = 18 + size + 8;
+        out.write (new byte[] {
+            0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0,
+            'B', 'C', 2, 0,
+            (byte)((blockSize - 1) & 0xff), (byte)((blockSize - 1) >> 8)
+        });
+        out.write (deflated, 0, size);
+        writeInt (out, (int)crc.getValue ());
+        writeInt (out, length);
+    }
+
+    private void writeInt (OutputStream out, int value) throws IOException {
+        for (int i = 0; i < 4; i ++) {
+            out.write ((value >> (8 * i)) & 0xff);
+        }
+    }
+
     private Fasta fasta;
 
 }
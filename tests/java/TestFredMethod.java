@@ -0,0 +1,139 @@
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.SplittableRandom;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Binning;
+import ecosim.FredMethod;
+import ecosim.MainVariables;
+import ecosim.SequentialTest;
+import ecosim.SimulationInput;
+import ecosim.tree.Tree;
+import ecosim.tree.InvalidTreeException;
+
+public class TestFredMethod {
+
+    @Before
+    public void setup () throws InvalidTreeException {
+        File treeFile = new File ("build/tests/java/assets/TestTree.nwk");
+        Tree tree = new Tree (treeFile);
+        Binning binning = new Binning (tree);
+        binning.run ();
+        input = new SimulationInput (binning, tree.size (), 1000, 500, 1);
+    }
+
+    @Test
+    public void testInvalidParameters () {
+        FredMethod fred = new FredMethod (1, 1L);
+        double[] zero = new double[FredMethod.PRECISION_LEVELS];
+        double[] result;
+        result = fred.runFredProgram (0.0d, 1.0d, 2L, input);
+        assertArrayEquals ("Invalid omega.", zero, result, 0.0d);
+        result = fred.runFredProgram (1.0d, Double.NaN, 2L, input);
+        assertArrayEquals ("Invalid sigma.", zero, result, 0.0d);
+        result = fred.runFredProgram (1.0d, 1.0d, 0L, input);
+        assertArrayEquals ("Invalid npop.", zero, result, 0.0d);
+        result = fred.runFredProgram (1.0d, 1.0d, input.getNu () + 1L, input);
+        assertArrayEquals ("Invalid npop.", zero, result, 0.0d);
+    }
+
+    @Test
+    public void testThreadsReproducible () {
+        double[] single = new FredMethod (1, 42L).runFredProgram (
+            0.5d, 2.0d, 2L, input
+        );
+        double[] multiple = new FredMethod (4, 42L).runFredProgram (
+            0.5d, 2.0d, 2L, input
+        );
+        assertArrayEquals (
+            "Result depends on threads.", single, multiple, 0.0d
+        );
+    }
+
+    @Test
+    public void testStreamsReproducible () {
+        // A stream split from the same seed gives the same result, whatever
+        // else is run on the FredMethod in between.
+        FredMethod first = new FredMethod (2, 42L);
+        FredMethod second = new FredMethod (2, 42L);
+        SplittableRandom firstStream = first.split ();
+        SplittableRandom secondStream = second.split ();
+        second.runFredProgram (1.0d, 1.0d, 2L, input);
+        double[] expected = first.runFredProgram (
+            0.5d, 2.0d, 2L, input, firstStream
+        );
+        double[] result = second.runFredProgram (
+            0.5d, 2.0d, 2L, input, secondStream
+        );
+        assertArrayEquals (
+            "Result depends on other streams.", expected, result, 0.0d
+        );
+    }
+
+    @Test
+    public void testSequentialStop () {
+        // No likelihood can reach a threshold above one.
+        SequentialTest test = new SequentialTest (1, 2.0d);
+        double[] result = new FredMethod (2, 42L).runFredProgram (
+            0.5d, 2.0d, 2L, input, test
+        );
+        assertTrue ("Test not settled.", test.isBelow ());
+        assertTrue ("Replicates not stopped early.",
+            test.getReplicates () < input.getNrep ());
+        assertTrue ("Likelihood out of range.",
+            result[0] >= 0.0d && result[0] <= 1.0d);
+    }
+
+    @Test
+    public void testSequentialComplete () {
+        // Every likelihood can reach a threshold of zero, so every
+        // replicate is run and the result is the same as without the test.
+        SequentialTest test = new SequentialTest (1, 0.0d);
+        double[] result = new FredMethod (2, 42L).runFredProgram (
+            0.5d, 2.0d, 2L, input, test
+        );
+        double[] expected = new FredMethod (2, 42L).runFredProgram (
+            0.5d, 2.0d, 2L, input
+        );
+        assertTrue ("Test settled.", ! test.isBelow ());
+        assertEquals ("Wrong number of replicates.", input.getNrep (),
+            test.getReplicates ());
+        assertArrayEquals (
+            "Result changed by the test.", expected, result, 0.0d
+        );
+    }
+
+    @Test
+    public void testPrecisionLevels () {
+        double[] result = new FredMethod (2, 7L).runFredProgram (
+            0.5d, 2.0d, 2L, input
+        );
+        assertEquals (
+            "Unexpected number of levels.",
+            FredMethod.PRECISION_LEVELS, result.length
+        );
+        for (int i = 0; i < result.length; i ++) {
+            assertTrue ("Likelihood out of range.", result[i] >= 0.0d);
+            assertTrue ("Likelihood out of range.", result[i] <= 1.0d);
+            if (i > 0) {
+                assertTrue (
+                    "Higher precision is more likely.",
+                    result[i] <= result[i - 1] + MainVariables.EPSILON
+                );
+            }
+        }
+    }
+
+    private SimulationInput input;
+
+}
@@ -0,0 +1,92 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Binning;
+import ecosim.LikelihoodCache;
+import ecosim.ParameterSet;
+import ecosim.SimulationInput;
+import ecosim.tree.Tree;
+import ecosim.tree.InvalidTreeException;
+
+public class TestLikelihoodCache {
+
+    @Before
+    public void setup () throws InvalidTreeException {
+        File treeFile = new File ("build/tests/java/assets/TestTree.nwk");
+        Tree tree = new Tree (treeFile);
+        binning = new Binning (tree);
+        binning.run ();
+        nu = tree.size ();
+        input = new SimulationInput (binning, nu, 1000, 1000, 6);
+    }
+
+    @Test
+    public void testGetPut () {
+        LikelihoodCache cache = new LikelihoodCache (input);
+        double[] avgsuccess = { 0.9d, 0.8d, 0.7d, 0.6d, 0.5d, 0.0d };
+        assertNull ("Unexpected likelihood.", cache.get (0.5d, 2.0d, 3L));
+        cache.put (0.5d, 2.0d, 3L, avgsuccess);
+        assertArrayEquals ("Wrong likelihood.", avgsuccess,
+            cache.get (0.5d, 2.0d, 3L), 0.0d);
+        assertNull ("Unexpected likelihood.", cache.get (0.5d, 2.0d, 4L));
+        assertEquals ("Wrong number of hits.", 1L, cache.getHits ());
+        assertEquals ("Wrong number of misses.", 2L, cache.getMisses ());
+    }
+
+    @Test
+    public void testBest () {
+        LikelihoodCache cache = new LikelihoodCache (input);
+        cache.put (0.5d, 2.0d, 3L,
+            new double[] { 0.9d, 0.8d, 0.7d, 0.6d, 0.5d, 0.0d });
+        cache.put (1.5d, 3.0d, 2L,
+            new double[] { 0.8d, 0.8d, 0.8d, 0.8d, 0.4d, 0.0d });
+        // Nothing is likely at the highest precision.
+        assertNull ("Unexpected best likelihood.", cache.getBest (6));
+        ParameterSet best = cache.getBest (1);
+        assertEquals ("Wrong best npop.", 3L, (long)best.getNpop ());
+        assertEquals ("Wrong best likelihood.", 0.9d,
+            best.getLikelihood (), 0.0d);
+        best = cache.getBest (4);
+        assertEquals ("Wrong best npop.", 2L, (long)best.getNpop ());
+        assertEquals ("Wrong best omega.", 1.5d, best.getOmega (), 0.0d);
+    }
+
+    @Test
+    public void testSimulation () {
+        LikelihoodCache cache = new LikelihoodCache (input);
+        // The precision does not change the simulation.
+        assertTrue ("Precision changed the simulation.",
+            cache.isFor (new SimulationInput (binning, nu, 1000, 1000, 1)));
+        assertTrue ("Replicates did not change the simulation.",
+            ! cache.isFor (new SimulationInput (binning, nu, 1000, 100, 6)));
+        assertTrue ("Length did not change the simulation.",
+            ! cache.isFor (new SimulationInput (binning, nu, 500, 1000, 6)));
+    }
+
+    @Test
+    public void testCapacity () {
+        LikelihoodCache cache = new LikelihoodCache (input, 2);
+        double[] avgsuccess = new double[6];
+        cache.put (1.0d, 1.0d, 1L, avgsuccess);
+        cache.put (1.0d, 1.0d, 2L, avgsuccess);
+        cache.put (1.0d, 1.0d, 3L, avgsuccess);
+        assertEquals ("Wrong size.", 2, cache.size ());
+        assertNull ("Eldest likelihood kept.", cache.get (1.0d, 1.0d, 1L));
+    }
+
+    private Binning binning;
+    private int nu;
+    private SimulationInput input;
+
+}
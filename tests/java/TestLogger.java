@@ -0,0 +1,103 @@
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Logger;
+
+public class TestLogger {
+
+    @Test
+    public void testAppend () {
+        Logger log = new Logger (1000, 0L);
+        log.append ("one ");
+        log.append ("two");
+        assertEquals ("Log mismatch.", "one two", log.toString ());
+        assertEquals ("Length mismatch.", 7, log.length ());
+    }
+
+    @Test
+    public void testRetention () {
+        Logger log = new Logger (10000, 0L);
+        StringBuilder expected = new StringBuilder ();
+        for (int i = 0; i < 10000; i ++) {
+            String line = String.format ("line %05d%n", i);
+            log.append (line);
+            expected.append (line);
+        }
+        String text = log.toString ();
+        assertEquals ("Length mismatch.", text.length (), log.length ());
+        assertTrue ("Too much text kept.", text.length () < 10000 + 8192);
+        assertTrue ("Too little text kept.", text.length () >= 10000);
+        assertTrue ("Lost the newest text.",
+            expected.toString ().endsWith (text));
+    }
+
+    @Test
+    public void testBatches () throws InterruptedException {
+        Logger log = new Logger (1000, 60000L);
+        final ArrayList<String> batches = new ArrayList<String> ();
+        log.addObserver (new Observer () {
+            public void update (Observable o, Object str) {
+                batches.add ((String)str);
+            }
+        });
+        for (int i = 0; i < 100; i ++) {
+            log.append ("x");
+        }
+        assertEquals ("Notified too early.", 0, batches.size ());
+        log.flush ();
+        assertEquals ("Wrong number of batches.", 1, batches.size ());
+        assertEquals ("Batch mismatch.", 100, batches.get (0).length ());
+        log.close ();
+    }
+
+    @Test
+    public void testTimer () throws InterruptedException {
+        Logger log = new Logger (1000, 10L);
+        final StringBuffer notified = new StringBuffer ();
+        log.addObserver (new Observer () {
+            public void update (Observable o, Object str) {
+                notified.append ((String)str);
+            }
+        });
+        log.append ("a");
+        log.append ("b");
+        for (int i = 0; i < 500 && notified.length () < 2; i ++) {
+            Thread.sleep (10);
+        }
+        assertEquals ("Text not delivered.", "ab", notified.toString ());
+        log.close ();
+    }
+
+    @Test
+    public void testFile () throws IOException {
+        File file = File.createTempFile ("TestLogger", ".log");
+        Logger log = new Logger (100, 0L);
+        log.append ("first\n");
+        log.setFile (file);
+        StringBuilder expected = new StringBuilder ("first\n");
+        for (int i = 0; i < 1000; i ++) {
+            log.append ("more text\n");
+            expected.append ("more text\n");
+        }
+        log.close ();
+        assertEquals ("File mismatch.", expected.toString (),
+            new String (Files.readAllBytes (file.toPath ()), "UTF-8"));
+        file.delete ();
+    }
+
+}
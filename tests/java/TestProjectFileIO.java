@@ -0,0 +1,160 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Binning;
+import ecosim.Demarcation;
+import ecosim.Execs;
+import ecosim.Hillclimb;
+import ecosim.Logger;
+import ecosim.MainVariables;
+import ecosim.ParameterEstimate;
+import ecosim.ParameterSet;
+import ecosim.ProjectFileIO;
+import ecosim.tree.InvalidTreeException;
+import ecosim.tree.Tree;
+
+public class TestProjectFileIO {
+
+    @Before
+    public void setup () throws IOException, InvalidTreeException {
+        mainVariables = new MainVariables ();
+        execs = new Execs (new Logger (), mainVariables);
+        tree = new Tree (new File ("build/tests/java/assets/TestTree.nwk"));
+        file = File.createTempFile ("TestProjectFileIO", ".xml");
+    }
+
+    @After
+    public void teardown () {
+        file.delete ();
+        mainVariables.exit ();
+    }
+
+    @Test
+    public void testRoundTrip () throws IOException, InvalidTreeException {
+        roundTrip (file);
+        String data = new String (Files.readAllBytes (file.toPath ()), "UTF-8");
+        // The tree is the text of its element.
+        assertTrue ("Tree not written as text.",
+            data.contains ("<tree>" + tree.toString () + "</tree>"));
+        assertTrue ("Ecotype not written.",
+            data.contains ("<ecotype number=\"2\" size=\"2\">"));
+    }
+
+    @Test
+    public void testBinary () throws IOException, InvalidTreeException {
+        File binary = new File (
+            file.getPath () + "." + ProjectFileIO.BINARY_EXTENSION
+        );
+        try {
+            roundTrip (binary);
+            byte[] data = Files.readAllBytes (binary.toPath ());
+            assertEquals ("Wrong magic bytes.", "ESPF",
+                new String (data, 0, 4, "US-ASCII"));
+            // The format is detected from the magic bytes, not the name.
+            Files.copy (binary.toPath (), file.toPath (),
+                StandardCopyOption.REPLACE_EXISTING);
+            ProjectFileIO loaded = new ProjectFileIO (mainVariables, execs);
+            loaded.load (file);
+            assertEquals ("Wrong tree.", tree.toString (),
+                loaded.getTree ().toString ());
+        }
+        finally {
+            binary.delete ();
+        }
+    }
+
+    private ProjectFileIO roundTrip (File file)
+        throws IOException, InvalidTreeException {
+        Binning binning = new Binning (tree);
+        binning.run ();
+        ParameterEstimate estimate = new ParameterEstimate (5, 300, binning);
+        estimate.setResult (new ParameterSet (3L, 1.5d, 2.5d, 0.0d));
+        estimate.setOmega (1.0d, 0.5d);
+        estimate.setSigma (2.0d, 0.5d);
+        estimate.setHasRun (true);
+        Hillclimb hillclimb = new Hillclimb (
+            mainVariables, execs, 5, 300, binning,
+            new ParameterSet (3L, 1.5d, 2.5d, 0.5d)
+        );
+        hillclimb.setResult (new ParameterSet (3L, 1.5d, 2.5d, 0.5d));
+        hillclimb.setHasRun (true);
+        Demarcation demarcation = new Demarcation (
+            mainVariables, execs, 5, 300, "E", tree, hillclimb.getResult (),
+            Demarcation.DEMARCATION_METHOD_MONOPHYLY
+        );
+        ArrayList<ArrayList<String>> ecotypes =
+            new ArrayList<ArrayList<String>> ();
+        ecotypes.add (new ArrayList<String> (Arrays.asList ("A", "B")));
+        ecotypes.add (new ArrayList<String> (Arrays.asList ("C", "D")));
+        ecotypes.add (new ArrayList<String> (Arrays.asList ("E")));
+        demarcation.setEcotypes (ecotypes);
+        new ProjectFileIO (
+            mainVariables, execs, 5, 300, "E", tree, binning, estimate,
+            hillclimb, null, null, null, demarcation
+        ).save (file);
+        ProjectFileIO loaded = new ProjectFileIO (mainVariables, execs);
+        loaded.load (file);
+        assertEquals ("Wrong outgroup.", "E", loaded.getOutgroup ());
+        assertEquals ("Wrong tree.", tree.toString (),
+            loaded.getTree ().toString ());
+        assertEquals ("Wrong number of bins.", binning.getBins ().size (),
+            loaded.getBinning ().getBins ().size ());
+        Demarcation result = loaded.getDemarcation ();
+        assertTrue ("Demarcation not run.", result.hasRun ());
+        assertEquals ("Wrong ecotypes.", ecotypes, result.getEcotypes ());
+        assertEquals ("Wrong demarcated tree.",
+            demarcation.getDescendants ().size (),
+            result.getDescendants ().size ());
+        // The same objects are returned once built.
+        assertTrue ("Tree parsed twice.",
+            loaded.getTree () == loaded.getTree ());
+        assertTrue ("Demarcation built twice.",
+            result == loaded.getDemarcation ());
+        assertEquals ("Wrong hillclimb result.",
+            hillclimb.getResult ().getLikelihood (),
+            loaded.getHillclimb ().getResult ().getLikelihood (),
+            MainVariables.EPSILON);
+        return loaded;
+    }
+
+    @Test
+    public void testTreeAttribute () throws IOException {
+        // Older project files hold the tree in the value attribute.
+        Files.write (file.toPath (), (
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<ecosim type=\"savefile\" version=\"2.0\">\n" +
+            "  <phylogeny size=\"5\" length=\"300\">\n" +
+            "    <outgroup value=\"E\"/>\n" +
+            "    <tree value=\"" + tree.toString () + "\"/>\n" +
+            "  </phylogeny>\n" +
+            "</ecosim>\n"
+        ).getBytes ("UTF-8"));
+        ProjectFileIO loaded = new ProjectFileIO (mainVariables, execs);
+        loaded.load (file);
+        assertEquals ("Wrong number of sequences.", 5, (int)loaded.getNu ());
+        assertEquals ("Wrong tree.", tree.toString (),
+            loaded.getTree ().toString ());
+        assertTrue ("Unexpected demarcation.",
+            loaded.getDemarcation () == null);
+    }
+
+    private MainVariables mainVariables;
+    private Execs execs;
+    private Tree tree;
+    private File file;
+
+}
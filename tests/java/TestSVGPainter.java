@@ -0,0 +1,118 @@
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.w3c.dom.Document;
+
+import ecosim.tree.InvalidTreeException;
+import ecosim.tree.SVGPainter;
+import ecosim.tree.Tree;
+
+public class TestSVGPainter {
+
+    @Before
+    public void setup () throws IOException {
+        svg = File.createTempFile ("TestSVGPainter", ".svg");
+        svgz = new File (svg.getPath () + "z");
+    }
+
+    @Test
+    public void testPaths () throws Exception {
+        SVGPainter painter = new SVGPainter (svg);
+        painter.start (100, 100);
+        painter.drawLine (0, 0, 0, 10, 1);
+        painter.drawLine (0, 10, 5, 10, 1);
+        painter.drawLine (20, 20, 30, 20, 1);
+        painter.drawLine (40, 0, 40, 50, 10);
+        painter.drawString ("a<b&c", 1, 2);
+        painter.drawString ("d", 3, 4);
+        painter.drawLine (0, 0, 1, 1, 1);
+        painter.end ();
+        String data = read (svg);
+        // Consecutive lines of the same stroke width share a path.
+        assertTrue ("Lines not merged.", data.contains (
+            "<path stroke=\"#000000\" stroke-width=\"1\" fill=\"none\" " +
+            "d=\"M0 0 L0 10 L5 10 M20 20 L30 20\"/>"
+        ));
+        assertTrue ("Stroke not changed.", data.contains (
+            "stroke-width=\"10\" fill=\"none\" d=\"M40 0 L40 50\"/>"
+        ));
+        assertTrue ("Text not escaped.", data.contains (
+            "<text x=\"1\" y=\"2\">a&lt;b&amp;c</text>"
+        ));
+        assertEquals ("Wrong number of paths.", 3, count (data, "<path "));
+        assertEquals ("Wrong number of groups.", 1, count (data, "<g "));
+        // The document is well formed.
+        Document document = DocumentBuilderFactory.newInstance ()
+            .newDocumentBuilder ().parse (svg);
+        assertEquals ("Wrong root element.", "svg",
+            document.getDocumentElement ().getTagName ());
+    }
+
+    @Test
+    public void testLabelledTree () throws IOException, InvalidTreeException {
+        Tree tree = new Tree (
+            new File ("build/tests/java/assets/TestTree.nwk")
+        );
+        tree.paintTree (new SVGPainter (svg));
+        String data = read (svg);
+        // The lines of the tree share one path, followed by the labels and
+        // the scale bar.
+        assertEquals ("Wrong number of paths.", 2, count (data, "<path "));
+        assertEquals ("Wrong number of labels.", 6, count (data, "<text "));
+        assertEquals ("Wrong number of groups.", 2, count (data, "<g "));
+    }
+
+    @Test
+    public void testSvgz () throws IOException, InvalidTreeException {
+        Tree tree = new Tree (
+            new File ("build/tests/java/assets/TestTree.nwk")
+        );
+        tree.paintTree (new SVGPainter (svg));
+        tree.paintTree (new SVGPainter (svgz));
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream ();
+        InputStream in = new GZIPInputStream (new FileInputStream (svgz));
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read (buffer)) > 0) {
+            uncompressed.write (buffer, 0, n);
+        }
+        in.close ();
+        assertArrayEquals ("Data mismatch.",
+            Files.readAllBytes (svg.toPath ()), uncompressed.toByteArray ());
+    }
+
+    @After
+    public void teardown () {
+        svg.delete ();
+        svgz.delete ();
+    }
+
+    private static String read (File file) throws IOException {
+        return new String (Files.readAllBytes (file.toPath ()), "UTF-8");
+    }
+
+    private static int count (String data, String element) {
+        return data.split (element, -1).length - 1;
+    }
+
+    private File svg;
+    private File svgz;
+
+}
@@ -0,0 +1,104 @@
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Ignore;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import ecosim.Binning;
+import ecosim.ParameterSet;
+import ecosim.SimulationCodec;
+import ecosim.SimulationInput;
+import ecosim.tree.Tree;
+import ecosim.tree.InvalidTreeException;
+
+public class TestSimulationCodec {
+
+    @Before
+    public void setup () throws InvalidTreeException {
+        File treeFile = new File ("build/tests/java/assets/TestTree.nwk");
+        Tree tree = new Tree (treeFile);
+        Binning binning = new Binning (tree);
+        binning.run ();
+        input = new SimulationInput (binning, tree.size (), 1000, 100, 1);
+        estimate = new ParameterSet (7L, 0.123456789d, 9.87654321d, 0.25d);
+    }
+
+    @Test
+    public void testEncode () {
+        SimulationCodec codec = new SimulationCodec (
+            SimulationCodec.PROGRAM_NPOP_CI, input, estimate
+        );
+        codec.setStep (3);
+        ByteBuffer buffer = codec.encode ();
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        assertEquals (
+            "Wrong magic number.",
+            SimulationCodec.BINARY_REQUEST, buffer.getInt ()
+        );
+        int numcrit = buffer.getInt ();
+        assertEquals ("Wrong numcrit.", input.getNumcrit (), numcrit);
+        buffer.position (buffer.position () + numcrit * 8);
+        assertEquals ("Lost precision.", 0.123456789d,
+            buffer.getDouble (), 0.0d);
+        assertEquals ("Lost precision.", 9.87654321d,
+            buffer.getDouble (), 0.0d);
+        assertEquals ("Wrong npop.", 7, buffer.getInt ());
+        assertEquals ("Wrong step.", 3, buffer.getInt ());
+    }
+
+    @Test
+    public void testDecode () throws IOException {
+        SimulationCodec codec = new SimulationCodec (
+            SimulationCodec.PROGRAM_OMEGA_CI, input, estimate
+        );
+        ByteBuffer buffer = ByteBuffer.allocate (64);
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt (SimulationCodec.BINARY_RESPONSE);
+        buffer.putInt (2);
+        // The upper bound is written first.
+        buffer.putDouble (0.5d).putDouble (0.0d).putInt (0).putDouble (0.1d);
+        buffer.putDouble (0.01d).putDouble (0.0d).putInt (0).putDouble (0.2d);
+        buffer.flip ();
+        ParameterSet[] bounds = codec.decode (buffer);
+        assertEquals ("Wrong lower bound.", 0.01d, bounds[0].getOmega (), 0.0d);
+        assertEquals ("Wrong upper bound.", 0.5d, bounds[1].getOmega (), 0.0d);
+        assertEquals ("Wrong sigma.", 9.87654321d, bounds[0].getSigma (), 0.0d);
+    }
+
+    @Test
+    public void testDecodeText () throws IOException {
+        SimulationCodec hillclimb = new SimulationCodec (
+            SimulationCodec.PROGRAM_HILLCLIMB, input, estimate
+        );
+        ParameterSet[] result = hillclimb.decodeText (Arrays.asList (
+            "  0.12345678901234500  1.5000000000000000  12  0.75000000000000000"
+        ));
+        assertEquals ("Wrong npop.", 12L, (long)result[0].getNpop ());
+        assertEquals ("Wrong sigma.", 1.5d, result[0].getSigma (), 0.0d);
+        SimulationCodec npopCI = new SimulationCodec (
+            SimulationCodec.PROGRAM_NPOP_CI, input, estimate
+        );
+        result = npopCI.decodeText (Arrays.asList (
+            " upper bound npop           9  likelihood   0.125",
+            " lower bound npop           4  likelihood   0.0625"
+        ));
+        assertEquals ("Wrong lower bound.", 4L, (long)result[0].getNpop ());
+        assertEquals ("Wrong upper bound.", 9L, (long)result[1].getNpop ());
+        assertEquals ("Wrong likelihood.", 0.0625d,
+            result[0].getLikelihood (), 0.0d);
+    }
+
+    private SimulationInput input;
+    private ParameterSet estimate;
+
+}
@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import ecosim.gui.TiledPainter;
+
+public class TestTiledPainter {
+
+    @Test
+    public void testMaximumTiles () {
+        assertEquals ("Wrong maximum tiles.", 2,
+            new TiledPainter (2 * TILE_BYTES).getMaximumTiles ());
+        assertEquals ("Wrong maximum tiles.", 2,
+            new TiledPainter (3 * TILE_BYTES - 1).getMaximumTiles ());
+        // At least one tile is kept, whatever the budget.
+        assertEquals ("Wrong maximum tiles.", 1,
+            new TiledPainter (TILE_BYTES / 2).getMaximumTiles ());
+        assertEquals ("Wrong default maximum tiles.",
+            (int)(TiledPainter.DEFAULT_MEMORY_BUDGET / TILE_BYTES),
+            new TiledPainter ().getMaximumTiles ());
+    }
+
+    @Test
+    public void testLazyTiles () {
+        TiledPainter painter = newPainter (2 * TILE_BYTES);
+        // Drawing records the commands without drawing any tiles.
+        assertEquals ("Tiles drawn before painting.", 0,
+            painter.numberOfTiles ());
+        paintTile (painter, 1);
+        assertEquals ("Wrong number of tiles.", 1, painter.numberOfTiles ());
+        // A tile already in the cache is not drawn again.
+        paintTile (painter, 1);
+        assertEquals ("Wrong number of tiles.", 1, painter.numberOfTiles ());
+        // A tile with nothing drawn on it is not kept.
+        paintTile (painter, 3);
+        assertEquals ("Wrong number of tiles.", 1, painter.numberOfTiles ());
+    }
+
+    @Test
+    public void testEviction () {
+        TiledPainter painter = newPainter (2 * TILE_BYTES);
+        BufferedImage first = paintTile (painter, 0);
+        paintTile (painter, 1);
+        assertEquals ("Wrong number of tiles.", 2, painter.numberOfTiles ());
+        // Painting a third tile evicts the least recently used one.
+        paintTile (painter, 2);
+        assertEquals ("Budget exceeded.", 2, painter.numberOfTiles ());
+        // The evicted tile is drawn again from its commands.
+        BufferedImage again = paintTile (painter, 0);
+        assertEquals ("Budget exceeded.", 2, painter.numberOfTiles ());
+        assertTrue ("Nothing drawn.", hasBlack (first));
+        for (int x = 0; x < first.getWidth (); x ++) {
+            for (int y = 0; y < first.getHeight (); y ++) {
+                assertEquals ("Tile drawn differently.",
+                    first.getRGB (x, y), again.getRGB (x, y));
+            }
+        }
+    }
+
+    /**
+     *  Create a painter four tiles wide with a line drawn across the first
+     *  three tiles.
+     */
+    private static TiledPainter newPainter (long memoryBudget) {
+        TiledPainter painter = new TiledPainter (memoryBudget);
+        painter.start (4 * TILE_SIZE, TILE_SIZE);
+        painter.drawLine (10, 10, 3 * TILE_SIZE - 10, 500, 1);
+        painter.end ();
+        return painter;
+    }
+
+    /**
+     *  Paint a single tile of the painter, returning the image painted.
+     */
+    private static BufferedImage paintTile (TiledPainter painter, int x) {
+        BufferedImage image = new BufferedImage (
+            4 * TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB
+        );
+        Graphics g = image.getGraphics ();
+        g.setClip (x * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE);
+        painter.paintComponent (g);
+        g.dispose ();
+        return image.getSubimage (x * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE);
+    }
+
+    private static boolean hasBlack (BufferedImage image) {
+        for (int x = 0; x < image.getWidth (); x ++) {
+            for (int y = 0; y < image.getHeight (); y ++) {
+                if ((image.getRGB (x, y) & 0xffffff) == 0) return true;
+            }
+        }
+        return false;
+    }
+
+    private static final int TILE_SIZE = TiledPainter.TILE_SIZE;
+
+    private static final long TILE_BYTES = (long)TILE_SIZE * TILE_SIZE / 8;
+
+}
@@ -2,6 +2,7 @@
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -12,7 +13,10 @@ import org.junit.Ignore;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import ecosim.MainVariables;
+import ecosim.api.Painter;
 import ecosim.tree.Tree;
+import ecosim.tree.NewickReader;
 import ecosim.tree.Node;
 import ecosim.tree.InvalidTreeException;
 
@@ -152,6 +156,217 @@ public class TestTree {
         );
     }
 
+    @Test
+    public void testReadNewick () throws InvalidTreeException {
+        Tree a = new Tree (
+            "(((A:1.0e-1,B : 0.2[comment]):0.1,\n(C:0.1,D:1E-1):0.2):0.3," +
+            "E:0.5):0.0;(F:0.1,G:0.1);"
+        );
+        assertEquals (
+            "Tree mismatch.",
+            0,
+            a.compareTo (tree)
+        );
+        Tree b = new Tree ("((A:0.1,B:0.2)95:0.1,C:0.3);");
+        assertEquals (
+            "Internal node name mismatch.",
+            "95",
+            b.getDescendant ("A").getParent ().getName ()
+        );
+    }
+
+    @Test
+    public void testReadDeepNewick () throws InvalidTreeException {
+        // Build a caterpillar tree too deep for a recursive parser.
+        int depth = 100000;
+        StringBuilder newick = new StringBuilder ();
+        for (int i = 0; i < depth; i ++) {
+            newick.append ("(");
+        }
+        newick.append ("L0:0.1");
+        for (int i = 1; i <= depth; i ++) {
+            newick.append (",L").append (i).append (":0.1):0.01");
+        }
+        newick.append (";");
+        NewickReader reader = new NewickReader (
+            new StringReader (newick.toString ())
+        );
+        Node node = reader.readTree ();
+        int leaves = 0;
+        while (node != null) {
+            ArrayList<Node> children = node.getChildren ();
+            leaves ++;
+            node = children.isEmpty () ? null : children.get (0);
+        }
+        assertEquals ("Wrong depth.", depth + 1, leaves);
+    }
+
+    @Test
+    public void testDeepDistanceFromRoot () throws InvalidTreeException {
+        // Build a caterpillar tree too deep for a recursive walk.
+        int depth = 100000;
+        Node root = new Node ();
+        Node node = root;
+        for (int i = 0; i < depth; i ++) {
+            Node leaf = new Node ("L" + i, 0.1d);
+            Node child = new Node ("", 0.01d);
+            node.addChild (leaf);
+            node.addChild (child);
+            node = child;
+        }
+        assertEquals ("Wrong distance.", depth * 0.01d,
+            node.distanceFromRootNode (), 1.0e-6d);
+        // Changing a distance near the root invalidates the whole tree.
+        root.getChildren ().get (1).setDistance (1.01d);
+        assertEquals ("Wrong distance.", depth * 0.01d + 1.0d,
+            node.distanceFromRootNode (), 1.0e-6d);
+    }
+
+    @Test
+    public void testDeepCopy () throws InvalidTreeException {
+        // Build a multifurcating tree that becomes too deep for recursion.
+        int leaves = 100000;
+        Node root = new Node ();
+        for (int i = 0; i < leaves; i ++) {
+            root.addChild (new Node ("L" + i, 0.1d));
+        }
+        Tree tree = new Tree (root);
+        tree.makeBinary ();
+        Tree copy = new Tree (tree);
+        assertEquals ("Wrong descendants.", leaves,
+            copy.getRoot ().numberOfDescendants (false));
+        assertEquals ("Copy mismatch.", tree.toString (), copy.toString ());
+    }
+
+    @Test
+    public void testCachedDistances () throws InvalidTreeException {
+        Tree a = new Tree (testTree);
+        Node root = a.getRoot ();
+        Node x = a.getDescendant ("A").getParent ();
+        // Fill the caches before changing the tree.
+        assertDistances (a, new Tree (testTree));
+        assertEquals ("Wrong descendants.", 5, a.size ());
+        a.getDescendant ("D").setDistance (0.4d);
+        assertDistances (a, new Tree (
+            "(((A:0.1,B:0.2):0.1,(C:0.1,D:0.4):0.2):0.3,E:0.5):0.0;"
+        ));
+        x.addChild (new Node ("F", 0.3d));
+        assertDistances (a, new Tree (
+            "(((A:0.1,B:0.2,F:0.3):0.1,(C:0.1,D:0.4):0.2):0.3,E:0.5):0.0;"
+        ));
+        assertEquals ("Wrong descendants.", 6, a.size ());
+        x.removeChild (a.getDescendant ("F"));
+        x.collapse ();
+        a.setPaintMethod (Tree.PAINT_METHOD_COLLAPSED);
+        assertEquals ("Wrong descendants.", 4, a.size ());
+        x.collapse (false);
+        assertEquals ("Wrong descendants.", 5, a.size ());
+        Node e = a.getDescendant ("E");
+        assertEquals (
+            "Wrong distance from root.", 0.5d, e.distanceFromRootNode (),
+            MainVariables.EPSILON
+        );
+        a.reroot ("C");
+        assertDistances (a, new Tree (
+            "((((A:0.1,B:0.2):0.1,E:0.8):0.2,D:0.4):0.05,C:0.05):0.0;"
+        ));
+        assertEquals (
+            "Wrong distance from root.", 1.05d, e.distanceFromRootNode (),
+            MainVariables.EPSILON
+        );
+    }
+
+    @Test
+    public void testLevelOfDetail () throws InvalidTreeException {
+        Tree a = new Tree (testTree);
+        LabelPainter painter = new LabelPainter ();
+        a.paintTree (painter);
+        assertEquals ("Wrong labels.",
+            Arrays.asList ("A", "B", "C", "D", "E", "0.01"), painter.labels);
+        // The (C,D) subtree is 100 pixels wide at this scale.
+        a.setScale (1000);
+        painter = new LabelPainter ();
+        a.paintTree (painter, 150);
+        assertEquals ("Wrong labels.",
+            Arrays.asList ("A", "B", "C and 1 others", "E", "0.05"),
+            painter.labels);
+        assertEquals ("Wrong height.", 10 * (4 + 3), painter.height);
+        // Zooming in paints the leaves again.
+        a.setScale (5000);
+        painter = new LabelPainter ();
+        a.paintTree (painter, 150);
+        assertEquals ("Wrong labels.",
+            Arrays.asList ("A", "B", "C", "D", "E", "0.01"), painter.labels);
+        // A changed tree is not painted from the cached layout.
+        a.getDescendant ("C").setDistance (0.01d);
+        a.getDescendant ("D").setDistance (0.01d);
+        painter = new LabelPainter ();
+        a.paintTree (painter, 150);
+        assertEquals ("Wrong labels.",
+            Arrays.asList ("A", "B", "C and 1 others", "E", "0.01"),
+            painter.labels);
+    }
+
+    /**
+     *  Compare the cached distances of a tree with those of a new tree.
+     */
+    private void assertDistances (Tree a, Tree b) {
+        Node x = a.getRoot ();
+        Node y = b.getRoot ();
+        assertEquals (
+            "Wrong maximum distance from leaf.",
+            y.maximumDistanceFromLeafNode (),
+            x.maximumDistanceFromLeafNode (),
+            MainVariables.EPSILON
+        );
+        assertEquals (
+            "Wrong minimum distance from leaf.",
+            y.minimumDistanceFromLeafNode (),
+            x.minimumDistanceFromLeafNode (),
+            MainVariables.EPSILON
+        );
+        // The children may be in a different order.
+        double expected = 0.0d;
+        for (Node child: y.getChildren ()) {
+            expected += child.maximumDistanceBetweenLeafNodes ();
+        }
+        double distance = 0.0d;
+        for (Node child: x.getChildren ()) {
+            distance += child.maximumDistanceBetweenLeafNodes ();
+        }
+        assertEquals (
+            "Wrong maximum distance between leaves.",
+            expected, distance, MainVariables.EPSILON
+        );
+    }
+
+    /**
+     *  A Painter that records the Strings painted.
+     */
+    private static class LabelPainter implements Painter {
+        public void start (int width, int height) {
+            this.height = height;
+        }
+        public void end () {
+        }
+        public void drawLine (int x1, int y1, int x2, int y2, int stroke) {
+        }
+        public void drawString (String str, int x, int y) {
+            labels.add (str);
+        }
+        public int fontWidth () {
+            return 10;
+        }
+        public int fontHeight () {
+            return 10;
+        }
+        public int stringWidth (String str) {
+            return 10 * str.length ();
+        }
+        private ArrayList<String> labels = new ArrayList<String> ();
+        private int height;
+    }
+
     private Tree tree;
 
     //       ┌─ A